@@ -36,6 +36,11 @@ public class InventoryServiceProperties {
   private String apiKey;
   private String kafkaHostIngressTopic = "platform.inventory.host-ingress";
   private int apiHostUpdateBatchSize = 50;
+  private int kafkaHostBatchSize = 1;
+  private Duration hostUpdateFlushInterval = Duration.ZERO;
+  private int hostUpdateQueueCapacity = 10000;
+  private Integer kafkaProducerLingerMs;
+  private String kafkaProducerCompressionType;
   private int staleHostOffsetInDays = 0;
 
   @DurationUnit(ChronoUnit.HOURS)
@@ -0,0 +1,66 @@
+/*
+ * Copyright Red Hat, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ *
+ * Red Hat trademarks are not licensed under GPLv3. No permission is
+ * granted to use or replicate Red Hat trademarks that are incorporated
+ * in this software or its documentation.
+ */
+package org.candlepin.subscriptions.rhmarketplace;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.UUID;
+import org.candlepin.subscriptions.rhmarketplace.api.model.AuthResponse;
+import org.candlepin.subscriptions.rhmarketplace.api.model.BatchStatus;
+import org.candlepin.subscriptions.rhmarketplace.api.model.StatusResponse;
+import org.candlepin.subscriptions.rhmarketplace.api.model.UsageRequest;
+import org.candlepin.subscriptions.rhmarketplace.api.resources.RhMarketplaceApi;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Stub of the RhMarketplaceApi that doesn't make requests. Every submission is reported as a new
+ * in-progress batch, and every batch is reported as accepted when its status is checked.
+ */
+public class StubRhMarketplaceApi extends RhMarketplaceApi {
+
+  private static Logger log = LoggerFactory.getLogger(StubRhMarketplaceApi.class);
+
+  public static final String IN_PROGRESS_STATUS = "inprogress";
+  public static final String ACCEPTED_STATUS = "accepted";
+
+  @Override
+  public AuthResponse getAccessToken(String grantType, String apikey) throws ApiException {
+    return new AuthResponse()
+        .accessToken("stub-token")
+        .expiration(Instant.now().plus(Duration.ofHours(1)).getEpochSecond());
+  }
+
+  @Override
+  public StatusResponse submitUsageEvents(UsageRequest usageRequest) throws ApiException {
+    log.info("Submitting usage to RH marketplace stub: {}", usageRequest);
+    return new StatusResponse()
+        .status(IN_PROGRESS_STATUS)
+        .addDataItem(
+            new BatchStatus().status(IN_PROGRESS_STATUS).batchId(UUID.randomUUID().toString()));
+  }
+
+  @Override
+  public StatusResponse getUsageBatchStatus(String batchId) throws ApiException {
+    log.info("Checking RH marketplace stub batch: {}", batchId);
+    return new StatusResponse().status(ACCEPTED_STATUS);
+  }
+}
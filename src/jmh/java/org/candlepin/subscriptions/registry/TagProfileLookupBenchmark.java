@@ -0,0 +1,164 @@
+/*
+ * Copyright Red Hat, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ *
+ * Red Hat trademarks are not licensed under GPLv3. No permission is
+ * granted to use or replicate Red Hat trademarks that are incorporated
+ * in this software or its documentation.
+ */
+package org.candlepin.subscriptions.registry;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import org.candlepin.subscriptions.inventory.db.model.InventoryHostFacts;
+import org.candlepin.subscriptions.json.Measurement.Uom;
+import org.candlepin.subscriptions.tally.HostFactsGenerator;
+import org.candlepin.subscriptions.tally.TagProfileLoader;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Compares the per-host TagProfile lookups against the scans they replaced. The scan methods are
+ * copies of the previous TagProfile implementations, run against the same loaded profile.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class TagProfileLookupBenchmark {
+
+  private static final Uom[] UOMS = {Uom.CORES, Uom.SOCKETS, Uom.INSTANCE_HOURS};
+
+  @Param({"1000", "10000"})
+  int hosts;
+
+  private TagProfile tagProfile;
+  private Map<String, Set<String>> tagToEngProducts;
+  private List<List<String>> hostEngIds;
+  private List<String> tags;
+  private List<String> serviceTypes;
+
+  @Setup
+  public void setup() {
+    tagProfile = TagProfileLoader.load();
+    tagToEngProducts = new HashMap<>();
+    tagProfile.getTagMappings().stream()
+        .filter(mapping -> "engId".equals(mapping.getValueType()))
+        .forEach(
+            mapping ->
+                mapping
+                    .getTags()
+                    .forEach(
+                        tag ->
+                            tagToEngProducts
+                                .computeIfAbsent(tag, k -> new HashSet<>())
+                                .add(mapping.getValue())));
+
+    List<InventoryHostFacts> hostFacts = new HostFactsGenerator(42).generate("account123", hosts);
+    hostEngIds = new ArrayList<>(hosts);
+    for (InventoryHostFacts facts : hostFacts) {
+      List<String> engIds = new ArrayList<>();
+      if (facts.getProducts() != null) {
+        engIds.addAll(facts.getProducts());
+      }
+      if (facts.getSystemProfileProductIds() != null) {
+        engIds.addAll(facts.getSystemProfileProductIds());
+      }
+      hostEngIds.add(engIds);
+    }
+    tags = new ArrayList<>(tagProfile.getTagsWithPrometheusEnabledLookup());
+    serviceTypes = new ArrayList<>(tagProfile.getServiceTypes());
+  }
+
+  @Benchmark
+  public void scanTagsByEngProduct(Blackhole blackhole) {
+    for (List<String> engIds : hostEngIds) {
+      for (String engId : engIds) {
+        blackhole.consume(
+            tagToEngProducts.entrySet().stream()
+                .filter(e -> e.getValue().contains(engId))
+                .map(Entry::getKey)
+                .collect(Collectors.toSet()));
+      }
+    }
+  }
+
+  @Benchmark
+  public void indexedTagsByEngProduct(Blackhole blackhole) {
+    for (List<String> engIds : hostEngIds) {
+      for (String engId : engIds) {
+        blackhole.consume(tagProfile.getTagsByEngProduct(engId));
+      }
+    }
+  }
+
+  @Benchmark
+  public void scanTagMetricsAndServiceTypes(Blackhole blackhole) {
+    for (int i = 0; i < hosts; i++) {
+      String tag = tags.get(i % tags.size());
+      Uom uom = UOMS[i % UOMS.length];
+      String serviceType = serviceTypes.get(i % serviceTypes.size());
+      blackhole.consume(
+          tagProfile.getTagMetrics().stream()
+              .filter(x -> tag.equals(x.getTag()) && uom.equals(x.getUom()))
+              .collect(Collectors.toList())
+              .stream()
+              .findFirst());
+      Optional<TagMetaData> metaData =
+          tagProfile.getTagMetaData().stream()
+              .filter(meta -> serviceType.equals(meta.getServiceType()))
+              .findFirst();
+      blackhole.consume(metaData);
+      Set<String> serviceTypeTags = new HashSet<>();
+      tagProfile.getTagMetaData().stream()
+          .filter(meta -> serviceType.equals(meta.getServiceType()))
+          .map(TagMetaData::getTags)
+          .forEach(serviceTypeTags::addAll);
+      blackhole.consume(serviceTypeTags);
+    }
+  }
+
+  @Benchmark
+  public void indexedTagMetricsAndServiceTypes(Blackhole blackhole) {
+    for (int i = 0; i < hosts; i++) {
+      String tag = tags.get(i % tags.size());
+      Uom uom = UOMS[i % UOMS.length];
+      String serviceType = serviceTypes.get(i % serviceTypes.size());
+      blackhole.consume(tagProfile.getTagMetric(tag, uom));
+      blackhole.consume(tagProfile.getTagMetaDataByServiceType(serviceType));
+      blackhole.consume(tagProfile.getTagsForServiceType(serviceType));
+    }
+  }
+}
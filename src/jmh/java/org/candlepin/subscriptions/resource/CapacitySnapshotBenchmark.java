@@ -0,0 +1,99 @@
+/*
+ * Copyright Red Hat, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ *
+ * Red Hat trademarks are not licensed under GPLv3. No permission is
+ * granted to use or replicate Red Hat trademarks that are incorporated
+ * in this software or its documentation.
+ */
+package org.candlepin.subscriptions.resource;
+
+import java.time.OffsetDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.candlepin.subscriptions.db.model.SubscriptionCapacity;
+import org.candlepin.subscriptions.utilization.api.model.CapacitySnapshot;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/** Compares the per-date capacity scan with the single-pass CapacitySnapshotCalculator. */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CapacitySnapshotBenchmark {
+
+  private static final OffsetDateTime START = OffsetDateTime.parse("2019-01-01T00:00:00Z");
+
+  /** Number of daily report periods, e.g. 1095 for a three-year daily report. */
+  @Param({"30", "365", "1095"})
+  int periods;
+
+  @Param({"100", "1000", "5000"})
+  int subscriptions;
+
+  private final CapacityResource resource = new CapacityResource(null, null, null, null);
+  private List<OffsetDateTime> dates;
+  private List<SubscriptionCapacity> capacities;
+
+  @Setup
+  public void setup() {
+    Random random = new Random(42);
+    dates = new ArrayList<>(periods);
+    for (int i = 0; i < periods; i++) {
+      dates.add(START.plusDays(i));
+    }
+    capacities = new ArrayList<>(subscriptions);
+    for (int i = 0; i < subscriptions; i++) {
+      SubscriptionCapacity capacity = new SubscriptionCapacity();
+      OffsetDateTime begin = START.plusDays(random.nextInt(periods + 60) - 30L);
+      capacity.setBeginDate(begin);
+      capacity.setEndDate(begin.plusDays(30L + random.nextInt(730)));
+      capacity.setPhysicalSockets(random.nextInt(8));
+      capacity.setVirtualSockets(random.nextInt(8));
+      capacity.setPhysicalCores(random.nextInt(64));
+      capacity.setVirtualCores(random.nextInt(64));
+      capacity.setHasUnlimitedUsage(random.nextInt(20) == 0);
+      capacities.add(capacity);
+    }
+  }
+
+  @Benchmark
+  public List<CapacitySnapshot> perDateScan() {
+    List<CapacitySnapshot> snapshots = new ArrayList<>(dates.size());
+    for (OffsetDateTime date : dates) {
+      snapshots.add(resource.createCapacitySnapshot(date, capacities));
+    }
+    return snapshots;
+  }
+
+  @Benchmark
+  public List<CapacitySnapshot> sweep() {
+    return CapacitySnapshotCalculator.calculate(dates, capacities);
+  }
+}
@@ -0,0 +1,134 @@
+/*
+ * Copyright Red Hat, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ *
+ * Red Hat trademarks are not licensed under GPLv3. No permission is
+ * granted to use or replicate Red Hat trademarks that are incorporated
+ * in this software or its documentation.
+ */
+package org.candlepin.subscriptions.tally;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import static org.mockito.Mockito.withSettings;
+
+import java.time.Clock;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+import org.candlepin.subscriptions.db.TallySnapshotRepository;
+import org.candlepin.subscriptions.db.model.BillingProvider;
+import org.candlepin.subscriptions.db.model.Granularity;
+import org.candlepin.subscriptions.db.model.HardwareMeasurementType;
+import org.candlepin.subscriptions.db.model.ServiceLevel;
+import org.candlepin.subscriptions.db.model.TallySnapshot;
+import org.candlepin.subscriptions.db.model.Usage;
+import org.candlepin.subscriptions.json.Measurement.Uom;
+import org.candlepin.subscriptions.util.ApplicationClock;
+import org.candlepin.subscriptions.util.DateRange;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures CombiningRollupSnapshotStrategy turning hourly account calculations into hourly
+ * snapshots and grouping them into daily rollups. Persistence and messaging are stubbed out so
+ * only the in-memory snapshot production and grouping is timed.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CombiningRollupSnapshotStrategyBenchmark {
+
+  private static final String ACCOUNT = "account123";
+  private static final OffsetDateTime START = OffsetDateTime.parse("2022-05-01T00:00:00Z");
+  private static final String[] PRODUCTS = {
+    "OpenShift-metrics", "OpenShift-dedicated-metrics", "rhosak"
+  };
+  private static final ServiceLevel[] SLAS = {
+    ServiceLevel.PREMIUM, ServiceLevel.STANDARD, ServiceLevel._ANY
+  };
+  private static final Usage[] USAGES = {Usage.PRODUCTION, Usage.DEVELOPMENT_TEST, Usage._ANY};
+
+  /** Number of hourly calculations, e.g. 720 for a month of hourly data. */
+  @Param({"24", "720"})
+  int hours;
+
+  private CombiningRollupSnapshotStrategy strategy;
+  private DateRange range;
+  private Map<OffsetDateTime, AccountUsageCalculation> accountCalcs;
+
+  @Setup
+  public void setup() {
+    // stub-only mocks do not record invocations, so they don't grow across benchmark iterations
+    TallySnapshotRepository repo = mock(TallySnapshotRepository.class, withSettings().stubOnly());
+    when(repo.findByAccountNumberAndProductIdInAndGranularityAndSnapshotDateBetween(
+            any(), any(), any(), any(), any()))
+        .thenAnswer(invocation -> Stream.empty());
+    TallySnapshotWriter writer = mock(TallySnapshotWriter.class, withSettings().stubOnly());
+    when(writer.saveAll(any()))
+        .thenAnswer(
+            invocation -> new ArrayList<>(invocation.<Collection<TallySnapshot>>getArgument(0)));
+    SnapshotSummaryProducer summaryProducer =
+        mock(SnapshotSummaryProducer.class, withSettings().stubOnly());
+    ApplicationClock clock = new ApplicationClock(Clock.fixed(START.toInstant(), ZoneOffset.UTC));
+    strategy = new CombiningRollupSnapshotStrategy(repo, writer, summaryProducer, clock);
+
+    range = new DateRange(START, START.plusHours(hours));
+    accountCalcs = new HashMap<>();
+    Random random = new Random(42);
+    for (int hour = 0; hour < hours; hour++) {
+      AccountUsageCalculation accountCalc = new AccountUsageCalculation(ACCOUNT);
+      accountCalc.setOwner("owner123");
+      for (String product : PRODUCTS) {
+        accountCalc.getProducts().add(product);
+        for (ServiceLevel sla : SLAS) {
+          for (Usage usage : USAGES) {
+            UsageCalculation.Key key =
+                new UsageCalculation.Key(product, sla, usage, BillingProvider._ANY, "_ANY");
+            accountCalc.addUsage(
+                key, HardwareMeasurementType.PHYSICAL, Uom.CORES, 1.0 + random.nextInt(64));
+          }
+        }
+      }
+      accountCalcs.put(START.plusHours(hour), accountCalc);
+    }
+  }
+
+  @Benchmark
+  public void produceSnapshotsFromCalculations() {
+    strategy.produceSnapshotsFromCalculations(
+        ACCOUNT, range, Set.of(PRODUCTS), accountCalcs, Granularity.HOURLY, Double::sum);
+  }
+}
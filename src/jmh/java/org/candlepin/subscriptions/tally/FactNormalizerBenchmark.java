@@ -0,0 +1,76 @@
+/*
+ * Copyright Red Hat, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ *
+ * Red Hat trademarks are not licensed under GPLv3. No permission is
+ * granted to use or replicate Red Hat trademarks that are incorporated
+ * in this software or its documentation.
+ */
+package org.candlepin.subscriptions.tally;
+
+import java.time.Clock;
+import java.time.ZoneOffset;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import org.candlepin.subscriptions.ApplicationProperties;
+import org.candlepin.subscriptions.inventory.db.model.InventoryHostFacts;
+import org.candlepin.subscriptions.tally.facts.FactNormalizer;
+import org.candlepin.subscriptions.util.ApplicationClock;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/** Measures FactNormalizer.normalize over a realistic mix of HBI hosts. */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class FactNormalizerBenchmark {
+
+  @Param({"1000", "10000"})
+  int hosts;
+
+  private FactNormalizer normalizer;
+  private List<InventoryHostFacts> hostFacts;
+  private Map<String, String> reportedHypervisors;
+
+  @Setup
+  public void setup() {
+    ApplicationClock clock =
+        new ApplicationClock(Clock.fixed(HostFactsGenerator.NOW.toInstant(), ZoneOffset.UTC));
+    normalizer = new FactNormalizer(new ApplicationProperties(), TagProfileLoader.load(), clock);
+    hostFacts = new HostFactsGenerator(42).generate("account123", hosts);
+    reportedHypervisors = HostFactsGenerator.reportedHypervisors(hostFacts);
+  }
+
+  @Benchmark
+  public void normalize(Blackhole blackhole) {
+    for (InventoryHostFacts facts : hostFacts) {
+      blackhole.consume(normalizer.normalize(facts, reportedHypervisors));
+    }
+  }
+}
@@ -0,0 +1,206 @@
+/*
+ * Copyright Red Hat, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ *
+ * Red Hat trademarks are not licensed under GPLv3. No permission is
+ * granted to use or replicate Red Hat trademarks that are incorporated
+ * in this software or its documentation.
+ */
+package org.candlepin.subscriptions.tally;
+
+import java.time.OffsetDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.UUID;
+import org.candlepin.subscriptions.inventory.db.model.InventoryHostFacts;
+
+/**
+ * Generates a reproducible population of HBI host facts that resembles a real account: physical
+ * RHSM hosts, hypervisors with guests (some of whose hypervisors are not in inventory), cloud
+ * instances, and hosts reported only through the system profile, QPC, or satellite.
+ */
+public class HostFactsGenerator {
+
+  /** Fixed "now" used for sync timestamps; benchmarks should build their clock from it. */
+  public static final OffsetDateTime NOW = OffsetDateTime.parse("2022-06-01T12:00:00Z");
+
+  private static final String[] RHEL_ENG_IDS = {"69", "479", "72", "279", "419"};
+  private static final String[] ROLES = {
+    "Red Hat Enterprise Linux Server", "Red Hat Enterprise Linux Workstation", "ocp", ""
+  };
+  private static final String[] SLAS = {"Premium", "Standard", "Self-Support", ""};
+  private static final String[] USAGES = {
+    "Production", "Development/Test", "Disaster Recovery", ""
+  };
+  private static final String[] ARCHES = {"x86_64", "x86_64", "aarch64", "ppc64le", "s390x"};
+
+  private final Random random;
+
+  public HostFactsGenerator(long seed) {
+    this.random = new Random(seed);
+  }
+
+  /**
+   * Generate host facts for a single account.
+   *
+   * @param account the account number to stamp on every host
+   * @param count the number of hosts to generate
+   * @return the generated hosts, in a shuffled order
+   */
+  public List<InventoryHostFacts> generate(String account, int count) {
+    List<InventoryHostFacts> hosts = new ArrayList<>(count);
+    List<String> hypervisorIds = new ArrayList<>();
+    for (int i = 0; i < count; i++) {
+      int bucket = random.nextInt(100);
+      InventoryHostFacts host;
+      if (bucket < 35) {
+        host = rhsmPhysical(account);
+      } else if (bucket < 45) {
+        host = rhsmPhysical(account);
+        hypervisorIds.add(host.getSubscriptionManagerId());
+      } else if (bucket < 70) {
+        host = guest(account, hypervisorIds);
+      } else if (bucket < 80) {
+        host = cloud(account);
+      } else if (bucket < 90) {
+        host = systemProfileOnly(account);
+      } else if (bucket < 95) {
+        host = qpc(account);
+      } else {
+        host = satellite(account, hypervisorIds);
+      }
+      hosts.add(host);
+    }
+    return hosts;
+  }
+
+  /**
+   * Build the hypervisor mapping HBI reports for the given hosts: every hypervisor UUID referenced
+   * by a guest, mapped to the hypervisor's subscription-manager ID when that hypervisor is itself
+   * in inventory, or to null when it is not.
+   */
+  public static Map<String, String> reportedHypervisors(List<InventoryHostFacts> hosts) {
+    Set<String> subscriptionManagerIds = new HashSet<>();
+    hosts.forEach(host -> subscriptionManagerIds.add(host.getSubscriptionManagerId()));
+    Map<String, String> reported = new HashMap<>();
+    for (InventoryHostFacts host : hosts) {
+      String hypervisorUuid =
+          host.getSatelliteHypervisorUuid() != null
+              ? host.getSatelliteHypervisorUuid()
+              : host.getHypervisorUuid();
+      if (hypervisorUuid != null) {
+        boolean inInventory = subscriptionManagerIds.contains(hypervisorUuid);
+        reported.put(hypervisorUuid, inInventory ? hypervisorUuid : null);
+      }
+    }
+    return reported;
+  }
+
+  private InventoryHostFacts base(String account) {
+    InventoryHostFacts host = new InventoryHostFacts();
+    host.setInventoryId(new UUID(random.nextLong(), random.nextLong()));
+    host.setAccount(account);
+    host.setOrgId("org-" + account);
+    host.setDisplayName("host-" + host.getInventoryId());
+    host.setModifiedOn(NOW.minusHours(random.nextInt(48)));
+    host.setStaleTimestamp(NOW.plusDays(1));
+    host.setSystemProfileArch(pick(ARCHES));
+    host.setSystemProfileSockets(1 + random.nextInt(4));
+    host.setSystemProfileCoresPerSocket(1 << random.nextInt(5));
+    return host;
+  }
+
+  private InventoryHostFacts rhsmPhysical(String account) {
+    InventoryHostFacts host = base(account);
+    host.setSubscriptionManagerId(new UUID(random.nextLong(), random.nextLong()).toString());
+    host.setInsightsId(new UUID(random.nextLong(), random.nextLong()).toString());
+    host.setSyncTimestamp(NOW.minusHours(random.nextInt(12)).toString());
+    host.setProducts(rhelEngIds());
+    host.setSyspurposeRole(pick(ROLES));
+    host.setSyspurposeSla(pick(SLAS));
+    host.setSyspurposeUsage(pick(USAGES));
+    host.setSystemProfileInfrastructureType("physical");
+    return host;
+  }
+
+  private InventoryHostFacts guest(String account, List<String> hypervisorIds) {
+    InventoryHostFacts host = rhsmPhysical(account);
+    host.setVirtual(true);
+    host.setSystemProfileInfrastructureType("virtual");
+    host.setHypervisorUuid(hypervisorFor(hypervisorIds));
+    host.setGuestId(new UUID(random.nextLong(), random.nextLong()).toString());
+    return host;
+  }
+
+  private InventoryHostFacts cloud(String account) {
+    InventoryHostFacts host = rhsmPhysical(account);
+    host.setVirtual(true);
+    host.setSystemProfileInfrastructureType("virtual");
+    host.setCloudProvider(random.nextBoolean() ? "aws" : "azure");
+    if (random.nextInt(4) == 0) {
+      host.setMarketplace(true);
+      host.setBillingModel("marketplace");
+    }
+    return host;
+  }
+
+  private InventoryHostFacts systemProfileOnly(String account) {
+    InventoryHostFacts host = base(account);
+    host.setInsightsId(new UUID(random.nextLong(), random.nextLong()).toString());
+    host.setSystemProfileProductIds(rhelEngIds() + (random.nextInt(5) == 0 ? ",290" : ""));
+    host.setSystemProfileInfrastructureType(random.nextBoolean() ? "physical" : "virtual");
+    return host;
+  }
+
+  private InventoryHostFacts qpc(String account) {
+    InventoryHostFacts host = base(account);
+    host.setQpcProducts("RHEL");
+    host.setQpcProductIds(pick(RHEL_ENG_IDS));
+    return host;
+  }
+
+  private InventoryHostFacts satellite(String account, List<String> hypervisorIds) {
+    InventoryHostFacts host = base(account);
+    host.setSubscriptionManagerId(new UUID(random.nextLong(), random.nextLong()).toString());
+    host.setSatelliteHypervisorUuid(hypervisorFor(hypervisorIds));
+    host.setSatelliteRole(pick(ROLES));
+    host.setSatelliteSla(pick(SLAS));
+    host.setSatelliteUsage(pick(USAGES));
+    host.setProducts(rhelEngIds());
+    return host;
+  }
+
+  /** Mostly known hypervisors, with roughly one in five guests on a hypervisor not in HBI. */
+  private String hypervisorFor(List<String> hypervisorIds) {
+    if (hypervisorIds.isEmpty() || random.nextInt(5) == 0) {
+      return new UUID(random.nextLong(), random.nextLong()).toString();
+    }
+    return hypervisorIds.get(random.nextInt(hypervisorIds.size()));
+  }
+
+  private String rhelEngIds() {
+    String engId = pick(RHEL_ENG_IDS);
+    return random.nextInt(3) == 0 ? engId + ",250" : engId;
+  }
+
+  private String pick(String[] values) {
+    return values[random.nextInt(values.length)];
+  }
+}
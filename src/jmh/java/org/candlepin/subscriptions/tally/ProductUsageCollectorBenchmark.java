@@ -0,0 +1,108 @@
+/*
+ * Copyright Red Hat, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ *
+ * Red Hat trademarks are not licensed under GPLv3. No permission is
+ * granted to use or replicate Red Hat trademarks that are incorporated
+ * in this software or its documentation.
+ */
+package org.candlepin.subscriptions.tally;
+
+import java.time.Clock;
+import java.time.ZoneOffset;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import org.candlepin.subscriptions.ApplicationProperties;
+import org.candlepin.subscriptions.db.model.BillingProvider;
+import org.candlepin.subscriptions.db.model.ServiceLevel;
+import org.candlepin.subscriptions.db.model.Usage;
+import org.candlepin.subscriptions.inventory.db.model.InventoryHostFacts;
+import org.candlepin.subscriptions.tally.collector.DefaultProductUsageCollector;
+import org.candlepin.subscriptions.tally.collector.ProductUsageCollector;
+import org.candlepin.subscriptions.tally.collector.RHELProductUsageCollector;
+import org.candlepin.subscriptions.tally.facts.FactNormalizer;
+import org.candlepin.subscriptions.tally.facts.NormalizedFacts;
+import org.candlepin.subscriptions.util.ApplicationClock;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures the RHEL and default product usage collectors applying pre-normalized hosts to an
+ * account calculation, fanning each host out over its SLA/usage keys the way a tally does.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ProductUsageCollectorBenchmark {
+
+  @Param({"1000", "10000"})
+  int hosts;
+
+  private final ProductUsageCollector rhelCollector = new RHELProductUsageCollector();
+  private final ProductUsageCollector defaultCollector = new DefaultProductUsageCollector();
+  private List<NormalizedFacts> normalizedFacts;
+
+  @Setup
+  public void setup() {
+    ApplicationClock clock =
+        new ApplicationClock(Clock.fixed(HostFactsGenerator.NOW.toInstant(), ZoneOffset.UTC));
+    FactNormalizer normalizer =
+        new FactNormalizer(new ApplicationProperties(), TagProfileLoader.load(), clock);
+    List<InventoryHostFacts> hostFacts = new HostFactsGenerator(42).generate("account123", hosts);
+    Map<String, String> reportedHypervisors = HostFactsGenerator.reportedHypervisors(hostFacts);
+    normalizedFacts =
+        hostFacts.stream()
+            .map(facts -> normalizer.normalize(facts, reportedHypervisors))
+            .collect(Collectors.toList());
+  }
+
+  @Benchmark
+  public AccountUsageCalculation rhelCollector() {
+    return collect("RHEL", rhelCollector);
+  }
+
+  @Benchmark
+  public AccountUsageCalculation defaultCollector() {
+    return collect("Satellite", defaultCollector);
+  }
+
+  private AccountUsageCalculation collect(String product, ProductUsageCollector collector) {
+    AccountUsageCalculation accountCalc = new AccountUsageCalculation("account123");
+    for (NormalizedFacts facts : normalizedFacts) {
+      for (ServiceLevel sla : new ServiceLevel[] {facts.getSla(), ServiceLevel._ANY}) {
+        for (Usage usage : new Usage[] {facts.getUsage(), Usage._ANY}) {
+          UsageCalculation.Key key =
+              new UsageCalculation.Key(product, sla, usage, BillingProvider._ANY, null);
+          collector.collect(accountCalc.getOrCreateCalculation(key), facts);
+        }
+      }
+    }
+    return accountCalc;
+  }
+}
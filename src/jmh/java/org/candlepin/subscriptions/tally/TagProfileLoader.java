@@ -0,0 +1,47 @@
+/*
+ * Copyright Red Hat, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ *
+ * Red Hat trademarks are not licensed under GPLv3. No permission is
+ * granted to use or replicate Red Hat trademarks that are incorporated
+ * in this software or its documentation.
+ */
+package org.candlepin.subscriptions.tally;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import org.candlepin.subscriptions.registry.TagProfile;
+import org.yaml.snakeyaml.Yaml;
+import org.yaml.snakeyaml.constructor.Constructor;
+
+/** Loads the production tag profile the same way RegistryConfiguration does. */
+public class TagProfileLoader {
+
+  private TagProfileLoader() {
+    throw new IllegalStateException("Utility class; should never be instantiated!");
+  }
+
+  public static TagProfile load() {
+    Yaml parser = new Yaml(new Constructor(TagProfile.class));
+    try (InputStream stream = TagProfileLoader.class.getResourceAsStream("/tag_profile.yaml")) {
+      TagProfile tagProfile = parser.load(stream);
+      tagProfile.initLookups();
+      return tagProfile;
+    } catch (IOException e) {
+      throw new UncheckedIOException("Unable to load tag_profile.yaml", e);
+    }
+  }
+}
@@ -0,0 +1,156 @@
+/*
+ * Copyright Red Hat, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ *
+ * Red Hat trademarks are not licensed under GPLv3. No permission is
+ * granted to use or replicate Red Hat trademarks that are incorporated
+ * in this software or its documentation.
+ */
+package org.candlepin.subscriptions.tally;
+
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.candlepin.subscriptions.db.model.BillingProvider;
+import org.candlepin.subscriptions.db.model.HardwareMeasurementType;
+import org.candlepin.subscriptions.db.model.ServiceLevel;
+import org.candlepin.subscriptions.db.model.Usage;
+import org.candlepin.subscriptions.json.Measurement.Uom;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures looking up and accumulating usage into the calculations of an account. Run with
+ * -PjmhProfilers=gc to compare allocations per operation against the boxed EnumMap accumulation
+ * that UsageCalculation.Totals used before it moved to a primitive array.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class UsageCalculationBenchmark {
+
+  private static final String[] PRODUCTS = {
+    "RHEL", "RHEL for x86", "RHEL Server", "RHEL for ARM", "Satellite", "Satellite Server"
+  };
+  private static final HardwareMeasurementType[] TYPES = {
+    HardwareMeasurementType.PHYSICAL,
+    HardwareMeasurementType.HYPERVISOR,
+    HardwareMeasurementType.VIRTUAL,
+    HardwareMeasurementType.AWS
+  };
+
+  /** Number of host contributions accumulated per invocation. */
+  @Param({"10000", "100000"})
+  int additions;
+
+  private List<UsageCalculation.Key> keys;
+  private HardwareMeasurementType[] types;
+  private double[] cores;
+  private double[] sockets;
+
+  @Setup
+  public void setup() {
+    Random random = new Random(42);
+    keys = new ArrayList<>(additions);
+    types = new HardwareMeasurementType[additions];
+    cores = new double[additions];
+    sockets = new double[additions];
+    ServiceLevel[] slas = ServiceLevel.values();
+    Usage[] usages = Usage.values();
+    for (int i = 0; i < additions; i++) {
+      keys.add(
+          new UsageCalculation.Key(
+              PRODUCTS[random.nextInt(PRODUCTS.length)],
+              slas[random.nextInt(slas.length)],
+              usages[random.nextInt(usages.length)],
+              BillingProvider._ANY,
+              null));
+      types[i] = TYPES[random.nextInt(TYPES.length)];
+      sockets[i] = 1 + random.nextInt(4);
+      cores[i] = sockets[i] * (1 << random.nextInt(5));
+    }
+  }
+
+  /** Accumulates into a single calculation, isolating the cost of the per-type totals. */
+  @Benchmark
+  public UsageCalculation accumulate() {
+    UsageCalculation calc = new UsageCalculation(keys.get(0));
+    for (int i = 0; i < additions; i++) {
+      calc.add(types[i], Uom.CORES, cores[i]);
+      calc.add(types[i], Uom.SOCKETS, sockets[i]);
+    }
+    return calc;
+  }
+
+  /** The previous Totals accumulation: an EnumMap of boxed Doubles per hardware type. */
+  @Benchmark
+  public Map<HardwareMeasurementType, Map<Uom, Double>> boxedAccumulate() {
+    Map<HardwareMeasurementType, Map<Uom, Double>> totals =
+        new EnumMap<>(HardwareMeasurementType.class);
+    for (int i = 0; i < additions; i++) {
+      boxedAdd(totals, types[i], Uom.CORES, cores[i]);
+      boxedAdd(totals, types[i], Uom.SOCKETS, sockets[i]);
+    }
+    return totals;
+  }
+
+  /** Looks each contribution's calculation up by key first, as a tally does for every host. */
+  @Benchmark
+  public AccountUsageCalculation lookupAndAccumulate() {
+    AccountUsageCalculation accountCalc = new AccountUsageCalculation("account123");
+    for (int i = 0; i < additions; i++) {
+      UsageCalculation calc = accountCalc.getOrCreateCalculation(keys.get(i));
+      calc.add(types[i], Uom.CORES, cores[i]);
+      calc.add(types[i], Uom.SOCKETS, sockets[i]);
+    }
+    return accountCalc;
+  }
+
+  private static void boxedAdd(
+      Map<HardwareMeasurementType, Map<Uom, Double>> totals,
+      HardwareMeasurementType type,
+      Uom uom,
+      Double value) {
+    boxedIncrement(totals, type, uom, value);
+    boxedIncrement(totals, HardwareMeasurementType.TOTAL, uom, value);
+  }
+
+  private static void boxedIncrement(
+      Map<HardwareMeasurementType, Map<Uom, Double>> totals,
+      HardwareMeasurementType type,
+      Uom uom,
+      Double value) {
+    totals.putIfAbsent(type, new EnumMap<>(Uom.class));
+    Map<Uom, Double> measurements = totals.get(type);
+    Double existingValue = measurements.get(uom);
+    double current = existingValue == null ? 0.0 : existingValue;
+    measurements.put(uom, current + value);
+  }
+}
@@ -93,6 +93,52 @@ public class ApplicationProperties {
    */
   private int cullingOffsetDays = 14;
 
+  /**
+   * Number of shards an account's HBI hosts are spread across during an inventory tally. Each shard
+   * is processed on its own worker thread and the partial results are merged once all hosts have
+   * been read. A value of 1 (the default) processes all hosts on the calling thread.
+   */
+  private int hostTallyShards = 1;
+
+  /**
+   * Maximum number of inventory tallies spreading their hosts across shards at the same time; more
+   * wait for one to finish. The shard workers are pooled, with a thread per shard for each of these
+   * tallies. Only used if hostTallyShards is more than 1.
+   */
+  private int hostTallyShardedCollections = 2;
+
+  /**
+   * If enabled, an inventory tally loads only a fingerprint of each stored HBI host and writes just
+   * the hosts and buckets that changed, in JDBC batches, instead of loading and saving the account's
+   * whole service inventory through JPA.
+   */
+  private boolean hostReconciliationEnabled = false;
+
+  /** Maximum number of hosts sent to the database in a single host reconciliation batch. */
+  private int hostReconciliationBatchSize = 500;
+
+  /**
+   * If enabled, an inventory tally reads HBI host facts in pages ordered by host id, each page in
+   * its own short transaction, instead of holding a single cursor and inventory database connection
+   * open while the whole account is tallied. Pages are read in id order from an index on the HBI
+   * hosts table over (account, id); without one, every page sorts the account's remaining hosts.
+   */
+  private boolean hostFactsPagingEnabled = false;
+
+  /** Maximum number of HBI hosts read per page when host facts paging is enabled. */
+  private int hostFactsPageSize = 1000;
+
+  /** Number of rows fetched per database round trip while reading a page of HBI host facts. */
+  private int hostFactsFetchSize = 500;
+
+  /**
+   * If enabled, an inventory tally builds the mapping of guests to their hypervisors while reading
+   * HBI host facts, instead of running a separate query that joins the HBI hosts table to itself.
+   * The account's host facts are held in memory until all have been read, since no host can be
+   * classified before the mapping is complete.
+   */
+  private boolean hostFactsHypervisorMappingEnabled = false;
+
   /** Enable or disable cloudigrade integration. */
   private boolean cloudigradeEnabled = false;
 
@@ -111,6 +157,41 @@ public class ApplicationProperties {
    */
   private Duration metricLookupRangeDuration = Duration.ofHours(1L);
 
+  /**
+   * If enabled, metric usage collection reads all events for the tally range with a single ordered
+   * query and buckets them into hours in memory, instead of issuing one query per hour.
+   */
+  private boolean metricUsageSingleScan = false;
+
+  /**
+   * If enabled, tally snapshots are written with batched JDBC upserts keyed on the snapshot natural
+   * key, rather than saved one at a time through JPA. Requires PostgreSQL.
+   *
+   * <p>Also gates the migration that dedupes snapshots and adds the unique natural key index the
+   * upserts conflict on; it runs on the first startup with this enabled. The index is kept if this
+   * is disabled again, so concurrent tallies of an account may then fail on it instead of writing
+   * duplicate snapshots.
+   */
+  private boolean tallySnapshotUpsertEnabled = false;
+
+  /** Maximum number of tally snapshots sent to the database in a single upsert batch. */
+  private int tallySnapshotWriteBatchSize = 500;
+
+  /**
+   * Number of future months the workers keep events partitions created for. Only used when the
+   * events table is partitioned (PostgreSQL).
+   */
+  private int eventPartitionsAhead = 3;
+
+  /** How often the workers check for events partitions to create, starting at startup. */
+  private Duration eventPartitionCheckInterval = Duration.ofDays(1);
+
+  /**
+   * If enabled, the SKU capacity report groups, sorts and pages capacities in the database and
+   * only loads the SKUs on the requested page, instead of loading every capacity of the product.
+   */
+  private boolean skuCapacityDatabasePagingEnabled = false;
+
   /**
    * Latency offset: how far back to set the hourly tally window.
    *
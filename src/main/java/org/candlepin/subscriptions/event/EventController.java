@@ -68,6 +68,23 @@ public class EventController {
         .map(EventRecord::getEvent);
   }
 
+  /**
+   * Stream all events for an account and service type in a time range over a single cursor.
+   *
+   * <p>Note: calling method needs to use @Transactional, and must close the stream.
+   *
+   * @param accountNumber account identifier
+   * @param serviceType service type of the events
+   * @param begin beginning of the time range (inclusive)
+   * @param end end of the time range (exclusive)
+   * @return stream of Event, ordered by timestamp
+   */
+  public Stream<Event> streamEventsInTimeRangeByServiceType(
+      String accountNumber, String serviceType, OffsetDateTime begin, OffsetDateTime end) {
+    return repo.streamByAccountNumberAndServiceTypeAndTimestampRange(
+        accountNumber, serviceType, begin, end);
+  }
+
   @SuppressWarnings({"linelength", "indentation"})
   public Map<EventKey, Event> mapEventsInTimeRange(
       String accountNumber,
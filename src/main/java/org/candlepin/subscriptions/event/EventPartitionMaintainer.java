@@ -0,0 +1,107 @@
+/*
+ * Copyright Red Hat, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ *
+ * Red Hat trademarks are not licensed under GPLv3. No permission is
+ * granted to use or replicate Red Hat trademarks that are incorporated
+ * in this software or its documentation.
+ */
+package org.candlepin.subscriptions.event;
+
+import java.time.Duration;
+import java.time.OffsetDateTime;
+import java.util.concurrent.ScheduledFuture;
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import org.candlepin.subscriptions.ApplicationProperties;
+import org.candlepin.subscriptions.db.EventRecordRepository;
+import org.candlepin.subscriptions.util.ApplicationClock;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.scheduling.TaskScheduler;
+import org.springframework.stereotype.Component;
+
+/**
+ * Keeps the monthly partitions of the events table created ahead of the events arriving, so that
+ * they don't pile up in the default partition.
+ *
+ * <p>The partitions are checked at startup and then periodically. The events table is only
+ * partitioned on PostgreSQL; elsewhere, nothing is scheduled.
+ */
+@Component
+public class EventPartitionMaintainer {
+
+  private static final Logger log = LoggerFactory.getLogger(EventPartitionMaintainer.class);
+
+  private final EventRecordRepository eventRecordRepository;
+  private final ApplicationProperties properties;
+  private final ApplicationClock clock;
+  private final TaskScheduler scheduler;
+  private ScheduledFuture<?> scheduledCheck;
+
+  public EventPartitionMaintainer(
+      EventRecordRepository eventRecordRepository,
+      ApplicationProperties properties,
+      ApplicationClock clock,
+      @Qualifier("eventPartitionScheduler") TaskScheduler scheduler) {
+    this.eventRecordRepository = eventRecordRepository;
+    this.properties = properties;
+    this.clock = clock;
+    this.scheduler = scheduler;
+  }
+
+  @PostConstruct
+  void start() {
+    if (!eventRecordRepository.isEventsTablePartitioned()) {
+      return;
+    }
+    Duration interval = properties.getEventPartitionCheckInterval();
+    scheduledCheck = scheduler.scheduleWithFixedDelay(this::createPartitionsSafely, interval);
+    log.info("Checking events partitions every {}", interval);
+  }
+
+  @PreDestroy
+  void shutdown() {
+    if (scheduledCheck != null) {
+      scheduledCheck.cancel(true);
+    }
+  }
+
+  private void createPartitionsSafely() {
+    try {
+      createPartitions();
+    } catch (Exception e) {
+      log.error("Error creating events partitions", e);
+    }
+  }
+
+  /**
+   * Create the missing partitions from the current month through the configured number of months
+   * ahead.
+   *
+   * @return the number of partitions created
+   */
+  public int createPartitions() {
+    OffsetDateTime now = clock.now();
+    int created =
+        eventRecordRepository.createEventPartitions(
+            now, now.plusMonths(properties.getEventPartitionsAhead()));
+    if (created > 0) {
+      log.info("Created {} events partitions", created);
+    }
+    return created;
+  }
+}
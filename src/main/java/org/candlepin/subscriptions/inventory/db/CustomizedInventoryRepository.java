@@ -0,0 +1,53 @@
+/*
+ * Copyright Red Hat, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ *
+ * Red Hat trademarks are not licensed under GPLv3. No permission is
+ * granted to use or replicate Red Hat trademarks that are incorporated
+ * in this software or its documentation.
+ */
+package org.candlepin.subscriptions.inventory.db;
+
+import java.util.Collection;
+import java.util.List;
+import org.candlepin.subscriptions.inventory.db.model.InventoryHostFacts;
+
+/**
+ * Fragment interface defining inventory queries needing runtime query hints, which Spring JPA's
+ * query annotations only take as constants.
+ *
+ * <p>See
+ * https://docs.spring.io/spring-data/jpa/docs/2.3.0.RELEASE/reference/html/#repositories.custom-implementations
+ */
+public interface CustomizedInventoryRepository {
+
+  /**
+   * Read one page of host facts, in host id order.
+   *
+   * @param accounts the accounts to read hosts of
+   * @param culledOffsetDays days after the stale timestamp at which a host is considered culled
+   * @param afterId only hosts with an id greater than this one are read; pass the nil UUID to read
+   *     the first page
+   * @param pageSize maximum number of hosts to read
+   * @param fetchSize number of rows fetched from the database per round trip
+   * @return host facts ordered by host id
+   */
+  List<InventoryHostFacts> getFactsPage(
+      Collection<String> accounts,
+      int culledOffsetDays,
+      String afterId,
+      int pageSize,
+      int fetchSize);
+}
@@ -0,0 +1,61 @@
+/*
+ * Copyright Red Hat, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ *
+ * Red Hat trademarks are not licensed under GPLv3. No permission is
+ * granted to use or replicate Red Hat trademarks that are incorporated
+ * in this software or its documentation.
+ */
+package org.candlepin.subscriptions.inventory.db;
+
+import java.util.Collection;
+import java.util.List;
+import javax.persistence.EntityManager;
+import org.candlepin.subscriptions.inventory.db.model.InventoryHostFacts;
+import org.hibernate.jpa.QueryHints;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.stereotype.Repository;
+
+/** Class implementing inventory queries not handled well by Spring JPA's query annotations. */
+@Repository
+public class CustomizedInventoryRepositoryImpl implements CustomizedInventoryRepository {
+
+  private EntityManager em;
+
+  @Autowired
+  public CustomizedInventoryRepositoryImpl(
+      @Qualifier("inventoryEntityManagerFactory") EntityManager em) {
+    this.em = em;
+  }
+
+  @Override
+  @SuppressWarnings("unchecked")
+  public List<InventoryHostFacts> getFactsPage(
+      Collection<String> accounts,
+      int culledOffsetDays,
+      String afterId,
+      int pageSize,
+      int fetchSize) {
+    return em.createNamedQuery("InventoryHost.getFactsPage")
+        .setParameter("accounts", accounts)
+        .setParameter("culledOffsetDays", culledOffsetDays)
+        .setParameter("afterId", afterId)
+        .setParameter("pageSize", pageSize)
+        .setHint(QueryHints.HINT_FETCH_SIZE, fetchSize)
+        .setHint(QueryHints.HINT_READONLY, true)
+        .getResultList();
+  }
+}
@@ -20,29 +20,107 @@
  */
 package org.candlepin.subscriptions.inventory.db;
 
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
 import java.util.Collection;
+import java.util.List;
 import java.util.function.Consumer;
 import java.util.stream.Stream;
+import org.candlepin.subscriptions.ApplicationProperties;
 import org.candlepin.subscriptions.inventory.db.model.InventoryHostFacts;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
 
-/** Isolates readonly transaction for inventory database operations. */
+/**
+ * Isolates readonly transaction for inventory database operations.
+ *
+ * <p>Host facts are either streamed through a single cursor, in one transaction, or when paging is
+ * enabled, read one account at a time in pages keyed by host id. Each page is read in its own
+ * transaction, and handed to the consumer only once that transaction has completed, so the
+ * inventory connection goes back to the pool between pages rather than being held while the
+ * account is tallied. Hosts changed in HBI while the pages are read may be seen as of before or
+ * after the change, as with any cursor.
+ */
 @Component
 public class InventoryDatabaseOperations {
 
+  /** Sorts before any other host id, for reading the first page. */
+  static final String FIRST_PAGE_AFTER_ID = "00000000-0000-0000-0000-000000000000";
+
+  /** Maximum number of subscription-manager IDs looked up in a single query. */
+  static final int SUBSCRIPTION_MANAGER_ID_BATCH_SIZE = 1000;
+
   private final InventoryRepository repo;
+  private final TransactionTemplate readOnlyTransaction;
+  private final boolean pagingEnabled;
+  private final int pageSize;
+  private final int fetchSize;
+  private final Counter pageRows;
+  private final Timer pageTimer;
 
-  public InventoryDatabaseOperations(InventoryRepository inventoryRepository) {
+  public InventoryDatabaseOperations(
+      InventoryRepository inventoryRepository,
+      @Qualifier("inventoryTransactionManager") PlatformTransactionManager transactionManager,
+      ApplicationProperties props,
+      MeterRegistry meterRegistry) {
     this.repo = inventoryRepository;
+    this.readOnlyTransaction = new TransactionTemplate(transactionManager);
+    this.readOnlyTransaction.setReadOnly(true);
+    this.pagingEnabled = props.isHostFactsPagingEnabled();
+    this.pageSize = Math.max(1, props.getHostFactsPageSize());
+    this.fetchSize = Math.max(1, props.getHostFactsFetchSize());
+    this.pageRows = meterRegistry.counter("rhsm-subscriptions.inventory.host_facts.rows");
+    this.pageTimer = meterRegistry.timer("rhsm-subscriptions.inventory.host_facts.page");
   }
 
-  @Transactional(value = "inventoryTransactionManager", readOnly = true)
   public void processHostFacts(
       Collection<String> accounts, int culledOffsetDays, Consumer<InventoryHostFacts> consumer) {
-    try (Stream<InventoryHostFacts> hostFactStream = repo.getFacts(accounts, culledOffsetDays)) {
-      hostFactStream.forEach(consumer::accept);
+    if (pagingEnabled) {
+      processHostFactPages(accounts, culledOffsetDays, consumer);
+      return;
     }
+    readOnlyTransaction.executeWithoutResult(
+        status -> {
+          try (Stream<InventoryHostFacts> hostFactStream =
+              repo.getFacts(accounts, culledOffsetDays)) {
+            hostFactStream.forEach(consumer::accept);
+          }
+        });
+  }
+
+  private void processHostFactPages(
+      Collection<String> accounts, int culledOffsetDays, Consumer<InventoryHostFacts> consumer) {
+    // One account at a time, so that each page is read from an (account, id) index in id order,
+    // rather than sorting every remaining host of the accounts for each page.
+    for (String account : accounts) {
+      processHostFactPages(account, culledOffsetDays, consumer);
+    }
+  }
+
+  private void processHostFactPages(
+      String account, int culledOffsetDays, Consumer<InventoryHostFacts> consumer) {
+    List<String> accounts = List.of(account);
+    String afterId = FIRST_PAGE_AFTER_ID;
+    List<InventoryHostFacts> page;
+    do {
+      String pageAfterId = afterId;
+      page =
+          pageTimer.record(
+              () ->
+                  readOnlyTransaction.execute(
+                      status ->
+                          repo.getFactsPage(
+                              accounts, culledOffsetDays, pageAfterId, pageSize, fetchSize)));
+      pageRows.increment(page.size());
+      page.forEach(consumer);
+      if (!page.isEmpty()) {
+        afterId = page.get(page.size() - 1).getInventoryId().toString();
+      }
+    } while (page.size() >= pageSize);
   }
 
   @Transactional(value = "inventoryTransactionManager", readOnly = true)
@@ -51,4 +129,20 @@ public class InventoryDatabaseOperations {
       stream.forEach(consumer::accept);
     }
   }
+
+  /**
+   * Look up which of the given subscription-manager IDs belong to a host in inventory, in batches
+   * small enough to keep the query's parameter list bounded.
+   */
+  @Transactional(value = "inventoryTransactionManager", readOnly = true)
+  public void subscriptionManagerIds(Collection<String> candidates, Consumer<String> consumer) {
+    List<String> ids = List.copyOf(candidates);
+    for (int start = 0; start < ids.size(); start += SUBSCRIPTION_MANAGER_ID_BATCH_SIZE) {
+      List<String> batch =
+          ids.subList(start, Math.min(ids.size(), start + SUBSCRIPTION_MANAGER_ID_BATCH_SIZE));
+      try (Stream<String> stream = repo.findSubscriptionManagerIds(batch)) {
+        stream.forEach(consumer);
+      }
+    }
+  }
 }
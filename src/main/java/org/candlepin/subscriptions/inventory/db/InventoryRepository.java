@@ -31,7 +31,8 @@ import org.springframework.data.repository.query.Param;
 
 /** Interface that Spring Data will turn into a read-only DAO. */
 @SuppressWarnings({"linelength", "indentation"})
-public interface InventoryRepository extends Repository<InventoryHost, UUID> {
+public interface InventoryRepository
+    extends Repository<InventoryHost, UUID>, CustomizedInventoryRepository {
 
   @Query(nativeQuery = true)
   Stream<InventoryHostFacts> getFacts(
@@ -64,4 +65,20 @@ public interface InventoryRepository extends Repository<InventoryHost, UUID> {
               + "where h.facts->'satellite'->'virtual_host_uuid' is not null "
               + "and h.account IN (:accounts)")
   Stream<Object[]> getReportedHypervisors(@Param("accounts") Collection<String> accounts);
+
+  /**
+   * Find which of the given subscription-manager IDs belong to a host in inventory. Like the join in
+   * {@link #getReportedHypervisors}, hosts are matched regardless of their account or staleness.
+   *
+   * @param subscriptionManagerIds the subscription-manager IDs to look for.
+   * @return a stream of the subscription-manager IDs found.
+   */
+  @Query(
+      nativeQuery = true,
+      value =
+          "select distinct h.canonical_facts->>'subscription_manager_id' "
+              + "from hosts h "
+              + "where h.canonical_facts->>'subscription_manager_id' IN (:subscriptionManagerIds)")
+  Stream<String> findSubscriptionManagerIds(
+      @Param("subscriptionManagerIds") Collection<String> subscriptionManagerIds);
 }
@@ -171,15 +171,15 @@ public class CapacityResource implements CapacityApi {
     OffsetDateTime end = timeAdjuster.adjustToPeriodEnd(reportEnd);
     TemporalAmount offset = timeAdjuster.getSnapshotOffset();
 
-    List<CapacitySnapshot> result = new ArrayList<>();
+    List<OffsetDateTime> dates = new ArrayList<>();
     OffsetDateTime next = OffsetDateTime.from(start);
 
     while (next.isBefore(end) || next.isEqual(end)) {
-      result.add(createCapacitySnapshot(next, matches));
+      dates.add(next);
       next = timeAdjuster.adjustToPeriodStart(next.plus(offset));
     }
 
-    return result;
+    return CapacitySnapshotCalculator.calculate(dates, matches);
   }
 
   private List<CapacitySnapshot> paginate(List<CapacitySnapshot> capacities, Pageable pageable) {
@@ -191,11 +191,14 @@ public class CapacityResource implements CapacityApi {
     return capacities.subList(offset, lastIndex);
   }
 
+  /**
+   * Calculate the capacity snapshot for a single date by scanning all capacities.
+   *
+   * <p>Report ranges are calculated with {@link CapacitySnapshotCalculator}, which produces the
+   * same snapshots without rescanning the capacities for every date.
+   */
   protected CapacitySnapshot createCapacitySnapshot(
       OffsetDateTime date, List<SubscriptionCapacity> matches) {
-    // NOTE there is room for future optimization here, as the we're *generally* calculating the
-    // same sum
-    // across a time range, also we might opt to do some of this in the DB query in the future.
     int sockets = 0;
     int physicalSockets = 0;
     int hypervisorSockets = 0;
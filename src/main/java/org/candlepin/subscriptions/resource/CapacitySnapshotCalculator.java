@@ -0,0 +1,131 @@
+/*
+ * Copyright Red Hat, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ *
+ * Red Hat trademarks are not licensed under GPLv3. No permission is
+ * granted to use or replicate Red Hat trademarks that are incorporated
+ * in this software or its documentation.
+ */
+package org.candlepin.subscriptions.resource;
+
+import java.time.Instant;
+import java.time.OffsetDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import org.candlepin.subscriptions.db.model.SubscriptionCapacity;
+import org.candlepin.subscriptions.utilization.api.model.CapacitySnapshot;
+
+/**
+ * Computes capacity snapshots for a series of report dates in a single pass over the capacities.
+ *
+ * <p>A capacity counts toward a snapshot when its begin date is strictly before and its end date
+ * strictly after the snapshot date. Because the report dates are sorted, the dates a capacity
+ * counts toward form a contiguous range, so each capacity adds its totals at the start of that
+ * range and removes them at the end. A running sum over the dates then yields every snapshot, in
+ * O((capacities) * log(dates) + dates) rather than O(capacities * dates).
+ */
+class CapacitySnapshotCalculator {
+
+  private CapacitySnapshotCalculator() {
+    // static utility
+  }
+
+  /**
+   * Calculate a capacity snapshot for each date.
+   *
+   * @param dates snapshot dates, in ascending order
+   * @param capacities capacities to total
+   * @return one snapshot per date, in the same order as the dates
+   */
+  static List<CapacitySnapshot> calculate(
+      List<OffsetDateTime> dates, Collection<SubscriptionCapacity> capacities) {
+    Instant[] instants = dates.stream().map(OffsetDateTime::toInstant).toArray(Instant[]::new);
+    int size = instants.length + 1;
+    int[] physicalSockets = new int[size];
+    int[] hypervisorSockets = new int[size];
+    int[] physicalCores = new int[size];
+    int[] hypervisorCores = new int[size];
+    int[] unlimited = new int[size];
+
+    for (SubscriptionCapacity capacity : capacities) {
+      int first = firstIndexAfter(instants, capacity.getBeginDate().toInstant(), false);
+      int last = firstIndexAfter(instants, capacity.getEndDate().toInstant(), true);
+      if (first >= last) {
+        continue;
+      }
+      addRange(physicalSockets, first, last, sanitize(capacity.getPhysicalSockets()));
+      addRange(hypervisorSockets, first, last, sanitize(capacity.getVirtualSockets()));
+      addRange(physicalCores, first, last, sanitize(capacity.getPhysicalCores()));
+      addRange(hypervisorCores, first, last, sanitize(capacity.getVirtualCores()));
+      if (Boolean.TRUE.equals(capacity.getHasUnlimitedUsage())) {
+        addRange(unlimited, first, last, 1);
+      }
+    }
+
+    List<CapacitySnapshot> snapshots = new ArrayList<>(instants.length);
+    int physSocketTotal = 0;
+    int virtSocketTotal = 0;
+    int physCoreTotal = 0;
+    int virtCoreTotal = 0;
+    int unlimitedTotal = 0;
+    for (int i = 0; i < instants.length; i++) {
+      physSocketTotal += physicalSockets[i];
+      virtSocketTotal += hypervisorSockets[i];
+      physCoreTotal += physicalCores[i];
+      virtCoreTotal += hypervisorCores[i];
+      unlimitedTotal += unlimited[i];
+      snapshots.add(
+          new CapacitySnapshot()
+              .date(dates.get(i))
+              .sockets(virtSocketTotal + physSocketTotal)
+              .physicalSockets(physSocketTotal)
+              .hypervisorSockets(virtSocketTotal)
+              .cores(physCoreTotal + virtCoreTotal)
+              .physicalCores(physCoreTotal)
+              .hypervisorCores(virtCoreTotal)
+              .hasInfiniteQuantity(unlimitedTotal > 0));
+    }
+    return snapshots;
+  }
+
+  /**
+   * Find the index of the first instant after the given one (or equal to it, if inclusive), or
+   * the array length if there is none.
+   */
+  private static int firstIndexAfter(Instant[] instants, Instant instant, boolean inclusive) {
+    int low = 0;
+    int high = instants.length;
+    while (low < high) {
+      int mid = (low + high) >>> 1;
+      int comparison = instants[mid].compareTo(instant);
+      if (comparison > 0 || (inclusive && comparison == 0)) {
+        high = mid;
+      } else {
+        low = mid + 1;
+      }
+    }
+    return low;
+  }
+
+  private static void addRange(int[] deltas, int first, int last, int value) {
+    deltas[first] += value;
+    deltas[last] -= value;
+  }
+
+  private static int sanitize(Integer value) {
+    return value != null ? value : 0;
+  }
+}
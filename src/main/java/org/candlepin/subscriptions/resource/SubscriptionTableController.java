@@ -27,6 +27,7 @@ import java.util.*;
 import java.util.stream.Collectors;
 import javax.validation.constraints.Min;
 import lombok.extern.slf4j.Slf4j;
+import org.candlepin.subscriptions.ApplicationProperties;
 import org.candlepin.subscriptions.db.OfferingRepository;
 import org.candlepin.subscriptions.db.SubscriptionCapacityViewRepository;
 import org.candlepin.subscriptions.db.SubscriptionRepository;
@@ -39,6 +40,7 @@ import org.candlepin.subscriptions.registry.TagProfile;
 import org.candlepin.subscriptions.util.ApplicationClock;
 import org.candlepin.subscriptions.utilization.api.model.*;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.stereotype.Service;
 
@@ -51,6 +53,7 @@ public class SubscriptionTableController {
   private final OfferingRepository offeringRepository;
   private final ApplicationClock clock;
   private final TagProfile tagProfile;
+  private final ApplicationProperties applicationProperties;
 
   @Autowired
   SubscriptionTableController(
@@ -58,12 +61,14 @@ public class SubscriptionTableController {
       SubscriptionRepository subscriptionRepository,
       OfferingRepository offeringRepository,
       TagProfile tagProfile,
-      ApplicationClock clock) {
+      ApplicationClock clock,
+      ApplicationProperties applicationProperties) {
     this.subscriptionCapacityViewRepository = subscriptionCapacityViewRepository;
     this.subscriptionRepository = subscriptionRepository;
     this.offeringRepository = offeringRepository;
     this.tagProfile = tagProfile;
     this.clock = clock;
+    this.applicationProperties = applicationProperties;
   }
 
   public SkuCapacityReport capacityReportBySku( // NOSONAR
@@ -104,16 +109,118 @@ public class SubscriptionTableController {
         reportStart,
         reportEnd,
         uom);
+    boolean isOnDemand = tagProfile.tagIsPrometheusEnabled(productId.toString());
+    SubscriptionType subscriptionType =
+        isOnDemand ? SubscriptionType.ON_DEMAND : SubscriptionType.ANNUAL;
+    Pageable pageable = ResourceUtils.getPageable(offset, limit);
+
+    List<SkuCapacity> reportItems;
+    int reportItemCount;
+    if (applicationProperties.isSkuCapacityDatabasePagingEnabled()) {
+      Page<String> skuPage =
+          subscriptionCapacityViewRepository.findSkuPage(
+              getOwnerId(),
+              productId.toString(),
+              sanitizedServiceLevel,
+              sanitizedUsage,
+              reportStart,
+              reportEnd,
+              uom,
+              sort,
+              dir,
+              pageable);
+      if (isOnDemand && skuPage.getTotalElements() == 0) {
+        reportItems =
+            new ArrayList<>(
+                getOnDemandSkuCapacities(
+                    productId, sanitizedServiceLevel, sanitizedUsage, reportStart, reportEnd));
+        reportItemCount = reportItems.size();
+        sortCapacities(reportItems, sort, dir);
+        reportItems = paginate(reportItems, pageable);
+      } else {
+        reportItems =
+            getSkuCapacityPage(
+                skuPage,
+                productId,
+                sanitizedServiceLevel,
+                sanitizedUsage,
+                reportStart,
+                reportEnd,
+                uom);
+        reportItemCount = (int) skuPage.getTotalElements();
+      }
+    } else {
+      List<SubscriptionCapacityView> capacities =
+          subscriptionCapacityViewRepository.findAllBy(
+              getOwnerId(),
+              productId.toString(),
+              sanitizedServiceLevel,
+              sanitizedUsage,
+              reportStart,
+              reportEnd,
+              uom);
+
+      reportItems = new ArrayList<>(aggregateBySku(capacities, uom, reportEnd).values());
+
+      if (isOnDemand && reportItems.isEmpty()) {
+        reportItems.addAll(
+            getOnDemandSkuCapacities(
+                productId, sanitizedServiceLevel, sanitizedUsage, reportStart, reportEnd));
+      }
+
+      reportItemCount = reportItems.size();
+      // The pagination and sorting of capacities is done in memory and can cause performance
+      // issues; see sku-capacity-database-paging-enabled for the database-backed alternative.
+      reportItems = paginate(reportItems, pageable);
+      sortCapacities(reportItems, sort, dir);
+    }
+
+    return new SkuCapacityReport()
+        .data(reportItems)
+        .meta(
+            new SkuCapacityReportMeta()
+                .subscriptionType(subscriptionType)
+                .count(reportItemCount)
+                .serviceLevel(serviceLevel)
+                .usage(usage)
+                .uom(uom)
+                .product(productId));
+  }
+
+  /**
+   * Load and aggregate the capacities of the SKUs on a page found by the database, keeping the
+   * order in which the database sorted them.
+   */
+  private List<SkuCapacity> getSkuCapacityPage(
+      Page<String> skuPage,
+      ProductId productId,
+      ServiceLevel serviceLevel,
+      Usage usage,
+      OffsetDateTime reportStart,
+      OffsetDateTime reportEnd,
+      Uom uom) {
+    if (skuPage.isEmpty()) {
+      return new ArrayList<>();
+    }
     List<SubscriptionCapacityView> capacities =
         subscriptionCapacityViewRepository.findAllBy(
             getOwnerId(),
             productId.toString(),
-            sanitizedServiceLevel,
-            sanitizedUsage,
+            serviceLevel,
+            usage,
             reportStart,
             reportEnd,
-            uom);
+            uom,
+            skuPage.getContent());
+    Map<String, SkuCapacity> inventories = aggregateBySku(capacities, uom, reportEnd);
+    return skuPage.getContent().stream()
+        .map(inventories::get)
+        .filter(Objects::nonNull)
+        .collect(Collectors.toList());
+  }
 
+  private Map<String, SkuCapacity> aggregateBySku(
+      List<SubscriptionCapacityView> capacities, Uom uom, OffsetDateTime reportEnd) {
     Map<String, SkuCapacity> inventories = new HashMap<>();
     for (SubscriptionCapacityView subscriptionCapacityView : capacities) {
       String sku = subscriptionCapacityView.getSku();
@@ -124,37 +231,7 @@ public class SubscriptionTableController {
       addSubscriptionInformation(subscriptionCapacityView, inventory);
       addTotalCapacity(subscriptionCapacityView, inventory);
     }
-
-    List<SkuCapacity> reportItems = new ArrayList<>(inventories.values());
-
-    boolean isOnDemand = tagProfile.tagIsPrometheusEnabled(productId.toString());
-    SubscriptionType subscriptionType =
-        isOnDemand ? SubscriptionType.ON_DEMAND : SubscriptionType.ANNUAL;
-
-    if (isOnDemand && reportItems.isEmpty()) {
-      reportItems.addAll(
-          getOnDemandSkuCapacities(
-              productId, sanitizedServiceLevel, sanitizedUsage, reportStart, reportEnd));
-    }
-
-    int reportItemCount = reportItems.size();
-    // The pagination and sorting of capacities is done in memory and can cause performance
-    // issues
-    // As an improvement this should be pushed lower into the Repository layer
-    Pageable pageable = ResourceUtils.getPageable(offset, limit);
-    reportItems = paginate(reportItems, pageable);
-    sortCapacities(reportItems, sort, dir);
-
-    return new SkuCapacityReport()
-        .data(reportItems)
-        .meta(
-            new SkuCapacityReportMeta()
-                .subscriptionType(subscriptionType)
-                .count(reportItemCount)
-                .serviceLevel(serviceLevel)
-                .usage(usage)
-                .uom(uom)
-                .product(productId));
+    return inventories;
   }
 
   private List<SkuCapacity> paginate(List<SkuCapacity> capacities, Pageable pageable) {
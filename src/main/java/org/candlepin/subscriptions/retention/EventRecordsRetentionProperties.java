@@ -32,4 +32,33 @@ import org.springframework.stereotype.Component;
 @ConfigurationProperties(prefix = "rhsm-subscriptions.event-retention-policy")
 public class EventRecordsRetentionProperties {
   private Duration eventRetentionDuration = Duration.ofDays(90L);
+
+  /**
+   * Delete old event records in chunks, each in its own transaction, rather than in a single
+   * delete.
+   */
+  private boolean chunkedPurge = false;
+
+  /**
+   * Drop the monthly partitions of the events table that hold only expired events before deleting
+   * the remaining expired rows. Requires the partitioned events table (PostgreSQL only).
+   */
+  private boolean partitionDropPurge = false;
+
+  /** Number of event records deleted per chunk. */
+  private int purgeChunkSize = 10000;
+
+  /** Pause between chunks, to leave room for concurrent writes to the events table. */
+  private Duration purgeChunkPause = Duration.ofMillis(100);
+
+  /**
+   * Maximum time a single chunked purge may run. The next purge in the same process resumes where
+   * the previous one stopped.
+   *
+   * <p>The resume point is only kept in memory, so a purge in a new process (after a restart, or
+   * in a job run as its own process) starts over at the oldest expired event. That is accepted:
+   * the events already deleted are gone, so starting over only walks the emptied start of the
+   * (timestamp, id) index again.
+   */
+  private Duration purgeMaxRuntime = Duration.ofMinutes(30);
 }
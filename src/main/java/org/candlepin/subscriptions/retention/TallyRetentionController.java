@@ -20,12 +20,19 @@
  */
 package org.candlepin.subscriptions.retention;
 
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
 import java.time.OffsetDateTime;
 import java.time.temporal.ChronoUnit;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.stream.Stream;
 import org.candlepin.subscriptions.db.AccountListSource;
 import org.candlepin.subscriptions.db.EventRecordRepository;
 import org.candlepin.subscriptions.db.TallySnapshotRepository;
+import org.candlepin.subscriptions.db.model.EventRecordKey;
 import org.candlepin.subscriptions.db.model.Granularity;
 import org.candlepin.subscriptions.tally.AccountListSourceException;
 import org.slf4j.Logger;
@@ -44,6 +51,14 @@ public class TallyRetentionController {
   private final TallyRetentionPolicy policy;
   private final EventRecordsRetentionProperties eventRecordsRetentionProperties;
   private final AccountListSource accountListSource;
+  private final Counter purgedEventsCounter;
+  private final Timer purgeChunkTimer;
+
+  /**
+   * Key the next chunked purge resumes after, when the last one ran out of time. Only kept in
+   * memory; see {@link EventRecordsRetentionProperties#getPurgeMaxRuntime()}.
+   */
+  private final AtomicReference<EventRecordKey> purgeResumeKey = new AtomicReference<>();
 
   @Autowired
   public TallyRetentionController(
@@ -51,12 +66,15 @@ public class TallyRetentionController {
       EventRecordRepository eventRecordRepository,
       TallyRetentionPolicy policy,
       EventRecordsRetentionProperties eventRecordsRetentionProperties,
-      AccountListSource accountListSource) {
+      AccountListSource accountListSource,
+      MeterRegistry meterRegistry) {
     this.tallySnapshotRepository = tallySnapshotRepository;
     this.eventRecordRepository = eventRecordRepository;
     this.policy = policy;
     this.eventRecordsRetentionProperties = eventRecordsRetentionProperties;
     this.accountListSource = accountListSource;
+    this.purgedEventsCounter = meterRegistry.counter("rhsm-subscriptions.events.purge.deleted");
+    this.purgeChunkTimer = meterRegistry.timer("rhsm-subscriptions.events.purge.chunk");
   }
 
   @Transactional
@@ -85,6 +103,71 @@ public class TallyRetentionController {
 
     log.info("Purging event records older than Duration {}", cutoffDate);
 
-    eventRecordRepository.deleteEventRecordsByTimestampBefore(cutoffDate);
+    if (eventRecordsRetentionProperties.isPartitionDropPurge()) {
+      int dropped = eventRecordRepository.dropEventPartitionsBefore(cutoffDate);
+      log.info("Dropped {} events partitions", dropped);
+    }
+
+    if (eventRecordsRetentionProperties.isChunkedPurge()) {
+      purgeOldEventRecordsInChunks(cutoffDate);
+    } else {
+      eventRecordRepository.deleteEventRecordsByTimestampBefore(cutoffDate);
+    }
+  }
+
+  /**
+   * Delete the event records before the cutoff date oldest first, one chunk of (timestamp, id) keys
+   * per transaction. Stops once the max runtime is exceeded, and the next purge resumes after the
+   * last deleted key instead of rescanning the rows already deleted.
+   */
+  void purgeOldEventRecordsInChunks(OffsetDateTime cutoffDate) {
+    int chunkSize = Math.max(1, eventRecordsRetentionProperties.getPurgeChunkSize());
+    long pauseMillis = eventRecordsRetentionProperties.getPurgeChunkPause().toMillis();
+    long deadline =
+        System.nanoTime() + eventRecordsRetentionProperties.getPurgeMaxRuntime().toNanos();
+
+    // null starts at the oldest event
+    EventRecordKey after = purgeResumeKey.getAndSet(null);
+    long deleted = 0;
+    while (true) {
+      if (System.nanoTime() >= deadline) {
+        log.info("Event purge reached its max runtime; the next purge resumes after {}", after);
+        purgeResumeKey.set(after);
+        break;
+      }
+      long start = System.nanoTime();
+      Optional<EventRecordKey> chunkEnd =
+          eventRecordRepository.findEventPurgeChunkEnd(after, cutoffDate, chunkSize);
+      int chunkDeleted =
+          eventRecordRepository.deleteEventRecordsInKeyRange(
+              after, chunkEnd.orElse(null), cutoffDate);
+      purgeChunkTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+      purgedEventsCounter.increment(chunkDeleted);
+      deleted += chunkDeleted;
+      log.debug("Purged {} event records after {}", chunkDeleted, after);
+
+      // Without a chunk end, fewer than a chunk of events remained and they are all gone.
+      if (chunkEnd.isEmpty()) {
+        break;
+      }
+      // Everything up to and including the chunk end is gone, so it bounds the next chunk.
+      after = chunkEnd.get();
+      if (pauseMillis > 0 && !pause(pauseMillis)) {
+        purgeResumeKey.set(after);
+        break;
+      }
+    }
+    log.info("Purged {} event records older than {}", deleted, cutoffDate);
+  }
+
+  private boolean pause(long millis) {
+    try {
+      Thread.sleep(millis);
+      return true;
+    } catch (InterruptedException e) {
+      log.warn("Event purge interrupted; the next purge resumes where this one stopped");
+      Thread.currentThread().interrupt();
+      return false;
+    }
   }
 }
@@ -38,7 +38,8 @@ public class RhMarketplaceApiFactory implements FactoryBean<RhMarketplaceApi> {
   @Override
   public RhMarketplaceApi getObject() throws Exception {
     if (properties.isUseStub()) {
-      throw new UnsupportedOperationException("Marketplace stub not implemented");
+      log.info("Using stub RH marketplace client");
+      return new StubRhMarketplaceApi();
     }
 
     ApiClient client = Configuration.getDefaultApiClient();
@@ -0,0 +1,224 @@
+/*
+ * Copyright Red Hat, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ *
+ * Red Hat trademarks are not licensed under GPLv3. No permission is
+ * granted to use or replicate Red Hat trademarks that are incorporated
+ * in this software or its documentation.
+ */
+package org.candlepin.subscriptions.rhmarketplace;
+
+import static org.candlepin.subscriptions.rhmarketplace.RhMarketplaceProducer.ACCEPTED_STATUS;
+import static org.candlepin.subscriptions.rhmarketplace.RhMarketplaceProducer.IN_PROGRESS_STATUS;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import java.time.Duration;
+import java.time.OffsetDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.ws.rs.core.Response;
+import org.candlepin.subscriptions.db.RhMarketplacePendingBatchRepository;
+import org.candlepin.subscriptions.db.model.RhMarketplacePendingBatch;
+import org.candlepin.subscriptions.exception.ErrorCode;
+import org.candlepin.subscriptions.exception.SubscriptionsException;
+import org.candlepin.subscriptions.rhmarketplace.api.model.StatusResponse;
+import org.candlepin.subscriptions.util.ApplicationClock;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.scheduling.TaskScheduler;
+import org.springframework.stereotype.Component;
+
+/**
+ * Background verifier for usage batches submitted to RH Marketplace.
+ *
+ * <p>When asynchronous batch verification is enabled, {@link RhMarketplaceProducer} records each
+ * submitted batch ID as pending instead of polling its status on the Kafka listener thread. This
+ * verifier periodically claims a page of pending batches that are due, checks their status with a
+ * bounded number of concurrent requests, and then either resolves them or schedules a recheck. The
+ * threads for this are only started when asynchronous batch verification is enabled.
+ */
+@Component
+public class RhMarketplaceBatchVerifier {
+
+  private static final Logger log = LoggerFactory.getLogger(RhMarketplaceBatchVerifier.class);
+
+  private final RhMarketplaceService rhMarketplaceService;
+  private final RhMarketplacePendingBatchRepository pendingBatchRepository;
+  private final RhMarketplaceProperties properties;
+  private final ApplicationClock clock;
+  private final TaskScheduler scheduler;
+  private final Counter acceptedCounter;
+  private final Counter unverifiedCounter;
+  private final Counter rejectedCounter;
+  private final Counter errorCounter;
+  private final Timer verificationLatency;
+  private final AtomicLong pendingCount;
+  private ExecutorService verificationExecutor;
+  private ScheduledFuture<?> scheduledVerification;
+
+  public RhMarketplaceBatchVerifier(
+      RhMarketplaceService rhMarketplaceService,
+      RhMarketplacePendingBatchRepository pendingBatchRepository,
+      RhMarketplaceProperties properties,
+      ApplicationClock clock,
+      @Qualifier("rhMarketplaceBatchVerificationScheduler") TaskScheduler scheduler,
+      MeterRegistry meterRegistry) {
+    this.rhMarketplaceService = rhMarketplaceService;
+    this.pendingBatchRepository = pendingBatchRepository;
+    this.properties = properties;
+    this.clock = clock;
+    this.scheduler = scheduler;
+    this.acceptedCounter =
+        meterRegistry.counter("rhsm-subscriptions.rh-marketplace.batch.accepted");
+    this.unverifiedCounter =
+        meterRegistry.counter("rhsm-subscriptions.rh-marketplace.batch.unverified");
+    this.rejectedCounter =
+        meterRegistry.counter("rhsm-subscriptions.rh-marketplace.batch.rejected");
+    this.errorCounter =
+        meterRegistry.counter("rhsm-subscriptions.rh-marketplace.batch.verification.errors");
+    this.verificationLatency =
+        meterRegistry.timer("rhsm-subscriptions.rh-marketplace.batch.verification.latency");
+    this.pendingCount =
+        meterRegistry.gauge("rhsm-subscriptions.rh-marketplace.batch.pending", new AtomicLong());
+  }
+
+  @PostConstruct
+  void start() {
+    if (!properties.isVerifyBatches() || !properties.isAsyncBatchVerification()) {
+      return;
+    }
+    Duration interval = properties.getBatchVerificationInterval();
+    verificationExecutor =
+        Executors.newFixedThreadPool(Math.max(1, properties.getBatchVerificationConcurrency()));
+    scheduledVerification =
+        scheduler.scheduleWithFixedDelay(this::verifyPendingBatchesSafely, interval);
+    log.info("Verifying RH Marketplace batches in the background every {}", interval);
+  }
+
+  @PreDestroy
+  void shutdown() {
+    if (scheduledVerification != null) {
+      scheduledVerification.cancel(true);
+    }
+    if (verificationExecutor != null) {
+      verificationExecutor.shutdownNow();
+    }
+  }
+
+  private void verifyPendingBatchesSafely() {
+    try {
+      verifyPendingBatches();
+    } catch (Exception e) {
+      log.error("Error verifying pending RH Marketplace batches", e);
+    }
+  }
+
+  /**
+   * Check the status of one page of pending batches that are due for verification. Does nothing
+   * unless asynchronous batch verification is enabled.
+   *
+   * @return the number of batches checked
+   */
+  public int verifyPendingBatches() {
+    if (verificationExecutor == null) {
+      return 0;
+    }
+    OffsetDateTime now = clock.now();
+    List<RhMarketplacePendingBatch> claimed =
+        pendingBatchRepository.claimBatchesDueForVerification(
+            now,
+            properties.getBatchVerificationInterval(),
+            properties.getBatchVerificationPageSize());
+
+    List<Future<StatusResponse>> statuses = new ArrayList<>(claimed.size());
+    for (RhMarketplacePendingBatch batch : claimed) {
+      statuses.add(verificationExecutor.submit(() -> fetchStatus(batch.getBatchId())));
+    }
+    for (int i = 0; i < claimed.size(); i++) {
+      handleStatus(claimed.get(i), awaitStatus(claimed.get(i), statuses.get(i)), now);
+    }
+
+    pendingCount.set(pendingBatchRepository.count());
+    log.debug("Checked {} pending RH Marketplace batches", claimed.size());
+    return claimed.size();
+  }
+
+  private StatusResponse fetchStatus(String batchId) throws ApiException {
+    StatusResponse response = rhMarketplaceService.getUsageBatchStatus(batchId);
+    log.debug("RH Marketplace response: {}", response);
+    return response;
+  }
+
+  /** Wait for a status request, returning null if it failed. */
+  private StatusResponse awaitStatus(
+      RhMarketplacePendingBatch batch, Future<StatusResponse> status) {
+    try {
+      return status.get();
+    } catch (ExecutionException e) {
+      log.warn("Error checking status of RH Marketplace batch {}", batch.getBatchId(), e);
+      errorCounter.increment();
+      return null;
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new SubscriptionsException(
+          ErrorCode.UNHANDLED_EXCEPTION_ERROR,
+          Response.Status.INTERNAL_SERVER_ERROR,
+          "Interrupted while verifying RH Marketplace batches.",
+          e);
+    }
+  }
+
+  private void handleStatus(
+      RhMarketplacePendingBatch batch, StatusResponse response, OffsetDateTime now) {
+    Duration age = Duration.between(batch.getSubmittedAt(), now);
+    String status = response == null ? null : response.getStatus();
+    if (ACCEPTED_STATUS.equals(status)) {
+      acceptedCounter.increment();
+      verificationLatency.record(age);
+      pendingBatchRepository.delete(batch);
+    } else if (status != null && !IN_PROGRESS_STATUS.equals(status)) {
+      log.error(
+          "RH Marketplace rejected batch {} with status {} and message {}",
+          batch.getBatchId(),
+          status,
+          response.getMessage());
+      rejectedCounter.increment();
+      verificationLatency.record(age);
+      pendingBatchRepository.delete(batch);
+    } else if (age.compareTo(properties.getBatchVerificationTimeout()) >= 0) {
+      log.error(
+          "Giving up on verifying RH Marketplace batch {} after {} attempts",
+          batch.getBatchId(),
+          batch.getAttempts() + 1);
+      unverifiedCounter.increment();
+      pendingBatchRepository.delete(batch);
+    } else {
+      batch.setAttempts(batch.getAttempts() + 1);
+      batch.setNextCheckAt(now.plus(properties.getBatchVerificationInterval()));
+      pendingBatchRepository.save(batch);
+    }
+  }
+}
@@ -23,6 +23,7 @@ package org.candlepin.subscriptions.rhmarketplace;
 import io.micrometer.core.annotation.Timed;
 import io.micrometer.core.instrument.Counter;
 import io.micrometer.core.instrument.MeterRegistry;
+import java.time.OffsetDateTime;
 import java.util.Collections;
 import java.util.List;
 import java.util.Objects;
@@ -30,12 +31,15 @@ import java.util.Optional;
 import java.util.Set;
 import java.util.stream.Collectors;
 import javax.ws.rs.core.Response;
+import org.candlepin.subscriptions.db.RhMarketplacePendingBatchRepository;
+import org.candlepin.subscriptions.db.model.RhMarketplacePendingBatch;
 import org.candlepin.subscriptions.exception.ErrorCode;
 import org.candlepin.subscriptions.exception.SubscriptionsException;
 import org.candlepin.subscriptions.rhmarketplace.api.model.BatchStatus;
 import org.candlepin.subscriptions.rhmarketplace.api.model.StatusResponse;
 import org.candlepin.subscriptions.rhmarketplace.api.model.UsageEvent;
 import org.candlepin.subscriptions.rhmarketplace.api.model.UsageRequest;
+import org.candlepin.subscriptions.util.ApplicationClock;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -63,14 +67,20 @@ public class RhMarketplaceProducer {
   private final Counter unverifiedCounter;
   private final Counter rejectedCounter;
   private final RhMarketplaceProperties properties;
+  private final RhMarketplacePendingBatchRepository pendingBatchRepository;
+  private final ApplicationClock clock;
 
   @Autowired
   RhMarketplaceProducer(
       RhMarketplaceService rhMarketplaceService,
       @Qualifier("rhMarketplaceRetryTemplate") RetryTemplate retryTemplate,
       MeterRegistry meterRegistry,
-      RhMarketplaceProperties properties) {
+      RhMarketplaceProperties properties,
+      RhMarketplacePendingBatchRepository pendingBatchRepository,
+      ApplicationClock clock) {
     this.rhMarketplaceService = rhMarketplaceService;
+    this.pendingBatchRepository = pendingBatchRepository;
+    this.clock = clock;
     this.retryTemplate = retryTemplate;
     this.acceptedCounter =
         meterRegistry.counter("rhsm-subscriptions.rh-marketplace.batch.accepted");
@@ -100,7 +110,9 @@ public class RhMarketplaceProducer {
           Optional.ofNullable(status.getData()).orElse(Collections.emptyList()).stream()
               .map(BatchStatus::getBatchId)
               .collect(Collectors.toSet());
-      if (properties.isVerifyBatches()) {
+      if (properties.isVerifyBatches() && properties.isAsyncBatchVerification()) {
+        recordPendingBatchIds(batchIds);
+      } else if (properties.isVerifyBatches()) {
         verifyBatchIds(batchIds);
       }
     } catch (Exception e) {
@@ -113,6 +125,21 @@ public class RhMarketplaceProducer {
     }
   }
 
+  /**
+   * Record batch IDs for the background verifier, so that the listener thread does not wait for
+   * Marketplace to finish processing them.
+   *
+   * @see RhMarketplaceBatchVerifier
+   */
+  private void recordPendingBatchIds(Set<String> batchIds) {
+    OffsetDateTime now = clock.now();
+    OffsetDateTime firstCheck = now.plus(properties.getBatchVerificationInterval());
+    pendingBatchRepository.saveAll(
+        batchIds.stream()
+            .map(batchId -> new RhMarketplacePendingBatch(batchId, now, firstCheck, 0))
+            .collect(Collectors.toList()));
+  }
+
   private void verifyBatchIds(Set<String> batchIds) {
     batchIds.forEach(
         batchId -> {
@@ -56,6 +56,24 @@ public class RhMarketplaceProperties extends HttpClientProperties {
   /** Verify that batches were accepted by Marketplace. */
   private boolean verifyBatches = true;
 
+  /**
+   * Verify batches asynchronously. Submitted batch IDs are recorded as pending and checked by a
+   * background verifier, instead of being polled while the Kafka listener thread waits.
+   */
+  private boolean asyncBatchVerification = false;
+
+  /** How often the background verifier checks pending batches, and how long it waits to recheck. */
+  private Duration batchVerificationInterval = Duration.ofSeconds(30);
+
+  /** Maximum number of pending batches claimed by the background verifier per run. */
+  private int batchVerificationPageSize = 100;
+
+  /** Maximum number of batch status requests the background verifier has in flight at once. */
+  private int batchVerificationConcurrency = 4;
+
+  /** Age after which a batch that is still in progress is given up on as unverified. */
+  private Duration batchVerificationTimeout = Duration.ofMinutes(15);
+
   /** Allows manually submitting marketplace tally summary. */
   private boolean isManualMarketplaceSubmissionEnabled;
 
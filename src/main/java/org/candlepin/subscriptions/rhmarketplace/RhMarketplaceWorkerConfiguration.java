@@ -37,6 +37,7 @@ import org.springframework.kafka.core.DefaultKafkaConsumerFactory;
 import org.springframework.kafka.support.serializer.JsonDeserializer;
 import org.springframework.retry.support.RetryTemplate;
 import org.springframework.retry.support.RetryTemplateBuilder;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskScheduler;
 
 /** Configuration for the Marketplace integration worker. */
 @Profile("rh-marketplace")
@@ -93,6 +94,21 @@ public class RhMarketplaceWorkerConfiguration {
     return factory;
   }
 
+  /**
+   * Create the scheduler checking pending batches. Its thread is only started once asynchronous
+   * batch verification schedules the check.
+   *
+   * @return ThreadPoolTaskScheduler
+   */
+  @Bean
+  public ThreadPoolTaskScheduler rhMarketplaceBatchVerificationScheduler() {
+    ThreadPoolTaskScheduler scheduler = new ThreadPoolTaskScheduler();
+    scheduler.setThreadNamePrefix("RhMarketplaceBatchVerifier");
+    scheduler.setPoolSize(1);
+    scheduler.initialize();
+    return scheduler;
+  }
+
   /**
    * Build the BeanFactory implementation ourselves since the docs say "Implementations are not
    * supposed to rely on annotation-driven injection or other reflective facilities."
@@ -62,16 +62,19 @@ public class CombiningRollupSnapshotStrategy {
   private static final Granularity[] GRANULARITIES = {Granularity.HOURLY, Granularity.DAILY};
 
   private final TallySnapshotRepository tallyRepo;
+  private final TallySnapshotWriter snapshotWriter;
   private final SnapshotSummaryProducer summaryProducer;
   private final ApplicationClock clock;
 
   @Autowired
   public CombiningRollupSnapshotStrategy(
       TallySnapshotRepository tallyRepo,
+      TallySnapshotWriter snapshotWriter,
       SnapshotSummaryProducer summaryProducer,
       ApplicationClock clock) {
 
     this.tallyRepo = tallyRepo;
+    this.snapshotWriter = snapshotWriter;
     this.summaryProducer = summaryProducer;
     this.clock = clock;
   }
@@ -308,13 +311,13 @@ public class CombiningRollupSnapshotStrategy {
                 granularity);
 
             snapshot.setSnapshotDate(offset);
-            toSave.add(tallyRepo.save(snapshot));
+            toSave.add(snapshot);
           }
         });
 
     // Add remaining snaps from the affected as they will have been reset.
-    affectedSnaps.values().forEach(snapshot -> toSave.add(tallyRepo.save(snapshot)));
-    return toSave;
+    toSave.addAll(affectedSnaps.values());
+    return snapshotWriter.saveAll(toSave);
   }
 
   private List<TallySnapshot> produceRollups(
@@ -403,7 +406,7 @@ public class CombiningRollupSnapshotStrategy {
       Granularity granularity,
       Map<UsageCalculation.Key, Map<TallyMeasurementKey, Double>> reducedMeasurements,
       TallySnapshot firstFinestGranularitySnapshot) {
-    List<TallySnapshot> saved = new ArrayList<>();
+    List<TallySnapshot> toSave = new ArrayList<>();
 
     reducedMeasurements.forEach(
         (usageKey, measurements) -> {
@@ -436,9 +439,9 @@ public class CombiningRollupSnapshotStrategy {
                   snapshot.setMeasurement(
                       measurementKey.getMeasurementType(), measurementKey.getUom(), value));
 
-          saved.add(tallyRepo.save(snapshot));
+          toSave.add(snapshot);
         });
 
-    return saved;
+    return snapshotWriter.saveAll(toSave);
   }
 }
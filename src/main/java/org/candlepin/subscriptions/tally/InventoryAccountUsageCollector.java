@@ -22,6 +22,9 @@ package org.candlepin.subscriptions.tally;
 
 import io.micrometer.core.instrument.Counter;
 import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import java.time.OffsetDateTime;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
@@ -30,11 +33,27 @@ import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
 import java.util.function.Function;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import javax.annotation.PreDestroy;
+import javax.ws.rs.core.Response;
 import org.candlepin.subscriptions.ApplicationProperties;
 import org.candlepin.subscriptions.db.AccountServiceInventoryRepository;
+import org.candlepin.subscriptions.db.HostRepository;
 import org.candlepin.subscriptions.db.model.*;
+import org.candlepin.subscriptions.exception.ErrorCode;
+import org.candlepin.subscriptions.exception.SubscriptionsException;
 import org.candlepin.subscriptions.inventory.db.InventoryDatabaseOperations;
 import org.candlepin.subscriptions.inventory.db.model.InventoryHostFacts;
 import org.candlepin.subscriptions.json.Measurement;
@@ -44,9 +63,9 @@ import org.candlepin.subscriptions.tally.facts.FactNormalizer;
 import org.candlepin.subscriptions.tally.facts.NormalizedFacts;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
 import org.springframework.stereotype.Component;
 import org.springframework.transaction.annotation.Transactional;
-import org.springframework.util.StringUtils;
 
 /** Collects the max values from all accounts in the inventory. */
 @Component
@@ -54,29 +73,76 @@ public class InventoryAccountUsageCollector {
 
   private static final Logger log = LoggerFactory.getLogger(InventoryAccountUsageCollector.class);
   public static final String HBI_INSTANCE_TYPE = "HBI_HOST";
+  private static final int SHARD_QUEUE_DEPTH = 1024;
 
   private final FactNormalizer factNormalizer;
   private final InventoryDatabaseOperations inventory;
   private final AccountServiceInventoryRepository accountServiceInventoryRepository;
+  private final HostRepository hostRepository;
   private final int culledOffsetDays;
   private final Counter totalHosts;
+  private final int hostShards;
+  private final ExecutorService shardExecutor;
+  private final Semaphore shardedCollections;
+  private final boolean hostReconciliationEnabled;
+  private final int hostReconciliationBatchSize;
+  private final boolean hypervisorMappingFromHostFacts;
+  private final Counter hostsInserted;
+  private final Counter hostsUpdated;
+  private final Counter hostsSeen;
+  private final Counter hostBucketsReplaced;
+  private final Counter hostsDeleted;
+  private final Timer hostWriteTimer;
 
   public InventoryAccountUsageCollector(
       FactNormalizer factNormalizer,
       InventoryDatabaseOperations inventory,
       AccountServiceInventoryRepository accountServiceInventoryRepository,
+      HostRepository hostRepository,
       ApplicationProperties props,
       MeterRegistry meterRegistry) {
     this.factNormalizer = factNormalizer;
     this.inventory = inventory;
     this.accountServiceInventoryRepository = accountServiceInventoryRepository;
+    this.hostRepository = hostRepository;
     this.culledOffsetDays = props.getCullingOffsetDays();
     this.totalHosts = meterRegistry.counter("rhsm-subscriptions.tally.hbi_hosts");
+    this.hostShards = Math.max(1, props.getHostTallyShards());
+    if (hostShards > 1) {
+      int maxShardedCollections = Math.max(1, props.getHostTallyShardedCollections());
+      CustomizableThreadFactory threadFactory = new CustomizableThreadFactory("host-tally-shard-");
+      threadFactory.setDaemon(true);
+      this.shardExecutor =
+          Executors.newFixedThreadPool(hostShards * maxShardedCollections, threadFactory);
+      this.shardedCollections = new Semaphore(maxShardedCollections, true);
+    } else {
+      this.shardExecutor = null;
+      this.shardedCollections = null;
+    }
+    this.hostReconciliationEnabled = props.isHostReconciliationEnabled();
+    this.hostReconciliationBatchSize = Math.max(1, props.getHostReconciliationBatchSize());
+    this.hypervisorMappingFromHostFacts = props.isHostFactsHypervisorMappingEnabled();
+    String reconciled = "rhsm-subscriptions.tally.hbi_hosts.reconciled";
+    this.hostsInserted = meterRegistry.counter(reconciled, "change", "insert");
+    this.hostsUpdated = meterRegistry.counter(reconciled, "change", "update");
+    this.hostsSeen = meterRegistry.counter(reconciled, "change", "last_seen");
+    this.hostBucketsReplaced = meterRegistry.counter(reconciled, "change", "buckets");
+    this.hostsDeleted = meterRegistry.counter(reconciled, "change", "delete");
+    this.hostWriteTimer = meterRegistry.timer("rhsm-subscriptions.tally.hbi_hosts.reconcile.write");
+  }
+
+  @PreDestroy
+  public void shutdown() {
+    if (shardExecutor != null) {
+      shardExecutor.shutdownNow();
+    }
   }
 
-  @SuppressWarnings("squid:S3776")
   @Transactional
   public Map<String, AccountUsageCalculation> collect(Collection<String> products, String account) {
+    if (hostReconciliationEnabled) {
+      return collectReconciled(products, account);
+    }
 
     AccountServiceInventory accountServiceInventory =
         accountServiceInventoryRepository
@@ -94,112 +160,15 @@ public class InventoryAccountUsageCollector {
                     (h1, h2) -> handleDuplicateHost(duplicateInstanceIds, h1, h2)));
     duplicateInstanceIds.forEach(accountServiceInventory.getServiceInstances()::remove);
 
-    Map<String, String> hypMapping = new HashMap<>();
-    Map<String, Set<UsageCalculation.Key>> hypervisorUsageKeys = new HashMap<>();
-    Map<String, Map<String, NormalizedFacts>> accountHypervisorFacts = new HashMap<>();
-    Map<String, Host> hypervisorHosts = new HashMap<>();
-    Map<String, Integer> hypervisorGuestCounts = new HashMap<>();
-
-    inventory.reportedHypervisors(
-        List.of(account), reported -> hypMapping.put((String) reported[0], (String) reported[1]));
-    log.info("Found {} reported hypervisors.", hypMapping.size());
-
-    Map<String, AccountUsageCalculation> calcsByAccount = new HashMap<>();
-    inventory.processHostFacts(
-        List.of(account),
-        culledOffsetDays,
-        hostFacts -> {
-          calcsByAccount.putIfAbsent(account, new AccountUsageCalculation(account));
-
-          AccountUsageCalculation accountCalc = calcsByAccount.get(account);
-          NormalizedFacts facts = factNormalizer.normalize(hostFacts, hypMapping);
-
-          // Validate and set the owner.
-          // Don't set null owner as it may overwrite an existing value.
-          // Likely won't happen, but there could be stale data in inventory
-          // with no owner set.
-          String owner = facts.getOwner();
-          if (owner != null) {
-            String currentOwner = accountCalc.getOwner();
-            if (currentOwner != null && !currentOwner.equalsIgnoreCase(owner)) {
-              throw new IllegalStateException(
-                  String.format(
-                      "Attempt to set a different owner for an account: %s:%s",
-                      currentOwner, owner));
-            }
-            accountCalc.setOwner(owner);
-          }
-
-          Host existingHost = inventoryHostMap.remove(hostFacts.getInventoryId().toString());
-          Host host = existingHost == null ? hostFromHbiFacts(hostFacts, facts) : existingHost;
-          if (existingHost != null) {
-            host.getBuckets().clear(); // ensure we recalculate to remove any stale buckets
-            populateHostFieldsFromHbi(host, hostFacts, facts);
-          }
-
-          if (facts.isHypervisor()) {
-            Map<String, NormalizedFacts> idToHypervisorMap =
-                accountHypervisorFacts.computeIfAbsent(account, a -> new HashMap<>());
-            idToHypervisorMap.put(hostFacts.getSubscriptionManagerId(), facts);
-            hypervisorHosts.put(hostFacts.getSubscriptionManagerId(), host);
-          } else if (facts.isVirtual() && !StringUtils.isEmpty(facts.getHypervisorUuid())) {
-            Integer guests = hypervisorGuestCounts.getOrDefault(host.getHypervisorUuid(), 0);
-            hypervisorGuestCounts.put(host.getHypervisorUuid(), ++guests);
-          }
-
-          ServiceLevel[] slas = new ServiceLevel[] {facts.getSla(), ServiceLevel._ANY};
-          Usage[] usages = new Usage[] {facts.getUsage(), Usage._ANY};
-
-          // Calculate for each UsageKey
-          // review current implementation of default values, and determine if factnormalizer needs
-          // to handle billingAcctId & BillingProvider
-          products.forEach(
-              product -> {
-                for (ServiceLevel sla : slas) {
-                  for (Usage usage : usages) {
-                    UsageCalculation.Key key =
-                        new UsageCalculation.Key(product, sla, usage, BillingProvider._ANY, null);
-                    UsageCalculation calc = accountCalc.getOrCreateCalculation(key);
-                    if (facts.getProducts().contains(product)) {
-                      try {
-                        String hypervisorUuid = facts.getHypervisorUuid();
-                        if (hypervisorUuid != null) {
-                          Set<UsageCalculation.Key> keys =
-                              hypervisorUsageKeys.computeIfAbsent(
-                                  hypervisorUuid, uuid -> new HashSet<>());
-                          keys.add(key);
-                        }
-                        Optional<HostTallyBucket> appliedBucket =
-                            ProductUsageCollectorFactory.get(product).collect(calc, facts);
-                        appliedBucket.ifPresent(host::addBucket);
-                      } catch (Exception e) {
-                        log.error(
-                            "Unable to collect usage data for host: {} product: {}",
-                            hostFacts.getSubscriptionManagerId(),
-                            product,
-                            e);
-                      }
-                    }
-                  }
-                }
-              });
+    InventoryUsageShard result = collectHosts(products, account, inventoryHostMap::remove);
 
-          // Save the host now that the buckets have been determined. Hypervisor hosts will
-          // be persisted once all potential guests have been processed.
-          if (!facts.isHypervisor()) {
-            accountServiceInventory.getServiceInstances().put(host.getInstanceId(), host);
-          }
+    // apply data from guests to hypervisor records
+    collectHypervisorGuestData(account, result);
 
-          totalHosts.increment();
-        });
+    // Keep the stored fingerprints current, in case host reconciliation is enabled later.
+    collectedHosts(result).forEach(InventoryAccountUsageCollector::applyFingerprint);
 
-    // apply data from guests to hypervisor records
-    collectHypervisorGuestData(
-        hypervisorUsageKeys,
-        accountHypervisorFacts,
-        hypervisorHosts,
-        hypervisorGuestCounts,
-        calcsByAccount);
+    accountServiceInventory.getServiceInstances().putAll(result.getHosts());
 
     log.info(
         "Removing {} stale host records (HBI records no longer present).", inventoryHostMap.size());
@@ -207,6 +176,7 @@ public class InventoryAccountUsageCollector {
         .map(Host::getInstanceId)
         .forEach(accountServiceInventory.getServiceInstances()::remove);
 
+    Map<String, Host> hypervisorHosts = result.getHypervisorHosts();
     if (hypervisorHosts.size() > 0) {
       log.info("Persisting {} hypervisor hosts.", hypervisorHosts.size());
       hypervisorHosts
@@ -216,13 +186,393 @@ public class InventoryAccountUsageCollector {
                   accountServiceInventory.getServiceInstances().put(host.getInstanceId(), host));
     }
 
+    accountServiceInventoryRepository.save(accountServiceInventory);
+
+    return calcsByAccount(account, result);
+  }
+
+  /**
+   * Collect usage, reconciling the account's stored hosts with HBI by fingerprint.
+   *
+   * <p>Instead of the account's whole service inventory, only a {@link HostFingerprint} of each
+   * stored host is loaded. Each HBI host is applied to a bare host record carrying the stored id,
+   * instance ID and hashes. Once all hosts are collected, only new hosts, hosts whose facts or
+   * buckets now hash differently, and stale hosts are written, in batches. Hosts that only have a
+   * new last seen date just get that date written.
+   */
+  private Map<String, AccountUsageCalculation> collectReconciled(
+      Collection<String> products, String account) {
+    AccountServiceInventoryId inventoryId =
+        new AccountServiceInventoryId(account, HBI_INSTANCE_TYPE);
+    if (!accountServiceInventoryRepository.existsById(inventoryId)) {
+      // Hosts reference the account service, so it has to exist before they're inserted.
+      accountServiceInventoryRepository.saveAndFlush(
+          new AccountServiceInventory(account, HBI_INSTANCE_TYPE));
+    }
+
+    List<UUID> staleHostIds = new ArrayList<>();
+    Map<String, HostFingerprint> fingerprints = new HashMap<>();
+    for (HostFingerprint fingerprint :
+        hostRepository.findFingerprints(account, HBI_INSTANCE_TYPE)) {
+      if (fingerprints.putIfAbsent(fingerprint.getInventoryId(), fingerprint) != null) {
+        log.warn(
+            "Removing duplicate host record w/ inventory ID: {}", fingerprint.getInventoryId());
+        staleHostIds.add(fingerprint.getId());
+      }
+    }
+
+    Map<UUID, OffsetDateTime> storedLastSeen = new HashMap<>();
+    Function<String, Host> existingHosts =
+        id -> {
+          HostFingerprint fingerprint = fingerprints.remove(id);
+          if (fingerprint == null) {
+            return null;
+          }
+          storedLastSeen.put(fingerprint.getId(), fingerprint.getLastSeen());
+          return hostOf(fingerprint);
+        };
+    InventoryUsageShard result = collectHosts(products, account, existingHosts);
+
+    // apply data from guests to hypervisor records
+    collectHypervisorGuestData(account, result);
+
+    log.info(
+        "Removing {} stale host records (HBI records no longer present).", fingerprints.size());
+    fingerprints.values().forEach(fingerprint -> staleHostIds.add(fingerprint.getId()));
+
+    List<Host> newHosts = new ArrayList<>();
+    List<Host> changedFacts = new ArrayList<>();
+    List<Host> changedBuckets = new ArrayList<>();
+    List<Host> changedLastSeen = new ArrayList<>();
+    collectedHosts(result)
+        .forEach(
+            host -> {
+              String storedFactHash = host.getFactHash();
+              String storedBucketHash = host.getBucketHash();
+              applyFingerprint(host);
+              if (host.getId() == null) {
+                newHosts.add(host);
+              } else {
+                if (!host.getFactHash().equals(storedFactHash)) {
+                  changedFacts.add(host);
+                } else if (!isSameInstant(host.getLastSeen(), storedLastSeen.get(host.getId()))) {
+                  changedLastSeen.add(host);
+                }
+                if (!host.getBucketHash().equals(storedBucketHash)) {
+                  changedBuckets.add(host);
+                }
+              }
+            });
+    log.info(
+        "Reconciling hosts: {} new, {} with changed facts, {} only seen again, "
+            + "{} with changed buckets, {} removed.",
+        newHosts.size(),
+        changedFacts.size(),
+        changedLastSeen.size(),
+        changedBuckets.size(),
+        staleHostIds.size());
+
+    hostWriteTimer.record(
+        () -> {
+          writeInBatches(staleHostIds, hostRepository::deleteHosts);
+          writeInBatches(newHosts, hostRepository::insertHosts);
+          writeInBatches(changedFacts, hostRepository::updateHostFacts);
+          writeInBatches(changedLastSeen, hostRepository::updateLastSeen);
+          writeInBatches(changedBuckets, hostRepository::replaceHostBuckets);
+        });
+    hostsDeleted.increment(staleHostIds.size());
+    hostsInserted.increment(newHosts.size());
+    hostsUpdated.increment(changedFacts.size());
+    hostsSeen.increment(changedLastSeen.size());
+    hostBucketsReplaced.increment(changedBuckets.size());
+
+    return calcsByAccount(account, result);
+  }
+
+  /** Create a bare host record for a stored host, to apply its HBI facts to. */
+  private static Host hostOf(HostFingerprint fingerprint) {
+    Host host = new Host();
+    host.setId(fingerprint.getId());
+    host.setInstanceId(fingerprint.getInstanceId());
+    host.setInstanceType(HBI_INSTANCE_TYPE);
+    host.setFactHash(fingerprint.getFactHash());
+    host.setBucketHash(fingerprint.getBucketHash());
+    return host;
+  }
+
+  /** Compare instants, so that an offset change on the way through the database isn't a change. */
+  private static boolean isSameInstant(OffsetDateTime date, OffsetDateTime other) {
+    return date == null ? other == null : other != null && date.isEqual(other);
+  }
+
+  private <T> void writeInBatches(List<T> items, Consumer<Collection<T>> writer) {
+    for (int start = 0; start < items.size(); start += hostReconciliationBatchSize) {
+      writer.accept(
+          items.subList(start, Math.min(items.size(), start + hostReconciliationBatchSize)));
+    }
+  }
+
+  private static void applyFingerprint(Host host) {
+    host.setFactHash(HostFingerprint.factHashOf(host));
+    host.setBucketHash(HostFingerprint.bucketHashOf(host));
+  }
+
+  /** All hosts written by a collection; hypervisors are kept apart until their guests are seen. */
+  private static Stream<Host> collectedHosts(InventoryUsageShard result) {
+    return Stream.concat(
+        result.getHosts().values().stream(), result.getHypervisorHosts().values().stream());
+  }
+
+  private Map<String, String> loadHypervisorMapping(String account) {
+    Map<String, String> hypMapping = new HashMap<>();
+    inventory.reportedHypervisors(
+        List.of(account), reported -> hypMapping.put((String) reported[0], (String) reported[1]));
+    log.info("Found {} reported hypervisors.", hypMapping.size());
+    return hypMapping;
+  }
+
+  private static Map<String, AccountUsageCalculation> calcsByAccount(
+      String account, InventoryUsageShard result) {
+    Map<String, AccountUsageCalculation> calcsByAccount = new HashMap<>();
+    if (result.getAccountCalc() != null) {
+      calcsByAccount.put(account, result.getAccountCalc());
+    }
+
     if (log.isDebugEnabled()) {
       calcsByAccount.values().forEach(calc -> log.debug("Account Usage: {}", calc));
     }
+    return calcsByAccount;
+  }
 
-    accountServiceInventoryRepository.save(accountServiceInventory);
+  /**
+   * Apply the account's HBI hosts to usage calculations.
+   *
+   * <p>Every host is classified against the account's hypervisor mapping, so the mapping has to be
+   * complete before the first host is collected. When it is built from the host facts themselves,
+   * the facts are therefore read in full, and held, before any host is collected.
+   *
+   * @param existingHosts looks up, and takes ownership of, the stored host for an inventory ID;
+   *     returns null for a new host
+   */
+  private InventoryUsageShard collectHosts(
+      Collection<String> products, String account, Function<String, Host> existingHosts) {
+    if (!hypervisorMappingFromHostFacts) {
+      return collectHosts(
+          products,
+          account,
+          loadHypervisorMapping(account),
+          existingHosts,
+          consumer -> inventory.processHostFacts(List.of(account), culledOffsetDays, consumer));
+    }
 
-    return calcsByAccount;
+    ReportedHypervisors reportedHypervisors = new ReportedHypervisors();
+    List<InventoryHostFacts> accountHostFacts = new ArrayList<>();
+    inventory.processHostFacts(
+        List.of(account),
+        culledOffsetDays,
+        hostFacts -> {
+          reportedHypervisors.collect(hostFacts);
+          accountHostFacts.add(hostFacts);
+        });
+    Set<String> registeredElsewhere = new HashSet<>();
+    Set<String> unresolved = reportedHypervisors.getUnresolvedHypervisorUuids();
+    if (!unresolved.isEmpty()) {
+      inventory.subscriptionManagerIds(unresolved, registeredElsewhere::add);
+    }
+    Map<String, String> hypMapping = reportedHypervisors.toMapping(registeredElsewhere);
+    log.info("Found {} reported hypervisors.", hypMapping.size());
+    return collectHosts(products, account, hypMapping, existingHosts, accountHostFacts::forEach);
+  }
+
+  /**
+   * Apply host facts to usage calculations, using an already complete hypervisor mapping.
+   *
+   * @param hostFactsSource feeds each of the account's host facts to the given consumer
+   */
+  private InventoryUsageShard collectHosts(
+      Collection<String> products,
+      String account,
+      Map<String, String> hypMapping,
+      Function<String, Host> existingHosts,
+      Consumer<Consumer<InventoryHostFacts>> hostFactsSource) {
+    return hostShards > 1
+        ? collectSharded(products, account, hypMapping, existingHosts, hostFactsSource)
+        : collectSerial(products, account, hypMapping, existingHosts, hostFactsSource);
+  }
+
+  private InventoryUsageShard collectSerial(
+      Collection<String> products,
+      String account,
+      Map<String, String> hypMapping,
+      Function<String, Host> existingHosts,
+      Consumer<Consumer<InventoryHostFacts>> hostFactsSource) {
+    InventoryUsageShard shard = createShard(products, account, hypMapping);
+    AtomicLong readOrder = new AtomicLong();
+    hostFactsSource.accept(
+        hostFacts ->
+            shard.collect(
+                hostFacts,
+                existingHosts.apply(hostFacts.getInventoryId().toString()),
+                readOrder.getAndIncrement()));
+    return shard;
+  }
+
+  /**
+   * Spread the account's hosts across a fixed number of shards, each fed by its own worker.
+   *
+   * <p>The host facts are still read by the calling thread, which also resolves the existing host
+   * records; hosts are routed to a shard by inventory ID, so a given host is always handled by the
+   * same shard. Once all facts are read, and every worker is done, the shards are merged.
+   *
+   * <p>The workers run on a pool shared by concurrent tallies, with one worker per shard for each
+   * of a bounded number of collections; further collections wait for a running one to finish. The
+   * reader blocks while a shard's queue is full, so every shard must have a running worker for as
+   * long as the reader is feeding it, which the pool could not guarantee if collections took its
+   * threads piecemeal.
+   */
+  private InventoryUsageShard collectSharded(
+      Collection<String> products,
+      String account,
+      Map<String, String> hypMapping,
+      Function<String, Host> existingHosts,
+      Consumer<Consumer<InventoryHostFacts>> hostFactsSource) {
+    try {
+      shardedCollections.acquire();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new SubscriptionsException(
+          ErrorCode.UNHANDLED_EXCEPTION_ERROR,
+          Response.Status.INTERNAL_SERVER_ERROR,
+          "Interrupted while waiting for host usage collection workers.",
+          e);
+    }
+    try {
+      return collectShardedOnWorkers(
+          products, account, hypMapping, existingHosts, hostFactsSource);
+    } finally {
+      shardedCollections.release();
+    }
+  }
+
+  private InventoryUsageShard collectShardedOnWorkers(
+      Collection<String> products,
+      String account,
+      Map<String, String> hypMapping,
+      Function<String, Host> existingHosts,
+      Consumer<Consumer<InventoryHostFacts>> hostFactsSource) {
+    List<InventoryUsageShard> shards = new ArrayList<>(hostShards);
+    List<BlockingQueue<Optional<ShardedHost>>> queues = new ArrayList<>(hostShards);
+    List<Future<?>> workers = new ArrayList<>(hostShards);
+    for (int i = 0; i < hostShards; i++) {
+      InventoryUsageShard shard = createShard(products, account, hypMapping);
+      BlockingQueue<Optional<ShardedHost>> queue = new ArrayBlockingQueue<>(SHARD_QUEUE_DEPTH);
+      shards.add(shard);
+      queues.add(queue);
+      workers.add(shardExecutor.submit(() -> runShard(shard, queue)));
+    }
+
+    AtomicLong readOrder = new AtomicLong();
+    try {
+      hostFactsSource.accept(
+          hostFacts -> {
+            String inventoryId = hostFacts.getInventoryId().toString();
+            Host existingHost = existingHosts.apply(inventoryId);
+            int shardIndex = Math.floorMod(inventoryId.hashCode(), hostShards);
+            putOnShard(
+                queues.get(shardIndex),
+                Optional.of(
+                    new ShardedHost(hostFacts, existingHost, readOrder.getAndIncrement())));
+          });
+    } finally {
+      queues.forEach(queue -> putOnShard(queue, Optional.empty()));
+      // Don't hand the workers' threads on to another collection while they still run.
+      workers.forEach(InventoryAccountUsageCollector::awaitShardCompletion);
+    }
+
+    InventoryUsageShard merged = createShard(products, account, hypMapping);
+    for (int i = 0; i < hostShards; i++) {
+      awaitShard(workers.get(i));
+      merged.merge(shards.get(i));
+    }
+    return merged;
+  }
+
+  private InventoryUsageShard createShard(
+      Collection<String> products, String account, Map<String, String> hypMapping) {
+    return new InventoryUsageShard(account, products, factNormalizer, hypMapping, totalHosts);
+  }
+
+  private static void runShard(
+      InventoryUsageShard shard, BlockingQueue<Optional<ShardedHost>> queue) {
+    RuntimeException failure = null;
+    try {
+      Optional<ShardedHost> next;
+      while ((next = queue.take()).isPresent()) {
+        // Keep draining after a failure, so the reader thread never blocks on a full queue.
+        if (failure == null) {
+          try {
+            ShardedHost host = next.get();
+            shard.collect(host.getHostFacts(), host.getExistingHost(), host.getReadOrder());
+          } catch (RuntimeException e) {
+            failure = e;
+          }
+        }
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new SubscriptionsException(
+          ErrorCode.UNHANDLED_EXCEPTION_ERROR,
+          Response.Status.INTERNAL_SERVER_ERROR,
+          "Interrupted while collecting host usage.",
+          e);
+    }
+    if (failure != null) {
+      throw failure;
+    }
+  }
+
+  private static void putOnShard(
+      BlockingQueue<Optional<ShardedHost>> queue, Optional<ShardedHost> host) {
+    try {
+      queue.put(host);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new SubscriptionsException(
+          ErrorCode.UNHANDLED_EXCEPTION_ERROR,
+          Response.Status.INTERNAL_SERVER_ERROR,
+          "Interrupted while queuing a host for usage collection.",
+          e);
+    }
+  }
+
+  /** Wait for a worker to finish, ignoring its failure, which {@link #awaitShard} reports. */
+  private static void awaitShardCompletion(Future<?> worker) {
+    try {
+      worker.get();
+    } catch (ExecutionException e) {
+      // reported when the shard is merged
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      worker.cancel(true);
+    }
+  }
+
+  private static void awaitShard(Future<?> worker) {
+    try {
+      worker.get();
+    } catch (ExecutionException e) {
+      if (e.getCause() instanceof RuntimeException) {
+        throw (RuntimeException) e.getCause();
+      }
+      throw new IllegalStateException("Unable to collect host usage.", e.getCause());
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new SubscriptionsException(
+          ErrorCode.UNHANDLED_EXCEPTION_ERROR,
+          Response.Status.INTERNAL_SERVER_ERROR,
+          "Interrupted while waiting for host usage collection.",
+          e);
+    }
   }
 
   private Host handleDuplicateHost(Set<String> duplicateInstanceIds, Host host1, Host host2) {
@@ -231,34 +581,55 @@ public class InventoryAccountUsageCollector {
     return host1;
   }
 
-  private void collectHypervisorGuestData(
-      Map<String, Set<UsageCalculation.Key>> hypervisorUsageKeys,
-      Map<String, Map<String, NormalizedFacts>> accountHypervisorFacts,
-      Map<String, Host> hypervisorHosts,
-      Map<String, Integer> hypervisorGuestCounts,
-      Map<String, AccountUsageCalculation> calcsByAccount) {
-    accountHypervisorFacts.forEach(
-        (account, accountHypervisors) -> {
-          AccountUsageCalculation accountCalc = calcsByAccount.get(account);
-          accountHypervisors.forEach(
-              (hypervisorUuid, hypervisor) -> {
-                Host hypHost = hypervisorHosts.get(hypervisorUuid);
-                hypHost.setNumOfGuests(hypervisorGuestCounts.getOrDefault(hypervisorUuid, 0));
-                Set<UsageCalculation.Key> usageKeys =
-                    hypervisorUsageKeys.getOrDefault(hypervisorUuid, Collections.emptySet());
-
-                usageKeys.forEach(
-                    key -> {
-                      UsageCalculation usageCalc = accountCalc.getOrCreateCalculation(key);
-                      ProductUsageCollector productUsageCollector =
-                          ProductUsageCollectorFactory.get(key.getProductId());
-                      Optional<HostTallyBucket> appliedBucket =
-                          productUsageCollector.collectForHypervisor(
-                              account, usageCalc, hypervisor);
-                      appliedBucket.ifPresent(hypHost::addBucket);
-                    });
-              });
-        });
+  private void collectHypervisorGuestData(String account, InventoryUsageShard result) {
+    AccountUsageCalculation accountCalc = result.getAccountCalc();
+    Map<String, Host> hypervisorHosts = result.getHypervisorHosts();
+    Map<String, Integer> hypervisorGuestCounts = result.getHypervisorGuestCounts();
+    Map<String, Set<UsageCalculation.Key>> hypervisorUsageKeys = result.getHypervisorUsageKeys();
+    result
+        .getHypervisorFacts()
+        .forEach(
+            (hypervisorUuid, hypervisor) -> {
+              Host hypHost = hypervisorHosts.get(hypervisorUuid);
+              hypHost.setNumOfGuests(hypervisorGuestCounts.getOrDefault(hypervisorUuid, 0));
+              Set<UsageCalculation.Key> usageKeys =
+                  hypervisorUsageKeys.getOrDefault(hypervisorUuid, Collections.emptySet());
+
+              usageKeys.forEach(
+                  key -> {
+                    UsageCalculation usageCalc = accountCalc.getOrCreateCalculation(key);
+                    ProductUsageCollector productUsageCollector =
+                        ProductUsageCollectorFactory.get(key.getProductId());
+                    Optional<HostTallyBucket> appliedBucket =
+                        productUsageCollector.collectForHypervisor(account, usageCalc, hypervisor);
+                    appliedBucket.ifPresent(hypHost::addBucket);
+                  });
+            });
+  }
+
+  /** An HBI host routed to a shard, along with its previously tallied record (if any). */
+  private static class ShardedHost {
+    private final InventoryHostFacts hostFacts;
+    private final Host existingHost;
+    private final long readOrder;
+
+    ShardedHost(InventoryHostFacts hostFacts, Host existingHost, long readOrder) {
+      this.hostFacts = hostFacts;
+      this.existingHost = existingHost;
+      this.readOrder = readOrder;
+    }
+
+    InventoryHostFacts getHostFacts() {
+      return hostFacts;
+    }
+
+    Host getExistingHost() {
+      return existingHost;
+    }
+
+    long getReadOrder() {
+      return readOrder;
+    }
   }
 
   public static void populateHostFieldsFromHbi(
@@ -0,0 +1,261 @@
+/*
+ * Copyright Red Hat, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ *
+ * Red Hat trademarks are not licensed under GPLv3. No permission is
+ * granted to use or replicate Red Hat trademarks that are incorporated
+ * in this software or its documentation.
+ */
+package org.candlepin.subscriptions.tally;
+
+import io.micrometer.core.instrument.Counter;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import org.candlepin.subscriptions.db.model.BillingProvider;
+import org.candlepin.subscriptions.db.model.Host;
+import org.candlepin.subscriptions.db.model.HostTallyBucket;
+import org.candlepin.subscriptions.db.model.ServiceLevel;
+import org.candlepin.subscriptions.db.model.Usage;
+import org.candlepin.subscriptions.inventory.db.model.InventoryHostFacts;
+import org.candlepin.subscriptions.tally.collector.ProductUsageCollectorFactory;
+import org.candlepin.subscriptions.tally.facts.FactNormalizer;
+import org.candlepin.subscriptions.tally.facts.NormalizedFacts;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.util.StringUtils;
+
+/**
+ * Accumulates usage for a subset of an account's HBI hosts.
+ *
+ * <p>A shard owns its partial usage calculations, hypervisor bookkeeping and host changes, so that
+ * several shards can be fed from separate threads and then folded together via {@link
+ * #merge(InventoryUsageShard)}. A shard is not thread-safe itself; each one must only be fed by a
+ * single thread at a time.
+ *
+ * <p>Every host is collected with its position in the order the account's hosts were read. When
+ * several hosts share a hypervisor subscription manager ID or an instance ID, the one read last is
+ * kept, whichever shard collected it, so merged shards hold the same hosts as a single shard fed
+ * every host.
+ */
+class InventoryUsageShard {
+
+  private static final Logger log = LoggerFactory.getLogger(InventoryUsageShard.class);
+
+  private final String account;
+  private final Collection<String> products;
+  private final FactNormalizer factNormalizer;
+  private final Map<String, String> hypMapping;
+  private final Counter totalHosts;
+
+  private AccountUsageCalculation accountCalc;
+  private final Map<String, Set<UsageCalculation.Key>> hypervisorUsageKeys = new HashMap<>();
+  private final Map<String, NormalizedFacts> hypervisorFacts = new HashMap<>();
+  private final Map<String, Host> hypervisorHosts = new HashMap<>();
+  private final Map<String, Integer> hypervisorGuestCounts = new HashMap<>();
+  private final Map<String, Host> hosts = new LinkedHashMap<>();
+  private final Map<String, Long> hypervisorReadOrder = new HashMap<>();
+  private final Map<String, Long> hostReadOrder = new HashMap<>();
+
+  InventoryUsageShard(
+      String account,
+      Collection<String> products,
+      FactNormalizer factNormalizer,
+      Map<String, String> hypMapping,
+      Counter totalHosts) {
+    this.account = account;
+    this.products = products;
+    this.factNormalizer = factNormalizer;
+    this.hypMapping = hypMapping;
+    this.totalHosts = totalHosts;
+  }
+
+  /**
+   * Apply a single HBI host to this shard.
+   *
+   * @param hostFacts the host facts reported by HBI
+   * @param existingHost the previously tallied host record for this HBI host, or null if new
+   * @param readOrder position of the host in the order the account's hosts were read
+   */
+  void collect(InventoryHostFacts hostFacts, Host existingHost, long readOrder) {
+    if (accountCalc == null) {
+      accountCalc = new AccountUsageCalculation(account);
+    }
+
+    NormalizedFacts facts = factNormalizer.normalize(hostFacts, hypMapping);
+
+    // Validate and set the owner.
+    // Don't set null owner as it may overwrite an existing value.
+    // Likely won't happen, but there could be stale data in inventory
+    // with no owner set.
+    applyOwner(facts.getOwner());
+
+    Host host =
+        existingHost == null
+            ? InventoryAccountUsageCollector.hostFromHbiFacts(hostFacts, facts)
+            : existingHost;
+    if (existingHost != null) {
+      host.getBuckets().clear(); // ensure we recalculate to remove any stale buckets
+      InventoryAccountUsageCollector.populateHostFieldsFromHbi(host, hostFacts, facts);
+    }
+
+    if (facts.isHypervisor()) {
+      hypervisorFacts.put(hostFacts.getSubscriptionManagerId(), facts);
+      hypervisorHosts.put(hostFacts.getSubscriptionManagerId(), host);
+      hypervisorReadOrder.put(hostFacts.getSubscriptionManagerId(), readOrder);
+    } else if (facts.isVirtual() && !StringUtils.isEmpty(facts.getHypervisorUuid())) {
+      hypervisorGuestCounts.merge(host.getHypervisorUuid(), 1, Integer::sum);
+    }
+
+    ServiceLevel[] slas = new ServiceLevel[] {facts.getSla(), ServiceLevel._ANY};
+    Usage[] usages = new Usage[] {facts.getUsage(), Usage._ANY};
+
+    // Calculate for each UsageKey
+    // review current implementation of default values, and determine if factnormalizer needs
+    // to handle billingAcctId & BillingProvider
+    products.forEach(
+        product -> {
+          for (ServiceLevel sla : slas) {
+            for (Usage usage : usages) {
+              UsageCalculation.Key key =
+                  new UsageCalculation.Key(product, sla, usage, BillingProvider._ANY, null);
+              UsageCalculation calc = accountCalc.getOrCreateCalculation(key);
+              if (facts.getProducts().contains(product)) {
+                try {
+                  String hypervisorUuid = facts.getHypervisorUuid();
+                  if (hypervisorUuid != null) {
+                    hypervisorUsageKeys
+                        .computeIfAbsent(hypervisorUuid, uuid -> new HashSet<>())
+                        .add(key);
+                  }
+                  Optional<HostTallyBucket> appliedBucket =
+                      ProductUsageCollectorFactory.get(product).collect(calc, facts);
+                  appliedBucket.ifPresent(host::addBucket);
+                } catch (Exception e) {
+                  log.error(
+                      "Unable to collect usage data for host: {} product: {}",
+                      hostFacts.getSubscriptionManagerId(),
+                      product,
+                      e);
+                }
+              }
+            }
+          }
+        });
+
+    // Save the host now that the buckets have been determined. Hypervisor hosts will
+    // be persisted once all potential guests have been processed.
+    if (!facts.isHypervisor()) {
+      hosts.put(host.getInstanceId(), host);
+      hostReadOrder.put(host.getInstanceId(), readOrder);
+    }
+
+    totalHosts.increment();
+  }
+
+  /**
+   * Fold the partial results of another shard into this one.
+   *
+   * <p>Calculations are summed, guest counts are added, and hypervisor/host records from the other
+   * shard are added to this one. Where both shards hold a record under the same key, the one read
+   * last is kept, so the merged records don't depend on the order shards are merged in.
+   *
+   * @param other the shard to merge from
+   */
+  void merge(InventoryUsageShard other) {
+    if (other.accountCalc != null) {
+      if (accountCalc == null) {
+        accountCalc = new AccountUsageCalculation(account);
+      }
+      applyOwner(other.accountCalc.getOwner());
+      for (UsageCalculation.Key key : other.accountCalc.getKeys()) {
+        accountCalc.getOrCreateCalculation(key).merge(other.accountCalc.getCalculation(key));
+      }
+    }
+    other.hypervisorUsageKeys.forEach(
+        (uuid, keys) ->
+            hypervisorUsageKeys.computeIfAbsent(uuid, u -> new HashSet<>()).addAll(keys));
+    other.hypervisorReadOrder.forEach(
+        (subscriptionManagerId, readOrder) -> {
+          if (isReadLater(hypervisorReadOrder, subscriptionManagerId, readOrder)) {
+            hypervisorFacts.put(
+                subscriptionManagerId, other.hypervisorFacts.get(subscriptionManagerId));
+            hypervisorHosts.put(
+                subscriptionManagerId, other.hypervisorHosts.get(subscriptionManagerId));
+            hypervisorReadOrder.put(subscriptionManagerId, readOrder);
+          }
+        });
+    other.hypervisorGuestCounts.forEach(
+        (uuid, count) -> hypervisorGuestCounts.merge(uuid, count, Integer::sum));
+    other.hostReadOrder.forEach(
+        (instanceId, readOrder) -> {
+          if (isReadLater(hostReadOrder, instanceId, readOrder)) {
+            hosts.put(instanceId, other.hosts.get(instanceId));
+            hostReadOrder.put(instanceId, readOrder);
+          }
+        });
+  }
+
+  private static boolean isReadLater(Map<String, Long> readOrders, String key, long readOrder) {
+    Long current = readOrders.get(key);
+    return current == null || current < readOrder;
+  }
+
+  private void applyOwner(String owner) {
+    if (owner != null) {
+      String currentOwner = accountCalc.getOwner();
+      if (currentOwner != null && !currentOwner.equalsIgnoreCase(owner)) {
+        throw new IllegalStateException(
+            String.format(
+                "Attempt to set a different owner for an account: %s:%s", currentOwner, owner));
+      }
+      accountCalc.setOwner(owner);
+    }
+  }
+
+  /**
+   * @return the account calculation built by this shard, or null if no hosts were collected
+   */
+  AccountUsageCalculation getAccountCalc() {
+    return accountCalc;
+  }
+
+  Map<String, Set<UsageCalculation.Key>> getHypervisorUsageKeys() {
+    return hypervisorUsageKeys;
+  }
+
+  Map<String, NormalizedFacts> getHypervisorFacts() {
+    return hypervisorFacts;
+  }
+
+  Map<String, Host> getHypervisorHosts() {
+    return hypervisorHosts;
+  }
+
+  Map<String, Integer> getHypervisorGuestCounts() {
+    return hypervisorGuestCounts;
+  }
+
+  /**
+   * @return non-hypervisor hosts collected by this shard, keyed by instance ID
+   */
+  Map<String, Host> getHosts() {
+    return hosts;
+  }
+}
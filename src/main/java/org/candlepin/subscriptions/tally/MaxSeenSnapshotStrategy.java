@@ -59,16 +59,17 @@ public class MaxSeenSnapshotStrategy {
   @Autowired
   public MaxSeenSnapshotStrategy(
       TallySnapshotRepository tallyRepo,
+      TallySnapshotWriter snapshotWriter,
       ApplicationClock clock,
       TagProfile tagProfile,
       SnapshotSummaryProducer summaryProducer) {
     this.summaryProducer = summaryProducer;
-    hourlyRoller = new HourlySnapshotRoller(tallyRepo, clock, tagProfile);
-    dailyRoller = new DailySnapshotRoller(tallyRepo, clock, tagProfile);
-    weeklyRoller = new WeeklySnapshotRoller(tallyRepo, clock, tagProfile);
-    monthlyRoller = new MonthlySnapshotRoller(tallyRepo, clock, tagProfile);
-    yearlyRoller = new YearlySnapshotRoller(tallyRepo, clock, tagProfile);
-    quarterlyRoller = new QuarterlySnapshotRoller(tallyRepo, clock, tagProfile);
+    hourlyRoller = new HourlySnapshotRoller(tallyRepo, snapshotWriter, clock, tagProfile);
+    dailyRoller = new DailySnapshotRoller(tallyRepo, snapshotWriter, clock, tagProfile);
+    weeklyRoller = new WeeklySnapshotRoller(tallyRepo, snapshotWriter, clock, tagProfile);
+    monthlyRoller = new MonthlySnapshotRoller(tallyRepo, snapshotWriter, clock, tagProfile);
+    yearlyRoller = new YearlySnapshotRoller(tallyRepo, snapshotWriter, clock, tagProfile);
+    quarterlyRoller = new QuarterlySnapshotRoller(tallyRepo, snapshotWriter, clock, tagProfile);
   }
 
   @Transactional
@@ -20,16 +20,20 @@
  */
 package org.candlepin.subscriptions.tally;
 
+import java.time.Duration;
 import java.time.OffsetDateTime;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 import java.util.Optional;
 import java.util.Set;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 import lombok.AllArgsConstructor;
 import lombok.Getter;
 import org.candlepin.subscriptions.db.AccountServiceInventoryRepository;
@@ -52,16 +56,31 @@ public class MetricUsageCollector {
   private final EventController eventController;
   private final ApplicationClock clock;
   private final TagProfile tagProfile;
+  private final boolean singleScan;
 
   public MetricUsageCollector(
       TagProfile tagProfile,
       AccountServiceInventoryRepository accountServiceInventoryRepository,
       EventController eventController,
       ApplicationClock clock) {
+    this(tagProfile, accountServiceInventoryRepository, eventController, clock, false);
+  }
+
+  /**
+   * @param singleScan if true, read all events for the collection range with a single ordered query
+   *     and bucket them into hours in memory, rather than querying each hour separately
+   */
+  public MetricUsageCollector(
+      TagProfile tagProfile,
+      AccountServiceInventoryRepository accountServiceInventoryRepository,
+      EventController eventController,
+      ApplicationClock clock,
+      boolean singleScan) {
     this.accountServiceInventoryRepository = accountServiceInventoryRepository;
     this.eventController = eventController;
     this.clock = clock;
     this.tagProfile = tagProfile;
+    this.singleScan = singleScan;
   }
 
   @Transactional
@@ -137,13 +156,14 @@ public class MetricUsageCollector {
     }
 
     Map<OffsetDateTime, AccountUsageCalculation> accountCalcs = new HashMap<>();
-    for (OffsetDateTime offset = effectiveStartDateTime;
-        offset.isBefore(effectiveEndDateTime);
-        offset = offset.plusHours(1)) {
-      AccountUsageCalculation accountUsageCalculation =
-          collectHour(accountServiceInventory, offset);
-      if (accountUsageCalculation != null && !accountUsageCalculation.getKeys().isEmpty()) {
-        accountCalcs.put(offset, accountUsageCalculation);
+    if (singleScan) {
+      collectRange(
+          accountServiceInventory, effectiveStartDateTime, effectiveEndDateTime, accountCalcs);
+    } else {
+      for (OffsetDateTime offset = effectiveStartDateTime;
+          offset.isBefore(effectiveEndDateTime);
+          offset = offset.plusHours(1)) {
+        addHourCalculation(accountCalcs, offset, collectHour(accountServiceInventory, offset));
       }
     }
     accountServiceInventoryRepository.save(accountServiceInventory);
@@ -155,8 +175,6 @@ public class MetricUsageCollector {
   @Transactional
   public AccountUsageCalculation collectHour(
       AccountServiceInventory accountServiceInventory, OffsetDateTime startDateTime) {
-    Optional<TagMetaData> serviceTypeMeta =
-        tagProfile.getTagMetaDataByServiceType(accountServiceInventory.getServiceType());
     OffsetDateTime endDateTime = startDateTime.plusHours(1);
 
     Map<String, List<Event>> eventToHostMapping =
@@ -170,6 +188,74 @@ public class MetricUsageCollector {
             // on first access, if the instance already exists for the accountServiceInventory.
             .collect(Collectors.groupingBy(Event::getInstanceId));
 
+    return tallyHour(accountServiceInventory, eventToHostMapping);
+  }
+
+  /**
+   * Collect every hour in a range from a single ordered scan of the range's events.
+   *
+   * <p>Events are grouped by instance for one hour at a time; when the scan moves past an hour,
+   * that hour is tallied exactly as {@link #collectHour(AccountServiceInventory, OffsetDateTime)}
+   * would, and its events are released. Only a single hour of events is held in memory.
+   */
+  private void collectRange(
+      AccountServiceInventory accountServiceInventory,
+      OffsetDateTime startDateTime,
+      OffsetDateTime endDateTime,
+      Map<OffsetDateTime, AccountUsageCalculation> accountCalcs) {
+    OffsetDateTime currentHour = null;
+    Map<String, List<Event>> eventToHostMapping = new HashMap<>();
+    try (Stream<Event> events =
+        eventController.streamEventsInTimeRangeByServiceType(
+            accountServiceInventory.getAccountNumber(),
+            accountServiceInventory.getServiceType(),
+            startDateTime,
+            endDateTime)) {
+      Iterator<Event> iterator = events.iterator();
+      while (iterator.hasNext()) {
+        Event event = iterator.next();
+        OffsetDateTime hour =
+            startDateTime.plusHours(
+                Duration.between(startDateTime, event.getTimestamp()).toHours());
+        if (currentHour == null) {
+          currentHour = hour;
+        } else if (hour.isBefore(currentHour)) {
+          throw new IllegalStateException(
+              String.format(
+                  "Events must be ordered by timestamp; got %s after %s",
+                  event.getTimestamp(), currentHour));
+        } else if (!hour.equals(currentHour)) {
+          addHourCalculation(
+              accountCalcs, currentHour, tallyHour(accountServiceInventory, eventToHostMapping));
+          currentHour = hour;
+          eventToHostMapping = new HashMap<>();
+        }
+        eventToHostMapping
+            .computeIfAbsent(event.getInstanceId(), id -> new ArrayList<>())
+            .add(event);
+      }
+    }
+    if (currentHour != null) {
+      addHourCalculation(
+          accountCalcs, currentHour, tallyHour(accountServiceInventory, eventToHostMapping));
+    }
+  }
+
+  private void addHourCalculation(
+      Map<OffsetDateTime, AccountUsageCalculation> accountCalcs,
+      OffsetDateTime hour,
+      AccountUsageCalculation accountUsageCalculation) {
+    if (accountUsageCalculation != null && !accountUsageCalculation.getKeys().isEmpty()) {
+      accountCalcs.put(hour, accountUsageCalculation);
+    }
+  }
+
+  private AccountUsageCalculation tallyHour(
+      AccountServiceInventory accountServiceInventory,
+      Map<String, List<Event>> eventToHostMapping) {
+    Optional<TagMetaData> serviceTypeMeta =
+        tagProfile.getTagMetaDataByServiceType(accountServiceInventory.getServiceType());
+
     Map<String, Host> thisHoursInstances = new HashMap<>();
     eventToHostMapping.forEach(
         (instanceId, events) -> {
@@ -0,0 +1,81 @@
+/*
+ * Copyright Red Hat, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ *
+ * Red Hat trademarks are not licensed under GPLv3. No permission is
+ * granted to use or replicate Red Hat trademarks that are incorporated
+ * in this software or its documentation.
+ */
+package org.candlepin.subscriptions.tally;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+import org.candlepin.subscriptions.inventory.db.model.InventoryHostFacts;
+
+/**
+ * Builds the mapping of hypervisor UUIDs reported by guests to the hypervisor's
+ * subscription-manager ID, from an account's host facts as they are read.
+ *
+ * <p>The mapping matches the one queried via {@link
+ * org.candlepin.subscriptions.inventory.db.InventoryRepository#getReportedHypervisors}: each UUID
+ * reported by a guest, either as its rhsm VM host UUID or its satellite virtual host UUID, maps to
+ * itself when a host with that subscription-manager ID exists in inventory, and to null otherwise.
+ * Hypervisors among the hosts read are resolved directly; the others might still be registered in
+ * another account, or be left out of the tally, so they have to be looked up separately. A
+ * collection is not thread-safe, and must be fed by a single thread.
+ */
+class ReportedHypervisors {
+
+  private final Set<String> hypervisorUuids = new HashSet<>();
+  private final Set<String> subscriptionManagerIds = new HashSet<>();
+
+  void collect(InventoryHostFacts hostFacts) {
+    if (hostFacts.getHypervisorUuid() != null) {
+      hypervisorUuids.add(hostFacts.getHypervisorUuid());
+    }
+    if (hostFacts.getSatelliteHypervisorUuid() != null) {
+      hypervisorUuids.add(hostFacts.getSatelliteHypervisorUuid());
+    }
+    if (hostFacts.getSubscriptionManagerId() != null) {
+      subscriptionManagerIds.add(hostFacts.getSubscriptionManagerId());
+    }
+  }
+
+  /** Reported hypervisor UUIDs that don't match any of the hosts read. */
+  Set<String> getUnresolvedHypervisorUuids() {
+    return hypervisorUuids.stream()
+        .filter(uuid -> !subscriptionManagerIds.contains(uuid))
+        .collect(Collectors.toSet());
+  }
+
+  /**
+   * Complete the mapping.
+   *
+   * @param registeredElsewhere unresolved hypervisor UUIDs that belong to a host that wasn't read
+   * @return the mapping of reported hypervisor UUID to hypervisor subscription-manager ID
+   */
+  Map<String, String> toMapping(Set<String> registeredElsewhere) {
+    Map<String, String> mapping = new HashMap<>();
+    for (String uuid : hypervisorUuids) {
+      boolean registered =
+          subscriptionManagerIds.contains(uuid) || registeredElsewhere.contains(uuid);
+      mapping.put(uuid, registered ? uuid : null);
+    }
+    return mapping;
+  }
+}
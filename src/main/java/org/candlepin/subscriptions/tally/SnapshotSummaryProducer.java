@@ -20,9 +20,13 @@
  */
 package org.candlepin.subscriptions.tally;
 
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
-import java.util.Optional;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.stream.Collectors;
 import org.candlepin.subscriptions.db.model.TallyMeasurementKey;
@@ -38,7 +42,13 @@ import org.springframework.kafka.core.KafkaTemplate;
 import org.springframework.retry.support.RetryTemplate;
 import org.springframework.stereotype.Service;
 
-/** Component that produces tally snapshot summary messages given a list of tally snapshots. */
+/**
+ * Component that produces tally snapshot summary messages given a list of tally snapshots.
+ *
+ * <p>Each account's snapshots are packed into as few TallySummary messages as the configured
+ * snapshot count and serialized size limits allow. Messages are keyed by account number, so that
+ * all summaries for an account land on the same partition in the order they were produced.
+ */
 @Service
 public class SnapshotSummaryProducer {
   private static final Logger log = LoggerFactory.getLogger(SnapshotSummaryProducer.class);
@@ -46,41 +56,101 @@ public class SnapshotSummaryProducer {
   private final String tallySummaryTopic;
   private final KafkaTemplate<String, TallySummary> tallySummaryKafkaTemplate;
   private final RetryTemplate kafkaRetryTemplate;
+  private final ObjectMapper objectMapper;
+  private final int maxSnapshotsPerMessage;
+  private final int maxMessageBytes;
+  private final Counter messagesProduced;
+  private final Counter snapshotsProduced;
 
   @Autowired
   protected SnapshotSummaryProducer(
       @Qualifier("tallySummaryKafkaTemplate")
           KafkaTemplate<String, TallySummary> tallySummaryKafkaTemplate,
       @Qualifier("tallySummaryKafkaRetryTemplate") RetryTemplate kafkaRetryTemplate,
-      @Qualifier("rhMarketplaceTasks") TaskQueueProperties props) {
+      @Qualifier("rhMarketplaceTasks") TaskQueueProperties props,
+      TallySummaryProperties summaryProperties,
+      ObjectMapper objectMapper,
+      MeterRegistry meterRegistry) {
     this.tallySummaryTopic = props.getTopic();
     this.kafkaRetryTemplate = kafkaRetryTemplate;
     this.tallySummaryKafkaTemplate = tallySummaryKafkaTemplate;
+    this.objectMapper = objectMapper;
+    this.maxSnapshotsPerMessage = Math.max(1, summaryProperties.getMaxSnapshotsPerMessage());
+    this.maxMessageBytes = summaryProperties.getMaxMessageBytes();
+    this.messagesProduced = meterRegistry.counter("rhsm-subscriptions.tally-summary.messages");
+    this.snapshotsProduced = meterRegistry.counter("rhsm-subscriptions.tally-summary.snapshots");
   }
 
   public void produceTallySummaryMessages(Map<String, List<TallySnapshot>> newAndUpdatedSnapshots) {
     AtomicInteger totalTallies = new AtomicInteger();
     newAndUpdatedSnapshots.forEach(
         (account, snapshots) ->
-            snapshots.stream()
-                .map(snapshot -> createTallySummary(account, List.of(snapshot)))
+            createTallySummaries(account, snapshots)
                 .forEach(
                     summary -> {
-                      if (validateTallySummary(summary)) {
-                        kafkaRetryTemplate.execute(
-                            ctx -> tallySummaryKafkaTemplate.send(tallySummaryTopic, summary));
-                        totalTallies.getAndIncrement();
-                      }
+                      kafkaRetryTemplate.execute(
+                          ctx ->
+                              tallySummaryKafkaTemplate.send(tallySummaryTopic, account, summary));
+                      totalTallies.getAndIncrement();
+                      messagesProduced.increment();
+                      snapshotsProduced.increment(summary.getTallySnapshots().size());
                     }));
 
     log.info("Produced {} TallySummary messages", totalTallies);
   }
 
-  private TallySummary createTallySummary(
+  /**
+   * Packs the valid snapshots of an account into TallySummary messages, preserving their order.
+   *
+   * <p>A message is closed once it holds the maximum number of snapshots, or when adding the next
+   * snapshot would push its serialized size over the byte limit. A single snapshot that exceeds the
+   * byte limit on its own is still sent, in a message by itself.
+   */
+  private List<TallySummary> createTallySummaries(
       String accountNumber, List<TallySnapshot> tallySnapshots) {
-    var mappedSnapshots =
-        tallySnapshots.stream().map(this::mapTallySnapshot).collect(Collectors.toList());
-    return new TallySummary().withAccountNumber(accountNumber).withTallySnapshots(mappedSnapshots);
+    List<TallySummary> summaries = new ArrayList<>();
+    boolean batching = maxSnapshotsPerMessage > 1;
+    int emptySummaryBytes =
+        batching ? serializedSize(createTallySummary(accountNumber, List.of())) : 0;
+
+    List<org.candlepin.subscriptions.json.TallySnapshot> batch = new ArrayList<>();
+    int batchBytes = emptySummaryBytes;
+    for (TallySnapshot tallySnapshot : tallySnapshots) {
+      var mappedSnapshot = mapTallySnapshot(tallySnapshot);
+      if (!validateTallySnapshot(accountNumber, mappedSnapshot)) {
+        continue;
+      }
+
+      // Include the separating comma in the size of each snapshot.
+      int snapshotBytes = batching ? serializedSize(mappedSnapshot) + 1 : 0;
+      if (!batch.isEmpty()
+          && (batch.size() >= maxSnapshotsPerMessage
+              || batchBytes + snapshotBytes > maxMessageBytes)) {
+        summaries.add(createTallySummary(accountNumber, batch));
+        batch = new ArrayList<>();
+        batchBytes = emptySummaryBytes;
+      }
+      batch.add(mappedSnapshot);
+      batchBytes += snapshotBytes;
+    }
+
+    if (!batch.isEmpty()) {
+      summaries.add(createTallySummary(accountNumber, batch));
+    }
+    return summaries;
+  }
+
+  private TallySummary createTallySummary(
+      String accountNumber, List<org.candlepin.subscriptions.json.TallySnapshot> tallySnapshots) {
+    return new TallySummary().withAccountNumber(accountNumber).withTallySnapshots(tallySnapshots);
+  }
+
+  private int serializedSize(Object value) {
+    try {
+      return objectMapper.writeValueAsBytes(value).length;
+    } catch (JsonProcessingException e) {
+      throw new IllegalStateException("Unable to serialize tally summary content", e);
+    }
   }
 
   private org.candlepin.subscriptions.json.TallySnapshot mapTallySnapshot(
@@ -126,23 +196,22 @@ public class SnapshotSummaryProducer {
   }
 
   /**
-   * Validates a TallySummary to make sure that it has all the information required by the RH
+   * Validates a summary snapshot to make sure that it has all the information required by the RH
    * marketplace API. Any issues will be logged.
    *
-   * @param summary the summary to validate.
-   * @return true if the TallySummary is valid, false otherwise.
+   * @param accountNumber the account the snapshot belongs to.
+   * @param snapshot the snapshot to validate.
+   * @return true if the snapshot is valid, false otherwise.
    */
-  private boolean validateTallySummary(TallySummary summary) {
+  private boolean validateTallySnapshot(
+      String accountNumber, org.candlepin.subscriptions.json.TallySnapshot snapshot) {
     // RH Marketplace requires at least one measurement be included in the Event
-    Optional<org.candlepin.subscriptions.json.TallySnapshot> invalidDueToMeasurements =
-        summary.getTallySnapshots().stream()
-            .filter(snap -> snap.getTallyMeasurements().isEmpty())
-            .findFirst();
-    if (invalidDueToMeasurements.isPresent()) {
+    if (snapshot.getTallyMeasurements().isEmpty()) {
       log.warn(
-          "One or more tally summary snapshots did not have measurements. "
-              + "No usage will be sent to RH marketplace for this summary.\n{}",
-          summary);
+          "Tally summary snapshot for account {} did not have measurements. "
+              + "No usage will be sent to RH marketplace for this snapshot.\n{}",
+          accountNumber,
+          snapshot);
       return false;
     }
 
@@ -0,0 +1,100 @@
+/*
+ * Copyright Red Hat, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ *
+ * Red Hat trademarks are not licensed under GPLv3. No permission is
+ * granted to use or replicate Red Hat trademarks that are incorporated
+ * in this software or its documentation.
+ */
+package org.candlepin.subscriptions.tally;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import org.candlepin.subscriptions.ApplicationProperties;
+import org.candlepin.subscriptions.db.TallySnapshotRepository;
+import org.candlepin.subscriptions.db.model.TallySnapshot;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+
+/**
+ * Persists tally snapshots on behalf of the snapshot strategies and rollers.
+ *
+ * <p>When snapshot upserts are enabled, snapshots are written in batches of a configurable size
+ * through {@link TallySnapshotRepository#upsertAll(Collection)}, which issues one JDBC batch per
+ * table instead of one insert/update per snapshot and measurement row. Otherwise, each snapshot is
+ * saved through JPA. The written counter reflects the snapshot rows the database reports as
+ * inserted or updated, not the snapshots handed in.
+ */
+@Component
+public class TallySnapshotWriter {
+
+  private static final Logger log = LoggerFactory.getLogger(TallySnapshotWriter.class);
+
+  private final TallySnapshotRepository tallyRepo;
+  private final boolean upsertEnabled;
+  private final int batchSize;
+  private final Counter rowsWritten;
+  private final Timer flushTimer;
+
+  public TallySnapshotWriter(
+      TallySnapshotRepository tallyRepo, ApplicationProperties props, MeterRegistry meterRegistry) {
+    this.tallyRepo = tallyRepo;
+    this.upsertEnabled = props.isTallySnapshotUpsertEnabled();
+    this.batchSize = Math.max(1, props.getTallySnapshotWriteBatchSize());
+    this.rowsWritten = meterRegistry.counter("rhsm-subscriptions.tally.snapshots.written");
+    this.flushTimer = meterRegistry.timer("rhsm-subscriptions.tally.snapshots.flush");
+  }
+
+  /**
+   * Persist the given snapshots.
+   *
+   * @param snapshots the new and updated snapshots to write
+   * @return the written snapshots
+   */
+  public List<TallySnapshot> saveAll(Collection<TallySnapshot> snapshots) {
+    List<TallySnapshot> written = new ArrayList<>(snapshots.size());
+    if (!upsertEnabled) {
+      snapshots.forEach(snapshot -> written.add(tallyRepo.save(snapshot)));
+      rowsWritten.increment(written.size());
+      return written;
+    }
+
+    List<TallySnapshot> batch = new ArrayList<>(Math.min(batchSize, snapshots.size()));
+    for (TallySnapshot snapshot : snapshots) {
+      batch.add(snapshot);
+      if (batch.size() >= batchSize) {
+        flush(batch);
+        written.addAll(batch);
+        batch.clear();
+      }
+    }
+    if (!batch.isEmpty()) {
+      flush(batch);
+      written.addAll(batch);
+    }
+    return written;
+  }
+
+  private void flush(List<TallySnapshot> batch) {
+    log.debug("Upserting batch of {} snapshots.", batch.size());
+    Integer written = flushTimer.record(() -> tallyRepo.upsertAll(batch));
+    rowsWritten.increment(written == null ? 0 : written);
+  }
+}
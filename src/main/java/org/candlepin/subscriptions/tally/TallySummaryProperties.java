@@ -37,4 +37,13 @@ public class TallySummaryProperties {
 
   /** Retry exponential backoff multiplier. */
   private Double backOffMultiplier;
+
+  /**
+   * Maximum number of an account's snapshots packed into a single TallySummary message. A value of
+   * 1 (the default) produces one message per snapshot.
+   */
+  private int maxSnapshotsPerMessage = 1;
+
+  /** Maximum serialized size of a TallySummary message that holds more than one snapshot. */
+  private int maxMessageBytes = 512 * 1024;
 }
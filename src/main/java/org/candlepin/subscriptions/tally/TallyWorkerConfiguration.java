@@ -59,6 +59,7 @@ import org.springframework.retry.backoff.FixedBackOffPolicy;
 import org.springframework.retry.policy.SimpleRetryPolicy;
 import org.springframework.retry.support.RetryTemplate;
 import org.springframework.retry.support.RetryTemplateBuilder;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskScheduler;
 
 /**
  * Configuration for the "worker" profile.
@@ -164,9 +165,29 @@ public class TallyWorkerConfiguration {
       TagProfile tagProfile,
       AccountServiceInventoryRepository accountServiceInventoryRepository,
       EventController eventController,
-      ApplicationClock clock) {
+      ApplicationClock clock,
+      ApplicationProperties applicationProperties) {
     return new MetricUsageCollector(
-        tagProfile, accountServiceInventoryRepository, eventController, clock);
+        tagProfile,
+        accountServiceInventoryRepository,
+        eventController,
+        clock,
+        applicationProperties.isMetricUsageSingleScan());
+  }
+
+  /**
+   * Create the scheduler keeping events partitions created ahead. Its thread is only started once
+   * the events table is found to be partitioned.
+   *
+   * @return ThreadPoolTaskScheduler
+   */
+  @Bean
+  public ThreadPoolTaskScheduler eventPartitionScheduler() {
+    ThreadPoolTaskScheduler scheduler = new ThreadPoolTaskScheduler();
+    scheduler.setThreadNamePrefix("EventPartitionMaintainer");
+    scheduler.setPoolSize(1);
+    scheduler.initialize();
+    return scheduler;
   }
 
   @Bean
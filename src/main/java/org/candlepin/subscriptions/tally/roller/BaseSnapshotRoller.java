@@ -38,6 +38,7 @@ import org.candlepin.subscriptions.db.model.HardwareMeasurementType;
 import org.candlepin.subscriptions.db.model.TallySnapshot;
 import org.candlepin.subscriptions.registry.TagProfile;
 import org.candlepin.subscriptions.tally.AccountUsageCalculation;
+import org.candlepin.subscriptions.tally.TallySnapshotWriter;
 import org.candlepin.subscriptions.tally.UsageCalculation;
 import org.candlepin.subscriptions.tally.UsageCalculation.Totals;
 import org.candlepin.subscriptions.util.ApplicationClock;
@@ -56,10 +57,27 @@ public abstract class BaseSnapshotRoller {
   protected TallySnapshotRepository tallyRepo;
   protected ApplicationClock clock;
   protected final TagProfile tagProfile;
+  private final TallySnapshotWriter snapshotWriter;
 
   protected BaseSnapshotRoller(
       TallySnapshotRepository tallyRepo, ApplicationClock clock, TagProfile tagProfile) {
+    this(tallyRepo, null, clock, tagProfile);
+  }
+
+  /**
+   * @param tallyRepo repository used to look up existing snapshots
+   * @param snapshotWriter writer used to persist rolled snapshots, or null to save them directly
+   *     through the repository
+   * @param clock application clock
+   * @param tagProfile tag profile
+   */
+  protected BaseSnapshotRoller(
+      TallySnapshotRepository tallyRepo,
+      TallySnapshotWriter snapshotWriter,
+      ApplicationClock clock,
+      TagProfile tagProfile) {
     this.tallyRepo = tallyRepo;
+    this.snapshotWriter = snapshotWriter;
     this.clock = clock;
     this.tagProfile = tagProfile;
   }
@@ -183,6 +201,9 @@ public abstract class BaseSnapshotRoller {
       }
     }
     log.debug("Persisting {} {} snapshots.", snaps.size(), targetGranularity);
+    if (snapshotWriter != null) {
+      return snapshotWriter.saveAll(snaps);
+    }
     return tallyRepo.saveAll(snaps);
   }
 
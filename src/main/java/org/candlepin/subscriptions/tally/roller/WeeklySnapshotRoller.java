@@ -29,6 +29,7 @@ import org.candlepin.subscriptions.db.TallySnapshotRepository;
 import org.candlepin.subscriptions.db.model.TallySnapshot;
 import org.candlepin.subscriptions.registry.TagProfile;
 import org.candlepin.subscriptions.tally.AccountUsageCalculation;
+import org.candlepin.subscriptions.tally.TallySnapshotWriter;
 import org.candlepin.subscriptions.util.ApplicationClock;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -49,6 +50,14 @@ public class WeeklySnapshotRoller extends BaseSnapshotRoller {
     super(tallyRepo, clock, tagProfile);
   }
 
+  public WeeklySnapshotRoller(
+      TallySnapshotRepository tallyRepo,
+      TallySnapshotWriter snapshotWriter,
+      ApplicationClock clock,
+      TagProfile tagProfile) {
+    super(tallyRepo, snapshotWriter, clock, tagProfile);
+  }
+
   @Override
   @Transactional
   public Collection<TallySnapshot> rollSnapshots(
@@ -0,0 +1,169 @@
+/*
+ * Copyright Red Hat, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ *
+ * Red Hat trademarks are not licensed under GPLv3. No permission is
+ * granted to use or replicate Red Hat trademarks that are incorporated
+ * in this software or its documentation.
+ */
+package org.candlepin.subscriptions.db;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.sql.SQLException;
+import java.util.List;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+/** Verifies the monthly partitioning of the events table, which exists only on PostgreSQL. */
+class EventPartitioningTest {
+  private static PostgresqlTestSchema db;
+
+  @BeforeAll
+  static void setup() throws Exception {
+    db = PostgresqlTestSchema.create();
+    db.queryForLong(
+        "select ensure_events_partitions('2040-01-01T00:00:00Z', '2040-04-01T00:00:00Z')");
+    insertEvents(db, "2040-01-01T00:00:00Z", 100);
+    insertEvents(db, "2040-02-01T00:00:00Z", 100);
+    insertEvents(db, "2040-03-01T00:00:00Z", 100);
+    db.update("analyze events");
+  }
+
+  @AfterAll
+  static void tearDown() throws SQLException {
+    if (db != null) {
+      db.close();
+    }
+  }
+
+  @Test
+  void testServiceTypeQueryTouchesOnlyPartitionsOfItsRange() throws SQLException {
+    List<String> plan =
+        db.explain(streamByServiceTypeQuery("2040-02-01T00:00:00Z", "2040-03-01T00:00:00Z"));
+
+    assertScans(plan, "events_y2040m02");
+    assertDoesNotScan(
+        plan, "events_y2040m01", "events_y2040m03", "events_legacy", "events_default");
+  }
+
+  @Test
+  void testQuerySpanningMonthsTouchesOnlyThoseMonths() throws SQLException {
+    List<String> plan =
+        db.explain(streamByServiceTypeQuery("2040-01-15T00:00:00Z", "2040-02-15T00:00:00Z"));
+
+    assertScans(plan, "events_y2040m01");
+    assertScans(plan, "events_y2040m02");
+    assertDoesNotScan(plan, "events_y2040m03", "events_legacy", "events_default");
+  }
+
+  @Test
+  void testEventsWithoutPartitionMoveFromDefaultWhenPartitionCreated() throws SQLException {
+    insertEvents(db, "2045-01-01T00:00:00Z", 5);
+    assertEquals(5, db.queryForLong("select count(*) from events_default"));
+
+    long created =
+        db.queryForLong(
+            "select ensure_events_partitions('2045-01-01T00:00:00Z', '2045-02-01T00:00:00Z')");
+
+    assertEquals(1, created);
+    assertEquals(0, db.queryForLong("select count(*) from events_default"));
+    assertEquals(5, db.queryForLong("select count(*) from events_y2045m01"));
+  }
+
+  @Test
+  void testPreviouslyExistingTableHoldsEarlierEvents() throws SQLException {
+    insertEvents(db, "2019-01-01T00:00:00Z", 5);
+
+    long created =
+        db.queryForLong(
+            "select ensure_events_partitions('2019-01-01T00:00:00Z', '2019-04-01T00:00:00Z')");
+
+    assertEquals(0, created);
+    assertEquals(5, db.queryForLong(countInYear("events_legacy", 2019)));
+    assertEquals(0, db.queryForLong("select count(*) from events_default"));
+  }
+
+  @Test
+  void testDropPartitionsBeforeKeepsPartitionOfCutoff() throws Exception {
+    try (PostgresqlTestSchema scratch = PostgresqlTestSchema.create()) {
+      scratch.queryForLong(
+          "select ensure_events_partitions('2040-01-01T00:00:00Z', '2040-04-01T00:00:00Z')");
+      insertEvents(scratch, "2019-01-01T00:00:00Z", 10);
+      insertEvents(scratch, "2040-01-01T00:00:00Z", 10);
+      insertEvents(scratch, "2040-02-01T00:00:00Z", 10);
+      insertEvents(scratch, "2040-03-01T00:00:00Z", 10);
+
+      long dropped =
+          scratch.queryForLong("select drop_events_partitions_before('2040-03-15T00:00:00Z')");
+
+      // events_legacy, January and February
+      assertEquals(3, dropped);
+      assertEquals(0, scratch.queryForLong(countInYear("events", 2019)));
+      assertEquals(10, scratch.queryForLong(countInYear("events", 2040)));
+      assertEquals(
+          0,
+          scratch.queryForLong(
+              "select count(*) from events_partition_bounds() "
+                  + "where partition_table = 'events_legacy'"));
+    }
+  }
+
+  private static String countInYear(String table, int year) {
+    return String.format(
+        "select count(*) from %s "
+            + "where timestamp >= '%d-01-01T00:00:00Z' and timestamp < '%d-01-01T00:00:00Z'",
+        table, year, year + 1);
+  }
+
+  private static String streamByServiceTypeQuery(String begin, String end) {
+    return CustomizedEventRecordRepositoryImpl.STREAM_BY_SERVICE_TYPE_QUERY
+        .replace(":accountNumber", "'account123'")
+        .replace(":serviceType", "'OpenShift Cluster'")
+        .replace(":begin", "'" + begin + "'")
+        .replace(":end", "'" + end + "'");
+  }
+
+  private static void insertEvents(PostgresqlTestSchema schema, String monthStart, int count)
+      throws SQLException {
+    schema.update(
+        String.format(
+            "insert into events "
+                + "(id, account_number, timestamp, data, event_type, event_source, instance_id, "
+                + "service_type) "
+                + "select md5('%1$s' || i)::uuid, 'account123', "
+                + "timestamptz '%1$s' + i * interval '1 hour', "
+                + "'{\"service_type\": \"OpenShift Cluster\"}'::jsonb, 'TYPE', 'SOURCE', "
+                + "'instance' || i, 'OpenShift Cluster' from generate_series(0, %2$d) i",
+            monthStart, count - 1));
+  }
+
+  private static void assertScans(List<String> plan, String partition) {
+    assertTrue(
+        plan.stream().anyMatch(line -> line.contains(" on " + partition + " ")),
+        () -> "expected a scan of " + partition + " in " + String.join("\n", plan));
+  }
+
+  private static void assertDoesNotScan(List<String> plan, String... partitions) {
+    for (String partition : partitions) {
+      assertFalse(
+          plan.stream().anyMatch(line -> line.contains(partition)),
+          () -> "unexpected scan of " + partition + " in " + String.join("\n", plan));
+    }
+  }
+}
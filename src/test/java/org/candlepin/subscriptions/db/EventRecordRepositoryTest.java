@@ -197,6 +197,34 @@ class EventRecordRepositoryTest {
     assertEquals(1, results.size());
   }
 
+  @SuppressWarnings({"linelength", "indentation"})
+  @Test
+  void testFindByServiceTypeFiltersOnServiceTypeColumn() {
+    Event matching = event("account123", "SOURCE", "TYPE", "INSTANCE1", OffsetDateTime.now(CLOCK));
+    Event otherType = event("account123", "SOURCE", "TYPE", "INSTANCE2", OffsetDateTime.now(CLOCK));
+    otherType.setServiceType("OTHER_SERVICE_TYPE");
+    repository.saveAll(List.of(new EventRecord(matching), new EventRecord(otherType)));
+    repository.flush();
+
+    OffsetDateTime begin = OffsetDateTime.now(CLOCK).minusDays(1);
+    OffsetDateTime end = OffsetDateTime.now(CLOCK).plusDays(1);
+    List<UUID> found =
+        repository
+            .findByAccountNumberAndServiceTypeAndTimestampGreaterThanEqualAndTimestampLessThanOrderByTimestamp(
+                "account123", "SERVICE_TYPE", begin, end)
+            .map(EventRecord::getId)
+            .collect(Collectors.toList());
+    List<UUID> streamed =
+        repository
+            .streamByAccountNumberAndServiceTypeAndTimestampRange(
+                "account123", "SERVICE_TYPE", begin, end)
+            .map(Event::getEventId)
+            .collect(Collectors.toList());
+
+    assertEquals(List.of(matching.getEventId()), found);
+    assertEquals(List.of(matching.getEventId()), streamed);
+  }
+
   private Event event(
       String account, String source, String type, String instanceId, OffsetDateTime time) {
     UUID eventId = UUID.randomUUID();
@@ -0,0 +1,101 @@
+/*
+ * Copyright Red Hat, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ *
+ * Red Hat trademarks are not licensed under GPLv3. No permission is
+ * granted to use or replicate Red Hat trademarks that are incorporated
+ * in this software or its documentation.
+ */
+package org.candlepin.subscriptions.db;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.sql.SQLException;
+import java.util.List;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+/** Verifies that queries by service type use the service type column and its index. */
+class EventServiceTypeIndexTest {
+  private static final String[] SERVICE_TYPES = {
+    "OpenShift Cluster", "Rhosak Cluster", "RHEL System", "Satellite"
+  };
+
+  private static PostgresqlTestSchema db;
+
+  @BeforeAll
+  static void setup() throws Exception {
+    db = PostgresqlTestSchema.create();
+    // 200 accounts with an event per hour for each service type through January, all of which
+    // fall in the events_legacy partition
+    for (int i = 0; i < SERVICE_TYPES.length; i++) {
+      db.update(
+          String.format(
+              "insert into events (id, account_number, timestamp, data, event_type, "
+                  + "event_source, instance_id, service_type) "
+                  + "select md5(%1$d || '-' || a || '-' || h)::uuid, 'account' || a, "
+                  + "timestamptz '2021-01-01T00:00:00Z' + h * interval '1 hour', "
+                  + "json_build_object('service_type', '%2$s')::jsonb, 'TYPE', 'SOURCE', "
+                  + "'instance' || a, '%2$s' "
+                  + "from generate_series(0, 199) a, generate_series(0, 743) h",
+              i, SERVICE_TYPES[i]));
+    }
+    db.update("analyze events");
+  }
+
+  @AfterAll
+  static void tearDown() throws SQLException {
+    if (db != null) {
+      db.close();
+    }
+  }
+
+  @Test
+  void testStreamByServiceTypeUsesServiceTypeIndex() throws SQLException {
+    String query =
+        CustomizedEventRecordRepositoryImpl.STREAM_BY_SERVICE_TYPE_QUERY
+            .replace(":accountNumber", "'account42'")
+            .replace(":serviceType", "'OpenShift Cluster'")
+            .replace(":begin", "'2021-01-10T00:00:00Z'")
+            .replace(":end", "'2021-01-11T00:00:00Z'");
+
+    assertUsesServiceTypeIndex(db.explain(query));
+  }
+
+  @Test
+  void testExistsByServiceTypeUsesServiceTypeIndex() throws SQLException {
+    String query =
+        "select exists(select 1 from events where account_number='account42' "
+            + "and service_type='Satellite' and timestamp >= '2021-01-10T00:00:00Z' "
+            + "and timestamp < '2021-01-11T00:00:00Z' order by timestamp)";
+
+    assertUsesServiceTypeIndex(db.explain(query));
+  }
+
+  private static void assertUsesServiceTypeIndex(List<String> plan) {
+    String planText = String.join("\n", plan);
+    assertTrue(
+        plan.stream()
+            .anyMatch(
+                line ->
+                    line.contains("Index")
+                        && line.contains("account_number_service_type_timestamp_idx")),
+        () -> "expected the service type index to be used:\n" + planText);
+    assertFalse(
+        planText.contains("->>"), () -> "expected no filter on the event JSON:\n" + planText);
+  }
+}
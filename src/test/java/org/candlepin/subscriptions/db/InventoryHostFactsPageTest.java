@@ -0,0 +1,178 @@
+/*
+ * Copyright Red Hat, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ *
+ * Red Hat trademarks are not licensed under GPLv3. No permission is
+ * granted to use or replicate Red Hat trademarks that are incorporated
+ * in this software or its documentation.
+ */
+package org.candlepin.subscriptions.db;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.AdditionalAnswers.delegatesTo;
+import static org.mockito.Mockito.mock;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import org.candlepin.subscriptions.ApplicationProperties;
+import org.candlepin.subscriptions.inventory.db.CustomizedInventoryRepositoryImpl;
+import org.candlepin.subscriptions.inventory.db.InventoryDatabaseOperations;
+import org.candlepin.subscriptions.inventory.db.InventoryRepository;
+import org.hibernate.query.Query;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.datasource.SingleConnectionDataSource;
+import org.springframework.orm.jpa.JpaTransactionManager;
+import org.springframework.orm.jpa.LocalContainerEntityManagerFactoryBean;
+import org.springframework.orm.jpa.SharedEntityManagerCreator;
+import org.springframework.orm.jpa.vendor.HibernateJpaVendorAdapter;
+
+/**
+ * Reads HBI host facts in pages from a seeded copy of the HBI hosts table, through the inventory
+ * entity mappings and named queries, and verifies the plan of the page query.
+ */
+class InventoryHostFactsPageTest {
+  private static final int CULLED_OFFSET_DAYS = 14;
+  private static final int PAGE_SIZE = 100;
+  private static final int FETCH_SIZE = 25;
+
+  private static PostgresqlTestSchema db;
+  private static LocalContainerEntityManagerFactoryBean entityManagerFactoryBean;
+
+  @BeforeAll
+  static void setup() throws Exception {
+    db = PostgresqlTestSchema.createEmpty();
+    // the columns of the HBI hosts table read by the facts query, and its (account, id) index
+    db.update(
+        "create table hosts (id uuid primary key, account varchar(10), "
+            + "display_name varchar(200), created_on timestamptz, modified_on timestamptz, "
+            + "facts jsonb, canonical_facts jsonb, system_profile_facts jsonb, "
+            + "stale_timestamp timestamptz)");
+    db.update("create index hosts_account_id_idx on hosts (account, id)");
+    // 200 accounts of 500 hosts, where hosts ending in 0, 1 and 2 are marketplace, edge and culled
+    db.update(
+        "insert into hosts (id, account, display_name, created_on, modified_on, facts, "
+            + "canonical_facts, system_profile_facts, stale_timestamp) "
+            + "select md5('host-' || a || '-' || h)::uuid, 'account' || a, 'host' || h, "
+            + "now(), now(), "
+            + "jsonb_build_object('rhsm', jsonb_build_object('orgId', 'org' || a, "
+            + "'RH_PROD', jsonb_build_array('69'), "
+            + "'BILLING_MODEL', case when h % 10 = 0 then 'marketplace' end)), "
+            + "jsonb_build_object('subscription_manager_id', md5('sm-' || a || '-' || h)), "
+            + "jsonb_build_object('host_type', case when h % 10 = 1 then 'edge' end, "
+            + "'cores_per_socket', 2, 'number_of_sockets', 1), "
+            + "now() + case when h % 10 = 2 then interval '-30 days' else interval '1 day' end "
+            + "from generate_series(0, 199) a, generate_series(0, 499) h");
+    db.update("analyze hosts");
+
+    entityManagerFactoryBean = new LocalContainerEntityManagerFactoryBean();
+    entityManagerFactoryBean.setDataSource(
+        new SingleConnectionDataSource(db.getConnection(), true));
+    entityManagerFactoryBean.setPackagesToScan("org.candlepin.subscriptions.inventory.db.model");
+    entityManagerFactoryBean.setJpaVendorAdapter(new HibernateJpaVendorAdapter());
+    entityManagerFactoryBean.setPersistenceUnitName("inventory");
+    entityManagerFactoryBean.afterPropertiesSet();
+  }
+
+  @AfterAll
+  static void tearDown() throws SQLException {
+    if (entityManagerFactoryBean != null) {
+      entityManagerFactoryBean.destroy();
+    }
+    if (db != null) {
+      db.close();
+    }
+  }
+
+  @Test
+  void testPagesReadEveryKeptHostOnceInIdOrder() throws SQLException {
+    EntityManagerFactory emf = entityManagerFactoryBean.getObject();
+    InventoryRepository repo =
+        mock(
+            InventoryRepository.class,
+            delegatesTo(
+                new CustomizedInventoryRepositoryImpl(
+                    SharedEntityManagerCreator.createSharedEntityManager(emf))));
+    ApplicationProperties props = new ApplicationProperties();
+    props.setHostFactsPagingEnabled(true);
+    props.setHostFactsPageSize(PAGE_SIZE);
+    props.setHostFactsFetchSize(FETCH_SIZE);
+    SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    List<String> read = new ArrayList<>();
+
+    new InventoryDatabaseOperations(repo, new JpaTransactionManager(emf), props, meterRegistry)
+        .processHostFacts(
+            List.of("account42"),
+            CULLED_OFFSET_DAYS,
+            facts -> read.add(facts.getInventoryId().toString()));
+
+    // host ids in the order of their canonical string form, as the paging assumes
+    List<String> expected =
+        queryForStrings(
+            "select id::text from hosts where account = 'account42' and display_name ~ '[3-9]$'");
+    Collections.sort(expected);
+    assertEquals(350, expected.size());
+    assertEquals(expected, read);
+    assertEquals(4, meterRegistry.timer("rhsm-subscriptions.inventory.host_facts.page").count());
+  }
+
+  @Test
+  void testPageQueryReadsAccountInIdOrderFromIndex() throws SQLException {
+    for (String afterId :
+        List.of("00000000-0000-0000-0000-000000000000", "80000000-0000-0000-0000-000000000000")) {
+      String plan = String.join("\n", db.explain(pageQuery(afterId)));
+      assertTrue(
+          plan.contains("Index Scan using hosts_account_id_idx"),
+          () -> "expected hosts to be read from the (account, id) index:\n" + plan);
+      assertFalse(plan.contains("Sort"), () -> "expected no sort of the account's hosts:\n" + plan);
+    }
+  }
+
+  private static String pageQuery(String afterId) {
+    EntityManager em = entityManagerFactoryBean.getObject().createEntityManager();
+    try {
+      return em.createNamedQuery("InventoryHost.getFactsPage")
+          .unwrap(Query.class)
+          .getQueryString()
+          .replace(":accounts", "'account42'")
+          .replace(":culledOffsetDays", String.valueOf(CULLED_OFFSET_DAYS))
+          .replace(":afterId", "'" + afterId + "'")
+          .replace(":pageSize", String.valueOf(PAGE_SIZE));
+    } finally {
+      em.close();
+    }
+  }
+
+  private static List<String> queryForStrings(String sql) throws SQLException {
+    List<String> values = new ArrayList<>();
+    try (Statement statement = db.getConnection().createStatement();
+        ResultSet resultSet = statement.executeQuery(sql)) {
+      while (resultSet.next()) {
+        values.add(resultSet.getString(1));
+      }
+    }
+    return values;
+  }
+}
@@ -0,0 +1,165 @@
+/*
+ * Copyright Red Hat, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ *
+ * Red Hat trademarks are not licensed under GPLv3. No permission is
+ * granted to use or replicate Red Hat trademarks that are incorporated
+ * in this software or its documentation.
+ */
+package org.candlepin.subscriptions.db;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.UUID;
+import liquibase.Contexts;
+import liquibase.Liquibase;
+import liquibase.database.Database;
+import liquibase.database.DatabaseFactory;
+import liquibase.database.jvm.JdbcConnection;
+import liquibase.exception.LiquibaseException;
+import liquibase.resource.ClassLoaderResourceAccessor;
+
+/**
+ * A scratch schema in a real PostgreSQL database, migrated with the application changelog, for
+ * tests of behavior the HSQLDB test database doesn't have, such as partitioning and query plans.
+ *
+ * <p>When {@value #URL_VARIABLE} is set to the JDBC url of a PostgreSQL database, with credentials
+ * in {@value #USERNAME_VARIABLE} and {@value #PASSWORD_VARIABLE}, that database is used; otherwise
+ * a PostgreSQL container is started once and shared by all tests. The schema is dropped on close.
+ */
+class PostgresqlTestSchema implements AutoCloseable {
+  static final String URL_VARIABLE = "POSTGRESQL_TEST_URL";
+  static final String USERNAME_VARIABLE = "POSTGRESQL_TEST_USERNAME";
+  static final String PASSWORD_VARIABLE = "POSTGRESQL_TEST_PASSWORD";
+
+  /** Changelog parameters the application sets through {@code spring.liquibase.parameters}. */
+  private static final Map<String, String> CHANGELOG_PARAMETERS =
+      Map.of("tally-snapshot-upsert-enabled", "true");
+
+  private static CentosPostgreSQLContainer container;
+
+  private final Connection connection;
+  private final String schema;
+
+  private PostgresqlTestSchema(Connection connection, String schema) {
+    this.connection = connection;
+    this.schema = schema;
+  }
+
+  /** Create a scratch schema migrated with the application changelog. */
+  static PostgresqlTestSchema create() throws SQLException, LiquibaseException {
+    PostgresqlTestSchema testSchema = createEmpty();
+    try {
+      Database database =
+          DatabaseFactory.getInstance()
+              .findCorrectDatabaseImplementation(new JdbcConnection(testSchema.connection));
+      database.setDefaultSchemaName(testSchema.schema);
+      Liquibase liquibase =
+          new Liquibase("liquibase/changelog.xml", new ClassLoaderResourceAccessor(), database);
+      CHANGELOG_PARAMETERS.forEach(liquibase::setChangeLogParameter);
+      liquibase.update(new Contexts());
+      testSchema.connection.setAutoCommit(true);
+    } catch (SQLException | LiquibaseException | RuntimeException e) {
+      testSchema.close();
+      throw e;
+    }
+    return testSchema;
+  }
+
+  /** Create an empty scratch schema, for tables of other services' databases, such as HBI's. */
+  static PostgresqlTestSchema createEmpty() throws SQLException {
+    Connection connection = connect();
+    String schema =
+        "test_" + UUID.randomUUID().toString().replace("-", "").toLowerCase(Locale.ROOT);
+    try (Statement statement = connection.createStatement()) {
+      statement.execute("create schema " + schema);
+      statement.execute("set search_path to " + schema);
+    } catch (SQLException e) {
+      connection.close();
+      throw e;
+    }
+    return new PostgresqlTestSchema(connection, schema);
+  }
+
+  private static Connection connect() throws SQLException {
+    String url = System.getenv(URL_VARIABLE);
+    if (url != null && !url.isEmpty()) {
+      return DriverManager.getConnection(
+          url, System.getenv(USERNAME_VARIABLE), System.getenv(PASSWORD_VARIABLE));
+    }
+    CentosPostgreSQLContainer postgres = startContainer();
+    return DriverManager.getConnection(
+        postgres.getJdbcUrl(), postgres.getUsername(), postgres.getPassword());
+  }
+
+  private static synchronized CentosPostgreSQLContainer startContainer() {
+    if (container == null) {
+      CentosPostgreSQLContainer postgres = new CentosPostgreSQLContainer();
+      postgres.start();
+      // The ryuk reaper is disabled for tests, so stop the container when the test JVM exits.
+      Runtime.getRuntime().addShutdownHook(new Thread(postgres::stop));
+      container = postgres;
+    }
+    return container;
+  }
+
+  Connection getConnection() {
+    return connection;
+  }
+
+  /** Run an update statement and return the number of rows it changed. */
+  int update(String sql) throws SQLException {
+    try (Statement statement = connection.createStatement()) {
+      return statement.executeUpdate(sql);
+    }
+  }
+
+  /** Run a query returning a single number, such as a count. */
+  long queryForLong(String sql) throws SQLException {
+    try (Statement statement = connection.createStatement();
+        ResultSet resultSet = statement.executeQuery(sql)) {
+      resultSet.next();
+      return resultSet.getLong(1);
+    }
+  }
+
+  /** Return the lines of the plan PostgreSQL chooses for a query. */
+  List<String> explain(String sql) throws SQLException {
+    List<String> plan = new ArrayList<>();
+    try (Statement statement = connection.createStatement();
+        ResultSet resultSet = statement.executeQuery("explain " + sql)) {
+      while (resultSet.next()) {
+        plan.add(resultSet.getString(1));
+      }
+    }
+    return plan;
+  }
+
+  @Override
+  public void close() throws SQLException {
+    try (Statement statement = connection.createStatement()) {
+      statement.execute("drop schema " + schema + " cascade");
+    } finally {
+      connection.close();
+    }
+  }
+}
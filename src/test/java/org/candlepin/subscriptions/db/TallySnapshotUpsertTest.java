@@ -0,0 +1,170 @@
+/*
+ * Copyright Red Hat, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ *
+ * Red Hat trademarks are not licensed under GPLv3. No permission is
+ * granted to use or replicate Red Hat trademarks that are incorporated
+ * in this software or its documentation.
+ */
+package org.candlepin.subscriptions.db;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+
+import java.sql.SQLException;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.List;
+import java.util.UUID;
+import org.candlepin.subscriptions.db.model.Granularity;
+import org.candlepin.subscriptions.db.model.HardwareMeasurement;
+import org.candlepin.subscriptions.db.model.HardwareMeasurementType;
+import org.candlepin.subscriptions.db.model.TallySnapshot;
+import org.candlepin.subscriptions.json.Measurement;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+/** Verifies the snapshot upsert, which relies on PostgreSQL's insert ... on conflict. */
+class TallySnapshotUpsertTest {
+  private static final OffsetDateTime SNAPSHOT_DATE =
+      OffsetDateTime.of(2022, 6, 1, 0, 0, 0, 0, ZoneOffset.UTC);
+
+  private static PostgresqlTestSchema db;
+
+  @BeforeAll
+  static void setup() throws Exception {
+    db = PostgresqlTestSchema.create();
+  }
+
+  @AfterAll
+  static void tearDown() throws SQLException {
+    if (db != null) {
+      db.close();
+    }
+  }
+
+  @BeforeEach
+  void clear() throws SQLException {
+    db.update("delete from tally_measurements");
+    db.update("delete from hardware_measurements");
+    db.update("delete from tally_snapshots");
+  }
+
+  @Test
+  void testInsertsNewSnapshotsWithTheirMeasurements() throws SQLException {
+    TallySnapshot daily = snapshot(Granularity.DAILY, "owner1", 4.0, 2);
+    TallySnapshot hourly = snapshot(Granularity.HOURLY, "owner1", 8.0, 3);
+    UUID dailyId = daily.getId();
+
+    int written = upsert(daily, hourly);
+
+    assertEquals(2, written);
+    assertEquals(dailyId, daily.getId());
+    assertEquals(2, db.queryForLong("select count(*) from tally_snapshots"));
+    assertEquals(
+        4, db.queryForLong(measurementValue(daily, HardwareMeasurementType.PHYSICAL, "CORES")));
+    assertEquals(
+        8, db.queryForLong(measurementValue(hourly, HardwareMeasurementType.PHYSICAL, "CORES")));
+    assertEquals(2, db.queryForLong(hardwareCores(daily)));
+    assertEquals(3, db.queryForLong(hardwareCores(hourly)));
+  }
+
+  @Test
+  void testConflictUpdatesExistingRowAndAdoptsItsId() throws SQLException {
+    TallySnapshot original = snapshot(Granularity.DAILY, "owner1", 4.0, 2);
+    upsert(original);
+
+    TallySnapshot replacement = snapshot(Granularity.DAILY, "owner2", 6.0, 5);
+    assertNotEquals(original.getId(), replacement.getId());
+    int written = upsert(replacement);
+
+    assertEquals(1, written);
+    assertEquals(original.getId(), replacement.getId());
+    assertEquals(1, db.queryForLong("select count(*) from tally_snapshots"));
+    assertEquals(
+        1,
+        db.queryForLong(
+            "select count(*) from tally_snapshots where owner_id='owner2' and id='"
+                + original.getId()
+                + "'"));
+  }
+
+  @Test
+  void testConflictReplacesMeasurements() throws SQLException {
+    TallySnapshot original = snapshot(Granularity.DAILY, "owner1", 4.0, 2);
+    original.setMeasurement(HardwareMeasurementType.VIRTUAL, Measurement.Uom.SOCKETS, 10.0);
+    upsert(original);
+
+    TallySnapshot replacement = snapshot(Granularity.DAILY, "owner1", 6.0, 5);
+    upsert(replacement);
+
+    String snapshotMeasurements =
+        "select count(*) from tally_measurements where snapshot_id='" + original.getId() + "'";
+    assertEquals(1, db.queryForLong(snapshotMeasurements));
+    assertEquals(
+        6,
+        db.queryForLong(measurementValue(replacement, HardwareMeasurementType.PHYSICAL, "CORES")));
+    assertEquals(
+        1,
+        db.queryForLong(
+            "select count(*) from hardware_measurements where snapshot_id='"
+                + original.getId()
+                + "'"));
+    assertEquals(5, db.queryForLong(hardwareCores(replacement)));
+  }
+
+  private static int upsert(TallySnapshot... snapshots) throws SQLException {
+    return CustomizedTallySnapshotRepositoryImpl.upsertAll(db.getConnection(), List.of(snapshots));
+  }
+
+  @SuppressWarnings("removal")
+  private static TallySnapshot snapshot(
+      Granularity granularity, String owner, double cores, int hardwareCores) {
+    TallySnapshot snapshot =
+        TallySnapshot.builder()
+            .id(UUID.randomUUID())
+            .snapshotDate(SNAPSHOT_DATE)
+            .productId("RHEL")
+            .ownerId(owner)
+            .accountNumber("account123")
+            .billingAccountId("_ANY")
+            .granularity(granularity)
+            .build();
+    snapshot.setMeasurement(HardwareMeasurementType.PHYSICAL, Measurement.Uom.CORES, cores);
+    HardwareMeasurement hardwareMeasurement = new HardwareMeasurement();
+    hardwareMeasurement.setCores(hardwareCores);
+    hardwareMeasurement.setSockets(1);
+    hardwareMeasurement.setInstanceCount(1);
+    snapshot.setHardwareMeasurement(HardwareMeasurementType.PHYSICAL, hardwareMeasurement);
+    return snapshot;
+  }
+
+  private static String measurementValue(
+      TallySnapshot snapshot, HardwareMeasurementType type, String uom) {
+    return String.format(
+        "select value from tally_measurements "
+            + "where snapshot_id='%s' and measurement_type='%s' and uom='%s'",
+        snapshot.getId(), type.name(), uom);
+  }
+
+  private static String hardwareCores(TallySnapshot snapshot) {
+    return String.format(
+        "select cores from hardware_measurements "
+            + "where snapshot_id='%s' and measurement_type='PHYSICAL'",
+        snapshot.getId());
+  }
+}
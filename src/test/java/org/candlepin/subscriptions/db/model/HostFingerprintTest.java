@@ -0,0 +1,129 @@
+/*
+ * Copyright Red Hat, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ *
+ * Red Hat trademarks are not licensed under GPLv3. No permission is
+ * granted to use or replicate Red Hat trademarks that are incorporated
+ * in this software or its documentation.
+ */
+package org.candlepin.subscriptions.db.model;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.UUID;
+import org.candlepin.subscriptions.json.Measurement.Uom;
+import org.junit.jupiter.api.Test;
+
+class HostFingerprintTest {
+
+  @Test
+  void testFactHashIgnoresMeasurementOrderAndLastSeen() {
+    Host host = host();
+    host.setLastSeen(OffsetDateTime.of(2022, 6, 1, 12, 0, 0, 0, ZoneOffset.UTC));
+    host.setMeasurement(Uom.CORES, 4.0);
+    host.setMeasurement(Uom.SOCKETS, 2.0);
+
+    Host same = host();
+    same.setLastSeen(OffsetDateTime.of(2022, 6, 2, 12, 0, 0, 0, ZoneOffset.UTC));
+    same.setMeasurement(Uom.SOCKETS, 2.0);
+    same.setMeasurement(Uom.CORES, 4.0);
+
+    assertEquals(HostFingerprint.factHashOf(host), HostFingerprint.factHashOf(same));
+  }
+
+  @Test
+  void testFactHashChangesWithFacts() {
+    Host host = host();
+    String hash = HostFingerprint.factHashOf(host);
+
+    host.setDisplayName("renamed");
+    assertNotEquals(hash, HostFingerprint.factHashOf(host));
+    String renamedHash = HostFingerprint.factHashOf(host);
+
+    host.setMeasurement(Uom.CORES, 4.0);
+    assertNotEquals(renamedHash, HostFingerprint.factHashOf(host));
+  }
+
+  @Test
+  void testFactHashDoesNotRunValuesTogether() {
+    Host host = host();
+    host.setAccountNumber("ab");
+    host.setOrgId("c");
+
+    Host other = host();
+    other.setAccountNumber("a");
+    other.setOrgId("bc");
+
+    assertNotEquals(HostFingerprint.factHashOf(host), HostFingerprint.factHashOf(other));
+  }
+
+  @Test
+  void testFactHashIgnoresIdAndBuckets() {
+    Host host = host();
+    String hash = HostFingerprint.factHashOf(host);
+
+    host.setId(UUID.randomUUID());
+    addBucket(host, "RHEL", 4);
+    assertEquals(hash, HostFingerprint.factHashOf(host));
+  }
+
+  @Test
+  void testBucketHashIgnoresBucketOrder() {
+    Host host = host();
+    addBucket(host, "RHEL", 4);
+    addBucket(host, "RHEL Workstation", 2);
+
+    Host same = host();
+    addBucket(same, "RHEL Workstation", 2);
+    addBucket(same, "RHEL", 4);
+
+    assertEquals(HostFingerprint.bucketHashOf(host), HostFingerprint.bucketHashOf(same));
+  }
+
+  @Test
+  void testBucketHashChangesWithBuckets() {
+    Host host = host();
+    String empty = HostFingerprint.bucketHashOf(host);
+    addBucket(host, "RHEL", 4);
+    String oneBucket = HostFingerprint.bucketHashOf(host);
+
+    Host moreCores = host();
+    addBucket(moreCores, "RHEL", 8);
+
+    assertNotEquals(empty, oneBucket);
+    assertNotEquals(oneBucket, HostFingerprint.bucketHashOf(moreCores));
+  }
+
+  private Host host() {
+    Host host = new Host("inventory1", "insights1", "account1", "org1", "subman1");
+    host.setDisplayName("host1");
+    return host;
+  }
+
+  private void addBucket(Host host, String productId, int cores) {
+    host.addBucket(
+        productId,
+        ServiceLevel.PREMIUM,
+        Usage.PRODUCTION,
+        BillingProvider._ANY,
+        "_ANY",
+        false,
+        1,
+        cores,
+        HardwareMeasurementType.PHYSICAL);
+  }
+}
@@ -0,0 +1,80 @@
+/*
+ * Copyright Red Hat, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ *
+ * Red Hat trademarks are not licensed under GPLv3. No permission is
+ * granted to use or replicate Red Hat trademarks that are incorporated
+ * in this software or its documentation.
+ */
+package org.candlepin.subscriptions.event;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
+import static org.mockito.Mockito.when;
+
+import java.time.Duration;
+import org.candlepin.subscriptions.ApplicationProperties;
+import org.candlepin.subscriptions.FixedClockConfiguration;
+import org.candlepin.subscriptions.db.EventRecordRepository;
+import org.candlepin.subscriptions.util.ApplicationClock;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.scheduling.TaskScheduler;
+
+class EventPartitionMaintainerTest {
+
+  private final ApplicationClock clock = new FixedClockConfiguration().fixedClock();
+  private final EventRecordRepository repository = mock(EventRecordRepository.class);
+  private final TaskScheduler scheduler = mock(TaskScheduler.class);
+  private ApplicationProperties properties;
+  private EventPartitionMaintainer maintainer;
+
+  @BeforeEach
+  void setup() {
+    properties = new ApplicationProperties();
+    properties.setEventPartitionsAhead(2);
+    properties.setEventPartitionCheckInterval(Duration.ofHours(6));
+    maintainer = new EventPartitionMaintainer(repository, properties, clock, scheduler);
+  }
+
+  @Test
+  void testCheckIsScheduledWhenEventsTablePartitioned() {
+    when(repository.isEventsTablePartitioned()).thenReturn(true);
+
+    maintainer.start();
+
+    verify(scheduler).scheduleWithFixedDelay(any(), eq(Duration.ofHours(6)));
+  }
+
+  @Test
+  void testNothingIsScheduledWhenEventsTableNotPartitioned() {
+    maintainer.start();
+
+    verifyNoInteractions(scheduler);
+  }
+
+  @Test
+  void testCreatesPartitionsThroughMonthsAhead() {
+    when(repository.createEventPartitions(any(), any())).thenReturn(1);
+
+    assertEquals(1, maintainer.createPartitions());
+
+    verify(repository).createEventPartitions(clock.now(), clock.now().plusMonths(2));
+  }
+}
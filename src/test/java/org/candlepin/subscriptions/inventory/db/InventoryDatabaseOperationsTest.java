@@ -0,0 +1,216 @@
+/*
+ * Copyright Red Hat, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ *
+ * Red Hat trademarks are not licensed under GPLv3. No permission is
+ * granted to use or replicate Red Hat trademarks that are incorporated
+ * in this software or its documentation.
+ */
+package org.candlepin.subscriptions.inventory.db;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.UUID;
+import java.util.stream.Collectors;
+import org.candlepin.subscriptions.ApplicationProperties;
+import org.candlepin.subscriptions.inventory.db.model.InventoryHostFacts;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.SimpleTransactionStatus;
+
+@ExtendWith(MockitoExtension.class)
+class InventoryDatabaseOperationsTest {
+
+  private static final List<String> ACCOUNTS = List.of("account1");
+  private static final int CULLED_OFFSET_DAYS = 14;
+  private static final int PAGE_SIZE = 1000;
+  private static final int FETCH_SIZE = 250;
+
+  @Mock private InventoryRepository repo;
+  @Mock private PlatformTransactionManager transactionManager;
+
+  private MeterRegistry meterRegistry;
+  private boolean inTransaction;
+  private int transactions;
+
+  @BeforeEach
+  void setup() {
+    meterRegistry = new SimpleMeterRegistry();
+    when(transactionManager.getTransaction(any()))
+        .thenAnswer(
+            invocation -> {
+              assertFalse(inTransaction, "Transactions should not be nested");
+              inTransaction = true;
+              transactions++;
+              return new SimpleTransactionStatus();
+            });
+    doAnswer(
+            invocation -> {
+              inTransaction = false;
+              return null;
+            })
+        .when(transactionManager)
+        .commit(any());
+  }
+
+  @Test
+  void testPagesReadEveryHostOnceInIdOrder() {
+    List<InventoryHostFacts> hosts = seedHosts(10_500);
+    List<UUID> read = new ArrayList<>();
+
+    pagingOperations()
+        .processHostFacts(
+            ACCOUNTS,
+            CULLED_OFFSET_DAYS,
+            facts -> {
+              assertFalse(inTransaction, "Hosts should be handled outside of a page transaction");
+              read.add(facts.getInventoryId());
+            });
+
+    assertEquals(
+        hosts.stream().map(InventoryHostFacts::getInventoryId).collect(Collectors.toList()), read);
+    assertEquals(11, transactions);
+    assertEquals(11, meterRegistry.timer("rhsm-subscriptions.inventory.host_facts.page").count());
+    assertEquals(
+        10_500, meterRegistry.counter("rhsm-subscriptions.inventory.host_facts.rows").count());
+    verify(repo, never()).getFacts(any(), anyInt());
+  }
+
+  @Test
+  void testFullLastPageIsFollowedByAnEmptyPage() {
+    seedHosts(3 * PAGE_SIZE);
+    List<UUID> read = new ArrayList<>();
+
+    pagingOperations()
+        .processHostFacts(ACCOUNTS, CULLED_OFFSET_DAYS, facts -> read.add(facts.getInventoryId()));
+
+    assertEquals(3 * PAGE_SIZE, read.size());
+    assertEquals(4, meterRegistry.timer("rhsm-subscriptions.inventory.host_facts.page").count());
+    verify(repo)
+        .getFactsPage(
+            ACCOUNTS,
+            CULLED_OFFSET_DAYS,
+            InventoryDatabaseOperations.FIRST_PAGE_AFTER_ID,
+            PAGE_SIZE,
+            FETCH_SIZE);
+  }
+
+  @Test
+  void testEmptyAccountReadsSinglePage() {
+    seedHosts(0);
+    List<UUID> read = new ArrayList<>();
+
+    pagingOperations()
+        .processHostFacts(ACCOUNTS, CULLED_OFFSET_DAYS, facts -> read.add(facts.getInventoryId()));
+
+    assertTrue(read.isEmpty());
+    assertEquals(1, transactions);
+  }
+
+  @Test
+  void testPagesEachAccountSeparately() {
+    when(repo.getFactsPage(any(), anyInt(), anyString(), anyInt(), anyInt())).thenReturn(List.of());
+
+    pagingOperations()
+        .processHostFacts(List.of("account1", "account2"), CULLED_OFFSET_DAYS, facts -> {});
+
+    for (String account : List.of("account1", "account2")) {
+      verify(repo)
+          .getFactsPage(
+              List.of(account),
+              CULLED_OFFSET_DAYS,
+              InventoryDatabaseOperations.FIRST_PAGE_AFTER_ID,
+              PAGE_SIZE,
+              FETCH_SIZE);
+    }
+    assertEquals(2, transactions);
+  }
+
+  @Test
+  void testStreamsInSingleTransactionWhenPagingDisabled() {
+    List<InventoryHostFacts> hosts = generateHosts(2500);
+    when(repo.getFacts(ACCOUNTS, CULLED_OFFSET_DAYS)).thenAnswer(invocation -> hosts.stream());
+    List<UUID> read = new ArrayList<>();
+
+    new InventoryDatabaseOperations(
+            repo, transactionManager, new ApplicationProperties(), meterRegistry)
+        .processHostFacts(
+            ACCOUNTS,
+            CULLED_OFFSET_DAYS,
+            facts -> {
+              assertTrue(inTransaction);
+              read.add(facts.getInventoryId());
+            });
+
+    assertEquals(2500, read.size());
+    assertEquals(1, transactions);
+    verify(repo, never()).getFactsPage(any(), anyInt(), anyString(), anyInt(), anyInt());
+  }
+
+  private InventoryDatabaseOperations pagingOperations() {
+    ApplicationProperties props = new ApplicationProperties();
+    props.setHostFactsPagingEnabled(true);
+    props.setHostFactsPageSize(PAGE_SIZE);
+    props.setHostFactsFetchSize(FETCH_SIZE);
+    return new InventoryDatabaseOperations(repo, transactionManager, props, meterRegistry);
+  }
+
+  /**
+   * Back the page query with the given number of hosts, answering it the way PostgreSQL does: in
+   * order of host id, whose ordering is that of the canonical string form.
+   *
+   * @return the seeded hosts in id order
+   */
+  private List<InventoryHostFacts> seedHosts(int count) {
+    List<InventoryHostFacts> hosts = generateHosts(count);
+    hosts.sort(Comparator.comparing(facts -> facts.getInventoryId().toString()));
+    when(repo.getFactsPage(eq(ACCOUNTS), eq(CULLED_OFFSET_DAYS), anyString(), anyInt(), anyInt()))
+        .thenAnswer(
+            invocation -> {
+              assertTrue(inTransaction, "Pages should be read within a transaction");
+              String afterId = invocation.getArgument(2);
+              int pageSize = invocation.getArgument(3);
+              return hosts.stream()
+                  .filter(facts -> facts.getInventoryId().toString().compareTo(afterId) > 0)
+                  .limit(pageSize)
+                  .collect(Collectors.toList());
+            });
+    return hosts;
+  }
+
+  private static List<InventoryHostFacts> generateHosts(int count) {
+    Random random = new Random(42);
+    List<InventoryHostFacts> hosts = new ArrayList<>(count);
+    for (int i = 0; i < count; i++) {
+      InventoryHostFacts facts = new InventoryHostFacts();
+      facts.setInventoryId(new UUID(random.nextLong(), random.nextLong()));
+      facts.setAccount(ACCOUNTS.get(0));
+      facts.setDisplayName("host" + i);
+      hosts.add(facts);
+    }
+    return hosts;
+  }
+}
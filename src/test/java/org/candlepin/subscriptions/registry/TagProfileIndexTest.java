@@ -0,0 +1,216 @@
+/*
+ * Copyright Red Hat, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ *
+ * Red Hat trademarks are not licensed under GPLv3. No permission is
+ * granted to use or replicate Red Hat trademarks that are incorporated
+ * in this software or its documentation.
+ */
+package org.candlepin.subscriptions.registry;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import org.candlepin.subscriptions.json.Measurement.Uom;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+import org.yaml.snakeyaml.Yaml;
+import org.yaml.snakeyaml.constructor.Constructor;
+
+/**
+ * Checks the precomputed TagProfile lookups against straightforward scans of the profile's
+ * mappings, metrics and metadata, for both the production and the test tag profiles.
+ */
+class TagProfileIndexTest {
+
+  private static final String UNKNOWN = "UNKNOWN";
+
+  @ParameterizedTest
+  @ValueSource(strings = {"tag_profile.yaml", "test_tag_profile.yaml"})
+  void tagsByEngProductMatchScan(String profileName) throws IOException {
+    TagProfile tagProfile = load(profileName);
+    for (String engId : engIdsPlusUnknown(tagProfile)) {
+      Set<String> expected =
+          tagProfile.getTagMappings().stream()
+              .filter(mapping -> "engId".equals(mapping.getValueType()))
+              .filter(mapping -> engId.equals(mapping.getValue()))
+              .flatMap(mapping -> mapping.getTags().stream())
+              .collect(Collectors.toSet());
+      assertEquals(expected, tagProfile.getTagsByEngProduct(engId), engId);
+    }
+  }
+
+  @ParameterizedTest
+  @ValueSource(strings = {"tag_profile.yaml", "test_tag_profile.yaml"})
+  void engProductIdMapMatchesScan(String profileName) throws IOException {
+    TagProfile tagProfile = load(profileName);
+    Map<Integer, Set<String>> expected = new HashMap<>();
+    tagProfile.getTagMappings().stream()
+        .filter(mapping -> "engId".equals(mapping.getValueType()))
+        .forEach(mapping -> expected.put(Integer.parseInt(mapping.getValue()), mapping.getTags()));
+    assertEquals(expected, tagProfile.getEngProductIdToSwatchProductIdsMap());
+  }
+
+  @ParameterizedTest
+  @ValueSource(strings = {"tag_profile.yaml", "test_tag_profile.yaml"})
+  void tagMetricsMatchScan(String profileName) throws IOException {
+    TagProfile tagProfile = load(profileName);
+    for (String tag : allTagsPlusUnknown(tagProfile)) {
+      for (Uom uom : Uom.values()) {
+        Optional<TagMetric> expected =
+            tagProfile.getTagMetrics().stream()
+                .filter(metric -> tag.equals(metric.getTag()) && uom.equals(metric.getUom()))
+                .findFirst();
+        assertEquals(expected, tagProfile.getTagMetric(tag, uom), tag + "/" + uom);
+      }
+    }
+    assertTrue(tagProfile.getTagMetric(null, Uom.CORES).isEmpty());
+    assertTrue(tagProfile.getTagMetric("OpenShift-metrics", null).isEmpty());
+  }
+
+  @ParameterizedTest
+  @ValueSource(strings = {"tag_profile.yaml", "test_tag_profile.yaml"})
+  void serviceTypeLookupsMatchScan(String profileName) throws IOException {
+    TagProfile tagProfile = load(profileName);
+    Set<String> serviceTypes = new HashSet<>(tagProfile.getServiceTypes());
+    serviceTypes.add(UNKNOWN);
+    for (String serviceType : serviceTypes) {
+      Optional<TagMetaData> expectedMetaData =
+          tagProfile.getTagMetaData().stream()
+              .filter(meta -> serviceType.equals(meta.getServiceType()))
+              .findFirst();
+      Set<String> expectedTags =
+          tagProfile.getTagMetaData().stream()
+              .filter(meta -> serviceType.equals(meta.getServiceType()))
+              .flatMap(meta -> meta.getTags().stream())
+              .collect(Collectors.toSet());
+      assertEquals(expectedMetaData, tagProfile.getTagMetaDataByServiceType(serviceType));
+      assertEquals(expectedTags, tagProfile.getTagsForServiceType(serviceType));
+    }
+    assertTrue(tagProfile.getTagMetaDataByServiceType(null).isEmpty());
+    assertTrue(tagProfile.getTagsForServiceType("").isEmpty());
+  }
+
+  @ParameterizedTest
+  @ValueSource(strings = {"tag_profile.yaml", "test_tag_profile.yaml"})
+  void tagLookupsMatchScan(String profileName) throws IOException {
+    TagProfile tagProfile = load(profileName);
+    for (String tag : allTagsPlusUnknown(tagProfile)) {
+      Set<Uom> expectedUoms =
+          tagProfile.getTagMetrics().stream()
+              .filter(metric -> tag.equals(metric.getTag()))
+              .map(TagMetric::getUom)
+              .collect(Collectors.toSet());
+      assertEquals(expectedUoms, tagProfile.measurementsByTag(tag), tag);
+      assertEquals(expectedUoms, new HashSet<>(tagProfile.uomsForTag(tag)), tag);
+      assertEquals(!expectedUoms.isEmpty(), tagProfile.tagIsPrometheusEnabled(tag), tag);
+    }
+  }
+
+  @ParameterizedTest
+  @ValueSource(strings = {"tag_profile.yaml", "test_tag_profile.yaml"})
+  void lookupResultsAreUnmodifiable(String profileName) throws IOException {
+    TagProfile tagProfile = load(profileName);
+    String engId = engIdsPlusUnknown(tagProfile).get(0);
+    String serviceType = tagProfile.getServiceTypes().iterator().next();
+    List<Set<String>> results =
+        List.of(
+            tagProfile.getTagsByEngProduct(engId),
+            tagProfile.getTagsByEngProduct(UNKNOWN),
+            tagProfile.getEngProductIdToSwatchProductIdsMap().get(Integer.parseInt(engId)),
+            tagProfile.getTagsForServiceType(serviceType),
+            tagProfile.getServiceTypes(),
+            tagProfile.getTagsWithPrometheusEnabledLookup());
+    for (Set<String> result : results) {
+      assertThrows(UnsupportedOperationException.class, () -> result.add(UNKNOWN));
+    }
+    assertThrows(
+        UnsupportedOperationException.class,
+        () -> tagProfile.getEngProductIdToSwatchProductIdsMap().clear());
+    assertThrows(
+        UnsupportedOperationException.class, () -> tagProfile.getRoleToTagLookup().clear());
+  }
+
+  @ParameterizedTest
+  @ValueSource(strings = {"tag_profile.yaml", "test_tag_profile.yaml"})
+  void lookupsAreNotAffectedByLaterChangesToTheProfile(String profileName) throws IOException {
+    TagProfile tagProfile = load(profileName);
+    String engId = engIdsPlusUnknown(tagProfile).get(0);
+    Set<String> before = Set.copyOf(tagProfile.getTagsByEngProduct(engId));
+
+    tagProfile.getTagMappings().stream()
+        .filter(mapping -> engId.equals(mapping.getValue()))
+        .forEach(mapping -> mapping.setTags(Set.of(UNKNOWN)));
+
+    assertEquals(before, tagProfile.getTagsByEngProduct(engId));
+  }
+
+  @ParameterizedTest
+  @ValueSource(strings = {"tag_profile.yaml", "test_tag_profile.yaml"})
+  void duplicateEngProductIdFailsWhenLookupsAreBuilt(String profileName) throws IOException {
+    TagProfile tagProfile = load(profileName);
+    String engId = engIdsPlusUnknown(tagProfile).get(0);
+    List<TagMapping> mappings = new ArrayList<>(tagProfile.getTagMappings());
+    mappings.add(TagMapping.builder().value(engId).valueType("engId").tags(Set.of("x")).build());
+    tagProfile.setTagMappings(mappings);
+
+    assertThrows(IllegalStateException.class, tagProfile::initLookups);
+  }
+
+  private static TagProfile load(String profileName) throws IOException {
+    Yaml parser = new Yaml(new Constructor(TagProfile.class));
+    try (InputStream stream =
+        TagProfileIndexTest.class.getClassLoader().getResourceAsStream(profileName)) {
+      TagProfile tagProfile = parser.load(stream);
+      tagProfile.initLookups();
+      return tagProfile;
+    }
+  }
+
+  private static List<String> engIdsPlusUnknown(TagProfile tagProfile) {
+    List<String> engIds =
+        tagProfile.getTagMappings().stream()
+            .filter(mapping -> "engId".equals(mapping.getValueType()))
+            .map(TagMapping::getValue)
+            .collect(Collectors.toList());
+    engIds.add(UNKNOWN);
+    return engIds;
+  }
+
+  private static Set<String> allTagsPlusUnknown(TagProfile tagProfile) {
+    Set<String> tags =
+        Stream.of(
+                tagProfile.getTagMappings().stream().flatMap(m -> m.getTags().stream()),
+                tagProfile.getTagMetrics().stream().map(TagMetric::getTag),
+                tagProfile.getTagMetaData().stream().flatMap(m -> m.getTags().stream()))
+            .flatMap(s -> s)
+            .collect(Collectors.toSet());
+    tags.addAll(Arrays.asList(UNKNOWN, ""));
+    return tags;
+  }
+}
@@ -165,6 +165,7 @@ class TagProfileTest {
   @Test
   void testGetTagMetricByProductTagAndUomThrowsExceptionWhenDuplicateDefined() {
     tagProfile.getTagMetrics().add(tagProfile.getTagMetric("OpenShift-metrics", Uom.CORES).get());
+    tagProfile.initLookups();
 
     assertThrows(
         IllegalStateException.class, () -> tagProfile.getTagMetric("OpenShift-metrics", Uom.CORES));
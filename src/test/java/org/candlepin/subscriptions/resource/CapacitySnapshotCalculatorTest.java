@@ -0,0 +1,148 @@
+/*
+ * Copyright Red Hat, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ *
+ * Red Hat trademarks are not licensed under GPLv3. No permission is
+ * granted to use or replicate Red Hat trademarks that are incorporated
+ * in this software or its documentation.
+ */
+package org.candlepin.subscriptions.resource;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Collectors;
+import java.util.stream.LongStream;
+import org.candlepin.subscriptions.db.model.SubscriptionCapacity;
+import org.candlepin.subscriptions.utilization.api.model.CapacitySnapshot;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.MethodSource;
+
+class CapacitySnapshotCalculatorTest {
+
+  private static final OffsetDateTime START = OffsetDateTime.parse("2021-01-01T00:00:00Z");
+
+  private final CapacityResource resource = new CapacityResource(null, null, null, null);
+
+  static LongStream seeds() {
+    return LongStream.range(0, 200);
+  }
+
+  /** Property: for any capacities and dates, the sweep matches scanning each date separately. */
+  @ParameterizedTest
+  @MethodSource("seeds")
+  void testMatchesPerDateScan(long seed) {
+    Random random = new Random(seed);
+    List<OffsetDateTime> dates = randomDates(random);
+    List<SubscriptionCapacity> capacities = new ArrayList<>();
+    int capacityCount = random.nextInt(50);
+    for (int i = 0; i < capacityCount; i++) {
+      capacities.add(randomCapacity(random, dates));
+    }
+
+    List<CapacitySnapshot> expected =
+        dates.stream()
+            .map(date -> resource.createCapacitySnapshot(date, capacities))
+            .collect(Collectors.toList());
+
+    assertEquals(expected, CapacitySnapshotCalculator.calculate(dates, capacities));
+  }
+
+  @Test
+  void testBoundariesAreExclusive() {
+    SubscriptionCapacity capacity = new SubscriptionCapacity();
+    capacity.setBeginDate(START.plusDays(1));
+    capacity.setEndDate(START.plusDays(3));
+    capacity.setPhysicalSockets(2);
+    capacity.setHasUnlimitedUsage(true);
+    List<OffsetDateTime> dates =
+        List.of(START, START.plusDays(1), START.plusDays(2), START.plusDays(3), START.plusDays(4));
+
+    List<CapacitySnapshot> snapshots =
+        CapacitySnapshotCalculator.calculate(dates, List.of(capacity));
+
+    assertEquals(List.of(0, 0, 2, 0, 0), sockets(snapshots));
+    assertTrue(snapshots.get(2).getHasInfiniteQuantity());
+  }
+
+  @Test
+  void testComparesInstantsAcrossOffsets() {
+    SubscriptionCapacity capacity = new SubscriptionCapacity();
+    capacity.setBeginDate(START.minusHours(1));
+    capacity.setEndDate(START.withOffsetSameInstant(ZoneOffset.ofHours(5)).plusHours(1));
+    capacity.setVirtualCores(4);
+
+    List<CapacitySnapshot> snapshots =
+        CapacitySnapshotCalculator.calculate(List.of(START), List.of(capacity));
+
+    assertEquals(4, snapshots.get(0).getCores());
+    assertEquals(4, snapshots.get(0).getHypervisorCores());
+  }
+
+  private static List<Integer> sockets(List<CapacitySnapshot> snapshots) {
+    return snapshots.stream().map(CapacitySnapshot::getSockets).collect(Collectors.toList());
+  }
+
+  private static List<OffsetDateTime> randomDates(Random random) {
+    List<OffsetDateTime> dates = new ArrayList<>();
+    int count = random.nextInt(40);
+    int stepHours = 1 + random.nextInt(48);
+    for (int i = 0; i < count; i++) {
+      dates.add(START.plusHours((long) i * stepHours));
+    }
+    return dates;
+  }
+
+  private static SubscriptionCapacity randomCapacity(Random random, List<OffsetDateTime> dates) {
+    SubscriptionCapacity capacity = new SubscriptionCapacity();
+    OffsetDateTime begin = randomInstant(random, dates);
+    OffsetDateTime end = randomInstant(random, dates);
+    if (random.nextInt(10) > 0 && end.isBefore(begin)) {
+      // mostly well-formed ranges, occasionally inverted ones
+      OffsetDateTime swap = begin;
+      begin = end;
+      end = swap;
+    }
+    capacity.setBeginDate(begin);
+    capacity.setEndDate(end);
+    capacity.setPhysicalSockets(randomQuantity(random));
+    capacity.setVirtualSockets(randomQuantity(random));
+    capacity.setPhysicalCores(randomQuantity(random));
+    capacity.setVirtualCores(randomQuantity(random));
+    capacity.setHasUnlimitedUsage(random.nextInt(3) == 0 ? null : random.nextInt(5) == 0);
+    return capacity;
+  }
+
+  /** Pick a time that is frequently exactly one of the report dates, to exercise the boundaries. */
+  private static OffsetDateTime randomInstant(Random random, List<OffsetDateTime> dates) {
+    if (!dates.isEmpty() && random.nextBoolean()) {
+      OffsetDateTime date = dates.get(random.nextInt(dates.size()));
+      return random.nextBoolean()
+          ? date
+          : date.withOffsetSameInstant(ZoneOffset.ofHours(random.nextInt(25) - 12));
+    }
+    return START.plusMinutes(random.nextInt(60 * 24 * 90) - 60 * 24 * 5L);
+  }
+
+  private static Integer randomQuantity(Random random) {
+    return random.nextInt(4) == 0 ? null : random.nextInt(100);
+  }
+}
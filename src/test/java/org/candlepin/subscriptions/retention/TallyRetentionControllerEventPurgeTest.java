@@ -0,0 +1,187 @@
+/*
+ * Copyright Red Hat, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ *
+ * Red Hat trademarks are not licensed under GPLv3. No permission is
+ * granted to use or replicate Red Hat trademarks that are incorporated
+ * in this software or its documentation.
+ */
+package org.candlepin.subscriptions.retention;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import java.time.Duration;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+import org.candlepin.subscriptions.db.AccountListSource;
+import org.candlepin.subscriptions.db.EventRecordRepository;
+import org.candlepin.subscriptions.db.model.EventRecord;
+import org.candlepin.subscriptions.json.Event;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.context.annotation.ComponentScan;
+import org.springframework.test.context.ActiveProfiles;
+
+/** Exercises the chunked purge against a seeded events table in the test database. */
+@SpringBootTest
+@ActiveProfiles("test")
+class TallyRetentionControllerEventPurgeTest {
+  @TestConfiguration
+  @ComponentScan(basePackages = "org.candlepin.subscriptions.retention")
+  public static class RetentionConfiguration {
+    /* Intentionally empty */
+  }
+
+  private static final OffsetDateTime CUTOFF =
+      OffsetDateTime.of(2021, 6, 1, 0, 0, 0, 0, ZoneOffset.UTC);
+  private static final int OLD_EVENTS = 2500;
+  private static final int NEW_EVENTS = 100;
+
+  @Autowired private TallyRetentionController controller;
+  @Autowired private EventRecordRepository repository;
+  @Autowired private EventRecordsRetentionProperties properties;
+  @Autowired private MeterRegistry meterRegistry;
+  @MockBean private TallyRetentionPolicy policy;
+  @MockBean private AccountListSource accountListSource;
+
+  private double deletedBefore;
+
+  @BeforeEach
+  void setup() {
+    properties.setChunkedPurge(true);
+    properties.setPurgeChunkSize(100);
+    properties.setPurgeChunkPause(Duration.ZERO);
+    properties.setPurgeMaxRuntime(Duration.ofMinutes(5));
+    deletedBefore = meterRegistry.counter("rhsm-subscriptions.events.purge.deleted").count();
+
+    List<EventRecord> records = new ArrayList<>();
+    for (int i = 0; i < OLD_EVENTS; i++) {
+      // several events share each timestamp, as they do for a batch of metering events
+      records.add(new EventRecord(event(CUTOFF.minusMinutes(1 + i / 7L))));
+    }
+    for (int i = 0; i < NEW_EVENTS; i++) {
+      records.add(new EventRecord(event(CUTOFF.plusMinutes(i))));
+    }
+    records.add(new EventRecord(event(CUTOFF)));
+    repository.saveAll(records);
+    repository.flush();
+  }
+
+  @AfterEach
+  void cleanup() {
+    repository.deleteAllInBatch();
+    properties.setChunkedPurge(false);
+  }
+
+  @Test
+  void testChunkedPurgeDeletesOnlyEventsBeforeCutoff() {
+    controller.purgeOldEventRecordsInChunks(CUTOFF);
+
+    assertEquals(NEW_EVENTS + 1, repository.count());
+    assertTrue(repository.findAll().stream().noneMatch(e -> e.getTimestamp().isBefore(CUTOFF)));
+    assertEquals(OLD_EVENTS, deleted());
+    assertTrue(meterRegistry.timer("rhsm-subscriptions.events.purge.chunk").count() >= 20);
+  }
+
+  @Test
+  void testChunkedPurgeResumesWhereItStopped() {
+    // the pause after the first chunk outlasts the max runtime
+    properties.setPurgeChunkPause(Duration.ofMillis(300));
+    properties.setPurgeMaxRuntime(Duration.ofMillis(100));
+    controller.purgeOldEventRecordsInChunks(CUTOFF);
+
+    long firstChunk = (long) deleted();
+    assertEquals(100, firstChunk, "expected a single chunk");
+    assertEquals(OLD_EVENTS + NEW_EVENTS + 1 - firstChunk, repository.count());
+
+    properties.setPurgeChunkPause(Duration.ZERO);
+    properties.setPurgeMaxRuntime(Duration.ofMinutes(5));
+    controller.purgeOldEventRecordsInChunks(CUTOFF);
+    assertEquals(NEW_EVENTS + 1, repository.count());
+    assertEquals(OLD_EVENTS, deleted());
+  }
+
+  @Test
+  void testChunkedPurgeBoundsChunksOfEventsSharingATimestamp() {
+    OffsetDateTime sharedTimestamp = CUTOFF.minusDays(1);
+    List<EventRecord> records = new ArrayList<>();
+    for (int i = 0; i < 1000; i++) {
+      records.add(new EventRecord(event(sharedTimestamp)));
+    }
+    repository.saveAll(records);
+    repository.flush();
+
+    // the pause after the first chunk outlasts the max runtime
+    properties.setPurgeChunkPause(Duration.ofMillis(300));
+    properties.setPurgeMaxRuntime(Duration.ofMillis(100));
+    for (int run = 1; run <= 10; run++) {
+      controller.purgeOldEventRecordsInChunks(CUTOFF);
+      assertEquals(100 * run, deleted());
+    }
+    // the shared timestamp is the oldest, so those events went first
+    assertTrue(
+        repository.findAll().stream().noneMatch(e -> e.getTimestamp().isEqual(sharedTimestamp)));
+    assertEquals(OLD_EVENTS + NEW_EVENTS + 1, repository.count());
+  }
+
+  @Test
+  void testChunkedPurgeStopsAtMaxRuntime() {
+    properties.setPurgeMaxRuntime(Duration.ZERO);
+    controller.purgeOldEventRecordsInChunks(CUTOFF);
+    assertEquals(OLD_EVENTS + NEW_EVENTS + 1, repository.count());
+
+    properties.setPurgeMaxRuntime(Duration.ofMinutes(5));
+    controller.purgeOldEventRecordsInChunks(CUTOFF);
+    assertEquals(NEW_EVENTS + 1, repository.count());
+  }
+
+  @Test
+  void testPurgeWithoutPartitionedEventsTable() {
+    assertFalse(repository.isEventsTablePartitioned());
+
+    controller.purgeOldEventRecords();
+    assertEquals(0, repository.count());
+  }
+
+  private double deleted() {
+    return meterRegistry.counter("rhsm-subscriptions.events.purge.deleted").count()
+        - deletedBefore;
+  }
+
+  private static Event event(OffsetDateTime timestamp) {
+    Event event = new Event();
+    event.setEventId(UUID.randomUUID());
+    event.setAccountNumber("account123");
+    event.setTimestamp(timestamp);
+    event.setInstanceId(UUID.randomUUID().toString());
+    event.setEventSource("SOURCE");
+    event.setServiceType("SERVICE_TYPE");
+    event.setEventType("TYPE");
+    event.setDisplayName(Optional.empty());
+    return event;
+  }
+}
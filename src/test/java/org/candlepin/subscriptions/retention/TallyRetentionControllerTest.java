@@ -28,6 +28,7 @@ import java.time.ZoneId;
 import java.util.Arrays;
 import java.util.List;
 import org.candlepin.subscriptions.db.AccountListSource;
+import org.candlepin.subscriptions.db.EventRecordRepository;
 import org.candlepin.subscriptions.db.TallySnapshotRepository;
 import org.candlepin.subscriptions.db.model.Granularity;
 import org.junit.jupiter.api.Test;
@@ -50,6 +51,7 @@ class TallyRetentionControllerTest {
   @MockBean private TallyRetentionPolicy policy;
   @MockBean private TallySnapshotRepository repository;
   @MockBean private AccountListSource accountListSource;
+  @MockBean private EventRecordRepository eventRecordRepository;
 
   @Autowired private TallyRetentionController controller;
 
@@ -85,4 +87,13 @@ class TallyRetentionControllerTest {
         .deleteAllByAccountNumberAndGranularityAndSnapshotDateBefore(
             anyString(), eq(Granularity.DAILY), eq(cutoff));
   }
+
+  @Test
+  void testPurgeOldEventRecordsLeavesPartitionsAlone() {
+    controller.purgeOldEventRecords();
+
+    verify(eventRecordRepository, never()).createEventPartitions(any(), any());
+    verify(eventRecordRepository, never()).dropEventPartitionsBefore(any());
+    verify(eventRecordRepository).deleteEventRecordsByTimestampBefore(any());
+  }
 }
@@ -0,0 +1,192 @@
+/*
+ * Copyright Red Hat, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ *
+ * Red Hat trademarks are not licensed under GPLv3. No permission is
+ * granted to use or replicate Red Hat trademarks that are incorporated
+ * in this software or its documentation.
+ */
+package org.candlepin.subscriptions.rhmarketplace;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.time.Duration;
+import java.time.OffsetDateTime;
+import java.util.List;
+import org.candlepin.subscriptions.FixedClockConfiguration;
+import org.candlepin.subscriptions.db.RhMarketplacePendingBatchRepository;
+import org.candlepin.subscriptions.db.model.RhMarketplacePendingBatch;
+import org.candlepin.subscriptions.rhmarketplace.api.model.StatusResponse;
+import org.candlepin.subscriptions.util.ApplicationClock;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.scheduling.TaskScheduler;
+
+class RhMarketplaceBatchVerifierTest {
+
+  private final ApplicationClock clock = new FixedClockConfiguration().fixedClock();
+  private final RhMarketplacePendingBatchRepository pendingBatchRepository =
+      mock(RhMarketplacePendingBatchRepository.class);
+  private final TaskScheduler scheduler = mock(TaskScheduler.class);
+  private StubRhMarketplaceApi api;
+  private MeterRegistry registry;
+  private RhMarketplaceProperties properties;
+  private RhMarketplaceBatchVerifier verifier;
+
+  @BeforeEach
+  void setup() {
+    api = spy(new StubRhMarketplaceApi());
+    registry = new SimpleMeterRegistry();
+    properties = new RhMarketplaceProperties();
+    properties.setVerifyBatches(true);
+    properties.setAsyncBatchVerification(true);
+    properties.setBatchVerificationInterval(Duration.ofSeconds(30));
+    properties.setBatchVerificationTimeout(Duration.ofMinutes(15));
+    verifier = verifier();
+    verifier.start();
+  }
+
+  private RhMarketplaceBatchVerifier verifier() {
+    return new RhMarketplaceBatchVerifier(
+        new RhMarketplaceService(properties, api),
+        pendingBatchRepository,
+        properties,
+        clock,
+        scheduler,
+        registry);
+  }
+
+  @AfterEach
+  void tearDown() {
+    verifier.shutdown();
+  }
+
+  private RhMarketplacePendingBatch pendingBatch(String batchId, OffsetDateTime submittedAt) {
+    RhMarketplacePendingBatch batch =
+        new RhMarketplacePendingBatch(batchId, submittedAt, clock.now(), 0);
+    when(pendingBatchRepository.claimBatchesDueForVerification(any(), any(), anyInt()))
+        .thenReturn(List.of(batch));
+    return batch;
+  }
+
+  private double count(String name) {
+    return registry.counter("rhsm-subscriptions.rh-marketplace.batch." + name).count();
+  }
+
+  @Test
+  void testVerificationIsScheduledAtInterval() {
+    verify(scheduler).scheduleWithFixedDelay(any(), eq(Duration.ofSeconds(30)));
+  }
+
+  @Test
+  void testNothingIsScheduledWhenAsyncVerificationDisabled() {
+    properties.setAsyncBatchVerification(false);
+    RhMarketplaceBatchVerifier syncVerifier = verifier();
+    syncVerifier.start();
+
+    assertEquals(0, syncVerifier.verifyPendingBatches());
+    syncVerifier.shutdown();
+
+    // only the verifier created in setup schedules a check
+    verify(scheduler, times(1)).scheduleWithFixedDelay(any(), any(Duration.class));
+    verifyNoInteractions(pendingBatchRepository);
+  }
+
+  @Test
+  void testAcceptedBatchIsRemoved() {
+    RhMarketplacePendingBatch batch = pendingBatch("b1", clock.now().minusMinutes(1));
+
+    assertEquals(1, verifier.verifyPendingBatches());
+
+    verify(api).getUsageBatchStatus("b1");
+    verify(pendingBatchRepository).delete(batch);
+    assertEquals(1.0, count("accepted"));
+    assertEquals(
+        1L,
+        registry
+            .timer("rhsm-subscriptions.rh-marketplace.batch.verification.latency")
+            .count());
+  }
+
+  @Test
+  void testInProgressBatchIsRescheduled() throws ApiException {
+    RhMarketplacePendingBatch batch = pendingBatch("b1", clock.now().minusMinutes(1));
+    doReturn(new StatusResponse().status(RhMarketplaceProducer.IN_PROGRESS_STATUS))
+        .when(api)
+        .getUsageBatchStatus("b1");
+
+    verifier.verifyPendingBatches();
+
+    verify(pendingBatchRepository).save(batch);
+    verify(pendingBatchRepository, never()).delete(any());
+    assertEquals(1, batch.getAttempts());
+    assertEquals(clock.now().plusSeconds(30), batch.getNextCheckAt());
+    assertEquals(0.0, count("accepted"));
+  }
+
+  @Test
+  void testInProgressBatchPastTimeoutIsUnverified() throws ApiException {
+    RhMarketplacePendingBatch batch = pendingBatch("b1", clock.now().minusMinutes(20));
+    doReturn(new StatusResponse().status(RhMarketplaceProducer.IN_PROGRESS_STATUS))
+        .when(api)
+        .getUsageBatchStatus("b1");
+
+    verifier.verifyPendingBatches();
+
+    verify(pendingBatchRepository).delete(batch);
+    assertEquals(1.0, count("unverified"));
+  }
+
+  @Test
+  void testFailedBatchIsRejected() throws ApiException {
+    RhMarketplacePendingBatch batch = pendingBatch("b1", clock.now().minusMinutes(1));
+    doReturn(new StatusResponse().status(RhMarketplaceProducer.FAILED_STATUS))
+        .when(api)
+        .getUsageBatchStatus("b1");
+
+    verifier.verifyPendingBatches();
+
+    verify(pendingBatchRepository).delete(batch);
+    assertEquals(1.0, count("rejected"));
+  }
+
+  @Test
+  void testApiErrorIsCountedAndRescheduled() throws ApiException {
+    RhMarketplacePendingBatch batch = pendingBatch("b1", clock.now().minusMinutes(1));
+    doThrow(new ApiException()).when(api).getUsageBatchStatus("b1");
+
+    verifier.verifyPendingBatches();
+
+    verify(pendingBatchRepository).save(batch);
+    assertEquals(1.0, count("verification.errors"));
+  }
+
+  @Test
+  void testPendingGaugeReflectsRemainingBatches() {
+    when(pendingBatchRepository.claimBatchesDueForVerification(any(), any(), anyInt()))
+        .thenReturn(List.of());
+    when(pendingBatchRepository.count()).thenReturn(7L);
+
+    verifier.verifyPendingBatches();
+
+    assertEquals(
+        7.0, registry.get("rhsm-subscriptions.rh-marketplace.batch.pending").gauge().value());
+  }
+}
@@ -26,16 +26,26 @@ import static org.mockito.Mockito.*;
 
 import io.micrometer.core.instrument.MeterRegistry;
 import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.util.List;
+import org.candlepin.subscriptions.FixedClockConfiguration;
+import org.candlepin.subscriptions.db.RhMarketplacePendingBatchRepository;
+import org.candlepin.subscriptions.db.model.RhMarketplacePendingBatch;
 import org.candlepin.subscriptions.exception.SubscriptionsException;
 import org.candlepin.subscriptions.rhmarketplace.api.model.BatchStatus;
 import org.candlepin.subscriptions.rhmarketplace.api.model.StatusResponse;
 import org.candlepin.subscriptions.rhmarketplace.api.model.UsageRequest;
+import org.candlepin.subscriptions.util.ApplicationClock;
 import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
 import org.springframework.retry.support.RetryTemplate;
 import org.springframework.retry.support.RetryTemplateBuilder;
 
 class RhMarketplaceProducerTest {
 
+  private final RhMarketplacePendingBatchRepository pendingBatchRepository =
+      mock(RhMarketplacePendingBatchRepository.class);
+  private final ApplicationClock clock = new FixedClockConfiguration().fixedClock();
+
   @Test
   void testMarketplaceProducerRetry() throws Exception {
     RetryTemplate retryTemplate = new RetryTemplateBuilder().maxAttempts(2).noBackoff().build();
@@ -43,7 +53,12 @@ class RhMarketplaceProducerTest {
     MeterRegistry registry = new SimpleMeterRegistry();
     RhMarketplaceProducer rhMarketplaceProducer =
         new RhMarketplaceProducer(
-            rhMarketplaceService, retryTemplate, registry, new RhMarketplaceProperties());
+            rhMarketplaceService,
+            retryTemplate,
+            registry,
+            new RhMarketplaceProperties(),
+            pendingBatchRepository,
+            clock);
     var rejectedCounter = registry.counter("rhsm-subscriptions.rh-marketplace.batch.rejected");
 
     when(rhMarketplaceService.submitUsageEvents(any())).thenThrow(SubscriptionsException.class);
@@ -63,7 +78,12 @@ class RhMarketplaceProducerTest {
     MeterRegistry registry = new SimpleMeterRegistry();
     RhMarketplaceProducer rhMarketplaceProducer =
         new RhMarketplaceProducer(
-            rhMarketplaceService, retryTemplate, registry, new RhMarketplaceProperties());
+            rhMarketplaceService,
+            retryTemplate,
+            registry,
+            new RhMarketplaceProperties(),
+            pendingBatchRepository,
+            clock);
     var acceptedCounter = registry.counter("rhsm-subscriptions.rh-marketplace.batch.accepted");
 
     when(rhMarketplaceService.submitUsageEvents(any()))
@@ -87,7 +107,12 @@ class RhMarketplaceProducerTest {
     MeterRegistry registry = new SimpleMeterRegistry();
     RhMarketplaceProducer rhMarketplaceProducer =
         new RhMarketplaceProducer(
-            rhMarketplaceService, retryTemplate, registry, new RhMarketplaceProperties());
+            rhMarketplaceService,
+            retryTemplate,
+            registry,
+            new RhMarketplaceProperties(),
+            pendingBatchRepository,
+            clock);
     var unverifiedCounter = registry.counter("rhsm-subscriptions.rh-marketplace.batch.unverified");
 
     when(rhMarketplaceService.submitUsageEvents(any()))
@@ -112,7 +137,12 @@ class RhMarketplaceProducerTest {
     MeterRegistry registry = new SimpleMeterRegistry();
     RhMarketplaceProducer rhMarketplaceProducer =
         new RhMarketplaceProducer(
-            rhMarketplaceService, retryTemplate, registry, new RhMarketplaceProperties());
+            rhMarketplaceService,
+            retryTemplate,
+            registry,
+            new RhMarketplaceProperties(),
+            pendingBatchRepository,
+            clock);
     var rejectedCounter = registry.counter("rhsm-subscriptions.rh-marketplace.batch.rejected");
 
     when(rhMarketplaceService.submitUsageEvents(any()))
@@ -137,7 +167,13 @@ class RhMarketplaceProducerTest {
     var properties = new RhMarketplaceProperties();
     properties.setAmendmentNotSupportedMarker("(amendments) is not available");
     RhMarketplaceProducer rhMarketplaceProducer =
-        new RhMarketplaceProducer(rhMarketplaceService, retryTemplate, registry, properties);
+        new RhMarketplaceProducer(
+            rhMarketplaceService,
+            retryTemplate,
+            registry,
+            properties,
+            pendingBatchRepository,
+            clock);
     when(rhMarketplaceService.submitUsageEvents(any()))
         .thenReturn(
             new StatusResponse()
@@ -154,4 +190,40 @@ class RhMarketplaceProducerTest {
     verify(rhMarketplaceService, times(1)).submitUsageEvents(any());
     verifyNoMoreInteractions(rhMarketplaceService);
   }
+
+  @Test
+  @SuppressWarnings("unchecked")
+  void testMarketplaceProducerRecordsPendingBatchWhenVerifyingAsync() throws ApiException {
+    RetryTemplate retryTemplate = new RetryTemplateBuilder().maxAttempts(2).noBackoff().build();
+    RhMarketplaceService rhMarketplaceService = mock(RhMarketplaceService.class);
+    MeterRegistry registry = new SimpleMeterRegistry();
+    var properties = new RhMarketplaceProperties();
+    properties.setAsyncBatchVerification(true);
+    RhMarketplaceProducer rhMarketplaceProducer =
+        new RhMarketplaceProducer(
+            rhMarketplaceService,
+            retryTemplate,
+            registry,
+            properties,
+            pendingBatchRepository,
+            clock);
+
+    when(rhMarketplaceService.submitUsageEvents(any()))
+        .thenReturn(
+            new StatusResponse()
+                .status("inprogress")
+                .addDataItem(new BatchStatus().batchId("foo")));
+
+    var usageRequest = new UsageRequest();
+    rhMarketplaceProducer.submitUsageRequest(usageRequest);
+
+    ArgumentCaptor<List<RhMarketplacePendingBatch>> captor = ArgumentCaptor.forClass(List.class);
+    verify(pendingBatchRepository).saveAll(captor.capture());
+    RhMarketplacePendingBatch pending = captor.getValue().get(0);
+    assertEquals("foo", pending.getBatchId());
+    assertEquals(clock.now(), pending.getSubmittedAt());
+    assertEquals(
+        clock.now().plus(properties.getBatchVerificationInterval()), pending.getNextCheckAt());
+    verify(rhMarketplaceService, never()).getUsageBatchStatus(any());
+  }
 }
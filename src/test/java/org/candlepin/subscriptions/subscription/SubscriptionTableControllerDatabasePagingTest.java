@@ -0,0 +1,298 @@
+/*
+ * Copyright Red Hat, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ *
+ * Red Hat trademarks are not licensed under GPLv3. No permission is
+ * granted to use or replicate Red Hat trademarks that are incorporated
+ * in this software or its documentation.
+ */
+package org.candlepin.subscriptions.subscription;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.time.OffsetDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Stream;
+import lombok.extern.slf4j.Slf4j;
+import org.candlepin.subscriptions.ApplicationProperties;
+import org.candlepin.subscriptions.db.OfferingRepository;
+import org.candlepin.subscriptions.db.SubscriptionCapacityRepository;
+import org.candlepin.subscriptions.db.SubscriptionRepository;
+import org.candlepin.subscriptions.db.model.BillingProvider;
+import org.candlepin.subscriptions.db.model.Offering;
+import org.candlepin.subscriptions.db.model.ServiceLevel;
+import org.candlepin.subscriptions.db.model.Subscription;
+import org.candlepin.subscriptions.db.model.SubscriptionCapacity;
+import org.candlepin.subscriptions.db.model.Usage;
+import org.candlepin.subscriptions.resource.SubscriptionTableController;
+import org.candlepin.subscriptions.security.WithMockRedHatPrincipal;
+import org.candlepin.subscriptions.util.ApplicationClock;
+import org.candlepin.subscriptions.utilization.api.model.ProductId;
+import org.candlepin.subscriptions.utilization.api.model.ServiceLevelType;
+import org.candlepin.subscriptions.utilization.api.model.SkuCapacity;
+import org.candlepin.subscriptions.utilization.api.model.SkuCapacityReport;
+import org.candlepin.subscriptions.utilization.api.model.SkuCapacityReportSort;
+import org.candlepin.subscriptions.utilization.api.model.SkuCapacitySubscription;
+import org.candlepin.subscriptions.utilization.api.model.SortDirection;
+import org.candlepin.subscriptions.utilization.api.model.Uom;
+import org.candlepin.subscriptions.utilization.api.model.UsageType;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.Arguments;
+import org.junit.jupiter.params.provider.MethodSource;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.transaction.annotation.Transactional;
+
+/**
+ * Verifies that the database-paged SKU capacity report returns the same results as the in-memory
+ * implementation, for every sort field, against a real (HSQLDB) database.
+ */
+@Slf4j
+@SpringBootTest
+@Transactional
+@ActiveProfiles({"api", "test"})
+@WithMockRedHatPrincipal("123456")
+class SubscriptionTableControllerDatabasePagingTest {
+
+  private static final String OWNER_ID = "owner123456";
+  private static final String ACCOUNT_NUMBER = "account123456";
+  private static final ServiceLevel[] SERVICE_LEVELS = {
+    ServiceLevel.PREMIUM, ServiceLevel.STANDARD, ServiceLevel.EMPTY, ServiceLevel.SELF_SUPPORT
+  };
+  private static final Usage[] USAGES = {
+    Usage.DEVELOPMENT_TEST, Usage.PRODUCTION, Usage.DISASTER_RECOVERY, Usage.EMPTY
+  };
+  private static final int PAGE_SIZE = 7;
+
+  @Autowired SubscriptionTableController subscriptionTableController;
+  @Autowired SubscriptionRepository subscriptionRepository;
+  @Autowired SubscriptionCapacityRepository subscriptionCapacityRepository;
+  @Autowired OfferingRepository offeringRepository;
+  @Autowired ApplicationProperties applicationProperties;
+  @Autowired ApplicationClock clock;
+
+  @AfterEach
+  void resetPaging() {
+    applicationProperties.setSkuCapacityDatabasePagingEnabled(false);
+  }
+
+  static Stream<Arguments> sortFieldsAndDirections() {
+    List<Arguments> arguments = new ArrayList<>();
+    for (SkuCapacityReportSort sort : SkuCapacityReportSort.values()) {
+      for (SortDirection dir : SortDirection.values()) {
+        arguments.add(Arguments.of(sort, dir));
+      }
+    }
+    arguments.add(Arguments.of(null, null));
+    return arguments.stream();
+  }
+
+  @ParameterizedTest
+  @MethodSource("sortFieldsAndDirections")
+  void databasePagesMatchInMemorySort(SkuCapacityReportSort sort, SortDirection dir) {
+    seed(45, 3);
+
+    SkuCapacityReport expected = inMemoryReport(null, null, null, sort, dir);
+    List<SkuCapacity> actual = databasePages(null, null, null, sort, dir, expected);
+
+    assertEquals(45, expected.getData().size());
+    assertEquals(normalize(expected.getData()), normalize(actual));
+  }
+
+  @Test
+  void databasePagesMatchInMemorySortWithFilters() {
+    seed(45, 2);
+
+    for (Uom uom : Uom.values()) {
+      SkuCapacityReport expected =
+          inMemoryReport(
+              ServiceLevelType.PREMIUM, null, uom, SkuCapacityReportSort.TOTAL_CAPACITY, null);
+      List<SkuCapacity> actual =
+          databasePages(
+              ServiceLevelType.PREMIUM,
+              null,
+              uom,
+              SkuCapacityReportSort.TOTAL_CAPACITY,
+              null,
+              expected);
+
+      assertTrue(expected.getData().size() > PAGE_SIZE);
+      assertEquals(normalize(expected.getData()), normalize(actual));
+    }
+
+    SkuCapacityReport expected =
+        inMemoryReport(null, UsageType.PRODUCTION, null, SkuCapacityReportSort.QUANTITY, null);
+    List<SkuCapacity> actual =
+        databasePages(
+            null, UsageType.PRODUCTION, null, SkuCapacityReportSort.QUANTITY, null, expected);
+    assertEquals(normalize(expected.getData()), normalize(actual));
+  }
+
+  @Test
+  void databasePageBeyondLastSkuIsEmpty() {
+    seed(10, 1);
+    applicationProperties.setSkuCapacityDatabasePagingEnabled(true);
+
+    SkuCapacityReport report =
+        subscriptionTableController.capacityReportBySku(
+            ProductId.RHEL, 20, 10, null, null, null, null, null);
+
+    assertEquals(10, report.getMeta().getCount());
+    assertTrue(report.getData().isEmpty());
+  }
+
+  @Test
+  void compareLatencyForLargeOrg() {
+    seed(1500, 4);
+
+    // warm up both paths so that statement preparation and class loading aren't measured
+    inMemoryReport(null, null, null, SkuCapacityReportSort.TOTAL_CAPACITY, SortDirection.DESC);
+    applicationProperties.setSkuCapacityDatabasePagingEnabled(true);
+    firstPage(SkuCapacityReportSort.TOTAL_CAPACITY, SortDirection.DESC);
+    applicationProperties.setSkuCapacityDatabasePagingEnabled(false);
+
+    long start = System.nanoTime();
+    SkuCapacityReport inMemory =
+        inMemoryReport(null, null, null, SkuCapacityReportSort.TOTAL_CAPACITY, SortDirection.DESC);
+    long inMemoryNanos = System.nanoTime() - start;
+
+    applicationProperties.setSkuCapacityDatabasePagingEnabled(true);
+    start = System.nanoTime();
+    SkuCapacityReport firstPage =
+        firstPage(SkuCapacityReportSort.TOTAL_CAPACITY, SortDirection.DESC);
+    long databaseNanos = System.nanoTime() - start;
+
+    log.info(
+        "SKU capacity report for {} SKUs: in-memory={}ms, database-paged first page={}ms",
+        inMemory.getMeta().getCount(),
+        inMemoryNanos / 1_000_000,
+        databaseNanos / 1_000_000);
+    assertEquals(inMemory.getMeta().getCount(), firstPage.getMeta().getCount());
+    assertEquals(
+        normalize(inMemory.getData().subList(0, PAGE_SIZE)), normalize(firstPage.getData()));
+  }
+
+  private SkuCapacityReport firstPage(SkuCapacityReportSort sort, SortDirection dir) {
+    return subscriptionTableController.capacityReportBySku(
+        ProductId.RHEL, 0, PAGE_SIZE, null, null, null, sort, dir);
+  }
+
+  /** The in-memory path sorts the whole report when it fits in a single page. */
+  private SkuCapacityReport inMemoryReport(
+      ServiceLevelType sla,
+      UsageType usage,
+      Uom uom,
+      SkuCapacityReportSort sort,
+      SortDirection dir) {
+    applicationProperties.setSkuCapacityDatabasePagingEnabled(false);
+    return subscriptionTableController.capacityReportBySku(
+        ProductId.RHEL, 0, 10_000, sla, usage, uom, sort, dir);
+  }
+
+  private List<SkuCapacity> databasePages(
+      ServiceLevelType sla,
+      UsageType usage,
+      Uom uom,
+      SkuCapacityReportSort sort,
+      SortDirection dir,
+      SkuCapacityReport expected) {
+    applicationProperties.setSkuCapacityDatabasePagingEnabled(true);
+    List<SkuCapacity> items = new ArrayList<>();
+    for (int offset = 0; offset < expected.getMeta().getCount(); offset += PAGE_SIZE) {
+      SkuCapacityReport page =
+          subscriptionTableController.capacityReportBySku(
+              ProductId.RHEL, offset, PAGE_SIZE, sla, usage, uom, sort, dir);
+      assertEquals(expected.getMeta(), page.getMeta());
+      items.addAll(page.getData());
+    }
+    return items;
+  }
+
+  /** Subscriptions within a SKU are not reported in any particular order. */
+  private static List<SkuCapacity> normalize(List<SkuCapacity> items) {
+    items.forEach(
+        item -> item.getSubscriptions().sort(Comparator.comparing(SkuCapacitySubscription::getId)));
+    return items;
+  }
+
+  private void seed(int skuCount, int subscriptionsPerSku) {
+    OffsetDateTime now = clock.now();
+    List<Offering> offerings = new ArrayList<>();
+    List<Subscription> subscriptions = new ArrayList<>();
+    List<SubscriptionCapacity> capacities = new ArrayList<>();
+    for (int i = 0; i < skuCount; i++) {
+      String sku = String.format("SKU%05d", i);
+      boolean unlimited = i % 7 == 0;
+      boolean coresOnly = i % 5 == 0;
+
+      Offering offering = new Offering();
+      offering.setSku(sku);
+      offering.setProductIds(Set.of(69));
+      offering.setProductName("RHEL Server");
+      offering.setDescription("Product " + (i % 9));
+      offerings.add(offering);
+
+      for (int j = 0; j < subscriptionsPerSku; j++) {
+        String subscriptionId = sku + "-" + j;
+        OffsetDateTime begin = now.minusDays(10);
+        OffsetDateTime end = now.plusDays((i * 31L + j * 17L) % 400 + 1);
+
+        Subscription subscription = new Subscription();
+        subscription.setBillingProviderId("bananas");
+        subscription.setSubscriptionId(subscriptionId);
+        subscription.setSubscriptionNumber(subscriptionId + "1");
+        subscription.setOwnerId(OWNER_ID);
+        subscription.setAccountNumber(ACCOUNT_NUMBER);
+        subscription.setQuantity((i * 7L + j) % 13 + 1);
+        subscription.setSku(sku);
+        subscription.setStartDate(begin);
+        subscription.setEndDate(end);
+        subscription.setBillingProvider(BillingProvider.RED_HAT);
+        subscriptions.add(subscription);
+
+        SubscriptionCapacity capacity = new SubscriptionCapacity();
+        capacity.setSubscriptionId(subscriptionId);
+        capacity.setOwnerId(OWNER_ID);
+        capacity.setAccountNumber(ACCOUNT_NUMBER);
+        capacity.setProductId(ProductId.RHEL.toString());
+        capacity.setSku(sku);
+        capacity.setBeginDate(begin);
+        capacity.setEndDate(end);
+        capacity.setServiceLevel(SERVICE_LEVELS[i % SERVICE_LEVELS.length]);
+        capacity.setUsage(USAGES[i % USAGES.length]);
+        capacity.setHasUnlimitedUsage(unlimited);
+        if (!unlimited) {
+          if (!coresOnly) {
+            capacity.setPhysicalSockets((i + j) % 4 * 2 + 2);
+            capacity.setVirtualSockets(i % 3 * 2);
+          }
+          capacity.setPhysicalCores((i + j) % 6 * 4 + 4);
+          capacity.setVirtualCores(i % 4 * 4);
+        }
+        capacities.add(capacity);
+      }
+    }
+    offeringRepository.saveAll(offerings);
+    subscriptionRepository.saveAll(subscriptions);
+    subscriptionCapacityRepository.saveAllAndFlush(capacities);
+  }
+}
@@ -35,6 +35,7 @@ import io.micrometer.core.instrument.Counter;
 import io.micrometer.core.instrument.MeterRegistry;
 import java.io.IOException;
 import java.time.OffsetDateTime;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
@@ -45,14 +46,22 @@ import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Optional;
 import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 import java.util.stream.Stream.Builder;
+import org.candlepin.subscriptions.ApplicationProperties;
 import org.candlepin.subscriptions.db.AccountServiceInventoryRepository;
 import org.candlepin.subscriptions.db.HostRepository;
 import org.candlepin.subscriptions.db.model.*;
+import org.candlepin.subscriptions.inventory.db.InventoryDatabaseOperations;
 import org.candlepin.subscriptions.inventory.db.InventoryRepository;
 import org.candlepin.subscriptions.inventory.db.model.InventoryHostFacts;
+import org.candlepin.subscriptions.tally.facts.FactNormalizer;
 import org.hamcrest.Matchers;
 import org.junit.jupiter.api.Test;
 import org.mockito.ArgumentCaptor;
@@ -80,6 +89,9 @@ class InventoryAccountUsageCollectorTest {
   @MockBean private AccountServiceInventoryRepository accountServiceInventoryRepository;
   @Autowired private InventoryAccountUsageCollector collector;
   @Autowired private MeterRegistry meterRegistry;
+  @Autowired private FactNormalizer factNormalizer;
+  @Autowired private InventoryDatabaseOperations inventoryDatabaseOperations;
+  @Autowired private ApplicationProperties applicationProperties;
 
   @Test
   void hypervisorCountsIgnoredForNonRhelProduct() {
@@ -721,6 +733,309 @@ class InventoryAccountUsageCollectorTest {
     assertEquals(1, accountServiceInventory.getServiceInstances().size());
   }
 
+  @Test
+  void shardedCollectionMatchesSerialCollection() {
+    String account = "A1";
+    List<InventoryHostFacts> hosts = new ArrayList<>();
+    Map<String, String> expectedHypervisorMap = new HashMap<>();
+    for (int i = 0; i < 10; i++) {
+      InventoryHostFacts hypervisor = createHypervisor(account, "O1", TEST_PRODUCT_ID);
+      hypervisor.setSystemProfileCoresPerSocket(i + 1);
+      hypervisor.setSystemProfileSockets(2);
+      hosts.add(hypervisor);
+      expectedHypervisorMap.put(
+          hypervisor.getSubscriptionManagerId(), hypervisor.getSubscriptionManagerId());
+      for (int j = 0; j < 5; j++) {
+        InventoryHostFacts guest =
+            createGuest(hypervisor.getSubscriptionManagerId(), account, "O1", TEST_PRODUCT_ID);
+        guest.setSystemProfileCoresPerSocket(j + 1);
+        guest.setSystemProfileSockets(1);
+        hosts.add(guest);
+      }
+    }
+    for (int i = 0; i < 5; i++) {
+      InventoryHostFacts unmappedGuest = createGuest(null, account, "O1", TEST_PRODUCT_ID);
+      unmappedGuest.setSystemProfileCoresPerSocket(2);
+      unmappedGuest.setSystemProfileSockets(i + 1);
+      hosts.add(unmappedGuest);
+      expectedHypervisorMap.put(unmappedGuest.getHypervisorUuid(), null);
+    }
+    ServiceLevel[] slas = {ServiceLevel.PREMIUM, ServiceLevel.STANDARD, ServiceLevel.EMPTY};
+    Usage[] usages = {Usage.PRODUCTION, Usage.DEVELOPMENT_TEST, Usage.EMPTY};
+    for (int i = 0; i < 30; i++) {
+      InventoryHostFacts physical =
+          createRhsmHost(
+              account,
+              "O1",
+              TEST_PRODUCT_ID.toString(),
+              slas[i % slas.length],
+              usages[i % usages.length],
+              "",
+              OffsetDateTime.now());
+      physical.setSystemProfileCoresPerSocket(i % 4 + 1);
+      physical.setSystemProfileSockets(i % 3 + 1);
+      hosts.add(physical);
+    }
+    hosts.add(
+        createRhsmHost(account, "O1", List.of(NON_RHEL_PRODUCT_ID), "", OffsetDateTime.now()));
+
+    when(inventoryRepo.getReportedHypervisors(List.of(account)))
+        .thenAnswer(
+            invocation ->
+                expectedHypervisorMap.entrySet().stream()
+                    .map(entry -> new Object[] {entry.getKey(), entry.getValue()}));
+    when(inventoryRepo.getFacts(eq(List.of(account)), anyInt()))
+        .thenAnswer(invocation -> hosts.stream());
+
+    ApplicationProperties shardedProps = new ApplicationProperties();
+    shardedProps.setCullingOffsetDays(applicationProperties.getCullingOffsetDays());
+    shardedProps.setHostTallyShards(4);
+    InventoryAccountUsageCollector shardedCollector =
+        new InventoryAccountUsageCollector(
+            factNormalizer,
+            inventoryDatabaseOperations,
+            accountServiceInventoryRepository,
+            hostRepo,
+            shardedProps,
+            meterRegistry);
+
+    Set<String> products = Set.of(TEST_PRODUCT, NON_RHEL);
+    AccountUsageCalculation serial = collector.collect(products, account).get(account);
+    AccountUsageCalculation sharded = shardedCollector.collect(products, account).get(account);
+    shardedCollector.shutdown();
+
+    assertEquals(serial.getOwner(), sharded.getOwner());
+    assertEquals(serial.getProducts(), sharded.getProducts());
+    assertEquals(serial.getKeys(), sharded.getKeys());
+    for (UsageCalculation.Key key : serial.getKeys()) {
+      assertEquals(serial.getCalculation(key).toString(), sharded.getCalculation(key).toString());
+    }
+
+    ArgumentCaptor<AccountServiceInventory> saved =
+        ArgumentCaptor.forClass(AccountServiceInventory.class);
+    verify(accountServiceInventoryRepository, times(2)).save(saved.capture());
+    Map<String, Host> serialHosts = saved.getAllValues().get(0).getServiceInstances();
+    Map<String, Host> shardedHosts = saved.getAllValues().get(1).getServiceInstances();
+    assertEquals(hosts.size(), serialHosts.size());
+    assertEquals(serialHosts.keySet(), shardedHosts.keySet());
+    serialHosts.forEach(
+        (instanceId, host) -> {
+          Host shardedHost = shardedHosts.get(instanceId);
+          assertEquals(host.getBuckets(), shardedHost.getBuckets());
+          assertEquals(host.getNumOfGuests(), shardedHost.getNumOfGuests());
+          assertEquals(host.getMeasurements(), shardedHost.getMeasurements());
+        });
+  }
+
+  @Test
+  void shardedCollectionKeepsLastReadDuplicateHypervisor() {
+    String account = "A1";
+    int shardCount = 4;
+    String hypervisorId = "duplicate-hypervisor";
+    List<InventoryHostFacts> hosts = new ArrayList<>();
+    // Read the duplicates from the last shard to the first, so merging in shard order would keep
+    // the first one read rather than the last.
+    for (int shard : new int[] {3, 2, 0}) {
+      InventoryHostFacts hypervisor = createHypervisor(account, "O1", TEST_PRODUCT_ID);
+      hypervisor.setInventoryId(inventoryIdOnShard(shard, shardCount));
+      hypervisor.setSubscriptionManagerId(hypervisorId);
+      hypervisor.setSystemProfileCoresPerSocket(shard + 1);
+      hypervisor.setSystemProfileSockets(2);
+      hosts.add(hypervisor);
+    }
+    for (int i = 0; i < 3; i++) {
+      InventoryHostFacts guest = createGuest(hypervisorId, account, "O1", TEST_PRODUCT_ID);
+      guest.setSystemProfileCoresPerSocket(i + 1);
+      guest.setSystemProfileSockets(1);
+      hosts.add(guest);
+    }
+
+    when(inventoryRepo.getReportedHypervisors(List.of(account)))
+        .thenAnswer(invocation -> Stream.<Object[]>of(new Object[] {hypervisorId, hypervisorId}));
+    when(inventoryRepo.getFacts(eq(List.of(account)), anyInt()))
+        .thenAnswer(invocation -> hosts.stream());
+
+    ApplicationProperties shardedProps = new ApplicationProperties();
+    shardedProps.setCullingOffsetDays(applicationProperties.getCullingOffsetDays());
+    shardedProps.setHostTallyShards(shardCount);
+    InventoryAccountUsageCollector shardedCollector =
+        new InventoryAccountUsageCollector(
+            factNormalizer,
+            inventoryDatabaseOperations,
+            accountServiceInventoryRepository,
+            hostRepo,
+            shardedProps,
+            meterRegistry);
+
+    AccountUsageCalculation serial = collector.collect(RHEL_PRODUCTS, account).get(account);
+    AccountUsageCalculation sharded = shardedCollector.collect(RHEL_PRODUCTS, account).get(account);
+    shardedCollector.shutdown();
+
+    assertEquals(serial.getKeys(), sharded.getKeys());
+    for (UsageCalculation.Key key : serial.getKeys()) {
+      assertEquals(serial.getCalculation(key).toString(), sharded.getCalculation(key).toString());
+    }
+
+    ArgumentCaptor<AccountServiceInventory> saved =
+        ArgumentCaptor.forClass(AccountServiceInventory.class);
+    verify(accountServiceInventoryRepository, times(2)).save(saved.capture());
+    Map<String, Host> serialHosts = saved.getAllValues().get(0).getServiceInstances();
+    Map<String, Host> shardedHosts = saved.getAllValues().get(1).getServiceInstances();
+    String lastReadHypervisor = hosts.get(2).getInventoryId().toString();
+    assertTrue(serialHosts.containsKey(lastReadHypervisor));
+    assertEquals(serialHosts.keySet(), shardedHosts.keySet());
+    Host serialHypervisor = serialHosts.get(lastReadHypervisor);
+    Host shardedHypervisor = shardedHosts.get(lastReadHypervisor);
+    assertEquals(serialHypervisor.getBuckets(), shardedHypervisor.getBuckets());
+    assertEquals(serialHypervisor.getNumOfGuests(), shardedHypervisor.getNumOfGuests());
+    assertEquals(serialHypervisor.getMeasurements(), shardedHypervisor.getMeasurements());
+  }
+
+  private static UUID inventoryIdOnShard(int shard, int shardCount) {
+    UUID inventoryId;
+    do {
+      inventoryId = UUID.randomUUID();
+    } while (Math.floorMod(inventoryId.toString().hashCode(), shardCount) != shard);
+    return inventoryId;
+  }
+
+  @Test
+  void concurrentShardedCollectionsDoNotBlockEachOther() throws Exception {
+    // Enough hosts per account to fill the shard queues, so readers block until workers drain them.
+    int hostsPerAccount = 5000;
+    List<String> accounts = List.of("A1", "A2");
+    for (String account : accounts) {
+      List<InventoryHostFacts> hosts = new ArrayList<>(hostsPerAccount);
+      for (int i = 0; i < hostsPerAccount; i++) {
+        InventoryHostFacts host =
+            createRhsmHost(account, "O1", List.of(TEST_PRODUCT_ID), "", OffsetDateTime.now());
+        host.setSystemProfileCoresPerSocket(1);
+        host.setSystemProfileSockets(2);
+        hosts.add(host);
+      }
+      mockReportedHypervisors(account, new HashMap<>());
+      when(inventoryRepo.getFacts(eq(List.of(account)), anyInt()))
+          .thenAnswer(invocation -> hosts.stream());
+    }
+
+    ApplicationProperties shardedProps = new ApplicationProperties();
+    shardedProps.setCullingOffsetDays(applicationProperties.getCullingOffsetDays());
+    shardedProps.setHostTallyShards(2);
+    InventoryAccountUsageCollector shardedCollector =
+        new InventoryAccountUsageCollector(
+            factNormalizer,
+            inventoryDatabaseOperations,
+            accountServiceInventoryRepository,
+            hostRepo,
+            shardedProps,
+            meterRegistry);
+
+    ExecutorService callers = Executors.newFixedThreadPool(accounts.size());
+    try {
+      List<Future<Map<String, AccountUsageCalculation>>> results = new ArrayList<>();
+      for (String account : accounts) {
+        results.add(callers.submit(() -> shardedCollector.collect(RHEL_PRODUCTS, account)));
+      }
+      for (int i = 0; i < accounts.size(); i++) {
+        String account = accounts.get(i);
+        AccountUsageCalculation calc = results.get(i).get(30, TimeUnit.SECONDS).get(account);
+        checkTotalsCalculation(
+            calc,
+            account,
+            "O1",
+            TEST_PRODUCT,
+            2 * hostsPerAccount,
+            2 * hostsPerAccount,
+            hostsPerAccount);
+      }
+    } finally {
+      callers.shutdownNow();
+      shardedCollector.shutdown();
+    }
+  }
+
+  @Test
+  void hypervisorMappingFromHostFactsMatchesReportedHypervisorQuery() {
+    String account = "A1";
+    String otherAccountHypervisorId = "other-account-hypervisor";
+    List<InventoryHostFacts> hosts = new ArrayList<>();
+    Map<String, String> expectedHypervisorMap = new HashMap<>();
+    InventoryHostFacts hypervisor = createHypervisor(account, "O1", TEST_PRODUCT_ID);
+    hosts.add(hypervisor);
+    String hypervisorId = hypervisor.getSubscriptionManagerId();
+    expectedHypervisorMap.put(hypervisorId, hypervisorId);
+    expectedHypervisorMap.put(otherAccountHypervisorId, otherAccountHypervisorId);
+    expectedHypervisorMap.put("unregistered-hypervisor", null);
+    for (String reportedId : expectedHypervisorMap.keySet()) {
+      InventoryHostFacts rhsmGuest = createGuest(reportedId, account, "O1", TEST_PRODUCT_ID);
+      InventoryHostFacts satelliteGuest = createGuest(null, account, "O1", TEST_PRODUCT_ID);
+      satelliteGuest.setSatelliteHypervisorUuid(reportedId);
+      hosts.add(rhsmGuest);
+      hosts.add(satelliteGuest);
+    }
+    hosts.forEach(
+        host -> {
+          host.setSystemProfileCoresPerSocket(2);
+          host.setSystemProfileSockets(1);
+        });
+
+    when(inventoryRepo.getReportedHypervisors(List.of(account)))
+        .thenAnswer(
+            invocation ->
+                expectedHypervisorMap.entrySet().stream()
+                    .map(entry -> new Object[] {entry.getKey(), entry.getValue()}));
+    when(inventoryRepo.getFacts(eq(List.of(account)), anyInt()))
+        .thenAnswer(invocation -> hosts.stream());
+    when(inventoryRepo.findSubscriptionManagerIds(anyCollection()))
+        .thenAnswer(
+            invocation ->
+                invocation.<Collection<String>>getArgument(0).stream()
+                    .filter(otherAccountHypervisorId::equals));
+
+    ApplicationProperties mappingProps = new ApplicationProperties();
+    mappingProps.setCullingOffsetDays(applicationProperties.getCullingOffsetDays());
+    mappingProps.setHostFactsHypervisorMappingEnabled(true);
+    InventoryAccountUsageCollector mappingCollector =
+        new InventoryAccountUsageCollector(
+            factNormalizer,
+            inventoryDatabaseOperations,
+            accountServiceInventoryRepository,
+            hostRepo,
+            mappingProps,
+            meterRegistry);
+
+    AccountUsageCalculation queried = collector.collect(RHEL_PRODUCTS, account).get(account);
+    AccountUsageCalculation mapped = mappingCollector.collect(RHEL_PRODUCTS, account).get(account);
+
+    verify(inventoryRepo, times(1)).getReportedHypervisors(List.of(account));
+    verify(inventoryRepo)
+        .findSubscriptionManagerIds(
+            argThat(
+                ids ->
+                    Set.copyOf(ids)
+                        .equals(Set.of(otherAccountHypervisorId, "unregistered-hypervisor"))));
+    assertEquals(queried.getKeys(), mapped.getKeys());
+    for (UsageCalculation.Key key : queried.getKeys()) {
+      assertEquals(queried.getCalculation(key).toString(), mapped.getCalculation(key).toString());
+    }
+
+    ArgumentCaptor<AccountServiceInventory> saved =
+        ArgumentCaptor.forClass(AccountServiceInventory.class);
+    verify(accountServiceInventoryRepository, times(2)).save(saved.capture());
+    Map<String, Host> queriedHosts = saved.getAllValues().get(0).getServiceInstances();
+    Map<String, Host> mappedHosts = saved.getAllValues().get(1).getServiceInstances();
+    assertEquals(hosts.size(), queriedHosts.size());
+    assertEquals(queriedHosts.keySet(), mappedHosts.keySet());
+    queriedHosts.forEach(
+        (instanceId, host) -> {
+          Host mappedHost = mappedHosts.get(instanceId);
+          assertEquals(host.isUnmappedGuest(), mappedHost.isUnmappedGuest());
+          assertEquals(host.isHypervisor(), mappedHost.isHypervisor());
+          assertEquals(host.getBuckets(), mappedHost.getBuckets());
+          assertEquals(host.getNumOfGuests(), mappedHost.getNumOfGuests());
+        });
+  }
+
   private void checkTotalsCalculation(
       AccountUsageCalculation calc,
       String account,
@@ -0,0 +1,382 @@
+/*
+ * Copyright Red Hat, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ *
+ * Red Hat trademarks are not licensed under GPLv3. No permission is
+ * granted to use or replicate Red Hat trademarks that are incorporated
+ * in this software or its documentation.
+ */
+package org.candlepin.subscriptions.tally;
+
+import static org.candlepin.subscriptions.tally.InventoryHostFactTestHelper.createGuest;
+import static org.candlepin.subscriptions.tally.InventoryHostFactTestHelper.createHypervisor;
+import static org.candlepin.subscriptions.tally.InventoryHostFactTestHelper.createRhsmHost;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.when;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.stream.Collectors;
+import org.candlepin.subscriptions.ApplicationProperties;
+import org.candlepin.subscriptions.db.AccountServiceInventoryRepository;
+import org.candlepin.subscriptions.db.HostRepository;
+import org.candlepin.subscriptions.db.model.AccountServiceInventory;
+import org.candlepin.subscriptions.db.model.BillingProvider;
+import org.candlepin.subscriptions.db.model.HardwareMeasurementType;
+import org.candlepin.subscriptions.db.model.Host;
+import org.candlepin.subscriptions.db.model.HostBucketKey;
+import org.candlepin.subscriptions.db.model.ServiceLevel;
+import org.candlepin.subscriptions.db.model.Usage;
+import org.candlepin.subscriptions.inventory.db.InventoryDatabaseOperations;
+import org.candlepin.subscriptions.inventory.db.InventoryRepository;
+import org.candlepin.subscriptions.inventory.db.model.InventoryHostFacts;
+import org.candlepin.subscriptions.json.Measurement.Uom;
+import org.candlepin.subscriptions.tally.facts.FactNormalizer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.info.BuildProperties;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+/**
+ * Verifies that reconciling hosts by fingerprint leaves the database in the same state as loading
+ * and saving the account's whole service inventory.
+ */
+@SpringBootTest
+@ActiveProfiles({"worker", "test"})
+class InventoryHostReconciliationTest {
+
+  private static final String ACCOUNT = "reconcile1";
+  private static final String ORG = "reconcile-org1";
+  private static final Set<String> PRODUCTS = Set.of("RHEL");
+  private static final List<Integer> PRODUCT_IDS = List.of(1);
+  private static final OffsetDateTime MODIFIED_ON =
+      OffsetDateTime.of(2022, 6, 1, 12, 0, 0, 0, ZoneOffset.ofHours(2));
+
+  @MockBean private BuildProperties buildProperties;
+  @MockBean private InventoryRepository inventoryRepo;
+  @Autowired private FactNormalizer factNormalizer;
+  @Autowired private InventoryDatabaseOperations inventoryDatabaseOperations;
+  @Autowired private AccountServiceInventoryRepository accountServiceInventoryRepository;
+  @Autowired private HostRepository hostRepository;
+  @Autowired private ApplicationProperties applicationProperties;
+  @Autowired private MeterRegistry meterRegistry;
+
+  @Autowired
+  @Qualifier("rhsmSubscriptionsTransactionManager")
+  private PlatformTransactionManager transactionManager;
+
+  private final List<InventoryHostFacts> hbiHosts = new ArrayList<>();
+  private final Map<String, String> reportedHypervisors = new HashMap<>();
+  private InventoryHostFacts changedHost;
+  private InventoryHostFacts hypervisor;
+
+  @BeforeEach
+  void setupHbiHosts() {
+    changedHost = createRhsmHost(ACCOUNT, ORG, PRODUCT_IDS, "", OffsetDateTime.now());
+    changedHost.setSystemProfileCoresPerSocket(2);
+    changedHost.setSystemProfileSockets(2);
+    changedHost.setModifiedOn(MODIFIED_ON);
+    hbiHosts.add(changedHost);
+
+    InventoryHostFacts newHost =
+        createRhsmHost(ACCOUNT, ORG, "1", ServiceLevel.PREMIUM, "", OffsetDateTime.now());
+    newHost.setSystemProfileCoresPerSocket(4);
+    newHost.setSystemProfileSockets(1);
+    newHost.setModifiedOn(MODIFIED_ON.plusHours(1));
+    hbiHosts.add(newHost);
+
+    hypervisor = createHypervisor(ACCOUNT, ORG, 1);
+    hypervisor.setSystemProfileCoresPerSocket(8);
+    hypervisor.setSystemProfileSockets(2);
+    hbiHosts.add(hypervisor);
+    reportedHypervisors.put(
+        hypervisor.getSubscriptionManagerId(), hypervisor.getSubscriptionManagerId());
+    for (int i = 0; i < 3; i++) {
+      InventoryHostFacts guest =
+          createGuest(hypervisor.getSubscriptionManagerId(), ACCOUNT, ORG, 1);
+      guest.setSystemProfileCoresPerSocket(i + 1);
+      guest.setSystemProfileSockets(1);
+      hbiHosts.add(guest);
+    }
+
+    InventoryHostFacts unmappedGuest =
+        createGuest(UUID.randomUUID().toString(), ACCOUNT, ORG, 1);
+    unmappedGuest.setSystemProfileCoresPerSocket(2);
+    unmappedGuest.setSystemProfileSockets(1);
+    hbiHosts.add(unmappedGuest);
+    reportedHypervisors.put(unmappedGuest.getHypervisorUuid(), null);
+
+    when(inventoryRepo.getReportedHypervisors(List.of(ACCOUNT)))
+        .thenAnswer(
+            invocation ->
+                reportedHypervisors.entrySet().stream()
+                    .map(entry -> new Object[] {entry.getKey(), entry.getValue()}));
+    when(inventoryRepo.getFacts(eq(List.of(ACCOUNT)), anyInt()))
+        .thenAnswer(invocation -> hbiHosts.stream());
+  }
+
+  @AfterEach
+  void cleanup() {
+    inTransaction(() -> accountServiceInventoryRepository.deleteByIdAccountNumber(ACCOUNT));
+  }
+
+  @Test
+  void reconciledHostsMatchSavedServiceInventory() {
+    seedStoredHosts();
+    collect(false);
+    Map<String, String> saved = storedHosts();
+    collect(false);
+    Map<String, String> savedAgain = storedHosts();
+    cleanup();
+
+    seedStoredHosts();
+    collect(true);
+    assertEquals(saved, storedHosts());
+    collect(true);
+    assertEquals(savedAgain, storedHosts());
+  }
+
+  @Test
+  void reconciliationOnlyWritesChangedHosts() {
+    collect(true);
+    Map<String, String> reconciled = storedHosts();
+
+    double inserted = reconciledCount("insert");
+    double updated = reconciledCount("update");
+    double buckets = reconciledCount("buckets");
+    double deleted = reconciledCount("delete");
+    collect(true);
+    assertEquals(reconciled, storedHosts());
+    assertEquals(inserted, reconciledCount("insert"));
+    assertEquals(updated, reconciledCount("update"));
+    assertEquals(buckets, reconciledCount("buckets"));
+    assertEquals(deleted, reconciledCount("delete"));
+
+    changedHost.setDisplayName("renamed");
+    collect(true);
+    assertEquals(updated + 1, reconciledCount("update"));
+    assertEquals(buckets, reconciledCount("buckets"));
+
+    double seen = reconciledCount("last_seen");
+    changedHost.setModifiedOn(MODIFIED_ON.plusDays(1));
+    collect(true);
+    assertEquals(updated + 1, reconciledCount("update"));
+    assertEquals(seen + 1, reconciledCount("last_seen"));
+    String stored = storedHosts().get(changedHost.getInventoryId().toString());
+    assertTrue(stored.contains("lastSeen=" + MODIFIED_ON.plusDays(1).toInstant() + ","), stored);
+  }
+
+  @Test
+  void reconciliationPicksUpHostsSavedWithServiceInventory() {
+    seedStoredHosts();
+    collect(false);
+    collect(false);
+    Map<String, String> saved = storedHosts();
+
+    collect(true);
+    assertEquals(saved, storedHosts());
+    double updated = reconciledCount("update");
+    double buckets = reconciledCount("buckets");
+    collect(true);
+    assertEquals(saved, storedHosts());
+    assertEquals(updated, reconciledCount("update"));
+    assertEquals(buckets, reconciledCount("buckets"));
+  }
+
+  @Test
+  void reconciliationRemovesDuplicateHosts() {
+    inTransaction(
+        () -> {
+          AccountServiceInventory service = new AccountServiceInventory(ACCOUNT, "HBI_HOST");
+          Host original = storedHost(changedHost.getInventoryId().toString(), "original");
+          Host duplicate = storedHost(changedHost.getInventoryId().toString(), "duplicate");
+          duplicate.setInstanceId("duplicate");
+          service.getServiceInstances().put(original.getInstanceId(), original);
+          service.getServiceInstances().put(duplicate.getInstanceId(), duplicate);
+          accountServiceInventoryRepository.saveAndFlush(service);
+        });
+
+    collect(true);
+
+    String inventoryId = changedHost.getInventoryId().toString();
+    assertEquals(
+        1,
+        storedHosts().values().stream()
+            .filter(host -> host.contains("inventoryId=" + inventoryId + ","))
+            .count());
+  }
+
+  /**
+   * Store hosts for the account: one whose HBI facts changed, a hypervisor, one no longer in HBI,
+   * and one without an inventory ID, which inventory tallies leave alone.
+   */
+  private void seedStoredHosts() {
+    inTransaction(
+        () -> {
+          AccountServiceInventory service = new AccountServiceInventory(ACCOUNT, "HBI_HOST");
+
+          Host changed = storedHost(changedHost.getInventoryId().toString(), "old name");
+          changed.setMeasurement(Uom.CORES, 2.0);
+          changed.setMeasurement(Uom.INSTANCE_HOURS, 5.0);
+          changed.setNumOfGuests(3);
+          changed.addBucket(
+              "RHEL",
+              ServiceLevel.PREMIUM,
+              Usage.PRODUCTION,
+              BillingProvider._ANY,
+              "_ANY",
+              false,
+              1,
+              2,
+              HardwareMeasurementType.PHYSICAL);
+
+          Host storedHypervisor = storedHost(hypervisor.getInventoryId().toString(), "hypervisor");
+          storedHypervisor.setHypervisor(true);
+          storedHypervisor.setNumOfGuests(10);
+          storedHypervisor.setMeasurement(Uom.SOCKETS, 4.0);
+
+          Host stale = storedHost(UUID.randomUUID().toString(), "stale");
+          stale.setMeasurement(Uom.CORES, 8.0);
+          stale.addBucket(
+              "RHEL",
+              ServiceLevel._ANY,
+              Usage._ANY,
+              BillingProvider._ANY,
+              "_ANY",
+              false,
+              8,
+              2,
+              HardwareMeasurementType.PHYSICAL);
+
+          Host withoutInventoryId = storedHost(null, "not from inventory");
+          withoutInventoryId.setInstanceId("not-from-inventory");
+
+          for (Host host : List.of(changed, storedHypervisor, stale, withoutInventoryId)) {
+            service.getServiceInstances().put(host.getInstanceId(), host);
+          }
+          accountServiceInventoryRepository.saveAndFlush(service);
+        });
+  }
+
+  private Host storedHost(String inventoryId, String displayName) {
+    Host host = new Host(inventoryId, null, ACCOUNT, ORG, null);
+    host.setDisplayName(displayName);
+    return host;
+  }
+
+  private void collect(boolean reconcile) {
+    ApplicationProperties props = new ApplicationProperties();
+    props.setCullingOffsetDays(applicationProperties.getCullingOffsetDays());
+    props.setHostReconciliationEnabled(reconcile);
+    // small enough that each kind of write spans several batches
+    props.setHostReconciliationBatchSize(2);
+    InventoryAccountUsageCollector collector =
+        new InventoryAccountUsageCollector(
+            factNormalizer,
+            inventoryDatabaseOperations,
+            accountServiceInventoryRepository,
+            hostRepository,
+            props,
+            meterRegistry);
+    inTransaction(() -> collector.collect(PRODUCTS, ACCOUNT));
+  }
+
+  /** Describe the account's stored hosts by instance ID, leaving out generated ids and hashes. */
+  private Map<String, String> storedHosts() {
+    return new TransactionTemplate(transactionManager)
+        .execute(
+            status ->
+                hostRepository.findByAccountNumber(ACCOUNT).stream()
+                    .collect(
+                        Collectors.toMap(
+                            Host::getInstanceId, InventoryHostReconciliationTest::describe)));
+  }
+
+  private static String describe(Host host) {
+    List<String> buckets =
+        host.getBuckets().stream()
+            .map(
+                bucket -> {
+                  HostBucketKey key = bucket.getKey();
+                  return String.join(
+                      "/",
+                      key.getProductId(),
+                      String.valueOf(key.getSla()),
+                      String.valueOf(key.getUsage()),
+                      String.valueOf(key.getBillingProvider()),
+                      key.getBillingAccountId(),
+                      String.valueOf(key.getAsHypervisor()),
+                      String.valueOf(bucket.getCores()),
+                      String.valueOf(bucket.getSockets()),
+                      String.valueOf(bucket.getMeasurementType()));
+                })
+            .sorted()
+            .collect(Collectors.toList());
+    return String.format(
+        "inventoryId=%s, insightsId=%s, account=%s, org=%s, displayName=%s, subManId=%s, "
+            + "guest=%s, hypervisorUuid=%s, hardwareType=%s, numOfGuests=%s, lastSeen=%s, "
+            + "unmappedGuest=%s, hypervisor=%s, cloudProvider=%s, instanceType=%s, "
+            + "billingProvider=%s, billingAccountId=%s, measurements=%s, monthlyTotals=%s, "
+            + "buckets=%s",
+        host.getInventoryId(),
+        host.getInsightsId(),
+        host.getAccountNumber(),
+        host.getOrgId(),
+        host.getDisplayName(),
+        host.getSubscriptionManagerId(),
+        host.isGuest(),
+        host.getHypervisorUuid(),
+        host.getHardwareType(),
+        host.getNumOfGuests(),
+        host.getLastSeen() == null ? null : host.getLastSeen().toInstant(),
+        host.isUnmappedGuest(),
+        host.isHypervisor(),
+        host.getCloudProvider(),
+        host.getInstanceType(),
+        host.getBillingProvider(),
+        host.getBillingAccountId(),
+        new TreeMap<>(host.getMeasurements()),
+        host.getMonthlyTotals(),
+        buckets);
+  }
+
+  private double reconciledCount(String change) {
+    return meterRegistry
+        .counter("rhsm-subscriptions.tally.hbi_hosts.reconciled", "change", change)
+        .count();
+  }
+
+  private void inTransaction(Runnable work) {
+    new TransactionTemplate(transactionManager).executeWithoutResult(status -> work.run());
+  }
+}
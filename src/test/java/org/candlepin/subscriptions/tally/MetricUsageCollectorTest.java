@@ -27,12 +27,16 @@ import static org.junit.jupiter.api.Assertions.assertNull;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.mockito.Mockito.any;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 import java.time.OffsetDateTime;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
 import java.util.UUID;
@@ -57,6 +61,7 @@ import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.junit.jupiter.params.ParameterizedTest;
 import org.junit.jupiter.params.provider.EnumSource;
+import org.mockito.ArgumentCaptor;
 import org.mockito.Mock;
 import org.mockito.Mockito;
 import org.mockito.junit.jupiter.MockitoExtension;
@@ -79,10 +84,12 @@ class MetricUsageCollectorTest {
 
   static final String OSD_METRIC_ID = "OSD-METRIC-ID";
 
+  TagProfile profile;
+
   @BeforeEach
   void setup() {
 
-    TagProfile profile =
+    profile =
         TagProfile.builder()
             .tagMappings(
                 List.of(
@@ -649,6 +656,124 @@ class MetricUsageCollectorTest {
     assertNull(activeInstance.getMeasurement(Uom.INSTANCE_HOURS));
   }
 
+  @Test
+  void singleScanCollectionMatchesHourlyCollection() {
+    OffsetDateTime start = clock.startOfCurrentHour().minusHours(6);
+    OffsetDateTime end = clock.startOfCurrentHour();
+    List<String> instanceIds =
+        List.of(UUID.randomUUID().toString(), UUID.randomUUID().toString(), "osd-instance");
+    List<Event> events = new ArrayList<>();
+    for (int hour = 0; hour < 6; hour++) {
+      if (hour == 2) {
+        // leave a gap to make sure empty hours are skipped the same way
+        continue;
+      }
+      for (int minute = 0; minute < 60; minute += 20) {
+        for (String instanceId : instanceIds) {
+          Event event =
+              new Event()
+                  .withEventId(UUID.randomUUID())
+                  .withTimestamp(start.plusHours(hour).plusMinutes(minute))
+                  .withServiceType(SERVICE_TYPE)
+                  .withInstanceId(instanceId)
+                  .withMeasurements(
+                      List.of(
+                          new Measurement()
+                              .withUom(Uom.CORES)
+                              .withValue((double) hour + minute + instanceId.length())))
+                  .withUsage(Event.Usage.PRODUCTION);
+          if (instanceId.startsWith("osd")) {
+            event.withRole(Role.OSD).withHardwareType(Event.HardwareType.CLOUD);
+            event.withCloudProvider(Event.CloudProvider.AWS);
+          } else {
+            event.withProductIds(List.of("1234"));
+          }
+          events.add(event);
+        }
+      }
+    }
+
+    when(eventController.hasEventsInTimeRange(any(), any(), any(), any())).thenReturn(true);
+    when(eventController.fetchEventsInTimeRangeByServiceType(any(), any(), any(), any()))
+        .thenAnswer(
+            m -> {
+              OffsetDateTime begin = m.getArgument(2, OffsetDateTime.class);
+              OffsetDateTime until = m.getArgument(3, OffsetDateTime.class);
+              return events.stream()
+                  .filter(e -> !e.getTimestamp().isBefore(begin))
+                  .filter(e -> e.getTimestamp().isBefore(until));
+            });
+    when(eventController.streamEventsInTimeRangeByServiceType(any(), any(), any(), any()))
+        .thenAnswer(m -> events.stream());
+
+    MetricUsageCollector singleScanCollector =
+        new MetricUsageCollector(profile, accountRepo, eventController, clock, true);
+    DateRange range = new DateRange(start, end);
+    MetricUsageCollector.CollectionResult hourly =
+        metricUsageCollector.collect(SERVICE_TYPE, "account123", range);
+    MetricUsageCollector.CollectionResult singleScan =
+        singleScanCollector.collect(SERVICE_TYPE, "account123", range);
+
+    assertEquals(hourly.getRange(), singleScan.getRange());
+    assertEquals(5, hourly.getCalculations().size());
+    assertEquals(hourly.getCalculations().keySet(), singleScan.getCalculations().keySet());
+    hourly
+        .getCalculations()
+        .forEach(
+            (hour, calc) -> {
+              AccountUsageCalculation other = singleScan.getCalculations().get(hour);
+              assertEquals(calc.getKeys(), other.getKeys());
+              calc.getKeys()
+                  .forEach(
+                      key ->
+                          assertEquals(
+                              calc.getCalculation(key).toString(),
+                              other.getCalculation(key).toString()));
+            });
+
+    ArgumentCaptor<AccountServiceInventory> saved =
+        ArgumentCaptor.forClass(AccountServiceInventory.class);
+    verify(accountRepo, times(2)).save(saved.capture());
+    Map<String, Host> hourlyInstances = saved.getAllValues().get(0).getServiceInstances();
+    Map<String, Host> singleScanInstances = saved.getAllValues().get(1).getServiceInstances();
+    assertEquals(hourlyInstances.keySet(), singleScanInstances.keySet());
+    hourlyInstances.forEach(
+        (instanceId, instance) -> {
+          Host other = singleScanInstances.get(instanceId);
+          assertEquals(instance.getMeasurements(), other.getMeasurements());
+          assertEquals(instance.getMonthlyTotals(), other.getMonthlyTotals());
+          assertEquals(instance.getLastSeen(), other.getLastSeen());
+          assertEquals(instance.getBuckets(), other.getBuckets());
+        });
+  }
+
+  @Test
+  void singleScanCollectionRejectsUnorderedEvents() {
+    OffsetDateTime start = clock.startOfCurrentHour().minusHours(2);
+    Event later =
+        new Event()
+            .withEventId(UUID.randomUUID())
+            .withTimestamp(start.plusHours(1))
+            .withServiceType(SERVICE_TYPE)
+            .withInstanceId("instance");
+    Event earlier =
+        new Event()
+            .withEventId(UUID.randomUUID())
+            .withTimestamp(start)
+            .withServiceType(SERVICE_TYPE)
+            .withInstanceId("instance");
+    when(eventController.hasEventsInTimeRange(any(), any(), any(), any())).thenReturn(true);
+    when(eventController.streamEventsInTimeRangeByServiceType(any(), any(), any(), any()))
+        .thenReturn(Stream.of(later, earlier));
+
+    MetricUsageCollector singleScanCollector =
+        new MetricUsageCollector(profile, accountRepo, eventController, clock, true);
+    DateRange range = new DateRange(start, clock.startOfCurrentHour());
+    assertThrows(
+        IllegalStateException.class,
+        () -> singleScanCollector.collect(SERVICE_TYPE, "account123", range));
+  }
+
   @Test
   void testAccountRepoNotTouchedIfNoEventsExist() {
     when(eventController.hasEventsInTimeRange(any(), any(), any(), any())).thenReturn(false);
@@ -0,0 +1,197 @@
+/*
+ * Copyright Red Hat, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ *
+ * Red Hat trademarks are not licensed under GPLv3. No permission is
+ * granted to use or replicate Red Hat trademarks that are incorporated
+ * in this software or its documentation.
+ */
+package org.candlepin.subscriptions.tally;
+
+import static org.candlepin.subscriptions.tally.InventoryHostFactTestHelper.createGuest;
+import static org.candlepin.subscriptions.tally.InventoryHostFactTestHelper.createHypervisor;
+import static org.candlepin.subscriptions.tally.InventoryHostFactTestHelper.createRhsmHost;
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.time.OffsetDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import org.candlepin.subscriptions.inventory.db.model.InventoryHostFacts;
+import org.junit.jupiter.api.Test;
+
+class ReportedHypervisorsTest {
+
+  private static final String ACCOUNT = "A1";
+  private static final String OTHER_ACCOUNT = "A2";
+  private static final Integer PRODUCT_ID = 1;
+
+  private final InventoryHostFacts hypervisor = createHypervisor(ACCOUNT, "O1", PRODUCT_ID);
+  private final InventoryHostFacts otherAccountHypervisor =
+      createHypervisor(OTHER_ACCOUNT, "O2", PRODUCT_ID);
+  private final InventoryHostFacts physical =
+      createRhsmHost(ACCOUNT, "O1", List.of(PRODUCT_ID), "", OffsetDateTime.now());
+
+  @Test
+  void rhsmOnlyReportsMatchReportedHypervisorQuery() {
+    List<InventoryHostFacts> accountHosts =
+        List.of(
+            hypervisor,
+            physical,
+            rhsmGuest(hypervisor.getSubscriptionManagerId()),
+            rhsmGuest(hypervisor.getSubscriptionManagerId()),
+            rhsmGuest(otherAccountHypervisor.getSubscriptionManagerId()),
+            rhsmGuest("unregistered-hypervisor"));
+
+    Map<String, String> expected = new HashMap<>();
+    expected.put(hypervisor.getSubscriptionManagerId(), hypervisor.getSubscriptionManagerId());
+    expected.put(
+        otherAccountHypervisor.getSubscriptionManagerId(),
+        otherAccountHypervisor.getSubscriptionManagerId());
+    expected.put("unregistered-hypervisor", null);
+
+    assertEquals(expected, queryMapping(accountHosts));
+    assertEquals(expected, streamedMapping(accountHosts));
+  }
+
+  @Test
+  void satelliteOnlyReportsMatchReportedHypervisorQuery() {
+    List<InventoryHostFacts> accountHosts =
+        List.of(
+            hypervisor,
+            physical,
+            satelliteGuest(hypervisor.getSubscriptionManagerId()),
+            satelliteGuest(otherAccountHypervisor.getSubscriptionManagerId()),
+            satelliteGuest("unregistered-hypervisor"));
+
+    Map<String, String> expected = new HashMap<>();
+    expected.put(hypervisor.getSubscriptionManagerId(), hypervisor.getSubscriptionManagerId());
+    expected.put(
+        otherAccountHypervisor.getSubscriptionManagerId(),
+        otherAccountHypervisor.getSubscriptionManagerId());
+    expected.put("unregistered-hypervisor", null);
+
+    assertEquals(expected, queryMapping(accountHosts));
+    assertEquals(expected, streamedMapping(accountHosts));
+  }
+
+  @Test
+  void mixedReportsMatchReportedHypervisorQuery() {
+    InventoryHostFacts bothReported = rhsmGuest(hypervisor.getSubscriptionManagerId());
+    bothReported.setSatelliteHypervisorUuid(hypervisor.getSubscriptionManagerId());
+    InventoryHostFacts differentlyReported = rhsmGuest("unregistered-rhsm-hypervisor");
+    differentlyReported.setSatelliteHypervisorUuid(
+        otherAccountHypervisor.getSubscriptionManagerId());
+    // A hypervisor can be a guest itself, e.g. in nested virtualization.
+    InventoryHostFacts nestedHypervisor = createHypervisor(ACCOUNT, "O1", PRODUCT_ID);
+    nestedHypervisor.setHypervisorUuid(hypervisor.getSubscriptionManagerId());
+    List<InventoryHostFacts> accountHosts =
+        List.of(
+            bothReported,
+            differentlyReported,
+            satelliteGuest("unregistered-satellite-hypervisor"),
+            rhsmGuest(nestedHypervisor.getSubscriptionManagerId()),
+            nestedHypervisor,
+            hypervisor,
+            physical);
+
+    Map<String, String> expected = new HashMap<>();
+    expected.put(hypervisor.getSubscriptionManagerId(), hypervisor.getSubscriptionManagerId());
+    expected.put(
+        otherAccountHypervisor.getSubscriptionManagerId(),
+        otherAccountHypervisor.getSubscriptionManagerId());
+    expected.put(
+        nestedHypervisor.getSubscriptionManagerId(), nestedHypervisor.getSubscriptionManagerId());
+    expected.put("unregistered-rhsm-hypervisor", null);
+    expected.put("unregistered-satellite-hypervisor", null);
+
+    assertEquals(expected, queryMapping(accountHosts));
+    assertEquals(expected, streamedMapping(accountHosts));
+  }
+
+  @Test
+  void onlyHypervisorsMissingFromTheHostsReadAreUnresolved() {
+    ReportedHypervisors reported = new ReportedHypervisors();
+    Stream.of(
+            hypervisor,
+            rhsmGuest(hypervisor.getSubscriptionManagerId()),
+            satelliteGuest(otherAccountHypervisor.getSubscriptionManagerId()),
+            rhsmGuest("unregistered-hypervisor"))
+        .forEach(reported::collect);
+
+    assertEquals(
+        Set.of(otherAccountHypervisor.getSubscriptionManagerId(), "unregistered-hypervisor"),
+        reported.getUnresolvedHypervisorUuids());
+  }
+
+  @Test
+  void noReportsMapNothing() {
+    ReportedHypervisors reported = new ReportedHypervisors();
+    reported.collect(hypervisor);
+    reported.collect(physical);
+
+    assertTrue(reported.getUnresolvedHypervisorUuids().isEmpty());
+    assertTrue(reported.toMapping(Set.of()).isEmpty());
+  }
+
+  private InventoryHostFacts rhsmGuest(String hypervisorUuid) {
+    return createGuest(hypervisorUuid, ACCOUNT, "O1", PRODUCT_ID);
+  }
+
+  private InventoryHostFacts satelliteGuest(String hypervisorUuid) {
+    InventoryHostFacts guest = createGuest(null, ACCOUNT, "O1", PRODUCT_ID);
+    guest.setSatelliteHypervisorUuid(hypervisorUuid);
+    return guest;
+  }
+
+  /** All of inventory: the account's hosts, plus a hypervisor registered in another account. */
+  private List<InventoryHostFacts> inventory(List<InventoryHostFacts> accountHosts) {
+    List<InventoryHostFacts> inventory = new ArrayList<>(accountHosts);
+    inventory.add(otherAccountHypervisor);
+    return inventory;
+  }
+
+  /** Mirrors InventoryRepository.getReportedHypervisors for the account's hosts. */
+  private Map<String, String> queryMapping(List<InventoryHostFacts> accountHosts) {
+    Set<String> registered =
+        inventory(accountHosts).stream()
+            .map(InventoryHostFacts::getSubscriptionManagerId)
+            .collect(Collectors.toSet());
+    Map<String, String> mapping = new HashMap<>();
+    for (InventoryHostFacts host : accountHosts) {
+      Stream.of(host.getHypervisorUuid(), host.getSatelliteHypervisorUuid())
+          .filter(uuid -> uuid != null)
+          .forEach(uuid -> mapping.put(uuid, registered.contains(uuid) ? uuid : null));
+    }
+    return mapping;
+  }
+
+  /** Builds the mapping as the tally does, looking up unresolved hypervisors in inventory. */
+  private Map<String, String> streamedMapping(List<InventoryHostFacts> accountHosts) {
+    ReportedHypervisors reported = new ReportedHypervisors();
+    accountHosts.forEach(reported::collect);
+    Set<String> unresolved = reported.getUnresolvedHypervisorUuids();
+    Set<String> registeredElsewhere =
+        inventory(accountHosts).stream()
+            .map(InventoryHostFacts::getSubscriptionManagerId)
+            .filter(unresolved::contains)
+            .collect(Collectors.toSet());
+    return reported.toMapping(registeredElsewhere);
+  }
+}
@@ -29,7 +29,12 @@ import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import java.time.OffsetDateTime;
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -65,14 +70,28 @@ class SnapshotSummaryProducerTest {
 
   private TaskQueueProperties props;
 
+  private TallySummaryProperties summaryProps;
+
+  private ObjectMapper objectMapper;
+
+  private MeterRegistry meterRegistry;
+
   private SnapshotSummaryProducer producer;
 
   @BeforeEach
   void setup() {
     props = new TaskQueueProperties();
     props.setTopic("summary-topic");
+    summaryProps = new TallySummaryProperties();
+    objectMapper = new ObjectMapper().registerModule(new JavaTimeModule());
+    meterRegistry = new SimpleMeterRegistry();
+    this.producer = createProducer();
+  }
+
+  private SnapshotSummaryProducer createProducer() {
     RetryTemplate retryTemplate = new RetryTemplate();
-    this.producer = new SnapshotSummaryProducer(kafka, retryTemplate, props);
+    return new SnapshotSummaryProducer(
+        kafka, retryTemplate, props, summaryProps, objectMapper, meterRegistry);
   }
 
   @Test
@@ -103,7 +122,7 @@ class SnapshotSummaryProducerTest {
                 Uom.CORES,
                 22.2)));
     producer.produceTallySummaryMessages(updateMap);
-    verify(kafka, times(2)).send(eq(props.getTopic()), summaryCaptor.capture());
+    verify(kafka, times(2)).send(eq(props.getTopic()), anyString(), summaryCaptor.capture());
 
     List<TallySummary> summaries = summaryCaptor.getAllValues();
     assertEquals(2, summaries.size());
@@ -177,7 +196,91 @@ class SnapshotSummaryProducerTest {
                 20.4)));
     updateMap.get("a1").get(0).getTallyMeasurements().clear();
     producer.produceTallySummaryMessages(updateMap);
-    verify(kafka, never()).send(anyString(), any());
+    verify(kafka, never()).send(anyString(), anyString(), any());
+  }
+
+  @Test
+  void testMessagesAreKeyedByAccount() {
+    Map<String, List<TallySnapshot>> updateMap = new HashMap<>();
+    updateMap.put("a1", List.of(buildHourlySnapshot("a1", 1.0), buildHourlySnapshot("a1", 2.0)));
+    producer.produceTallySummaryMessages(updateMap);
+    verify(kafka, times(2)).send(eq(props.getTopic()), eq("a1"), any());
+  }
+
+  @Test
+  void testBatchingPacksAccountSnapshotsInOrderUpToSnapshotCount() {
+    summaryProps.setMaxSnapshotsPerMessage(2);
+    producer = createProducer();
+
+    List<TallySnapshot> snapshots = new ArrayList<>();
+    for (int i = 0; i < 5; i++) {
+      snapshots.add(buildHourlySnapshot("a1", i));
+    }
+    Map<String, List<TallySnapshot>> updateMap = new HashMap<>();
+    updateMap.put("a1", snapshots);
+    producer.produceTallySummaryMessages(updateMap);
+
+    verify(kafka, times(3)).send(eq(props.getTopic()), eq("a1"), summaryCaptor.capture());
+    List<TallySummary> summaries = summaryCaptor.getAllValues();
+    assertEquals(
+        List.of(2, 2, 1),
+        summaries.stream().map(s -> s.getTallySnapshots().size()).collect(Collectors.toList()));
+    assertEquals(
+        List.of(0.0, 1.0, 2.0, 3.0, 4.0),
+        summaries.stream()
+            .flatMap(s -> s.getTallySnapshots().stream())
+            .map(s -> s.getTallyMeasurements().get(0).getValue())
+            .collect(Collectors.toList()));
+    assertEquals(3.0, meterRegistry.counter("rhsm-subscriptions.tally-summary.messages").count());
+    assertEquals(5.0, meterRegistry.counter("rhsm-subscriptions.tally-summary.snapshots").count());
+  }
+
+  @Test
+  void testBatchingHonorsSerializedByteLimit() throws Exception {
+    TallySnapshot first = buildHourlySnapshot("a1", 1.0);
+    TallySnapshot second = buildHourlySnapshot("a1", 2.0);
+    summaryProps.setMaxSnapshotsPerMessage(10);
+    producer = createProducer();
+
+    // Find the size of a message holding just the first snapshot, and set the limit right there.
+    producer.produceTallySummaryMessages(Map.of("a1", List.of(first)));
+    verify(kafka).send(eq(props.getTopic()), eq("a1"), summaryCaptor.capture());
+    summaryProps.setMaxMessageBytes(
+        objectMapper.writeValueAsBytes(summaryCaptor.getValue()).length);
+    producer = createProducer();
+
+    producer.produceTallySummaryMessages(Map.of("a1", List.of(first, second)));
+
+    verify(kafka, times(3)).send(eq(props.getTopic()), eq("a1"), summaryCaptor.capture());
+    List<TallySummary> summaries = summaryCaptor.getAllValues();
+    assertEquals(1, summaries.get(1).getTallySnapshots().size());
+    assertEquals(1, summaries.get(2).getTallySnapshots().size());
+  }
+
+  @Test
+  void testBatchingSkipsOnlySnapshotsWithoutMeasurements() {
+    summaryProps.setMaxSnapshotsPerMessage(10);
+    producer = createProducer();
+
+    TallySnapshot invalid = buildHourlySnapshot("a1", 1.0);
+    invalid.getTallyMeasurements().clear();
+    producer.produceTallySummaryMessages(
+        Map.of("a1", List.of(buildHourlySnapshot("a1", 2.0), invalid)));
+
+    verify(kafka).send(eq(props.getTopic()), eq("a1"), summaryCaptor.capture());
+    assertEquals(1, summaryCaptor.getValue().getTallySnapshots().size());
+  }
+
+  TallySnapshot buildHourlySnapshot(String account, double value) {
+    return buildSnapshot(
+        account,
+        "OSD",
+        Granularity.HOURLY,
+        ServiceLevel.PREMIUM,
+        Usage.PRODUCTION,
+        BillingProvider.RED_HAT,
+        Uom.CORES,
+        value);
   }
 
   void assertMeasurement(
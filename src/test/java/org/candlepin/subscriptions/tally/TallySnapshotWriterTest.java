@@ -0,0 +1,122 @@
+/*
+ * Copyright Red Hat, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ *
+ * Red Hat trademarks are not licensed under GPLv3. No permission is
+ * granted to use or replicate Red Hat trademarks that are incorporated
+ * in this software or its documentation.
+ */
+package org.candlepin.subscriptions.tally;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import org.candlepin.subscriptions.ApplicationProperties;
+import org.candlepin.subscriptions.db.TallySnapshotRepository;
+import org.candlepin.subscriptions.db.model.TallySnapshot;
+import org.junit.jupiter.api.Test;
+
+class TallySnapshotWriterTest {
+
+  @Test
+  void testUpsertsInBatchesOfConfiguredSize() {
+    TallySnapshotRepository repo = mock(TallySnapshotRepository.class);
+    List<Integer> batchSizes = new ArrayList<>();
+    doAnswer(
+            invocation -> {
+              int size = invocation.<List<TallySnapshot>>getArgument(0).size();
+              batchSizes.add(size);
+              return size;
+            })
+        .when(repo)
+        .upsertAll(any());
+    MeterRegistry registry = new SimpleMeterRegistry();
+    TallySnapshotWriter writer = new TallySnapshotWriter(repo, upsertProperties(2), registry);
+
+    List<TallySnapshot> snapshots = createSnapshots(5);
+    List<TallySnapshot> written = writer.saveAll(snapshots);
+
+    assertEquals(snapshots, written);
+    assertEquals(List.of(2, 2, 1), batchSizes);
+    verify(repo, never()).save(any());
+    assertEquals(5.0, registry.counter("rhsm-subscriptions.tally.snapshots.written").count());
+    assertEquals(3, registry.timer("rhsm-subscriptions.tally.snapshots.flush").count());
+  }
+
+  @Test
+  void testCountsRowsReportedWrittenByRepository() {
+    TallySnapshotRepository repo = mock(TallySnapshotRepository.class);
+    when(repo.upsertAll(any())).thenReturn(1);
+    MeterRegistry registry = new SimpleMeterRegistry();
+    TallySnapshotWriter writer = new TallySnapshotWriter(repo, upsertProperties(2), registry);
+
+    writer.saveAll(createSnapshots(5));
+
+    assertEquals(3.0, registry.counter("rhsm-subscriptions.tally.snapshots.written").count());
+  }
+
+  @Test
+  void testNoUpsertWhenNothingToWrite() {
+    TallySnapshotRepository repo = mock(TallySnapshotRepository.class);
+    MeterRegistry registry = new SimpleMeterRegistry();
+    TallySnapshotWriter writer = new TallySnapshotWriter(repo, upsertProperties(2), registry);
+
+    assertTrue(writer.saveAll(List.of()).isEmpty());
+    verifyNoInteractions(repo);
+    assertEquals(0, registry.timer("rhsm-subscriptions.tally.snapshots.flush").count());
+  }
+
+  @Test
+  void testSavesThroughRepositoryWhenUpsertDisabled() {
+    TallySnapshotRepository repo = mock(TallySnapshotRepository.class);
+    when(repo.save(any())).then(invocation -> invocation.getArgument(0));
+    MeterRegistry registry = new SimpleMeterRegistry();
+    TallySnapshotWriter writer =
+        new TallySnapshotWriter(repo, new ApplicationProperties(), registry);
+
+    List<TallySnapshot> snapshots = createSnapshots(3);
+    List<TallySnapshot> written = writer.saveAll(snapshots);
+
+    assertEquals(snapshots, written);
+    verify(repo, times(3)).save(any());
+    verify(repo, never()).upsertAll(any());
+    assertEquals(3.0, registry.counter("rhsm-subscriptions.tally.snapshots.written").count());
+  }
+
+  private ApplicationProperties upsertProperties(int batchSize) {
+    ApplicationProperties props = new ApplicationProperties();
+    props.setTallySnapshotUpsertEnabled(true);
+    props.setTallySnapshotWriteBatchSize(batchSize);
+    return props;
+  }
+
+  private List<TallySnapshot> createSnapshots(int count) {
+    return IntStream.range(0, count)
+        .mapToObj(
+            i -> {
+              TallySnapshot snapshot = new TallySnapshot();
+              snapshot.setAccountNumber("account" + i);
+              return snapshot;
+            })
+        .collect(Collectors.toList());
+  }
+}
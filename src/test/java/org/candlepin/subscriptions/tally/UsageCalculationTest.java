@@ -24,11 +24,18 @@ import static org.candlepin.subscriptions.tally.collector.Assertions.assertHardw
 import static org.candlepin.subscriptions.tally.collector.Assertions.assertNullExcept;
 import static org.junit.jupiter.api.Assertions.*;
 
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.stream.Collectors;
 import java.util.stream.IntStream;
 import org.candlepin.subscriptions.db.model.BillingProvider;
 import org.candlepin.subscriptions.db.model.HardwareMeasurementType;
 import org.candlepin.subscriptions.db.model.ServiceLevel;
 import org.candlepin.subscriptions.db.model.Usage;
+import org.candlepin.subscriptions.json.Measurement.Uom;
 import org.junit.jupiter.api.Test;
 
 class UsageCalculationTest {
@@ -149,4 +156,125 @@ class UsageCalculationTest {
     assertHardwareMeasurementTotals(calculation, HardwareMeasurementType.TOTAL, 15, 20, 10);
     assertNullExcept(calculation, HardwareMeasurementType.TOTAL, providerType);
   }
+
+  @Test
+  void testMeasurementsMatchBoxedAccumulation() {
+    Random random = new Random(42);
+    HardwareMeasurementType[] types = HardwareMeasurementType.values();
+    Uom[] uoms = Uom.values();
+    UsageCalculation calculation = new UsageCalculation(createUsageKey("Product"));
+    UsageCalculation other = new UsageCalculation(createUsageKey("Product"));
+    Map<HardwareMeasurementType, Map<Uom, Double>> expected =
+        new EnumMap<>(HardwareMeasurementType.class);
+    Map<HardwareMeasurementType, Map<Uom, Double>> otherExpected =
+        new EnumMap<>(HardwareMeasurementType.class);
+
+    for (int i = 0; i < 10_000; i++) {
+      HardwareMeasurementType type = types[random.nextInt(types.length)];
+      Uom uom = uoms[random.nextInt(uoms.length)];
+      Double value = random.nextInt(1000) / 8.0;
+      switch (random.nextInt(3)) {
+        case 0:
+          calculation.add(type, uom, value);
+          increment(expected, type, uom, value);
+          increment(expected, HardwareMeasurementType.TOTAL, uom, value);
+          break;
+        case 1:
+          calculation.addToTotal(uom, value);
+          increment(expected, HardwareMeasurementType.TOTAL, uom, value);
+          break;
+        default:
+          other.add(type, uom, value);
+          increment(otherExpected, type, uom, value);
+          increment(otherExpected, HardwareMeasurementType.TOTAL, uom, value);
+      }
+    }
+    assertMeasurements(expected, calculation);
+
+    calculation.merge(other);
+    otherExpected.forEach(
+        (type, measurements) ->
+            measurements.forEach((uom, value) -> increment(expected, type, uom, value)));
+    assertMeasurements(expected, calculation);
+    assertMeasurements(otherExpected, other);
+  }
+
+  @Test
+  void testOnlyAddedTypesAndUomsAreReported() {
+    UsageCalculation calculation = new UsageCalculation(createUsageKey("Product"));
+    calculation.add(HardwareMeasurementType.AWS, Uom.CORES, 0.0);
+
+    assertTrue(calculation.hasMeasurements());
+    assertNullExcept(calculation, HardwareMeasurementType.AWS, HardwareMeasurementType.TOTAL);
+    UsageCalculation.Totals totals = calculation.getTotals(HardwareMeasurementType.AWS);
+    assertEquals(Map.of(Uom.CORES, 0.0), totals.getMeasurements());
+    assertEquals(0.0, totals.getMeasurement(Uom.CORES));
+    assertNull(totals.getMeasurement(Uom.SOCKETS));
+    assertThrows(
+        UnsupportedOperationException.class, () -> totals.getMeasurements().put(Uom.SOCKETS, 1.0));
+  }
+
+  @Test
+  void testStandaloneTotalsAdd() {
+    UsageCalculation.Totals totals = new UsageCalculation.Totals();
+    UsageCalculation.Totals other = new UsageCalculation.Totals();
+    totals.increment(Uom.CORES, 2.0);
+    other.increment(Uom.CORES, 3.0);
+    other.increment(Uom.SOCKETS, 1.0);
+
+    totals.add(other);
+
+    assertEquals(Map.of(Uom.CORES, 5.0, Uom.SOCKETS, 1.0), totals.getMeasurements());
+    assertEquals(Map.of(Uom.CORES, 3.0, Uom.SOCKETS, 1.0), other.getMeasurements());
+  }
+
+  @Test
+  void testKeyHashCodeCoversBillingFields() {
+    Set<Integer> hashCodes =
+        Arrays.stream(BillingProvider.values())
+            .map(
+                provider ->
+                    new UsageCalculation.Key(
+                            "Product", ServiceLevel.PREMIUM, Usage.PRODUCTION, provider, "acct")
+                        .hashCode())
+            .collect(Collectors.toSet());
+    assertEquals(BillingProvider.values().length, hashCodes.size());
+
+    UsageCalculation.Key key =
+        new UsageCalculation.Key(
+            "Product", ServiceLevel.PREMIUM, Usage.PRODUCTION, BillingProvider.AWS, "acct1");
+    UsageCalculation.Key sameKey =
+        new UsageCalculation.Key(
+            "Product", ServiceLevel.PREMIUM, Usage.PRODUCTION, BillingProvider.AWS, "acct1");
+    UsageCalculation.Key otherAccount =
+        new UsageCalculation.Key(
+            "Product", ServiceLevel.PREMIUM, Usage.PRODUCTION, BillingProvider.AWS, "acct2");
+    assertEquals(key, sameKey);
+    assertEquals(key.hashCode(), sameKey.hashCode());
+    assertNotEquals(key, otherAccount);
+    assertNotEquals(key.hashCode(), otherAccount.hashCode());
+  }
+
+  private static void increment(
+      Map<HardwareMeasurementType, Map<Uom, Double>> expected,
+      HardwareMeasurementType type,
+      Uom uom,
+      Double value) {
+    expected.computeIfAbsent(type, t -> new EnumMap<>(Uom.class)).merge(uom, value, Double::sum);
+  }
+
+  private static void assertMeasurements(
+      Map<HardwareMeasurementType, Map<Uom, Double>> expected, UsageCalculation calculation) {
+    for (HardwareMeasurementType type : HardwareMeasurementType.values()) {
+      UsageCalculation.Totals totals = calculation.getTotals(type);
+      if (!expected.containsKey(type)) {
+        assertNull(totals, "Unexpected values for type: " + type);
+        continue;
+      }
+      assertEquals(expected.get(type), totals.getMeasurements(), type.toString());
+      for (Uom uom : Uom.values()) {
+        assertEquals(expected.get(type).get(uom), totals.getMeasurement(uom), type + "/" + uom);
+      }
+    }
+  }
 }
@@ -0,0 +1,88 @@
+/*
+ * Copyright Red Hat, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ *
+ * Red Hat trademarks are not licensed under GPLv3. No permission is
+ * granted to use or replicate Red Hat trademarks that are incorporated
+ * in this software or its documentation.
+ */
+package org.candlepin.subscriptions.tally.billing;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.Mockito.verify;
+
+import java.time.OffsetDateTime;
+import java.util.List;
+import java.util.UUID;
+import java.util.stream.Collectors;
+import org.candlepin.subscriptions.json.BillableUsage;
+import org.candlepin.subscriptions.json.TallySnapshot;
+import org.candlepin.subscriptions.json.TallySummary;
+import org.candlepin.subscriptions.task.TaskQueueProperties;
+import org.candlepin.subscriptions.util.KafkaConsumerRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Captor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+@ExtendWith(MockitoExtension.class)
+class TallySummaryMessageConsumerTest {
+
+  @Mock private BillingProducer billingProducer;
+
+  @Captor private ArgumentCaptor<BillableUsage> usageCaptor;
+
+  private TallySummaryMessageConsumer consumer;
+
+  @BeforeEach
+  void setupTest() {
+    TaskQueueProperties props = new TaskQueueProperties();
+    props.setTopic("tally-summary");
+    consumer = new TallySummaryMessageConsumer(billingProducer, props, new KafkaConsumerRegistry());
+  }
+
+  @Test
+  void testMultiSnapshotSummaryProducesUsageForEverySnapshot() {
+    List<TallySnapshot> snapshots =
+        List.of(
+            buildSnapshot("OSD", "2022-05-01T10:00:00Z"),
+            buildSnapshot("OSD", "2022-05-01T11:00:00Z"),
+            buildSnapshot("RHOSAK", "2022-05-01T10:00:00Z"));
+    TallySummary summary =
+        new TallySummary().withAccountNumber("account123").withTallySnapshots(snapshots);
+
+    consumer.receive(summary);
+
+    verify(billingProducer).produce(usageCaptor.capture());
+    BillableUsage usage = usageCaptor.getValue();
+    assertEquals("account123", usage.getAccountNumber());
+    assertEquals(
+        snapshots.stream().map(TallySnapshot::getId).collect(Collectors.toList()),
+        usage.getBillableTallySnapshots().stream()
+            .map(TallySnapshot::getId)
+            .collect(Collectors.toList()));
+  }
+
+  private TallySnapshot buildSnapshot(String productId, String snapshotDate) {
+    return new TallySnapshot()
+        .withId(UUID.randomUUID())
+        .withProductId(productId)
+        .withGranularity(TallySnapshot.Granularity.HOURLY)
+        .withSnapshotDate(OffsetDateTime.parse(snapshotDate));
+  }
+}
@@ -0,0 +1,180 @@
+/*
+ * Copyright Red Hat, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ *
+ * Red Hat trademarks are not licensed under GPLv3. No permission is
+ * granted to use or replicate Red Hat trademarks that are incorporated
+ * in this software or its documentation.
+ */
+package org.candlepin.subscriptions.task;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+class TaskCoalescerTest {
+
+  private static final int THREADS = 16;
+
+  private final AtomicLong clock = new AtomicLong();
+  private MeterRegistry meterRegistry;
+  private TaskCoalescer coalescer;
+
+  @BeforeEach
+  void setup() {
+    TaskCoalescingProperties props = new TaskCoalescingProperties();
+    props.setWindow(Duration.ofMinutes(5));
+    meterRegistry = new SimpleMeterRegistry();
+    coalescer = new TaskCoalescer(props, meterRegistry, clock::get);
+  }
+
+  @Test
+  void testIdenticalPendingTaskIsDropped() {
+    assertTrue(coalescer.offer(snapshots("account1")));
+    assertFalse(coalescer.offer(snapshots("account1")));
+    assertTrue(coalescer.offer(snapshots("account2")));
+    assertTrue(coalescer.offer(hourly("account1")));
+    assertEquals(1.0, coalescedCount(TaskType.UPDATE_SNAPSHOTS, "enqueue"));
+  }
+
+  @Test
+  void testTaskIsQueuedAgainOnceCompleted() {
+    TaskDescriptor task = snapshots("account1");
+    assertTrue(coalescer.offer(task));
+    assertTrue(coalescer.start(task));
+    assertFalse(coalescer.offer(task));
+    coalescer.complete(task);
+    assertTrue(coalescer.offer(task));
+  }
+
+  @Test
+  void testIdenticalRunningTaskIsDropped() {
+    TaskDescriptor task = snapshots("account1");
+    assertTrue(coalescer.start(task));
+    assertFalse(coalescer.start(task));
+    coalescer.complete(task);
+    assertTrue(coalescer.start(task));
+    assertEquals(1.0, coalescedCount(TaskType.UPDATE_SNAPSHOTS, "execute"));
+  }
+
+  @Test
+  void testPendingTaskExpiresAfterWindow() {
+    assertTrue(coalescer.offer(snapshots("account1")));
+    clock.addAndGet(Duration.ofMinutes(4).toNanos());
+    assertFalse(coalescer.offer(snapshots("account1")));
+    clock.addAndGet(Duration.ofMinutes(1).toNanos());
+    assertTrue(coalescer.offer(snapshots("account1")));
+  }
+
+  @Test
+  void testExpiredEntriesArePurged() {
+    for (int i = 0; i < 100; i++) {
+      coalescer.offer(snapshots("account" + i));
+    }
+    assertEquals(100, coalescer.trackedCount());
+    clock.addAndGet(Duration.ofMinutes(5).toNanos());
+    coalescer.offer(snapshots("other"));
+    assertEquals(1, coalescer.trackedCount());
+  }
+
+  @Test
+  void testOtherTaskTypesAreNotCoalesced() {
+    TaskDescriptor task =
+        TaskDescriptor.builder(TaskType.METRICS_COLLECTION, "group")
+            .setSingleValuedArg("account", "account1")
+            .build();
+    assertTrue(coalescer.offer(task));
+    assertTrue(coalescer.offer(task));
+    assertEquals(0, coalescer.trackedCount());
+  }
+
+  @Test
+  void testDisabledCoalescerAcceptsEverything() {
+    TaskCoalescer disabled = TaskCoalescer.disabled();
+    assertTrue(disabled.offer(snapshots("account1")));
+    assertTrue(disabled.offer(snapshots("account1")));
+    assertTrue(disabled.start(snapshots("account1")));
+    assertTrue(disabled.start(snapshots("account1")));
+  }
+
+  @Test
+  void testConcurrentOffersAcceptExactlyOneTask() throws Exception {
+    long accepted = runConcurrently(() -> coalescer.offer(snapshots("account1")));
+    assertEquals(1, accepted);
+    assertEquals(THREADS - 1.0, coalescedCount(TaskType.UPDATE_SNAPSHOTS, "enqueue"));
+  }
+
+  @Test
+  void testConcurrentStartsRunExactlyOneTask() throws Exception {
+    coalescer.offer(hourly("account1"));
+    long accepted = runConcurrently(() -> coalescer.start(hourly("account1")));
+    assertEquals(1, accepted);
+    assertEquals(THREADS - 1.0, coalescedCount(TaskType.UPDATE_HOURLY_SNAPSHOTS, "execute"));
+  }
+
+  private long runConcurrently(Callable<Boolean> action) throws Exception {
+    ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+    CountDownLatch startGate = new CountDownLatch(1);
+    List<Future<Boolean>> results = new ArrayList<>();
+    for (int i = 0; i < THREADS; i++) {
+      results.add(
+          executor.submit(
+              () -> {
+                startGate.await();
+                return action.call();
+              }));
+    }
+    startGate.countDown();
+    long accepted = 0;
+    for (Future<Boolean> result : results) {
+      if (Boolean.TRUE.equals(result.get(10, TimeUnit.SECONDS))) {
+        accepted++;
+      }
+    }
+    executor.shutdown();
+    return accepted;
+  }
+
+  private double coalescedCount(TaskType type, String stage) {
+    return meterRegistry
+        .counter("rhsm-subscriptions.task.coalesced", "type", type.name(), "stage", stage)
+        .count();
+  }
+
+  private TaskDescriptor snapshots(String account) {
+    return TaskDescriptor.builder(TaskType.UPDATE_SNAPSHOTS, "group")
+        .setSingleValuedArg("accounts", account)
+        .build();
+  }
+
+  private TaskDescriptor hourly(String account) {
+    return TaskDescriptor.builder(TaskType.UPDATE_HOURLY_SNAPSHOTS, "group")
+        .setSingleValuedArg("accountNumber", account)
+        .build();
+  }
+}
@@ -22,12 +22,25 @@ package org.candlepin.subscriptions.task.queue.inmemory;
 
 import static org.junit.jupiter.api.Assertions.*;
 
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.candlepin.subscriptions.exception.SubscriptionsException;
 import org.candlepin.subscriptions.tally.TallyTaskFactory;
+import org.candlepin.subscriptions.task.TaskCoalescer;
+import org.candlepin.subscriptions.task.TaskCoalescingProperties;
 import org.candlepin.subscriptions.task.TaskDescriptor;
 import org.candlepin.subscriptions.task.TaskType;
+import org.candlepin.subscriptions.task.queue.inmemory.ExecutorTaskQueueProperties.Backpressure;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.Mock;
@@ -86,4 +99,231 @@ class ExecutorTaskQueueTest {
     processor.shutdown(2000, TimeUnit.MILLISECONDS);
     assertFalse(failed.get());
   }
+
+  @Test
+  void verifyIdenticalTasksAreCoalesced() throws InterruptedException {
+    TaskCoalescingProperties props = new TaskCoalescingProperties();
+    props.setWindow(Duration.ofMinutes(5));
+    TaskCoalescer coalescer = new TaskCoalescer(props, new SimpleMeterRegistry());
+    ExecutorTaskQueue queue = new ExecutorTaskQueue(coalescer);
+    ExecutorTaskProcessor processor =
+        new ExecutorTaskProcessor(
+            Executors.newCachedThreadPool(), taskFactory, coalescer, queue, "my-group", 4);
+    TaskDescriptor taskDesc =
+        TaskDescriptor.builder(TaskType.UPDATE_SNAPSHOTS, "my-group")
+            .setSingleValuedArg("accounts", "account1")
+            .build();
+    AtomicInteger executions = new AtomicInteger();
+    CountDownLatch started = new CountDownLatch(1);
+    CountDownLatch release = new CountDownLatch(1);
+    Mockito.when(taskFactory.build(Mockito.any()))
+        .thenReturn(
+            () -> {
+              executions.incrementAndGet();
+              started.countDown();
+              try {
+                release.await();
+              } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+              }
+            });
+
+    // duplicates queued concurrently while the first is pending
+    ExecutorService producers = Executors.newFixedThreadPool(8);
+    for (int i = 0; i < 8; i++) {
+      producers.execute(() -> queue.enqueue(taskDesc));
+    }
+    assertTrue(started.await(2, TimeUnit.SECONDS));
+    // duplicates queued while the first is running
+    for (int i = 0; i < 8; i++) {
+      producers.execute(() -> queue.enqueue(taskDesc));
+    }
+    producers.shutdown();
+    assertTrue(producers.awaitTermination(2, TimeUnit.SECONDS));
+    release.countDown();
+    processor.shutdown(2000, TimeUnit.MILLISECONDS);
+    assertEquals(1, executions.get());
+  }
+
+  @Test
+  void verifyHigherPriorityTasksAreDispatchedFirst() throws InterruptedException {
+    ExecutorTaskQueueProperties props = new ExecutorTaskQueueProperties();
+    props.getPriorities().put(TaskType.UPDATE_HOURLY_SNAPSHOTS, 10);
+    ExecutorTaskQueue queue =
+        new ExecutorTaskQueue(TaskCoalescer.disabled(), props, new SimpleMeterRegistry());
+    queue.enqueue(task(TaskType.UPDATE_SNAPSHOTS, "my-group", "1"));
+    queue.enqueue(task(TaskType.UPDATE_SNAPSHOTS, "my-group", "2"));
+    queue.enqueue(task(TaskType.UPDATE_HOURLY_SNAPSHOTS, "my-group", "3"));
+    queue.enqueue(task(TaskType.UPDATE_SNAPSHOTS, "my-group", "4"));
+    queue.enqueue(task(TaskType.UPDATE_HOURLY_SNAPSHOTS, "my-group", "5"));
+
+    List<String> order = Collections.synchronizedList(new ArrayList<>());
+    queue.register("my-group", 1, recordingRunner(order));
+    queue.unregister("my-group", 2, TimeUnit.SECONDS);
+
+    assertEquals(List.of("3", "5", "1", "2", "4"), order);
+  }
+
+  @Test
+  void verifyGroupsShareDispatchesByWeight() throws InterruptedException {
+    ExecutorTaskQueueProperties props = new ExecutorTaskQueueProperties();
+    props.getGroupWeights().put("heavy", 3);
+    ExecutorTaskQueue queue =
+        new ExecutorTaskQueue(TaskCoalescer.disabled(), props, new SimpleMeterRegistry());
+    for (int i = 0; i < 8; i++) {
+      queue.enqueue(task(TaskType.UPDATE_SNAPSHOTS, "heavy", "heavy" + i));
+      queue.enqueue(task(TaskType.UPDATE_SNAPSHOTS, "light", "light" + i));
+    }
+
+    // hold the first dispatch until both groups are registered
+    List<String> order = Collections.synchronizedList(new ArrayList<>());
+    CountDownLatch started = new CountDownLatch(1);
+    CountDownLatch go = new CountDownLatch(1);
+    ExecutorTaskQueue.TaskRunner runner =
+        (taskDescriptor, onComplete) -> {
+          started.countDown();
+          try {
+            go.await();
+          } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+          }
+          order.add(taskDescriptor.getArg("accounts").get(0));
+          onComplete.run();
+        };
+    queue.register("heavy", 1, runner);
+    assertTrue(started.await(2, TimeUnit.SECONDS));
+    queue.register("light", 1, runner);
+    go.countDown();
+    queue.unregister("heavy", 2, TimeUnit.SECONDS);
+    queue.unregister("light", 2, TimeUnit.SECONDS);
+
+    // of the first 8 dispatches, 6 go to the group with weight 3 and 2 to the group with weight 1
+    assertEquals(16, order.size());
+    assertEquals(6, order.subList(0, 8).stream().filter(a -> a.startsWith("heavy")).count());
+  }
+
+  @Test
+  void verifyGroupConcurrencyLimit() throws InterruptedException {
+    ExecutorTaskQueue queue = new ExecutorTaskQueue();
+    AtomicInteger running = new AtomicInteger();
+    AtomicInteger maxRunning = new AtomicInteger();
+    Mockito.when(taskFactory.build(Mockito.any()))
+        .thenReturn(
+            () -> {
+              maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+              try {
+                Thread.sleep(10);
+              } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+              }
+              running.decrementAndGet();
+            });
+    ExecutorTaskProcessor processor =
+        new ExecutorTaskProcessor(
+            Executors.newCachedThreadPool(),
+            taskFactory,
+            TaskCoalescer.disabled(),
+            queue,
+            "my-group",
+            3);
+    for (int i = 0; i < 30; i++) {
+      queue.enqueue(task(TaskType.UPDATE_SNAPSHOTS, "my-group", String.valueOf(i)));
+    }
+    processor.shutdown(5000, TimeUnit.MILLISECONDS);
+    assertTrue(maxRunning.get() <= 3);
+    assertTrue(maxRunning.get() > 1);
+  }
+
+  @Test
+  void verifyFullQueueRejects() {
+    SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    ExecutorTaskQueue queue = queueWithBackpressure(Backpressure.REJECT, Duration.ZERO, registry);
+    queue.enqueue(task(TaskType.UPDATE_SNAPSHOTS, "my-group", "1"));
+    queue.enqueue(task(TaskType.UPDATE_SNAPSHOTS, "my-group", "2"));
+    TaskDescriptor third = task(TaskType.UPDATE_SNAPSHOTS, "my-group", "3");
+
+    assertThrows(SubscriptionsException.class, () -> queue.enqueue(third));
+    assertEquals(1.0, backpressureCount(registry, "rejected"));
+    assertEquals(2.0, registry.get("rhsm-subscriptions.task.queue.depth").gauge().value());
+  }
+
+  @Test
+  void verifyFullQueueBlocksUntilTimeout() {
+    SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    ExecutorTaskQueue queue =
+        queueWithBackpressure(Backpressure.BLOCK, Duration.ofMillis(50), registry);
+    queue.enqueue(task(TaskType.UPDATE_SNAPSHOTS, "my-group", "1"));
+    queue.enqueue(task(TaskType.UPDATE_SNAPSHOTS, "my-group", "2"));
+    TaskDescriptor third = task(TaskType.UPDATE_SNAPSHOTS, "my-group", "3");
+
+    long start = System.nanoTime();
+    assertThrows(SubscriptionsException.class, () -> queue.enqueue(third));
+    assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(50));
+    assertEquals(1.0, backpressureCount(registry, "rejected"));
+  }
+
+  @Test
+  void verifyBlockedEnqueueProceedsOnceRoomFreesUp() throws Exception {
+    ExecutorTaskQueue queue =
+        queueWithBackpressure(Backpressure.BLOCK, Duration.ofSeconds(5), new SimpleMeterRegistry());
+    queue.enqueue(task(TaskType.UPDATE_SNAPSHOTS, "my-group", "1"));
+    queue.enqueue(task(TaskType.UPDATE_SNAPSHOTS, "my-group", "2"));
+    ExecutorService producer = Executors.newSingleThreadExecutor();
+    Future<?> blocked =
+        producer.submit(() -> queue.enqueue(task(TaskType.UPDATE_SNAPSHOTS, "my-group", "3")));
+
+    List<String> order = Collections.synchronizedList(new ArrayList<>());
+    queue.register("my-group", 1, recordingRunner(order));
+    blocked.get(5, TimeUnit.SECONDS);
+    queue.unregister("my-group", 2, TimeUnit.SECONDS);
+    producer.shutdown();
+
+    assertEquals(List.of("1", "2", "3"), order);
+  }
+
+  @Test
+  void verifyFullQueueSpills() throws InterruptedException {
+    SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    ExecutorTaskQueue queue = queueWithBackpressure(Backpressure.SPILL, Duration.ZERO, registry);
+    for (int i = 1; i <= 5; i++) {
+      queue.enqueue(task(TaskType.UPDATE_SNAPSHOTS, "my-group", String.valueOf(i)));
+    }
+    assertEquals(3.0, backpressureCount(registry, "spilled"));
+    assertEquals(5.0, registry.get("rhsm-subscriptions.task.queue.depth").gauge().value());
+
+    List<String> order = Collections.synchronizedList(new ArrayList<>());
+    queue.register("my-group", 1, recordingRunner(order));
+    queue.unregister("my-group", 2, TimeUnit.SECONDS);
+
+    assertEquals(List.of("1", "2", "3", "4", "5"), order);
+    assertEquals(0.0, registry.get("rhsm-subscriptions.task.queue.depth").gauge().value());
+    assertEquals(5, registry.get("rhsm-subscriptions.task.queue.wait").timer().count());
+  }
+
+  private ExecutorTaskQueue queueWithBackpressure(
+      Backpressure backpressure, Duration blockTimeout, SimpleMeterRegistry registry) {
+    ExecutorTaskQueueProperties props = new ExecutorTaskQueueProperties();
+    props.setQueueCapacity(2);
+    props.setBackpressure(backpressure);
+    props.setBlockTimeout(blockTimeout);
+    return new ExecutorTaskQueue(TaskCoalescer.disabled(), props, registry);
+  }
+
+  private double backpressureCount(SimpleMeterRegistry registry, String outcome) {
+    return registry
+        .counter(
+            "rhsm-subscriptions.task.queue.backpressure", "group", "my-group", "outcome", outcome)
+        .count();
+  }
+
+  private ExecutorTaskQueue.TaskRunner recordingRunner(List<String> order) {
+    return (taskDescriptor, onComplete) -> {
+      order.add(taskDescriptor.getArg("accounts").get(0));
+      onComplete.run();
+    };
+  }
+
+  private TaskDescriptor task(TaskType type, String group, String account) {
+    return TaskDescriptor.builder(type, group).setSingleValuedArg("accounts", account).build();
+  }
 }
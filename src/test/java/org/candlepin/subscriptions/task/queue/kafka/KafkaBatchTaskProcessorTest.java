@@ -0,0 +1,180 @@
+/*
+ * Copyright Red Hat, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ *
+ * Red Hat trademarks are not licensed under GPLv3. No permission is
+ * granted to use or replicate Red Hat trademarks that are incorporated
+ * in this software or its documentation.
+ */
+package org.candlepin.subscriptions.task.queue.kafka;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.candlepin.subscriptions.task.TaskCoalescer;
+import org.candlepin.subscriptions.task.TaskFactory;
+import org.candlepin.subscriptions.task.TaskQueueProperties;
+import org.candlepin.subscriptions.task.TaskType;
+import org.candlepin.subscriptions.task.queue.kafka.message.TaskMessage;
+import org.candlepin.subscriptions.util.KafkaConsumerRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+class KafkaBatchTaskProcessorTest {
+
+  private static final String TOPIC = "tasks";
+
+  private final Map<String, List<Integer>> executedByPartition = new ConcurrentHashMap<>();
+  private final AtomicInteger running = new AtomicInteger();
+  private final AtomicInteger maxRunning = new AtomicInteger();
+  private MeterRegistry meterRegistry;
+  private KafkaBatchTaskProcessor processor;
+
+  @BeforeEach
+  void setup() {
+    TaskQueueProperties props = new TaskQueueProperties();
+    props.setTopic(TOPIC);
+    props.setKafkaGroupId("group");
+    props.setBatchListenerEnabled(true);
+    props.setBatchConcurrency(2);
+
+    TaskFactory taskFactory =
+        descriptor ->
+            () -> {
+              String partition = descriptor.getArg("partition").get(0);
+              int seq = Integer.parseInt(descriptor.getArg("seq").get(0));
+              if (seq < 0) {
+                throw new IllegalStateException("task failure");
+              }
+              maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+              try {
+                Thread.sleep(5);
+              } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+              } finally {
+                running.decrementAndGet();
+              }
+              executedByPartition
+                  .computeIfAbsent(partition, k -> Collections.synchronizedList(new ArrayList<>()))
+                  .add(seq);
+            };
+
+    meterRegistry = new SimpleMeterRegistry();
+    processor =
+        new KafkaBatchTaskProcessor(
+            taskFactory,
+            TaskCoalescer.disabled(),
+            props,
+            mock(KafkaConsumerRegistry.class),
+            meterRegistry);
+  }
+
+  @AfterEach
+  void tearDown() {
+    processor.destroy();
+  }
+
+  @Test
+  void testBatchRunsEveryTaskInPartitionOrder() {
+    List<ConsumerRecord<String, TaskMessage>> records = new ArrayList<>();
+    // interleave the partitions, as a poll would
+    for (int seq = 0; seq < 20; seq++) {
+      records.add(record(0, seq));
+      records.add(record(1, seq));
+      records.add(record(2, seq));
+    }
+
+    processor.receive(records);
+
+    assertEquals(3, executedByPartition.size());
+    List<Integer> expected = new ArrayList<>();
+    for (int seq = 0; seq < 20; seq++) {
+      expected.add(seq);
+    }
+    executedByPartition.values().forEach(executed -> assertEquals(expected, executed));
+    assertTrue(maxRunning.get() > 1, "Partitions should run in parallel");
+    assertTrue(maxRunning.get() <= 2, "Parallelism should be bounded by the batch concurrency");
+    assertEquals(1, meterRegistry.summary("rhsm-subscriptions.task.batch.size").count());
+    assertEquals(60.0, meterRegistry.summary("rhsm-subscriptions.task.batch.size").totalAmount());
+    assertEquals(
+        60,
+        meterRegistry
+            .timer(
+                "rhsm-subscriptions.task.batch.task",
+                "type",
+                TaskType.UPDATE_SNAPSHOTS.name(),
+                "outcome",
+                "success")
+            .count());
+  }
+
+  @Test
+  void testFailedTaskDoesNotStopTheBatch() {
+    List<ConsumerRecord<String, TaskMessage>> records =
+        List.of(record(0, 0), record(0, -1), record(0, 1), record(1, 0));
+
+    processor.receive(records);
+
+    assertEquals(List.of(0, 1), executedByPartition.get("0"));
+    assertEquals(List.of(0), executedByPartition.get("1"));
+    assertEquals(
+        1,
+        meterRegistry
+            .timer(
+                "rhsm-subscriptions.task.batch.task",
+                "type",
+                TaskType.UPDATE_SNAPSHOTS.name(),
+                "outcome",
+                "failure")
+            .count());
+  }
+
+  @Test
+  void testUnreadableMessageIsSkipped() {
+    List<ConsumerRecord<String, TaskMessage>> records = new ArrayList<>();
+    records.add(record(0, 0));
+    records.add(new ConsumerRecord<>(TOPIC, 0, 1L, "key", null));
+    records.add(record(0, 1));
+
+    processor.receive(records);
+
+    assertEquals(List.of(0, 1), executedByPartition.get("0"));
+  }
+
+  private ConsumerRecord<String, TaskMessage> record(int partition, int seq) {
+    TaskMessage message =
+        TaskMessage.newBuilder()
+            .setType(TaskType.UPDATE_SNAPSHOTS.name())
+            .setGroupId(TOPIC)
+            .setArgs(
+                Map.of(
+                    "partition",
+                    List.of(String.valueOf(partition)),
+                    "seq",
+                    List.of(String.valueOf(seq))))
+            .build();
+    return new ConsumerRecord<>(TOPIC, partition, seq, "key", message);
+  }
+}
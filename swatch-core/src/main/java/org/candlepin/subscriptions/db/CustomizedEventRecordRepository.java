@@ -0,0 +1,114 @@
+/*
+ * Copyright Red Hat, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ *
+ * Red Hat trademarks are not licensed under GPLv3. No permission is
+ * granted to use or replicate Red Hat trademarks that are incorporated
+ * in this software or its documentation.
+ */
+package org.candlepin.subscriptions.db;
+
+import java.time.OffsetDateTime;
+import java.util.Optional;
+import java.util.stream.Stream;
+import org.candlepin.subscriptions.db.model.EventRecordKey;
+import org.candlepin.subscriptions.json.Event;
+import org.springframework.transaction.annotation.Transactional;
+
+/**
+ * Fragment interface defining methods for queries not handled well by Spring JPA's query methods
+ * DSL.
+ *
+ * <p>See
+ * https://docs.spring.io/spring-data/jpa/docs/2.3.0.RELEASE/reference/html/#repositories.custom-implementations
+ */
+public interface CustomizedEventRecordRepository {
+
+  /**
+   * Stream every event for the given account and service type in a time range, ordered by
+   * timestamp, using a single server-side cursor.
+   *
+   * <p>Unlike the derived finder methods, records are detached from the persistence context as they
+   * are read, so memory use does not grow with the number of events in the range.
+   *
+   * <p>NOTE: the caller must hold a transaction open until the stream has been closed.
+   *
+   * @param accountNumber account number
+   * @param serviceType service type
+   * @param begin start of the time range (inclusive)
+   * @param end end of the time range (exclusive)
+   * @return Stream of Events, ordered by timestamp
+   */
+  Stream<Event> streamByAccountNumberAndServiceTypeAndTimestampRange(
+      String accountNumber, String serviceType, OffsetDateTime begin, OffsetDateTime end);
+
+  /**
+   * Find the key ending a chunk of the given size of the oldest events after a key and before the
+   * cutoff date, so that the chunk can be deleted as a key range.
+   *
+   * @param after key the chunk starts after (exclusive), or null to start at the oldest event
+   * @param cutoffDate only events before this timestamp are considered
+   * @param chunkSize number of events in the chunk
+   * @return key of the last event of the chunk, or empty if fewer events remain
+   */
+  Optional<EventRecordKey> findEventPurgeChunkEnd(
+      EventRecordKey after, OffsetDateTime cutoffDate, int chunkSize);
+
+  /**
+   * Delete the events in a (timestamp, id) key range in a transaction of its own. Keys are unique,
+   * so a range ending at a chunk end holds at most the chunk's events.
+   *
+   * @param after start of the range (exclusive), or null to start at the oldest event
+   * @param last end of the range (inclusive), or null to run up to the cutoff date
+   * @param cutoffDate only events before this timestamp are deleted
+   * @return the number of events deleted
+   */
+  @Transactional
+  int deleteEventRecordsInKeyRange(
+      EventRecordKey after, EventRecordKey last, OffsetDateTime cutoffDate);
+
+  /**
+   * Whether the events table is partitioned by month, which the changelog only does on PostgreSQL.
+   *
+   * @return true if the events table is partitioned
+   */
+  @Transactional(readOnly = true)
+  boolean isEventsTablePartitioned();
+
+  /**
+   * Create the monthly partitions of the events table covering a time range, where no partition
+   * covers a month yet.
+   *
+   * <p>NOTE: requires the events table to be partitioned, which is only the case on PostgreSQL.
+   *
+   * @param rangeStart start of the range; its month gets a partition
+   * @param rangeEnd end of the range (exclusive)
+   * @return the number of partitions created
+   */
+  @Transactional
+  int createEventPartitions(OffsetDateTime rangeStart, OffsetDateTime rangeEnd);
+
+  /**
+   * Drop the partitions of the events table holding only events before the cutoff date. Events
+   * before the cutoff date in the month containing it are left in place.
+   *
+   * <p>NOTE: requires the events table to be partitioned, which is only the case on PostgreSQL.
+   *
+   * @param cutoffDate partitions ending at or before this timestamp are dropped
+   * @return the number of partitions dropped
+   */
+  @Transactional
+  int dropEventPartitionsBefore(OffsetDateTime cutoffDate);
+}
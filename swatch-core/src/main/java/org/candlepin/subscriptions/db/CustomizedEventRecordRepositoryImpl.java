@@ -0,0 +1,157 @@
+/*
+ * Copyright Red Hat, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ *
+ * Red Hat trademarks are not licensed under GPLv3. No permission is
+ * granted to use or replicate Red Hat trademarks that are incorporated
+ * in this software or its documentation.
+ */
+package org.candlepin.subscriptions.db;
+
+import java.time.OffsetDateTime;
+import java.util.Optional;
+import java.util.stream.Stream;
+import javax.persistence.EntityManager;
+import javax.persistence.Query;
+import javax.persistence.TypedQuery;
+import org.candlepin.subscriptions.db.model.EventRecord;
+import org.candlepin.subscriptions.db.model.EventRecordKey;
+import org.candlepin.subscriptions.json.Event;
+import org.hibernate.Session;
+import org.hibernate.jpa.QueryHints;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.stereotype.Repository;
+
+/** Class implementing custom queries not handled well by Spring JPA's query methods DSL. */
+@Repository
+public class CustomizedEventRecordRepositoryImpl implements CustomizedEventRecordRepository {
+
+  /** Number of rows the JDBC driver pulls from the cursor per round trip. */
+  static final int EVENT_STREAM_FETCH_SIZE = 1000;
+
+  /** Events of an account and service type in a time range, shared with EventRecordRepository. */
+  static final String STREAM_BY_SERVICE_TYPE_QUERY =
+      "select * from events where account_number=:accountNumber "
+          + "and service_type=:serviceType "
+          + "and timestamp >= :begin and timestamp < :end order by timestamp";
+
+  /**
+   * Keys after the given key, in (timestamp, id) order. The redundant timestamp bound lets the
+   * (timestamp, id) index bound the scan.
+   */
+  private static final String AFTER_KEY_CONDITION =
+      " and e.timestamp >= :afterTimestamp"
+          + " and (e.timestamp > :afterTimestamp or e.id > :afterId)";
+
+  /** Keys up to and including the given key, in (timestamp, id) order. */
+  private static final String UP_TO_KEY_CONDITION =
+      " and e.timestamp <= :lastTimestamp"
+          + " and (e.timestamp < :lastTimestamp or e.id <= :lastId)";
+
+  private static final String POSTGRESQL_PRODUCT_NAME = "PostgreSQL";
+
+  private EntityManager em;
+
+  @Autowired
+  public CustomizedEventRecordRepositoryImpl(
+      @Qualifier("rhsmSubscriptionsEntityManagerFactory") EntityManager em) {
+    this.em = em;
+  }
+
+  @Override
+  @SuppressWarnings("unchecked")
+  public Stream<Event> streamByAccountNumberAndServiceTypeAndTimestampRange(
+      String accountNumber, String serviceType, OffsetDateTime begin, OffsetDateTime end) {
+    Stream<EventRecord> records =
+        em.createNativeQuery(STREAM_BY_SERVICE_TYPE_QUERY, EventRecord.class)
+            .setParameter("accountNumber", accountNumber)
+            .setParameter("serviceType", serviceType)
+            .setParameter("begin", begin)
+            .setParameter("end", end)
+            .setHint(QueryHints.HINT_FETCH_SIZE, EVENT_STREAM_FETCH_SIZE)
+            .setHint(QueryHints.HINT_READONLY, true)
+            .getResultStream();
+    return records.map(
+        eventRecord -> {
+          em.detach(eventRecord);
+          return eventRecord.getEvent();
+        });
+  }
+
+  @Override
+  public Optional<EventRecordKey> findEventPurgeChunkEnd(
+      EventRecordKey after, OffsetDateTime cutoffDate, int chunkSize) {
+    String jpql =
+        "select new org.candlepin.subscriptions.db.model.EventRecordKey(e.timestamp, e.id) "
+            + "from EventRecord e where e.timestamp < :cutoffDate"
+            + (after == null ? "" : AFTER_KEY_CONDITION)
+            + " order by e.timestamp, e.id";
+    TypedQuery<EventRecordKey> query =
+        em.createQuery(jpql, EventRecordKey.class).setParameter("cutoffDate", cutoffDate);
+    if (after != null) {
+      query
+          .setParameter("afterTimestamp", after.getTimestamp())
+          .setParameter("afterId", after.getId());
+    }
+    return query.setFirstResult(chunkSize - 1).setMaxResults(1).getResultStream().findFirst();
+  }
+
+  @Override
+  public int deleteEventRecordsInKeyRange(
+      EventRecordKey after, EventRecordKey last, OffsetDateTime cutoffDate) {
+    String jpql =
+        "delete from EventRecord e where e.timestamp < :cutoffDate"
+            + (after == null ? "" : AFTER_KEY_CONDITION)
+            + (last == null ? "" : UP_TO_KEY_CONDITION);
+    Query query = em.createQuery(jpql).setParameter("cutoffDate", cutoffDate);
+    if (after != null) {
+      query
+          .setParameter("afterTimestamp", after.getTimestamp())
+          .setParameter("afterId", after.getId());
+    }
+    if (last != null) {
+      query.setParameter("lastTimestamp", last.getTimestamp()).setParameter("lastId", last.getId());
+    }
+    return query.executeUpdate();
+  }
+
+  @Override
+  public int createEventPartitions(OffsetDateTime rangeStart, OffsetDateTime rangeEnd) {
+    Object created =
+        em.createNativeQuery("select ensure_events_partitions(:rangeStart, :rangeEnd)")
+            .setParameter("rangeStart", rangeStart)
+            .setParameter("rangeEnd", rangeEnd)
+            .getSingleResult();
+    return ((Number) created).intValue();
+  }
+
+  @Override
+  public int dropEventPartitionsBefore(OffsetDateTime cutoffDate) {
+    Object dropped =
+        em.createNativeQuery("select drop_events_partitions_before(:cutoffDate)")
+            .setParameter("cutoffDate", cutoffDate)
+            .getSingleResult();
+    return ((Number) dropped).intValue();
+  }
+
+  @Override
+  public boolean isEventsTablePartitioned() {
+    return em.unwrap(Session.class)
+        .doReturningWork(
+            connection ->
+                POSTGRESQL_PRODUCT_NAME.equals(connection.getMetaData().getDatabaseProductName()));
+  }
+}
@@ -0,0 +1,79 @@
+/*
+ * Copyright Red Hat, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ *
+ * Red Hat trademarks are not licensed under GPLv3. No permission is
+ * granted to use or replicate Red Hat trademarks that are incorporated
+ * in this software or its documentation.
+ */
+package org.candlepin.subscriptions.db;
+
+import java.util.Collection;
+import java.util.UUID;
+import org.candlepin.subscriptions.db.model.Host;
+
+/**
+ * Fragment interface defining batched writes of HBI hosts, used to reconcile an account's stored
+ * hosts without loading them through JPA.
+ *
+ * <p>Each method sends a single JDBC batch per table, bypassing the persistence context; the hosts
+ * passed in are not expected to be managed by it. All methods must be called within a transaction.
+ *
+ * <p>See
+ * https://docs.spring.io/spring-data/jpa/docs/2.3.0.RELEASE/reference/html/#repositories.custom-implementations
+ */
+public interface CustomizedHostRepository {
+
+  /**
+   * Insert new hosts, along with their measurements and tally buckets.
+   *
+   * <p>On return, every host has been assigned an id.
+   *
+   * @param hosts hosts to insert
+   */
+  void insertHosts(Collection<Host> hosts);
+
+  /**
+   * Update the HBI-derived fields and measurements of existing hosts.
+   *
+   * <p>Only the columns an inventory tally populates from HBI facts are written, along with the
+   * fact hash. The number of guests is only written when set, and measurements are written per
+   * unit of measure, leaving any others in place.
+   *
+   * @param hosts hosts to update
+   */
+  void updateHostFacts(Collection<Host> hosts);
+
+  /**
+   * Update the last seen date of existing hosts, and nothing else.
+   *
+   * @param hosts hosts to update
+   */
+  void updateLastSeen(Collection<Host> hosts);
+
+  /**
+   * Replace the tally buckets of existing hosts, and update their bucket hash.
+   *
+   * @param hosts hosts whose buckets to replace
+   */
+  void replaceHostBuckets(Collection<Host> hosts);
+
+  /**
+   * Delete hosts by id. Their measurements, monthly totals and buckets are deleted by cascade.
+   *
+   * @param hostIds ids of the hosts to delete
+   */
+  void deleteHosts(Collection<UUID> hostIds);
+}
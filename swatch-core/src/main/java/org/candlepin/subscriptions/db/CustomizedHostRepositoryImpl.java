@@ -0,0 +1,304 @@
+/*
+ * Copyright Red Hat, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ *
+ * Red Hat trademarks are not licensed under GPLv3. No permission is
+ * granted to use or replicate Red Hat trademarks that are incorporated
+ * in this software or its documentation.
+ */
+package org.candlepin.subscriptions.db;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.util.Collection;
+import java.util.Map;
+import java.util.UUID;
+import javax.persistence.EntityManager;
+import org.candlepin.subscriptions.db.model.Host;
+import org.candlepin.subscriptions.db.model.HostBucketKey;
+import org.candlepin.subscriptions.db.model.HostTallyBucket;
+import org.candlepin.subscriptions.db.model.StringValueEnum;
+import org.candlepin.subscriptions.json.Measurement;
+import org.hibernate.Session;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.stereotype.Repository;
+
+/** Class implementing batched host writes not handled well by Spring JPA. */
+@Repository
+public class CustomizedHostRepositoryImpl implements CustomizedHostRepository {
+
+  static final String INSERT_HOST =
+      "insert into hosts (id, instance_id, inventory_id, insights_id, account_number, org_id, "
+          + "display_name, subscription_manager_id, is_guest, hypervisor_uuid, hardware_type, "
+          + "num_of_guests, last_seen, is_unmapped_guest, is_hypervisor, cloud_provider, "
+          + "instance_type, billing_provider, billing_account_id, fact_hash, bucket_hash) "
+          + "values (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
+
+  static final String UPDATE_HOST_FACTS =
+      "update hosts set inventory_id=?, insights_id=?, account_number=?, org_id=?, "
+          + "display_name=?, subscription_manager_id=?, is_guest=?, hypervisor_uuid=?, "
+          + "hardware_type=?, num_of_guests=coalesce(?, num_of_guests), last_seen=?, "
+          + "is_unmapped_guest=?, is_hypervisor=?, cloud_provider=?, fact_hash=? where id=?";
+
+  static final String UPDATE_LAST_SEEN = "update hosts set last_seen=? where id=?";
+
+  static final String UPDATE_BUCKET_HASH = "update hosts set bucket_hash=? where id=?";
+
+  static final String DELETE_HOST = "delete from hosts where id=?";
+
+  static final String DELETE_MEASUREMENT =
+      "delete from instance_measurements where instance_id=? and uom=?";
+
+  static final String INSERT_MEASUREMENT =
+      "insert into instance_measurements (instance_id, uom, value) values (?, ?, ?)";
+
+  static final String DELETE_BUCKETS = "delete from host_tally_buckets where host_id=?";
+
+  static final String INSERT_BUCKET =
+      "insert into host_tally_buckets (host_id, product_id, sla, usage, billing_provider, "
+          + "billing_account_id, as_hypervisor, cores, sockets, measurement_type) "
+          + "values (?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
+
+  private EntityManager em;
+
+  @Autowired
+  public CustomizedHostRepositoryImpl(
+      @Qualifier("rhsmSubscriptionsEntityManagerFactory") EntityManager em) {
+    this.em = em;
+  }
+
+  @Override
+  public void insertHosts(Collection<Host> hosts) {
+    if (hosts.isEmpty()) {
+      return;
+    }
+    em.unwrap(Session.class)
+        .doWork(
+            connection -> {
+              insertHostRows(connection, hosts);
+              insertMeasurements(connection, hosts);
+              insertBuckets(connection, hosts);
+            });
+  }
+
+  @Override
+  public void updateHostFacts(Collection<Host> hosts) {
+    if (hosts.isEmpty()) {
+      return;
+    }
+    em.unwrap(Session.class)
+        .doWork(
+            connection -> {
+              updateHostRows(connection, hosts);
+              replaceMeasurements(connection, hosts);
+            });
+  }
+
+  @Override
+  public void updateLastSeen(Collection<Host> hosts) {
+    if (hosts.isEmpty()) {
+      return;
+    }
+    em.unwrap(Session.class)
+        .doWork(
+            connection -> {
+              try (PreparedStatement statement = connection.prepareStatement(UPDATE_LAST_SEEN)) {
+                for (Host host : hosts) {
+                  setNullable(statement, 1, host.getLastSeen(), Types.TIMESTAMP_WITH_TIMEZONE);
+                  statement.setObject(2, host.getId());
+                  statement.addBatch();
+                }
+                statement.executeBatch();
+              }
+            });
+  }
+
+  @Override
+  public void replaceHostBuckets(Collection<Host> hosts) {
+    if (hosts.isEmpty()) {
+      return;
+    }
+    em.unwrap(Session.class)
+        .doWork(
+            connection -> {
+              try (PreparedStatement statement = connection.prepareStatement(DELETE_BUCKETS)) {
+                for (Host host : hosts) {
+                  statement.setObject(1, host.getId());
+                  statement.addBatch();
+                }
+                statement.executeBatch();
+              }
+              insertBuckets(connection, hosts);
+              try (PreparedStatement statement = connection.prepareStatement(UPDATE_BUCKET_HASH)) {
+                for (Host host : hosts) {
+                  statement.setString(1, host.getBucketHash());
+                  statement.setObject(2, host.getId());
+                  statement.addBatch();
+                }
+                statement.executeBatch();
+              }
+            });
+  }
+
+  @Override
+  public void deleteHosts(Collection<UUID> hostIds) {
+    if (hostIds.isEmpty()) {
+      return;
+    }
+    em.unwrap(Session.class)
+        .doWork(
+            connection -> {
+              try (PreparedStatement statement = connection.prepareStatement(DELETE_HOST)) {
+                for (UUID hostId : hostIds) {
+                  statement.setObject(1, hostId);
+                  statement.addBatch();
+                }
+                statement.executeBatch();
+              }
+            });
+  }
+
+  private void insertHostRows(Connection connection, Collection<Host> hosts)
+      throws SQLException {
+    try (PreparedStatement statement = connection.prepareStatement(INSERT_HOST)) {
+      for (Host host : hosts) {
+        if (host.getId() == null) {
+          host.setId(UUID.randomUUID());
+        }
+        statement.setObject(1, host.getId());
+        statement.setString(2, host.getInstanceId());
+        statement.setString(3, host.getInventoryId());
+        statement.setString(4, host.getInsightsId());
+        statement.setString(5, host.getAccountNumber());
+        statement.setString(6, host.getOrgId());
+        statement.setString(7, host.getDisplayName());
+        statement.setString(8, host.getSubscriptionManagerId());
+        statement.setBoolean(9, host.isGuest());
+        statement.setString(10, host.getHypervisorUuid());
+        statement.setString(11, nameOf(host.getHardwareType()));
+        setNullable(statement, 12, host.getNumOfGuests(), Types.INTEGER);
+        setNullable(statement, 13, host.getLastSeen(), Types.TIMESTAMP_WITH_TIMEZONE);
+        statement.setBoolean(14, host.isUnmappedGuest());
+        statement.setBoolean(15, host.isHypervisor());
+        statement.setString(16, host.getCloudProvider());
+        statement.setString(17, host.getInstanceType());
+        statement.setString(18, valueOf(host.getBillingProvider()));
+        statement.setString(19, host.getBillingAccountId());
+        statement.setString(20, host.getFactHash());
+        statement.setString(21, host.getBucketHash());
+        statement.addBatch();
+      }
+      statement.executeBatch();
+    }
+  }
+
+  private void updateHostRows(Connection connection, Collection<Host> hosts)
+      throws SQLException {
+    try (PreparedStatement statement = connection.prepareStatement(UPDATE_HOST_FACTS)) {
+      for (Host host : hosts) {
+        statement.setString(1, host.getInventoryId());
+        statement.setString(2, host.getInsightsId());
+        statement.setString(3, host.getAccountNumber());
+        statement.setString(4, host.getOrgId());
+        statement.setString(5, host.getDisplayName());
+        statement.setString(6, host.getSubscriptionManagerId());
+        statement.setBoolean(7, host.isGuest());
+        statement.setString(8, host.getHypervisorUuid());
+        statement.setString(9, nameOf(host.getHardwareType()));
+        setNullable(statement, 10, host.getNumOfGuests(), Types.INTEGER);
+        setNullable(statement, 11, host.getLastSeen(), Types.TIMESTAMP_WITH_TIMEZONE);
+        statement.setBoolean(12, host.isUnmappedGuest());
+        statement.setBoolean(13, host.isHypervisor());
+        statement.setString(14, host.getCloudProvider());
+        statement.setString(15, host.getFactHash());
+        statement.setObject(16, host.getId());
+        statement.addBatch();
+      }
+      statement.executeBatch();
+    }
+  }
+
+  private void replaceMeasurements(Connection connection, Collection<Host> hosts)
+      throws SQLException {
+    try (PreparedStatement statement = connection.prepareStatement(DELETE_MEASUREMENT)) {
+      for (Host host : hosts) {
+        for (Measurement.Uom uom : host.getMeasurements().keySet()) {
+          statement.setObject(1, host.getId());
+          statement.setString(2, uom.name());
+          statement.addBatch();
+        }
+      }
+      statement.executeBatch();
+    }
+    insertMeasurements(connection, hosts);
+  }
+
+  private void insertMeasurements(Connection connection, Collection<Host> hosts)
+      throws SQLException {
+    try (PreparedStatement statement = connection.prepareStatement(INSERT_MEASUREMENT)) {
+      for (Host host : hosts) {
+        for (Map.Entry<Measurement.Uom, Double> entry : host.getMeasurements().entrySet()) {
+          statement.setObject(1, host.getId());
+          statement.setString(2, entry.getKey().name());
+          statement.setDouble(3, entry.getValue());
+          statement.addBatch();
+        }
+      }
+      statement.executeBatch();
+    }
+  }
+
+  private void insertBuckets(Connection connection, Collection<Host> hosts) throws SQLException {
+    try (PreparedStatement statement = connection.prepareStatement(INSERT_BUCKET)) {
+      for (Host host : hosts) {
+        for (HostTallyBucket bucket : host.getBuckets()) {
+          HostBucketKey key = bucket.getKey();
+          statement.setObject(1, host.getId());
+          statement.setString(2, key.getProductId());
+          statement.setString(3, valueOf(key.getSla()));
+          statement.setString(4, valueOf(key.getUsage()));
+          statement.setString(5, valueOf(key.getBillingProvider()));
+          statement.setString(6, key.getBillingAccountId());
+          setNullable(statement, 7, key.getAsHypervisor(), Types.BOOLEAN);
+          statement.setInt(8, bucket.getCores());
+          statement.setInt(9, bucket.getSockets());
+          statement.setString(10, nameOf(bucket.getMeasurementType()));
+          statement.addBatch();
+        }
+      }
+      statement.executeBatch();
+    }
+  }
+
+  private static void setNullable(PreparedStatement statement, int index, Object value, int type)
+      throws SQLException {
+    if (value == null) {
+      statement.setNull(index, type);
+    } else {
+      statement.setObject(index, value);
+    }
+  }
+
+  private static String nameOf(Enum<?> value) {
+    return value == null ? null : value.name();
+  }
+
+  private static String valueOf(StringValueEnum<?> value) {
+    return value == null ? null : value.getValue();
+  }
+}
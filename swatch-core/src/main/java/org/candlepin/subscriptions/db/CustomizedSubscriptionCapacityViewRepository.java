@@ -0,0 +1,72 @@
+/*
+ * Copyright Red Hat, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ *
+ * Red Hat trademarks are not licensed under GPLv3. No permission is
+ * granted to use or replicate Red Hat trademarks that are incorporated
+ * in this software or its documentation.
+ */
+package org.candlepin.subscriptions.db;
+
+import java.time.OffsetDateTime;
+import org.candlepin.subscriptions.db.model.ServiceLevel;
+import org.candlepin.subscriptions.db.model.Usage;
+import org.candlepin.subscriptions.utilization.api.model.SkuCapacityReportSort;
+import org.candlepin.subscriptions.utilization.api.model.SortDirection;
+import org.candlepin.subscriptions.utilization.api.model.Uom;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
+
+/**
+ * Fragment interface defining methods for queries not handled well by Spring JPA's query methods
+ * DSL.
+ *
+ * <p>See
+ * https://docs.spring.io/spring-data/jpa/docs/2.3.0.RELEASE/reference/html/#repositories.custom-implementations
+ */
+public interface CustomizedSubscriptionCapacityViewRepository {
+
+  /**
+   * Find a page of SKUs having capacity matching the given filters, ordered by a per-SKU aggregate
+   * of the requested sort field.
+   *
+   * <p>Grouping, sorting, offset/limit and the total count are all computed by the database, so
+   * only the SKUs on the requested page need to be loaded in full afterwards.
+   *
+   * @param ownerId the owner to report on
+   * @param productId the swatch product ID
+   * @param serviceLevel the service level to filter on; null or _ANY for no filter
+   * @param usage the usage to filter on; null or _ANY for no filter
+   * @param reportStart capacities must end on or after this date
+   * @param reportEnd capacities must begin on or before this date; also used as "now" when
+   *     determining the next event of a SKU
+   * @param uom the unit of measure to filter and sum capacities on; null for no filter
+   * @param sort the field to sort by; null sorts by SKU
+   * @param dir the sort direction; null sorts ascending
+   * @param pageable the page to fetch
+   * @return a page of SKUs, in sorted order
+   */
+  Page<String> findSkuPage(
+      String ownerId,
+      String productId,
+      ServiceLevel serviceLevel,
+      Usage usage,
+      OffsetDateTime reportStart,
+      OffsetDateTime reportEnd,
+      Uom uom,
+      SkuCapacityReportSort sort,
+      SortDirection dir,
+      Pageable pageable);
+}
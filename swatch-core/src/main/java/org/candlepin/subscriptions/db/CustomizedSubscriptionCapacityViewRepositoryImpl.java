@@ -0,0 +1,241 @@
+/*
+ * Copyright Red Hat, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ *
+ * Red Hat trademarks are not licensed under GPLv3. No permission is
+ * granted to use or replicate Red Hat trademarks that are incorporated
+ * in this software or its documentation.
+ */
+package org.candlepin.subscriptions.db;
+
+import java.time.OffsetDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.stream.Collectors;
+import javax.persistence.EntityManager;
+import javax.persistence.Query;
+import org.candlepin.subscriptions.db.model.ServiceLevel;
+import org.candlepin.subscriptions.db.model.StringValueEnum;
+import org.candlepin.subscriptions.db.model.SubscriptionCapacityView;
+import org.candlepin.subscriptions.db.model.Usage;
+import org.candlepin.subscriptions.utilization.api.model.SkuCapacityReportSort;
+import org.candlepin.subscriptions.utilization.api.model.SortDirection;
+import org.candlepin.subscriptions.utilization.api.model.Uom;
+import org.hibernate.jpa.QueryHints;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.support.PageableExecutionUtils;
+import org.springframework.stereotype.Repository;
+
+/** Class implementing custom queries not handled well by Spring JPA's query methods DSL. */
+@Repository
+public class CustomizedSubscriptionCapacityViewRepositoryImpl
+    implements CustomizedSubscriptionCapacityViewRepository {
+
+  private static final String FROM_VIEW = " FROM (" + SubscriptionCapacityView.SUBSELECT + ") v";
+  private static final String HAS_NEXT_EVENT =
+      "MAX(CASE WHEN v.end_date > :reportEnd THEN 1 ELSE 0 END)";
+  private static final String SOCKETS =
+      "COALESCE(v.physical_sockets, 0) + COALESCE(v.virtual_sockets, 0)";
+  private static final String CORES =
+      "COALESCE(v.physical_cores, 0) + COALESCE(v.virtual_cores, 0)";
+
+  private EntityManager em;
+
+  @Autowired
+  public CustomizedSubscriptionCapacityViewRepositoryImpl(
+      @Qualifier("rhsmSubscriptionsEntityManagerFactory") EntityManager em) {
+    this.em = em;
+  }
+
+  @Override
+  public Page<String> findSkuPage(
+      String ownerId,
+      String productId,
+      ServiceLevel serviceLevel,
+      Usage usage,
+      OffsetDateTime reportStart,
+      OffsetDateTime reportEnd,
+      Uom uom,
+      SkuCapacityReportSort sort,
+      SortDirection dir,
+      Pageable pageable) {
+
+    Map<String, Object> params = new HashMap<>();
+    String where = buildWhereClause(ownerId, productId, serviceLevel, usage, uom, params);
+    params.put("reportStart", reportStart);
+    params.put("reportEnd", reportEnd);
+
+    String direction = dir == SortDirection.DESC ? " DESC" : " ASC";
+    List<String> sortKeys = buildSortKeys(sort, direction, uom);
+    StringBuilder select = new StringBuilder("SELECT v.sku");
+    List<String> orderBy = new ArrayList<>();
+    for (int i = 0; i < sortKeys.size(); i++) {
+      // Each sort key is "<aggregate expression> <direction>"; select the expression and order by
+      // its alias so the statement stays valid for databases that reject ordinal positions.
+      String key = sortKeys.get(i);
+      int split = key.lastIndexOf(' ');
+      select.append(", ").append(key, 0, split).append(" AS k").append(i);
+      orderBy.add("k" + i + key.substring(split));
+    }
+    orderBy.add("v.sku" + direction);
+
+    Query query =
+        em.createNativeQuery(
+            select
+                + FROM_VIEW
+                + where
+                + " GROUP BY v.sku ORDER BY "
+                + String.join(", ", orderBy));
+    bind(query, params);
+    if (pageable.isPaged()) {
+      query.setFirstResult((int) pageable.getOffset()).setMaxResults(pageable.getPageSize());
+    }
+    query.setHint(QueryHints.HINT_READONLY, true);
+
+    List<?> rows = query.getResultList();
+    List<String> skus =
+        rows.stream()
+            .map(row -> row instanceof Object[] ? ((Object[]) row)[0] : row)
+            .map(String.class::cast)
+            .collect(Collectors.toList());
+
+    return PageableExecutionUtils.getPage(skus, pageable, () -> countSkus(where, params));
+  }
+
+  private long countSkus(String where, Map<String, Object> params) {
+    Query query = em.createNativeQuery("SELECT COUNT(DISTINCT v.sku)" + FROM_VIEW + where);
+    bind(query, params);
+    return ((Number) query.getSingleResult()).longValue();
+  }
+
+  private static void bind(Query query, Map<String, Object> params) {
+    params.forEach(query::setParameter);
+  }
+
+  private static String buildWhereClause(
+      String ownerId,
+      String productId,
+      ServiceLevel serviceLevel,
+      Usage usage,
+      Uom uom,
+      Map<String, Object> params) {
+    StringBuilder where =
+        new StringBuilder(
+            " WHERE v.owner_id = :ownerId AND v.product_id = :productId"
+                + " AND v.begin_date <= :reportEnd AND v.end_date >= :reportStart");
+    params.put("ownerId", ownerId);
+    params.put("productId", productId);
+    if (Objects.nonNull(serviceLevel) && serviceLevel != ServiceLevel._ANY) {
+      where.append(" AND v.sla = :serviceLevel");
+      params.put("serviceLevel", serviceLevel.getValue());
+    }
+    if (Objects.nonNull(usage) && usage != Usage._ANY) {
+      where.append(" AND v.usage = :usage");
+      params.put("usage", usage.getValue());
+    }
+    if (uom == Uom.CORES) {
+      where.append(
+          " AND (v.virtual_cores IS NOT NULL OR v.physical_cores IS NOT NULL"
+              + " OR v.has_unlimited_usage = true)");
+    } else if (uom == Uom.SOCKETS) {
+      where.append(
+          " AND (v.virtual_sockets IS NOT NULL OR v.physical_sockets IS NOT NULL"
+              + " OR v.has_unlimited_usage = true)");
+    }
+    return where.toString();
+  }
+
+  /**
+   * Translate the sort field into per-SKU aggregates mirroring how the report aggregates its rows.
+   * The SKU itself is always appended as the final tie-breaker by the caller.
+   */
+  private static List<String> buildSortKeys(
+      SkuCapacityReportSort sort, String direction, Uom uom) {
+    if (sort == null) {
+      return List.of();
+    }
+    switch (sort) {
+      case SERVICE_LEVEL:
+        return List.of(
+            "MIN(" + rankOf("v.sla", ServiceLevel.values(), ServiceLevel._ANY) + ")" + direction);
+      case USAGE:
+        return List.of("MIN(" + rankOf("v.usage", Usage.values(), Usage._ANY) + ")" + direction);
+      case QUANTITY:
+        return List.of("SUM(v.quantity)" + direction);
+      case NEXT_EVENT_DATE:
+        // SKUs without an upcoming event have no date to compare, so they always sort last
+        return List.of(
+            HAS_NEXT_EVENT + " DESC",
+            "MIN(CASE WHEN v.end_date > :reportEnd THEN v.end_date END)" + direction);
+      case NEXT_EVENT_TYPE:
+        return List.of(HAS_NEXT_EVENT + " DESC");
+      case TOTAL_CAPACITY:
+        // unlimited capacity subscriptions are greater than non-unlimited
+        return List.of(
+            "MAX(CASE WHEN v.has_unlimited_usage = true THEN 1 ELSE 0 END)" + direction,
+            "SUM(" + capacityOf(uom) + ")" + direction);
+      case PRODUCT_NAME:
+        return List.of("MIN(v.product_name)" + direction);
+      case SKU:
+      default:
+        return List.of();
+    }
+  }
+
+  private static String capacityOf(Uom uom) {
+    if (uom == Uom.SOCKETS) {
+      return SOCKETS;
+    } else if (uom == Uom.CORES) {
+      return CORES;
+    }
+    return "CASE WHEN COALESCE(v.physical_sockets, 0) <> 0 THEN "
+        + SOCKETS
+        + " WHEN COALESCE(v.physical_cores, 0) <> 0 THEN "
+        + CORES
+        + " ELSE 0 END";
+  }
+
+  /**
+   * Build a CASE expression ranking a string-valued column the same way the API enum of its values
+   * is ordered. Values match case-insensitively, and unknown or null values rank as the empty
+   * value, matching how they are parsed for the report.
+   */
+  private static String rankOf(
+      String column, StringValueEnum<? extends Enum<?>>[] values, StringValueEnum<?> any) {
+    StringBuilder rank = new StringBuilder("CASE LOWER(").append(column).append(")");
+    int emptyRank = 0;
+    for (StringValueEnum<? extends Enum<?>> value : values) {
+      if (value == any) {
+        continue;
+      }
+      int ordinal = value.asOpenApiEnum().ordinal();
+      if (value.getValue().isEmpty()) {
+        emptyRank = ordinal;
+      } else {
+        rank.append(" WHEN '")
+            .append(value.getValue().toLowerCase().replace("'", "''"))
+            .append("' THEN ")
+            .append(ordinal);
+      }
+    }
+    return rank.append(" ELSE ").append(emptyRank).append(" END").toString();
+  }
+}
@@ -0,0 +1,53 @@
+/*
+ * Copyright Red Hat, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ *
+ * Red Hat trademarks are not licensed under GPLv3. No permission is
+ * granted to use or replicate Red Hat trademarks that are incorporated
+ * in this software or its documentation.
+ */
+package org.candlepin.subscriptions.db;
+
+import java.util.Collection;
+import org.candlepin.subscriptions.db.model.TallySnapshot;
+
+/**
+ * Fragment interface defining methods for queries not handled well by Spring JPA's query methods
+ * DSL.
+ *
+ * <p>See
+ * https://docs.spring.io/spring-data/jpa/docs/2.3.0.RELEASE/reference/html/#repositories.custom-implementations
+ */
+public interface CustomizedTallySnapshotRepository {
+
+  /**
+   * Write the given snapshots and their measurements using batched JDBC statements.
+   *
+   * <p>Snapshot rows are inserted with an ON CONFLICT clause on the snapshot natural key (account,
+   * product, granularity, SLA, usage, billing provider, billing account and snapshot date), so an
+   * existing row for the same key is updated in place rather than duplicated. The measurements of
+   * each snapshot replace whatever measurements were previously stored for it.
+   *
+   * <p>On return, every snapshot's id is set to the id of the row that was written. Snapshots
+   * managed by the current persistence context are detached first so that Hibernate does not write
+   * them a second time at flush.
+   *
+   * <p>NOTE: this relies on PostgreSQL upsert syntax and must be called within a transaction.
+   *
+   * @param snapshots snapshots to write, all sent as a single JDBC batch per table
+   * @return the number of snapshot rows the database reports as inserted or updated
+   */
+  int upsertAll(Collection<TallySnapshot> snapshots);
+}
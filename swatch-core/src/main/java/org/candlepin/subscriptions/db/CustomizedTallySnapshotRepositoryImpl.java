@@ -0,0 +1,193 @@
+/*
+ * Copyright Red Hat, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ *
+ * Red Hat trademarks are not licensed under GPLv3. No permission is
+ * granted to use or replicate Red Hat trademarks that are incorporated
+ * in this software or its documentation.
+ */
+package org.candlepin.subscriptions.db;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import javax.persistence.EntityManager;
+import org.candlepin.subscriptions.db.model.HardwareMeasurement;
+import org.candlepin.subscriptions.db.model.HardwareMeasurementType;
+import org.candlepin.subscriptions.db.model.StringValueEnum;
+import org.candlepin.subscriptions.db.model.TallyMeasurementKey;
+import org.candlepin.subscriptions.db.model.TallySnapshot;
+import org.hibernate.Session;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.stereotype.Repository;
+
+/** Class implementing custom queries not handled well by Spring JPA's query methods DSL. */
+@Repository
+public class CustomizedTallySnapshotRepositoryImpl implements CustomizedTallySnapshotRepository {
+
+  static final String UPSERT_SNAPSHOT =
+      "insert into tally_snapshots (id, snapshot_date, product_id, owner_id, account_number, sla, "
+          + "usage, billing_provider, billing_account_id, granularity) "
+          + "values (?, ?, ?, ?, ?, ?, ?, ?, ?, ?) "
+          + "on conflict (account_number, product_id, granularity, sla, usage, billing_provider, "
+          + "billing_account_id, snapshot_date) do update set owner_id=excluded.owner_id";
+
+  static final String DELETE_TALLY_MEASUREMENTS =
+      "delete from tally_measurements where snapshot_id=?";
+
+  static final String INSERT_TALLY_MEASUREMENT =
+      "insert into tally_measurements (snapshot_id, measurement_type, uom, value) "
+          + "values (?, ?, ?, ?)";
+
+  static final String DELETE_HARDWARE_MEASUREMENTS =
+      "delete from hardware_measurements where snapshot_id=?";
+
+  static final String INSERT_HARDWARE_MEASUREMENT =
+      "insert into hardware_measurements (snapshot_id, measurement_type, cores, sockets, "
+          + "instance_count) values (?, ?, ?, ?, ?)";
+
+  private EntityManager em;
+
+  @Autowired
+  public CustomizedTallySnapshotRepositoryImpl(
+      @Qualifier("rhsmSubscriptionsEntityManagerFactory") EntityManager em) {
+    this.em = em;
+  }
+
+  @Override
+  public int upsertAll(Collection<TallySnapshot> snapshots) {
+    if (snapshots.isEmpty()) {
+      return 0;
+    }
+    List<TallySnapshot> batch = new ArrayList<>(snapshots);
+    // Write pending changes before the JDBC batch reads them and before detaching discards them.
+    em.flush();
+    batch.stream().filter(em::contains).forEach(em::detach);
+    return em.unwrap(Session.class).doReturningWork(connection -> upsertAll(connection, batch));
+  }
+
+  /** Write a batch of snapshots over the given connection, as {@link #upsertAll(Collection)}. */
+  static int upsertAll(Connection connection, List<TallySnapshot> batch) throws SQLException {
+    int written = upsertSnapshots(connection, batch);
+    replaceTallyMeasurements(connection, batch);
+    replaceHardwareMeasurements(connection, batch);
+    return written;
+  }
+
+  private static int upsertSnapshots(Connection connection, List<TallySnapshot> batch)
+      throws SQLException {
+    try (PreparedStatement statement =
+        connection.prepareStatement(UPSERT_SNAPSHOT, new String[] {"id"})) {
+      for (TallySnapshot snapshot : batch) {
+        if (snapshot.getId() == null) {
+          snapshot.setId(UUID.randomUUID());
+        }
+        statement.setObject(1, snapshot.getId());
+        statement.setObject(2, snapshot.getSnapshotDate());
+        statement.setString(3, snapshot.getProductId());
+        statement.setString(4, snapshot.getOwnerId());
+        statement.setString(5, snapshot.getAccountNumber());
+        statement.setString(6, valueOf(snapshot.getServiceLevel()));
+        statement.setString(7, valueOf(snapshot.getUsage()));
+        statement.setString(8, valueOf(snapshot.getBillingProvider()));
+        statement.setString(9, snapshot.getBillingAccountId());
+        statement.setString(10, snapshot.getGranularity().name());
+        statement.addBatch();
+      }
+      int[] updateCounts = statement.executeBatch();
+
+      // On conflict the existing row keeps its id, so adopt whichever id was actually written.
+      try (ResultSet ids = statement.getGeneratedKeys()) {
+        for (TallySnapshot snapshot : batch) {
+          if (!ids.next()) {
+            throw new IllegalStateException("Missing id for upserted snapshot: " + snapshot);
+          }
+          snapshot.setId(ids.getObject(1, UUID.class));
+        }
+      }
+      return rowsWritten(updateCounts);
+    }
+  }
+
+  /** Sum the rows a batch changed; a statement whose count the driver didn't report counts once. */
+  private static int rowsWritten(int[] updateCounts) {
+    int written = 0;
+    for (int updateCount : updateCounts) {
+      written += updateCount == Statement.SUCCESS_NO_INFO ? 1 : Math.max(0, updateCount);
+    }
+    return written;
+  }
+
+  private static void replaceTallyMeasurements(Connection connection, List<TallySnapshot> batch)
+      throws SQLException {
+    deleteBySnapshotId(connection, DELETE_TALLY_MEASUREMENTS, batch);
+    try (PreparedStatement statement = connection.prepareStatement(INSERT_TALLY_MEASUREMENT)) {
+      for (TallySnapshot snapshot : batch) {
+        for (Map.Entry<TallyMeasurementKey, Double> entry :
+            snapshot.getTallyMeasurements().entrySet()) {
+          statement.setObject(1, snapshot.getId());
+          statement.setString(2, entry.getKey().getMeasurementType().name());
+          statement.setString(3, entry.getKey().getUom().name());
+          statement.setObject(4, entry.getValue());
+          statement.addBatch();
+        }
+      }
+      statement.executeBatch();
+    }
+  }
+
+  @SuppressWarnings("removal")
+  private static void replaceHardwareMeasurements(Connection connection, List<TallySnapshot> batch)
+      throws SQLException {
+    deleteBySnapshotId(connection, DELETE_HARDWARE_MEASUREMENTS, batch);
+    try (PreparedStatement statement = connection.prepareStatement(INSERT_HARDWARE_MEASUREMENT)) {
+      for (TallySnapshot snapshot : batch) {
+        for (Map.Entry<HardwareMeasurementType, HardwareMeasurement> entry :
+            snapshot.getHardwareMeasurements().entrySet()) {
+          statement.setObject(1, snapshot.getId());
+          statement.setString(2, entry.getKey().name());
+          statement.setInt(3, entry.getValue().getCores());
+          statement.setInt(4, entry.getValue().getSockets());
+          statement.setInt(5, entry.getValue().getInstanceCount());
+          statement.addBatch();
+        }
+      }
+      statement.executeBatch();
+    }
+  }
+
+  private static void deleteBySnapshotId(
+      Connection connection, String sql, List<TallySnapshot> batch) throws SQLException {
+    try (PreparedStatement statement = connection.prepareStatement(sql)) {
+      for (TallySnapshot snapshot : batch) {
+        statement.setObject(1, snapshot.getId());
+        statement.addBatch();
+      }
+      statement.executeBatch();
+    }
+  }
+
+  private static String valueOf(StringValueEnum<?> value) {
+    return value == null ? null : value.getValue();
+  }
+}
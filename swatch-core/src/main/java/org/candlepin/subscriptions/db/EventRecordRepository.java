@@ -35,7 +35,8 @@ import org.springframework.data.repository.query.Param;
  * @see org.candlepin.subscriptions.json.Event
  */
 @SuppressWarnings({"linelength", "indentation"})
-public interface EventRecordRepository extends JpaRepository<EventRecord, UUID> {
+public interface EventRecordRepository
+    extends JpaRepository<EventRecord, UUID>, CustomizedEventRecordRepository {
 
   /**
    * Fetch a stream of events for a given account for a given time range.
@@ -100,7 +101,7 @@ public interface EventRecordRepository extends JpaRepository<EventRecord, UUID>
   @Query(
       nativeQuery = true,
       value =
-          "select exists(select 1 from events where account_number=:accountNumber and data->>'service_type'=:serviceType and timestamp >= :begin and timestamp < :end order by timestamp)")
+          "select exists(select 1 from events where account_number=:accountNumber and service_type=:serviceType and timestamp >= :begin and timestamp < :end order by timestamp)")
   boolean existsByAccountNumberAndServiceTypeAndTimestampGreaterThanEqualAndTimestampLessThan(
       @Param("accountNumber") String accountNumber,
       @Param("serviceType") String serviceType,
@@ -119,8 +120,7 @@ public interface EventRecordRepository extends JpaRepository<EventRecord, UUID>
    */
   @Query(
       nativeQuery = true,
-      value =
-          "select * from events where account_number=:accountNumber and data->>'service_type'=:serviceType and timestamp >= :begin and timestamp < :end order by timestamp")
+      value = CustomizedEventRecordRepositoryImpl.STREAM_BY_SERVICE_TYPE_QUERY)
   Stream<EventRecord>
       findByAccountNumberAndServiceTypeAndTimestampGreaterThanEqualAndTimestampLessThanOrderByTimestamp(
           @Param("accountNumber") String accountNumber,
@@ -28,6 +28,7 @@ import javax.validation.constraints.NotNull;
 import org.candlepin.subscriptions.db.model.BillingProvider;
 import org.candlepin.subscriptions.db.model.Host;
 import org.candlepin.subscriptions.db.model.HostBucketKey_;
+import org.candlepin.subscriptions.db.model.HostFingerprint;
 import org.candlepin.subscriptions.db.model.HostTallyBucket_;
 import org.candlepin.subscriptions.db.model.Host_;
 import org.candlepin.subscriptions.db.model.InstanceMonthlyTotalKey;
@@ -49,7 +50,10 @@ import org.springframework.util.StringUtils;
 /** Provides access to Host database entities. */
 @SuppressWarnings({"linelength", "indentation"})
 public interface HostRepository
-    extends JpaRepository<Host, UUID>, JpaSpecificationExecutor<Host>, TagProfileLookup {
+    extends JpaRepository<Host, UUID>,
+        JpaSpecificationExecutor<Host>,
+        TagProfileLookup,
+        CustomizedHostRepository {
 
   /**
    * Find all Hosts by bucket criteria and return a page of TallyHostView objects. A TallyHostView
@@ -201,6 +205,23 @@ public interface HostRepository
 
   List<Host> findByAccountNumber(String accountNumber);
 
+  /**
+   * Find the fingerprints of an account's hosts of a given instance type that have an inventory
+   * ID, without loading the hosts themselves.
+   *
+   * @param accountNumber the account whose hosts to find
+   * @param instanceType the instance type of the hosts
+   * @return fingerprints ordered by host id
+   */
+  @Query(
+      "select new org.candlepin.subscriptions.db.model.HostFingerprint("
+          + "h.id, h.instanceId, h.inventoryId, h.lastSeen, h.factHash, h.bucketHash) "
+          + "from Host h where "
+          + "h.accountNumber = :account and h.instanceType = :instanceType and "
+          + "h.inventoryId is not null order by h.id")
+  List<HostFingerprint> findFingerprints(
+      @Param("account") String accountNumber, @Param("instanceType") String instanceType);
+
   Optional<Host> findById(UUID id);
 
   void deleteByAccountNumber(String accountNumber);
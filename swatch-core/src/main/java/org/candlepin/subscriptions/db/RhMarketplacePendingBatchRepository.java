@@ -0,0 +1,67 @@
+/*
+ * Copyright Red Hat, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ *
+ * Red Hat trademarks are not licensed under GPLv3. No permission is
+ * granted to use or replicate Red Hat trademarks that are incorporated
+ * in this software or its documentation.
+ */
+package org.candlepin.subscriptions.db;
+
+import java.time.Duration;
+import java.time.OffsetDateTime;
+import java.util.List;
+import javax.persistence.LockModeType;
+import javax.persistence.QueryHint;
+import org.candlepin.subscriptions.db.model.RhMarketplacePendingBatch;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.transaction.annotation.Transactional;
+
+/** Defines all operations for storing RH Marketplace batches awaiting verification. */
+public interface RhMarketplacePendingBatchRepository
+    extends JpaRepository<RhMarketplacePendingBatch, String> {
+
+  /**
+   * Find batches due for a status check, skipping rows locked by another verifier.
+   *
+   * <p>A lock timeout of -2 is Hibernate's marker for SKIP LOCKED.
+   */
+  @Lock(LockModeType.PESSIMISTIC_WRITE)
+  @QueryHints({@QueryHint(name = "javax.persistence.lock.timeout", value = "-2")})
+  List<RhMarketplacePendingBatch> findByNextCheckAtLessThanEqualOrderByNextCheckAt(
+      OffsetDateTime now, Pageable pageable);
+
+  /**
+   * Claim up to limit batches that are due for a status check by pushing back their next check
+   * time, so that concurrent verifiers do not check the same batches.
+   *
+   * @param now the current time
+   * @param lease how long the claimed batches are hidden from other verifiers
+   * @param limit maximum number of batches to claim
+   * @return the claimed batches
+   */
+  @Transactional
+  default List<RhMarketplacePendingBatch> claimBatchesDueForVerification(
+      OffsetDateTime now, Duration lease, int limit) {
+    List<RhMarketplacePendingBatch> due =
+        findByNextCheckAtLessThanEqualOrderByNextCheckAt(now, PageRequest.of(0, limit));
+    due.forEach(batch -> batch.setNextCheckAt(now.plus(lease)));
+    return due;
+  }
+}
@@ -22,16 +22,19 @@ package org.candlepin.subscriptions.db;
 
 import java.time.OffsetDateTime;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
 import java.util.Objects;
 import org.candlepin.subscriptions.db.model.*;
 import org.candlepin.subscriptions.utilization.api.model.Uom;
+import org.springframework.data.jpa.domain.Specification;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.JpaSpecificationExecutor;
 
 public interface SubscriptionCapacityViewRepository
     extends JpaRepository<SubscriptionCapacityView, SubscriptionCapacityKey>,
-        JpaSpecificationExecutor<SubscriptionCapacityView> {
+        JpaSpecificationExecutor<SubscriptionCapacityView>,
+        CustomizedSubscriptionCapacityViewRepository {
 
   default List<SubscriptionCapacityView> findAllBy(
       String ownerId,
@@ -50,6 +53,30 @@ public interface SubscriptionCapacityViewRepository
             .build());
   }
 
+  /**
+   * Find the capacities matching the given filters, limited to the given SKUs. Used to load the
+   * details of a page of SKUs found via {@link #findSkuPage}.
+   */
+  default List<SubscriptionCapacityView> findAllBy(
+      String ownerId,
+      String productId,
+      ServiceLevel serviceLevel,
+      Usage usage,
+      OffsetDateTime reportStart,
+      OffsetDateTime reportEnd,
+      Uom uom,
+      Collection<String> skus) {
+    Specification<SubscriptionCapacityView> skuSpecification =
+        (root, query, builder) -> root.get(SubscriptionCapacityView_.sku).in(skus);
+    return findAll(
+        SubscriptionCapacityViewSpecification.builder()
+            .criteria(
+                buildSearchCriteria(
+                    ownerId, productId, serviceLevel, usage, reportStart, reportEnd, uom))
+            .build()
+            .and(skuSpecification));
+  }
+
   private List<SearchCriteria> defaultSearchCriteria(String ownerId, String productId) {
     return new ArrayList<>(
         List.of(
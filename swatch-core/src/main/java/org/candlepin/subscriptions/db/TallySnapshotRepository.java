@@ -38,7 +38,8 @@ import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
 
 /** Interface that Spring Data will turn into a DAO for us. */
-public interface TallySnapshotRepository extends JpaRepository<TallySnapshot, UUID> {
+public interface TallySnapshotRepository
+    extends JpaRepository<TallySnapshot, UUID>, CustomizedTallySnapshotRepository {
 
   // suppress line length and params arguments, can't help either easily b/c this is a spring data
   // method
@@ -70,6 +70,7 @@ public class EventRecord {
     this.eventType = event.getEventType();
     this.eventSource = event.getEventSource();
     this.instanceId = event.getInstanceId();
+    this.serviceType = event.getServiceType();
     this.timestamp = event.getTimestamp();
   }
 
@@ -87,6 +88,9 @@ public class EventRecord {
   @Column(name = "instance_id")
   private String instanceId;
 
+  @Column(name = "service_type")
+  private String serviceType;
+
   private OffsetDateTime timestamp;
 
   @Valid
@@ -160,6 +160,22 @@ public class Host implements Serializable {
   @Column(name = "billing_account_id")
   private String billingAccountId;
 
+  /**
+   * Hash of the HBI-derived fields and measurements as last written.
+   *
+   * @see HostFingerprint
+   */
+  @Column(name = "fact_hash")
+  private String factHash;
+
+  /**
+   * Hash of the tally buckets as last written.
+   *
+   * @see HostFingerprint
+   */
+  @Column(name = "bucket_hash")
+  private String bucketHash;
+
   public Host() {}
 
   public Host(
@@ -0,0 +1,136 @@
+/*
+ * Copyright Red Hat, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ *
+ * Red Hat trademarks are not licensed under GPLv3. No permission is
+ * granted to use or replicate Red Hat trademarks that are incorporated
+ * in this software or its documentation.
+ */
+package org.candlepin.subscriptions.db.model;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.OffsetDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.UUID;
+import lombok.Value;
+import org.candlepin.subscriptions.json.Measurement;
+
+/**
+ * Compact stand-in for a stored HBI host, used to reconcile an account's hosts against HBI without
+ * loading the hosts, their measurements and their buckets.
+ *
+ * <p>The fact hash covers the host columns populated from HBI facts, along with the measurements;
+ * the bucket hash covers the host's tally buckets. Both are stored with the host whenever it is
+ * written by an inventory tally, so a host whose freshly computed hashes match the stored ones
+ * doesn't need to be written again. The last seen date is left out of the fact hash, as it moves on
+ * with nearly every HBI check-in; it is carried as is and compared on its own instead.
+ */
+@Value
+public class HostFingerprint {
+  UUID id;
+  String instanceId;
+  String inventoryId;
+  OffsetDateTime lastSeen;
+  String factHash;
+  String bucketHash;
+
+  /**
+   * Hash the HBI-derived fields and measurements of a host, other than its last seen date.
+   *
+   * @param host the host to hash
+   * @return hex-encoded SHA-256 hash
+   */
+  public static String factHashOf(Host host) {
+    StringBuilder facts = new StringBuilder();
+    append(facts, host.getInstanceId());
+    append(facts, host.getInventoryId());
+    append(facts, host.getInsightsId());
+    append(facts, host.getAccountNumber());
+    append(facts, host.getOrgId());
+    append(facts, host.getDisplayName());
+    append(facts, host.getSubscriptionManagerId());
+    append(facts, host.isGuest());
+    append(facts, host.getHypervisorUuid());
+    append(facts, host.getHardwareType());
+    append(facts, host.getNumOfGuests());
+    append(facts, host.isUnmappedGuest());
+    append(facts, host.isHypervisor());
+    append(facts, host.getCloudProvider());
+    for (Map.Entry<Measurement.Uom, Double> measurement :
+        new TreeMap<>(host.getMeasurements()).entrySet()) {
+      append(facts, measurement.getKey());
+      append(facts, measurement.getValue());
+    }
+    return sha256(facts);
+  }
+
+  /**
+   * Hash the tally buckets of a host, independent of their order.
+   *
+   * @param host the host to hash
+   * @return hex-encoded SHA-256 hash
+   */
+  public static String bucketHashOf(Host host) {
+    List<String> buckets = new ArrayList<>(host.getBuckets().size());
+    for (HostTallyBucket bucket : host.getBuckets()) {
+      StringBuilder fields = new StringBuilder();
+      HostBucketKey key = bucket.getKey();
+      append(fields, key.getProductId());
+      append(fields, key.getSla());
+      append(fields, key.getUsage());
+      append(fields, key.getBillingProvider());
+      append(fields, key.getBillingAccountId());
+      append(fields, key.getAsHypervisor());
+      append(fields, bucket.getCores());
+      append(fields, bucket.getSockets());
+      append(fields, bucket.getMeasurementType());
+      buckets.add(fields.toString());
+    }
+    buckets.sort(null);
+    StringBuilder all = new StringBuilder();
+    buckets.forEach(all::append);
+    return sha256(all);
+  }
+
+  /** Append a length-prefixed value, so that adjacent values can't run into each other. */
+  private static void append(StringBuilder builder, Object value) {
+    if (value == null) {
+      builder.append('-');
+      return;
+    }
+    String text = value.toString();
+    builder.append(text.length()).append(':').append(text);
+  }
+
+  private static String sha256(CharSequence value) {
+    try {
+      byte[] digest =
+          MessageDigest.getInstance("SHA-256")
+              .digest(value.toString().getBytes(StandardCharsets.UTF_8));
+      StringBuilder hex = new StringBuilder(digest.length * 2);
+      for (byte b : digest) {
+        hex.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+      }
+      return hex.toString();
+    } catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException("SHA-256 is not available.", e);
+    }
+  }
+}
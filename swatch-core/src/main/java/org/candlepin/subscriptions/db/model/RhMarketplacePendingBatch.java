@@ -0,0 +1,59 @@
+/*
+ * Copyright Red Hat, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ *
+ * Red Hat trademarks are not licensed under GPLv3. No permission is
+ * granted to use or replicate Red Hat trademarks that are incorporated
+ * in this software or its documentation.
+ */
+package org.candlepin.subscriptions.db.model;
+
+import java.io.Serializable;
+import java.time.OffsetDateTime;
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.Id;
+import javax.persistence.Table;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+import lombok.ToString;
+
+/** A usage batch submitted to RH Marketplace whose final status has not been verified yet. */
+@ToString
+@NoArgsConstructor
+@AllArgsConstructor
+@Getter
+@Setter
+@Entity
+@Table(name = "rh_marketplace_pending_batches")
+public class RhMarketplacePendingBatch implements Serializable {
+
+  @Id
+  @Column(name = "batch_id")
+  private String batchId;
+
+  @Column(name = "submitted_at")
+  private OffsetDateTime submittedAt;
+
+  /** Earliest time the batch status should be checked (again). */
+  @Column(name = "next_check_at")
+  private OffsetDateTime nextCheckAt;
+
+  /** Number of status checks already made for this batch. */
+  @Column(name = "attempts")
+  private int attempts;
+}
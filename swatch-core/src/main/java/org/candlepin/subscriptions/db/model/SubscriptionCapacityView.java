@@ -32,29 +32,7 @@ import org.hibernate.annotations.Subselect;
 @Entity
 @Immutable
 // TODO: Join should be moved to Specification https://issues.redhat.com/browse/ENT-4205 //NOSONAR
-@Subselect(
-    "SELECT "
-        + "sc.subscription_id,\n"
-        + "sc.owner_id, \n"
-        + "sc.product_id, \n"
-        + "sc.sku, \n"
-        + "sc.sla, \n"
-        + "sc.usage, \n"
-        + "sc.physical_sockets, \n"
-        + "sc.virtual_sockets, \n"
-        + "sc.physical_cores, \n"
-        + "sc.virtual_cores, \n"
-        + "sc.end_date, \n"
-        + "sc.begin_date, \n"
-        + "sc.account_number, \n"
-        + "sc.has_unlimited_usage, \n"
-        + "s.quantity, \n"
-        + "s.subscription_number, \n"
-        + "o.description as product_name \n"
-        + "FROM subscription_capacity sc \n"
-        + "JOIN subscription s on sc.subscription_id = s.subscription_id \n"
-        + "AND s.end_date > CURRENT_TIMESTAMP \n"
-        + "JOIN offering o on sc.sku = o.sku")
+@Subselect(SubscriptionCapacityView.SUBSELECT)
 @Getter
 @Setter
 @Builder
@@ -63,6 +41,31 @@ import org.hibernate.annotations.Subselect;
 @ToString
 public class SubscriptionCapacityView {
 
+  /** Query backing this entity, also used by native queries that aggregate over it. */
+  public static final String SUBSELECT =
+      "SELECT "
+          + "sc.subscription_id,\n"
+          + "sc.owner_id, \n"
+          + "sc.product_id, \n"
+          + "sc.sku, \n"
+          + "sc.sla, \n"
+          + "sc.usage, \n"
+          + "sc.physical_sockets, \n"
+          + "sc.virtual_sockets, \n"
+          + "sc.physical_cores, \n"
+          + "sc.virtual_cores, \n"
+          + "sc.end_date, \n"
+          + "sc.begin_date, \n"
+          + "sc.account_number, \n"
+          + "sc.has_unlimited_usage, \n"
+          + "s.quantity, \n"
+          + "s.subscription_number, \n"
+          + "o.description as product_name \n"
+          + "FROM subscription_capacity sc \n"
+          + "JOIN subscription s on sc.subscription_id = s.subscription_id \n"
+          + "AND s.end_date > CURRENT_TIMESTAMP \n"
+          + "JOIN offering o on sc.sku = o.sku";
+
   @EmbeddedId private SubscriptionCapacityKey key;
 
   @Column(name = "subscription_number")
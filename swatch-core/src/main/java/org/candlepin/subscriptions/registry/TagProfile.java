@@ -20,17 +20,12 @@
  */
 package org.candlepin.subscriptions.registry;
 
-import java.util.ArrayList;
 import java.util.Collections;
-import java.util.HashMap;
-import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
-import java.util.Map.Entry;
 import java.util.Objects;
 import java.util.Optional;
 import java.util.Set;
-import java.util.stream.Collectors;
 import javax.annotation.PostConstruct;
 import lombok.AllArgsConstructor;
 import lombok.Builder;
@@ -57,131 +52,51 @@ public class TagProfile {
   @Getter @Setter private List<TagMapping> tagMappings;
   @Getter @Setter private List<TagMetric> tagMetrics;
   @Getter @Setter private List<TagMetaData> tagMetaData;
-  @Getter private Set<String> serviceTypes;
+  @EqualsAndHashCode.Exclude @ToString.Exclude private TagProfileIndex index;
 
-  private Map<String, Set<String>> tagToEngProductsLookup;
-  private Map<ProductUom, String> productUomToMetricIdLookup;
-  @Getter private Set<String> tagsWithPrometheusEnabledLookup;
-  private Map<String, Set<Uom>> measurementsByTagLookup;
-  private Map<String, String> offeringProductNameToTagLookup;
-  private Map<String, Set<String>> tagToOfferingProductNamesLookup;
-  @Getter private Map<String, Set<String>> roleToTagLookup;
-  @Getter private Map<String, Set<String>> archToTagLookup;
-  private Map<String, Granularity> finestGranularityLookup;
-  private Map<String, TagMetaData> tagMetaDataToTagLookup;
-  private Map<String, List<Measurement.Uom>> tagToUomLookup;
-
-  /** Initialize lookup fields */
+  /** Build the lookup indexes; must be called again if the mappings, metrics or metadata change. */
   @PostConstruct
   public void initLookups() {
-    tagToEngProductsLookup = new HashMap<>();
-    productUomToMetricIdLookup = new HashMap<>();
-    tagsWithPrometheusEnabledLookup = new HashSet<>();
-    measurementsByTagLookup = new HashMap<>();
-    offeringProductNameToTagLookup = new HashMap<>();
-    tagToOfferingProductNamesLookup = new HashMap<>();
-    roleToTagLookup = new HashMap<>();
-    archToTagLookup = new HashMap<>();
-    tagMetaDataToTagLookup = new HashMap<>();
-    finestGranularityLookup = new HashMap<>();
-    tagToUomLookup = new HashMap<>();
-    serviceTypes = new HashSet<>();
-    tagMappings.forEach(this::handleTagMapping);
-    tagMetrics.forEach(this::handleTagMetric);
-    tagMetaData.forEach(this::handleTagMetaData);
-  }
-
-  private void handleTagMapping(TagMapping mapping) {
-    if ("engId".equals(mapping.getValueType())) {
-      mapping
-          .getTags()
-          .forEach(
-              tag ->
-                  tagToEngProductsLookup
-                      .computeIfAbsent(tag, k -> new HashSet<>())
-                      .add(mapping.getValue()));
-    } else if ("productName".equals(mapping.getValueType())) {
-      mapping
-          .getTags()
-          .forEach(
-              tag -> {
-                offeringProductNameToTagLookup.put(mapping.getValue(), tag);
-                tagToOfferingProductNamesLookup
-                    .computeIfAbsent(tag, k -> new HashSet<>())
-                    .add(mapping.getValue());
-              });
-    } else if ("role".equals(mapping.getValueType())) {
-      roleToTagLookup
-          .computeIfAbsent(mapping.getValue(), k -> new HashSet<>())
-          .addAll(mapping.getTags());
-    } else if ("arch".equals(mapping.getValueType())) {
-      archToTagLookup
-          .computeIfAbsent(mapping.getValue(), k -> new HashSet<>())
-          .addAll(mapping.getTags());
-    }
-  }
-
-  private void handleTagMetric(TagMetric tagMetric) {
-    tagsWithPrometheusEnabledLookup.add(tagMetric.getTag());
-    productUomToMetricIdLookup.put(
-        new ProductUom(tagMetric.getTag(), tagMetric.getUom().value()), tagMetric.getMetricId());
-    measurementsByTagLookup
-        .computeIfAbsent(tagMetric.getTag(), k -> new HashSet<>())
-        .add(tagMetric.getUom());
-    List<Uom> uomList = tagToUomLookup.computeIfAbsent(tagMetric.getTag(), k -> new ArrayList<>());
-    uomList.add(tagMetric.getUom());
-  }
-
-  private void handleTagMetaData(TagMetaData tagMetaData) {
-    if (StringUtils.hasText(tagMetaData.getServiceType())) {
-      serviceTypes.add(tagMetaData.getServiceType());
-    }
-    tagMetaData
-        .getTags()
-        .forEach(
-            tag -> {
-              tagMetaDataToTagLookup.put(tag, tagMetaData);
-              finestGranularityLookup.put(tag, tagMetaData.getFinestGranularity());
-            });
+    index = new TagProfileIndex(tagMappings, tagMetrics, tagMetaData);
   }
 
   public boolean tagSupportsEngProduct(String tag, String engId) {
-    return tagToEngProductsLookup.getOrDefault(tag, Collections.emptySet()).contains(engId);
+    return index.getTagToEngProducts().getOrDefault(tag, Collections.emptySet()).contains(engId);
   }
 
   public boolean tagIsPrometheusEnabled(String tag) {
-    return tagsWithPrometheusEnabledLookup.contains(tag);
+    return index.getTagsWithPrometheusEnabled().contains(tag);
   }
 
   public boolean tagSupportsGranularity(String tag, Granularity granularity) {
-    return granularity.compareTo(finestGranularityLookup.get(tag)) < 1;
+    return granularity.compareTo(index.getFinestGranularityByTag().get(tag)) < 1;
   }
 
   public String metricIdForTagAndUom(String tag, TallyMeasurement.Uom uom) {
-    return productUomToMetricIdLookup.get(new ProductUom(tag, uom.value()));
+    return index.getProductUomToMetricId().get(new ProductUom(tag, uom.value()));
   }
 
   public String tagForOfferingProductName(String offeringProductName) {
-    return offeringProductNameToTagLookup.get(offeringProductName);
+    return index.getOfferingProductNameToTag().get(offeringProductName);
   }
 
   public Granularity granularityByTag(String productId) {
-    return finestGranularityLookup.getOrDefault(productId, Granularity.DAILY);
+    return index.getFinestGranularityByTag().getOrDefault(productId, Granularity.DAILY);
   }
 
   public Set<Uom> measurementsByTag(String tag) {
-    return measurementsByTagLookup.getOrDefault(tag, new HashSet<>());
+    return index.getMeasurementsByTag().getOrDefault(tag, Collections.emptySet());
   }
 
   public Optional<TagMetaData> getTagMetaDataByTag(String productTag) {
     if (!StringUtils.hasText(productTag)) {
       return Optional.empty();
     }
-    return Optional.ofNullable(tagMetaDataToTagLookup.get(productTag));
+    return Optional.ofNullable(index.getTagToTagMetaData().get(productTag));
   }
 
   public List<Measurement.Uom> uomsForTag(String tag) {
-    return tagToUomLookup.getOrDefault(tag, Collections.emptyList());
+    return index.getTagToUoms().getOrDefault(tag, Collections.emptyList());
   }
 
   public Optional<TagMetric> getTagMetric(String productTag, Uom metric) {
@@ -189,17 +104,12 @@ public class TagProfile {
       return Optional.empty();
     }
 
-    List<TagMetric> matchedMetrics =
-        getTagMetrics().stream()
-            .filter(x -> productTag.equals(x.getTag()) && metric.equals(x.getUom()))
-            .collect(Collectors.toList());
-
-    if (matchedMetrics.size() > 1) {
+    ProductUom productUom = new ProductUom(productTag, metric.value());
+    if (index.getDuplicateTagMetrics().contains(productUom)) {
       throw new IllegalStateException(
           String.format("Duplicate tag metric found: %s/%s", productTag, metric));
     }
-    // Optional.empty if list is empty.
-    return matchedMetrics.stream().findFirst();
+    return Optional.ofNullable(index.getProductUomToTagMetric().get(productUom));
   }
 
   public Set<Uom> getSupportedMetricsForProduct(String productTag) {
@@ -214,18 +124,15 @@ public class TagProfile {
     if (Objects.isNull(role)) {
       return Collections.emptySet();
     }
-    return roleToTagLookup.getOrDefault(role.value(), Collections.emptySet());
+    return index.getRoleToTags().getOrDefault(role.value(), Collections.emptySet());
   }
 
   public Set<String> getTagsByEngProduct(String engProduct) {
-    return tagToEngProductsLookup.entrySet().stream()
-        .filter(e -> e.getValue().contains(engProduct))
-        .map(Entry::getKey)
-        .collect(Collectors.toSet());
+    return index.getEngProductToTags().getOrDefault(engProduct, Collections.emptySet());
   }
 
   public Set<String> getTagsByArch(String arch) {
-    return archToTagLookup.getOrDefault(arch, Collections.emptySet());
+    return index.getArchToTags().getOrDefault(arch, Collections.emptySet());
   }
 
   /**
@@ -238,25 +145,18 @@ public class TagProfile {
     if (!StringUtils.hasText(serviceType)) {
       return Optional.empty();
     }
-    return getTagMetaData().stream()
-        .filter(meta -> serviceType.equals(meta.getServiceType()))
-        .findFirst();
+    return Optional.ofNullable(index.getServiceTypeToTagMetaData().get(serviceType));
   }
 
   public Set<String> getTagsForServiceType(String serviceType) {
     if (!StringUtils.hasText(serviceType)) {
       return Collections.emptySet();
     }
-    Set<String> tags = new HashSet<>();
-    getTagMetaData().stream()
-        .filter(meta -> serviceType.equals(meta.getServiceType()))
-        .map(TagMetaData::getTags)
-        .forEach(tags::addAll);
-    return tags;
+    return index.getServiceTypeToTags().getOrDefault(serviceType, Collections.emptySet());
   }
 
   public Set<String> getOfferingProductNamesForTag(String productTag) {
-    return tagToOfferingProductNamesLookup.getOrDefault(productTag, Collections.emptySet());
+    return index.getTagToOfferingProductNames().getOrDefault(productTag, Collections.emptySet());
   }
 
   /**
@@ -278,17 +178,22 @@ public class TagProfile {
   }
 
   public Map<Integer, Set<String>> getEngProductIdToSwatchProductIdsMap() {
-    Map<Integer, Set<String>> engProductIdToSwatchProductIdsMap = new HashMap<>();
-    for (TagMapping tag : tagMappings) {
-      if (!"engId".equals(tag.getValueType())) continue;
+    return index.getEngProductIdToTags();
+  }
 
-      Integer engId = Integer.parseInt(tag.getValue());
+  public Set<String> getTagsWithPrometheusEnabledLookup() {
+    return index.getTagsWithPrometheusEnabled();
+  }
 
-      if (engProductIdToSwatchProductIdsMap.containsKey(engId)) {
-        throw new IllegalStateException("Duplicate engineering product ID found: " + engId);
-      }
-      engProductIdToSwatchProductIdsMap.put(engId, tag.getTags());
-    }
-    return engProductIdToSwatchProductIdsMap;
+  public Map<String, Set<String>> getRoleToTagLookup() {
+    return index.getRoleToTags();
+  }
+
+  public Map<String, Set<String>> getArchToTagLookup() {
+    return index.getArchToTags();
+  }
+
+  public Set<String> getServiceTypes() {
+    return index.getServiceTypes();
   }
 }
@@ -0,0 +1,180 @@
+/*
+ * Copyright Red Hat, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ *
+ * Red Hat trademarks are not licensed under GPLv3. No permission is
+ * granted to use or replicate Red Hat trademarks that are incorporated
+ * in this software or its documentation.
+ */
+package org.candlepin.subscriptions.registry;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
+import lombok.AccessLevel;
+import lombok.Getter;
+import org.candlepin.subscriptions.db.model.Granularity;
+import org.candlepin.subscriptions.json.Measurement.Uom;
+import org.springframework.util.StringUtils;
+
+/**
+ * Immutable lookup tables for a TagProfile, built once from its mappings, metrics and metadata.
+ *
+ * <p>Every lookup is a single hash map access, and every returned collection is unmodifiable, so
+ * the results can be shared freely between callers and threads. The maps tolerate null keys on
+ * lookup, since several callers pass facts straight through from inventory.
+ */
+@Getter(AccessLevel.PACKAGE)
+class TagProfileIndex {
+
+  private final Map<String, Set<String>> tagToEngProducts;
+  private final Map<String, Set<String>> engProductToTags;
+  private final Map<Integer, Set<String>> engProductIdToTags;
+  private final Map<ProductUom, String> productUomToMetricId;
+  private final Map<ProductUom, TagMetric> productUomToTagMetric;
+  private final Set<ProductUom> duplicateTagMetrics;
+  private final Set<String> tagsWithPrometheusEnabled;
+  private final Map<String, Set<Uom>> measurementsByTag;
+  private final Map<String, List<Uom>> tagToUoms;
+  private final Map<String, String> offeringProductNameToTag;
+  private final Map<String, Set<String>> tagToOfferingProductNames;
+  private final Map<String, Set<String>> roleToTags;
+  private final Map<String, Set<String>> archToTags;
+  private final Map<String, TagMetaData> tagToTagMetaData;
+  private final Map<String, Granularity> finestGranularityByTag;
+  private final Map<String, TagMetaData> serviceTypeToTagMetaData;
+  private final Map<String, Set<String>> serviceTypeToTags;
+  private final Set<String> serviceTypes;
+
+  @SuppressWarnings("java:S3776")
+  TagProfileIndex(
+      List<TagMapping> tagMappings, List<TagMetric> tagMetrics, List<TagMetaData> tagMetaData) {
+    Map<String, Set<String>> tagToEngProductsBuilder = new HashMap<>();
+    Map<String, Set<String>> engProductToTagsBuilder = new HashMap<>();
+    Map<Integer, Set<String>> engProductIdToTagsBuilder = new HashMap<>();
+    Map<String, String> offeringProductNameToTagBuilder = new HashMap<>();
+    Map<String, Set<String>> tagToOfferingProductNamesBuilder = new HashMap<>();
+    Map<String, Set<String>> roleToTagsBuilder = new HashMap<>();
+    Map<String, Set<String>> archToTagsBuilder = new HashMap<>();
+    for (TagMapping mapping : tagMappings) {
+      if ("engId".equals(mapping.getValueType())) {
+        for (String tag : mapping.getTags()) {
+          tagToEngProductsBuilder
+              .computeIfAbsent(tag, k -> new HashSet<>())
+              .add(mapping.getValue());
+          engProductToTagsBuilder
+              .computeIfAbsent(mapping.getValue(), k -> new HashSet<>())
+              .add(tag);
+        }
+        Integer engId = Integer.parseInt(mapping.getValue());
+        if (engProductIdToTagsBuilder.put(engId, mapping.getTags()) != null) {
+          throw new IllegalStateException("Duplicate engineering product ID found: " + engId);
+        }
+      } else if ("productName".equals(mapping.getValueType())) {
+        for (String tag : mapping.getTags()) {
+          offeringProductNameToTagBuilder.put(mapping.getValue(), tag);
+          tagToOfferingProductNamesBuilder
+              .computeIfAbsent(tag, k -> new HashSet<>())
+              .add(mapping.getValue());
+        }
+      } else if ("role".equals(mapping.getValueType())) {
+        roleToTagsBuilder
+            .computeIfAbsent(mapping.getValue(), k -> new HashSet<>())
+            .addAll(mapping.getTags());
+      } else if ("arch".equals(mapping.getValueType())) {
+        archToTagsBuilder
+            .computeIfAbsent(mapping.getValue(), k -> new HashSet<>())
+            .addAll(mapping.getTags());
+      }
+    }
+
+    Map<ProductUom, String> productUomToMetricIdBuilder = new HashMap<>();
+    Map<ProductUom, TagMetric> productUomToTagMetricBuilder = new HashMap<>();
+    Set<ProductUom> duplicateTagMetricsBuilder = new HashSet<>();
+    Set<String> tagsWithPrometheusEnabledBuilder = new HashSet<>();
+    Map<String, Set<Uom>> measurementsByTagBuilder = new HashMap<>();
+    Map<String, List<Uom>> tagToUomsBuilder = new HashMap<>();
+    for (TagMetric tagMetric : tagMetrics) {
+      ProductUom productUom = new ProductUom(tagMetric.getTag(), tagMetric.getUom().value());
+      tagsWithPrometheusEnabledBuilder.add(tagMetric.getTag());
+      productUomToMetricIdBuilder.put(productUom, tagMetric.getMetricId());
+      if (productUomToTagMetricBuilder.putIfAbsent(productUom, tagMetric) != null) {
+        duplicateTagMetricsBuilder.add(productUom);
+      }
+      measurementsByTagBuilder
+          .computeIfAbsent(tagMetric.getTag(), k -> new HashSet<>())
+          .add(tagMetric.getUom());
+      tagToUomsBuilder
+          .computeIfAbsent(tagMetric.getTag(), k -> new ArrayList<>())
+          .add(tagMetric.getUom());
+    }
+
+    Map<String, TagMetaData> tagToTagMetaDataBuilder = new HashMap<>();
+    Map<String, Granularity> finestGranularityByTagBuilder = new HashMap<>();
+    Map<String, TagMetaData> serviceTypeToTagMetaDataBuilder = new HashMap<>();
+    Map<String, Set<String>> serviceTypeToTagsBuilder = new HashMap<>();
+    Set<String> serviceTypesBuilder = new HashSet<>();
+    for (TagMetaData metaData : tagMetaData) {
+      String serviceType = metaData.getServiceType();
+      if (StringUtils.hasText(serviceType)) {
+        serviceTypesBuilder.add(serviceType);
+        // the first metadata declared for a service type wins
+        serviceTypeToTagMetaDataBuilder.putIfAbsent(serviceType, metaData);
+        serviceTypeToTagsBuilder
+            .computeIfAbsent(serviceType, k -> new HashSet<>())
+            .addAll(metaData.getTags());
+      }
+      for (String tag : metaData.getTags()) {
+        tagToTagMetaDataBuilder.put(tag, metaData);
+        finestGranularityByTagBuilder.put(tag, metaData.getFinestGranularity());
+      }
+    }
+
+    tagToEngProducts = freezeValues(tagToEngProductsBuilder, Collections::unmodifiableSet);
+    engProductToTags = freezeValues(engProductToTagsBuilder, Collections::unmodifiableSet);
+    engProductIdToTags = freezeValues(engProductIdToTagsBuilder, TagProfileIndex::copyOfSet);
+    productUomToMetricId = Collections.unmodifiableMap(productUomToMetricIdBuilder);
+    productUomToTagMetric = Collections.unmodifiableMap(productUomToTagMetricBuilder);
+    duplicateTagMetrics = Collections.unmodifiableSet(duplicateTagMetricsBuilder);
+    tagsWithPrometheusEnabled = Collections.unmodifiableSet(tagsWithPrometheusEnabledBuilder);
+    measurementsByTag = freezeValues(measurementsByTagBuilder, Collections::unmodifiableSet);
+    tagToUoms = freezeValues(tagToUomsBuilder, Collections::unmodifiableList);
+    offeringProductNameToTag = Collections.unmodifiableMap(offeringProductNameToTagBuilder);
+    tagToOfferingProductNames =
+        freezeValues(tagToOfferingProductNamesBuilder, Collections::unmodifiableSet);
+    roleToTags = freezeValues(roleToTagsBuilder, Collections::unmodifiableSet);
+    archToTags = freezeValues(archToTagsBuilder, Collections::unmodifiableSet);
+    tagToTagMetaData = Collections.unmodifiableMap(tagToTagMetaDataBuilder);
+    finestGranularityByTag = Collections.unmodifiableMap(finestGranularityByTagBuilder);
+    serviceTypeToTagMetaData = Collections.unmodifiableMap(serviceTypeToTagMetaDataBuilder);
+    serviceTypeToTags = freezeValues(serviceTypeToTagsBuilder, Collections::unmodifiableSet);
+    serviceTypes = Collections.unmodifiableSet(serviceTypesBuilder);
+  }
+
+  private static <K, V> Map<K, V> freezeValues(Map<K, V> map, Function<V, V> freeze) {
+    map.replaceAll((key, value) -> freeze.apply(value));
+    return Collections.unmodifiableMap(map);
+  }
+
+  /** Mapping tag sets come from YAML and stay mutable, so take a private copy. */
+  private static Set<String> copyOfSet(Set<String> tags) {
+    return Collections.unmodifiableSet(new HashSet<>(tags));
+  }
+}
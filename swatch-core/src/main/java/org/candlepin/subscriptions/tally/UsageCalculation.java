@@ -20,9 +20,9 @@
  */
 package org.candlepin.subscriptions.tally;
 
+import java.util.Collections;
 import java.util.EnumMap;
 import java.util.Map;
-import java.util.Map.Entry;
 import java.util.Objects;
 import java.util.stream.Collectors;
 import org.candlepin.subscriptions.db.model.*;
@@ -47,6 +47,7 @@ public class UsageCalculation {
     private final Usage usage;
     private final BillingProvider billingProvider;
     private final String billingAccountId;
+    private final int hash;
 
     public Key(
         String productId,
@@ -59,6 +60,8 @@ public class UsageCalculation {
       this.usage = usage;
       this.billingProvider = billingProvider;
       this.billingAccountId = billingAccountId;
+      // keys are immutable and hashed on every calculation lookup, so compute the hash once
+      this.hash = Objects.hash(productId, sla, usage, billingProvider, billingAccountId);
     }
 
     public String getProductId() {
@@ -99,7 +102,7 @@ public class UsageCalculation {
 
     @Override
     public int hashCode() {
-      return Objects.hash(productId, sla, usage);
+      return hash;
     }
 
     public static Key fromTallySnapshot(TallySnapshot snapshot) {
@@ -129,8 +132,16 @@ public class UsageCalculation {
     }
   }
 
-  /** Provides metric totals associated with each hardware type associated with a calculation. */
+  /**
+   * Provides metric totals associated with each hardware type associated with a calculation.
+   *
+   * <p>Measurements are accumulated as primitive doubles in a slice of a dense array indexed by UOM
+   * ordinal, so that tallying doesn't allocate a boxed Double per increment. A bit per UOM records
+   * which measurements have been set, since an unset measurement reads as null rather than zero.
+   */
   public static class Totals {
+    private static final Measurement.Uom[] UOMS = Measurement.Uom.values();
+
     /**
      * @deprecated use measurements instead
      */
@@ -149,17 +160,25 @@ public class UsageCalculation {
     @Deprecated(forRemoval = true)
     private int instances;
 
-    private final Map<Measurement.Uom, Double> measurements = new EnumMap<>(Measurement.Uom.class);
+    private final double[] measurements;
+    private final int offset;
+    private int measuredUoms;
 
     public Totals() {
+      this(new double[UOMS.length], 0);
+    }
+
+    private Totals(double[] measurements, int offset) {
       cores = 0;
       sockets = 0;
       instances = 0;
+      this.measurements = measurements;
+      this.offset = offset;
     }
 
     public String toString() {
       String entries =
-          measurements.entrySet().stream()
+          getMeasurements().entrySet().stream()
               .map(e -> String.format("%s: %s", e.getKey(), e.getValue()))
               .collect(Collectors.joining(", "));
       String uomMeasurements = String.format("[%s]", entries);
@@ -195,27 +214,65 @@ public class UsageCalculation {
       return instances;
     }
 
+    /**
+     * @return a read-only copy of the measurements that have been set
+     */
     public Map<Measurement.Uom, Double> getMeasurements() {
-      return measurements;
+      Map<Measurement.Uom, Double> copy = new EnumMap<>(Measurement.Uom.class);
+      for (Measurement.Uom uom : UOMS) {
+        if (isMeasured(uom)) {
+          copy.put(uom, measurements[offset + uom.ordinal()]);
+        }
+      }
+      return Collections.unmodifiableMap(copy);
     }
 
     public Double getMeasurement(Measurement.Uom uom) {
-      return measurements.get(uom);
+      return isMeasured(uom) ? measurements[offset + uom.ordinal()] : null;
     }
 
     public void increment(Measurement.Uom uom, Double amount) {
-      Double existingValue = getMeasurement(uom);
-      double value = existingValue == null ? 0.0 : existingValue;
-      double newValue = value + amount;
-      measurements.put(uom, newValue);
+      increment(uom, amount.doubleValue());
+    }
+
+    private void increment(Measurement.Uom uom, double amount) {
+      measurements[offset + uom.ordinal()] += amount;
+      measuredUoms |= 1 << uom.ordinal();
+    }
+
+    private boolean isMeasured(Measurement.Uom uom) {
+      return (measuredUoms & (1 << uom.ordinal())) != 0;
+    }
+
+    /**
+     * Adds all values from another set of totals to this one.
+     *
+     * @param other the totals to add
+     */
+    public void add(Totals other) {
+      cores += other.cores;
+      sockets += other.sockets;
+      instances += other.instances;
+      for (Measurement.Uom uom : UOMS) {
+        if (other.isMeasured(uom)) {
+          increment(uom, other.measurements[other.offset + uom.ordinal()]);
+        }
+      }
     }
   }
 
-  private final Map<HardwareMeasurementType, Totals> mappedTotals;
+  private static final HardwareMeasurementType[] TYPES = HardwareMeasurementType.values();
+
+  /** Measurements for every hardware type, laid out as [type ordinal][uom ordinal]. */
+  private final double[] measurements;
+
+  /** Totals per hardware type ordinal; null until something is added for that type. */
+  private final Totals[] mappedTotals;
 
   public UsageCalculation(Key key) {
     this.key = key;
-    this.mappedTotals = new EnumMap<>(HardwareMeasurementType.class);
+    this.measurements = new double[TYPES.length * Totals.UOMS.length];
+    this.mappedTotals = new Totals[TYPES.length];
   }
 
   public String getProductId() {
@@ -239,12 +296,13 @@ public class UsageCalculation {
   }
 
   public Totals getTotals(HardwareMeasurementType type) {
-    return mappedTotals.get(type);
+    return mappedTotals[type.ordinal()];
   }
 
   public void add(HardwareMeasurementType type, Measurement.Uom uom, Double value) {
-    increment(type, uom, value);
-    addToTotal(uom, value);
+    double amount = value;
+    getOrDefault(type).increment(uom, amount);
+    getOrDefault(HardwareMeasurementType.TOTAL).increment(uom, amount);
   }
 
   /**
@@ -274,7 +332,7 @@ public class UsageCalculation {
   }
 
   public void addToTotal(Measurement.Uom uom, Double value) {
-    increment(HardwareMeasurementType.TOTAL, uom, value);
+    getOrDefault(HardwareMeasurementType.TOTAL).increment(uom, value.doubleValue());
   }
 
   /**
@@ -323,18 +381,37 @@ public class UsageCalculation {
     total.instances += instances;
   }
 
-  private void increment(HardwareMeasurementType type, Measurement.Uom uom, Double value) {
-    Totals total = getOrDefault(type);
-    total.increment(uom, value);
+  private Totals getOrDefault(HardwareMeasurementType type) {
+    Totals totals = mappedTotals[type.ordinal()];
+    if (totals == null) {
+      totals = new Totals(measurements, type.ordinal() * Totals.UOMS.length);
+      mappedTotals[type.ordinal()] = totals;
+    }
+    return totals;
   }
 
-  private Totals getOrDefault(HardwareMeasurementType type) {
-    this.mappedTotals.putIfAbsent(type, new Totals());
-    return this.mappedTotals.get(type);
+  /**
+   * Adds all totals from another calculation to this one, e.g. when combining partial calculations
+   * for the same key.
+   *
+   * @param other the calculation to merge from
+   */
+  public void merge(UsageCalculation other) {
+    for (HardwareMeasurementType type : TYPES) {
+      Totals totals = other.getTotals(type);
+      if (totals != null) {
+        getOrDefault(type).add(totals);
+      }
+    }
   }
 
   public boolean hasMeasurements() {
-    return !this.mappedTotals.isEmpty();
+    for (Totals totals : mappedTotals) {
+      if (totals != null) {
+        return true;
+      }
+    }
+    return false;
   }
 
   @Override
@@ -344,8 +421,11 @@ public class UsageCalculation {
         String.format(
             "[Product: %s, sla: %s, usage: %s, billingProvider: %s, billingAccountId: %s",
             key.productId, key.sla, key.usage, key.billingProvider, key.billingAccountId));
-    for (Entry<HardwareMeasurementType, Totals> entry : mappedTotals.entrySet()) {
-      builder.append(String.format(", %s: %s", entry.getKey(), entry.getValue()));
+    for (HardwareMeasurementType type : TYPES) {
+      Totals totals = getTotals(type);
+      if (totals != null) {
+        builder.append(String.format(", %s: %s", type, totals));
+      }
     }
     builder.append("]");
     return builder.toString();
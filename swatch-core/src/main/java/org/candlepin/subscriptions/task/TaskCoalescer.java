@@ -0,0 +1,215 @@
+/*
+ * Copyright Red Hat, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ *
+ * Red Hat trademarks are not licensed under GPLv3. No permission is
+ * granted to use or replicate Red Hat trademarks that are incorporated
+ * in this software or its documentation.
+ */
+package org.candlepin.subscriptions.task;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Metrics;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+import lombok.Value;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Drops tasks that are identical (same type, group and args) to a task already pending or running
+ * within a configurable window.
+ *
+ * <p>Task queues call {@link #offer(TaskDescriptor)} before queuing a task, which drops the task if
+ * an identical one is already pending or running. Task workers call {@link #start(TaskDescriptor)}
+ * before running a task, which drops the task if an identical one is already running, and {@link
+ * #complete(TaskDescriptor)} once it has run.
+ *
+ * <p>Only tasks of the configured types are tracked. A tracked task stops suppressing identical
+ * tasks once the window has elapsed, even if its completion was never observed (e.g. because it
+ * was consumed from Kafka by another process).
+ */
+public class TaskCoalescer {
+
+  private static final Logger log = LoggerFactory.getLogger(TaskCoalescer.class);
+
+  private enum State {
+    PENDING,
+    RUNNING
+  }
+
+  @Value
+  private static class Key {
+    TaskType type;
+    String groupId;
+    Map<String, List<String>> args;
+  }
+
+  @Value
+  private static class Entry {
+    State state;
+    long since;
+  }
+
+  private final Map<Key, Entry> tracked = new ConcurrentHashMap<>();
+  private final AtomicLong lastPurge;
+  private final long windowNanos;
+  private final Set<TaskType> taskTypes;
+  private final MeterRegistry meterRegistry;
+  private final LongSupplier ticker;
+
+  public TaskCoalescer(TaskCoalescingProperties properties, MeterRegistry meterRegistry) {
+    this(properties, meterRegistry, System::nanoTime);
+  }
+
+  TaskCoalescer(
+      TaskCoalescingProperties properties, MeterRegistry meterRegistry, LongSupplier ticker) {
+    this.windowNanos = properties.getWindow().toNanos();
+    this.taskTypes = Set.copyOf(properties.getTaskTypes());
+    this.meterRegistry = meterRegistry;
+    this.ticker = ticker;
+    this.lastPurge = new AtomicLong(ticker.getAsLong());
+  }
+
+  /** Creates a coalescer that never drops a task. */
+  public static TaskCoalescer disabled() {
+    return new TaskCoalescer(new TaskCoalescingProperties(), Metrics.globalRegistry);
+  }
+
+  /**
+   * Record that a task is about to be queued.
+   *
+   * @param taskDescriptor the task to queue
+   * @return false if an identical task is already pending or running, and this one should be
+   *     dropped
+   */
+  public boolean offer(TaskDescriptor taskDescriptor) {
+    if (!isCoalesced(taskDescriptor)) {
+      return true;
+    }
+    long now = ticker.getAsLong();
+    AtomicBoolean accepted = new AtomicBoolean();
+    tracked.compute(
+        keyOf(taskDescriptor),
+        (k, entry) -> {
+          if (entry != null && !isExpired(entry, now)) {
+            return entry;
+          }
+          accepted.set(true);
+          return new Entry(State.PENDING, now);
+        });
+    purgeExpired(now);
+    if (!accepted.get()) {
+      coalesced(taskDescriptor, "enqueue");
+    }
+    return accepted.get();
+  }
+
+  /**
+   * Record that a task is about to run.
+   *
+   * @param taskDescriptor the task to run
+   * @return false if an identical task is already running, and this one should be dropped
+   */
+  public boolean start(TaskDescriptor taskDescriptor) {
+    if (!isCoalesced(taskDescriptor)) {
+      return true;
+    }
+    long now = ticker.getAsLong();
+    AtomicBoolean accepted = new AtomicBoolean();
+    tracked.compute(
+        keyOf(taskDescriptor),
+        (k, entry) -> {
+          if (entry != null && entry.getState() == State.RUNNING && !isExpired(entry, now)) {
+            return entry;
+          }
+          accepted.set(true);
+          return new Entry(State.RUNNING, now);
+        });
+    if (!accepted.get()) {
+      coalesced(taskDescriptor, "execute");
+    }
+    return accepted.get();
+  }
+
+  /**
+   * Record that a task accepted by {@link #start(TaskDescriptor)} has finished running.
+   *
+   * @param taskDescriptor the task that ran
+   */
+  public void complete(TaskDescriptor taskDescriptor) {
+    if (!isCoalesced(taskDescriptor)) {
+      return;
+    }
+    tracked.computeIfPresent(
+        keyOf(taskDescriptor), (k, entry) -> entry.getState() == State.RUNNING ? null : entry);
+  }
+
+  /**
+   * Record that a task accepted by {@link #offer(TaskDescriptor)} could not be queued after all.
+   *
+   * @param taskDescriptor the task that was not queued
+   */
+  public void abandon(TaskDescriptor taskDescriptor) {
+    if (!isCoalesced(taskDescriptor)) {
+      return;
+    }
+    tracked.computeIfPresent(
+        keyOf(taskDescriptor), (k, entry) -> entry.getState() == State.PENDING ? null : entry);
+  }
+
+  int trackedCount() {
+    return tracked.size();
+  }
+
+  private boolean isCoalesced(TaskDescriptor taskDescriptor) {
+    return windowNanos > 0 && taskTypes.contains(taskDescriptor.getTaskType());
+  }
+
+  private boolean isExpired(Entry entry, long now) {
+    return now - entry.getSince() >= windowNanos;
+  }
+
+  private void purgeExpired(long now) {
+    long last = lastPurge.get();
+    if (now - last >= windowNanos && lastPurge.compareAndSet(last, now)) {
+      tracked.entrySet().removeIf(e -> isExpired(e.getValue(), now));
+    }
+  }
+
+  private void coalesced(TaskDescriptor taskDescriptor, String stage) {
+    log.info("Coalescing duplicate task on {}: {}", stage, taskDescriptor);
+    Counter.builder("rhsm-subscriptions.task.coalesced")
+        .tag("type", taskDescriptor.getTaskType().name())
+        .tag("stage", stage)
+        .register(meterRegistry)
+        .increment();
+  }
+
+  private static Key keyOf(TaskDescriptor taskDescriptor) {
+    // copy the args, so that later changes to the descriptor don't affect the key
+    Map<String, List<String>> args = new HashMap<>();
+    taskDescriptor.getTaskArgs().forEach((k, v) -> args.put(k, new ArrayList<>(v)));
+    return new Key(taskDescriptor.getTaskType(), taskDescriptor.getGroupId(), args);
+  }
+}
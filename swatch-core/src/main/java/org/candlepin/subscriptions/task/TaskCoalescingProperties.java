@@ -0,0 +1,43 @@
+/*
+ * Copyright Red Hat, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ *
+ * Red Hat trademarks are not licensed under GPLv3. No permission is
+ * granted to use or replicate Red Hat trademarks that are incorporated
+ * in this software or its documentation.
+ */
+package org.candlepin.subscriptions.task;
+
+import java.time.Duration;
+import java.util.EnumSet;
+import java.util.Set;
+import lombok.Data;
+
+/** Settings for coalescing identical tasks queued or run within a short window. */
+@Data
+public class TaskCoalescingProperties {
+
+  /**
+   * How long a queued or running task suppresses identical tasks. Zero disables coalescing.
+   *
+   * <p>Bounds how long a task is considered pending when its completion isn't observed by this
+   * process, e.g. when it is consumed from Kafka by another pod.
+   */
+  private Duration window = Duration.ZERO;
+
+  /** Task types that are coalesced. */
+  private Set<TaskType> taskTypes =
+      EnumSet.of(TaskType.UPDATE_SNAPSHOTS, TaskType.UPDATE_HOURLY_SNAPSHOTS);
+}
@@ -38,4 +38,16 @@ public class TaskQueueProperties {
   private boolean seekOverrideEnd = false;
 
   private boolean enabled = true;
+
+  /**
+   * Whether the kafka task consumer should receive a whole poll of task messages at once, running
+   * them on a bounded executor and committing offsets once the batch has completed.
+   */
+  private boolean batchListenerEnabled = false;
+
+  /** Maximum number of partitions of a batch whose tasks are run in parallel. */
+  private int batchConcurrency = 4;
+
+  /** Maximum number of task messages in a single batch (max.poll.records of the consumer). */
+  private int batchMaxPollRecords = 50;
 }
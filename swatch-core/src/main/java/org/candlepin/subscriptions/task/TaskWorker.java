@@ -27,24 +27,38 @@ package org.candlepin.subscriptions.task;
 public class TaskWorker {
 
   private final TaskFactory taskFactory;
+  private final TaskCoalescer taskCoalescer;
 
   public TaskWorker(TaskFactory taskFactory) {
+    this(taskFactory, TaskCoalescer.disabled());
+  }
+
+  public TaskWorker(TaskFactory taskFactory, TaskCoalescer taskCoalescer) {
     this.taskFactory = taskFactory;
+    this.taskCoalescer = taskCoalescer;
   }
 
   /**
    * Executes the Task described by the given TaskDescriptor.
    *
+   * <p>The task is skipped if the task coalescer reports an identical task already running.
+   *
    * @param taskDescriptor the descriptor for the task to execute.
    * @throws TaskExecutionException when an error occurs running the Task.
    */
   public void executeTask(TaskDescriptor taskDescriptor) throws TaskExecutionException {
+    if (!taskCoalescer.start(taskDescriptor)) {
+      // an identical task is already running
+      return;
+    }
     try {
       Task toExecute = taskFactory.build(taskDescriptor);
       toExecute.execute();
     } catch (Exception e) {
       throw new TaskExecutionException(
           String.format("Error executing task: %s", taskDescriptor), e);
+    } finally {
+      taskCoalescer.complete(taskDescriptor);
     }
   }
 }
@@ -0,0 +1,49 @@
+/*
+ * Copyright Red Hat, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ *
+ * Red Hat trademarks are not licensed under GPLv3. No permission is
+ * granted to use or replicate Red Hat trademarks that are incorporated
+ * in this software or its documentation.
+ */
+package org.candlepin.subscriptions.task.queue;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import org.candlepin.subscriptions.task.TaskCoalescer;
+import org.candlepin.subscriptions.task.TaskCoalescingProperties;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * Configuration of the task coalescer shared by task producers and consumers.
+ *
+ * <p>Imported by both {@link TaskProducerConfiguration} and {@link TaskConsumerConfiguration}, so
+ * that a process that both queues and runs tasks tracks them in a single place.
+ */
+@Configuration
+public class TaskCoalescingConfiguration {
+
+  @Bean
+  @ConfigurationProperties(prefix = "rhsm-subscriptions.task-coalescing")
+  TaskCoalescingProperties taskCoalescingProperties() {
+    return new TaskCoalescingProperties();
+  }
+
+  @Bean
+  TaskCoalescer taskCoalescer(TaskCoalescingProperties properties, MeterRegistry meterRegistry) {
+    return new TaskCoalescer(properties, meterRegistry);
+  }
+}
@@ -20,6 +20,8 @@
  */
 package org.candlepin.subscriptions.task.queue;
 
+import io.micrometer.core.instrument.MeterRegistry;
+import org.candlepin.subscriptions.task.TaskCoalescer;
 import org.candlepin.subscriptions.task.queue.inmemory.ExecutorTaskQueue;
 import org.candlepin.subscriptions.task.queue.inmemory.ExecutorTaskQueueConfiguration;
 import org.candlepin.subscriptions.task.queue.inmemory.ExecutorTaskQueueConsumerFactory;
@@ -41,18 +43,22 @@ import org.springframework.context.annotation.Profile;
  */
 @Configuration
 @AutoConfigureAfter(ExecutorTaskQueueConfiguration.class)
-@Import(KafkaTaskConsumerConfiguration.class)
+@Import({KafkaTaskConsumerConfiguration.class, TaskCoalescingConfiguration.class})
 public class TaskConsumerConfiguration {
   @Bean
   @Primary
   @Profile("kafka-queue")
-  KafkaTaskConsumerFactory kakfaTaskConsumerFactory(KafkaConsumerRegistry kafkaConsumerRegistry) {
-    return new KafkaTaskConsumerFactory(kafkaConsumerRegistry);
+  KafkaTaskConsumerFactory kakfaTaskConsumerFactory(
+      KafkaConsumerRegistry kafkaConsumerRegistry,
+      MeterRegistry meterRegistry,
+      TaskCoalescer taskCoalescer) {
+    return new KafkaTaskConsumerFactory(kafkaConsumerRegistry, meterRegistry, taskCoalescer);
   }
 
   @Bean
   @Profile("!kafka-queue")
-  ExecutorTaskQueueConsumerFactory inMemoryTaskConsumerFactory(ExecutorTaskQueue queue) {
-    return new ExecutorTaskQueueConsumerFactory(queue);
+  ExecutorTaskQueueConsumerFactory inMemoryTaskConsumerFactory(
+      ExecutorTaskQueue queue, TaskCoalescer taskCoalescer) {
+    return new ExecutorTaskQueueConsumerFactory(queue, taskCoalescer);
   }
 }
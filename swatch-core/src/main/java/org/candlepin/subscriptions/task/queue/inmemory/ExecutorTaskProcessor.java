@@ -20,10 +20,10 @@
  */
 package org.candlepin.subscriptions.task.queue.inmemory;
 
-import java.util.Optional;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.TimeUnit;
 import javax.annotation.PreDestroy;
+import org.candlepin.subscriptions.task.TaskCoalescer;
 import org.candlepin.subscriptions.task.TaskDescriptor;
 import org.candlepin.subscriptions.task.TaskExecutionException;
 import org.candlepin.subscriptions.task.TaskFactory;
@@ -35,7 +35,8 @@ import org.slf4j.LoggerFactory;
 /**
  * Processor that is responsible for running queued tasks.
  *
- * <p>Uses a separate thread to convert TaskDescriptors into actual tasks.
+ * <p>Registers with the {@link ExecutorTaskQueue}, which dispatches the tasks of the processor's
+ * group onto its executor, at most concurrencyLimit at a time.
  *
  * @see ExecutorTaskQueue
  */
@@ -46,20 +47,42 @@ public class ExecutorTaskProcessor implements TaskConsumer {
   private final ExecutorTaskQueue queue;
   private final String queueId;
   private final TaskFactory taskFactory;
-  private final Thread thread;
+  private final TaskCoalescer taskCoalescer;
 
   public ExecutorTaskProcessor(
       ExecutorService executor, TaskFactory taskFactory, ExecutorTaskQueue queue, String queueId) {
+    this(executor, taskFactory, TaskCoalescer.disabled(), queue, queueId, Integer.MAX_VALUE);
+  }
+
+  public ExecutorTaskProcessor(
+      ExecutorService executor,
+      TaskFactory taskFactory,
+      TaskCoalescer taskCoalescer,
+      ExecutorTaskQueue queue,
+      String queueId,
+      int concurrencyLimit) {
     this.executor = executor;
     this.taskFactory = taskFactory;
+    this.taskCoalescer = taskCoalescer;
     this.queue = queue;
     this.queueId = queueId;
-    this.thread = new Thread(this::run);
-    this.thread.start();
+    log.info("Starting in-memory task processor for {}", queueId);
+    queue.register(queueId, concurrencyLimit, this::execute);
+  }
+
+  private void execute(TaskDescriptor taskDescriptor, Runnable onComplete) {
+    executor.execute(
+        () -> {
+          try {
+            processTask(taskDescriptor);
+          } finally {
+            onComplete.run();
+          }
+        });
   }
 
   private void processTask(TaskDescriptor taskDescriptor) {
-    TaskWorker worker = new TaskWorker(taskFactory);
+    TaskWorker worker = new TaskWorker(taskFactory, taskCoalescer);
     try {
       worker.executeTask(taskDescriptor);
     } catch (TaskExecutionException e) {
@@ -82,26 +105,9 @@ public class ExecutorTaskProcessor implements TaskConsumer {
    * @throws InterruptedException if interrupted during shutdown
    */
   public void shutdown(long timeout, TimeUnit timeUnit) throws InterruptedException {
-    this.queue.shutdown();
-    this.thread.join();
+    log.info("Stopping in-memory task processor for {}", queueId);
+    this.queue.unregister(queueId, timeout, timeUnit);
     this.executor.shutdown();
     this.executor.awaitTermination(timeout, timeUnit);
   }
-
-  private void run() {
-    log.info("Starting in-memory task processor");
-    while (true) {
-      try {
-        Optional<TaskDescriptor> task = queue.take(queueId);
-        if (task.isPresent()) {
-          this.executor.execute(() -> this.processTask(task.get()));
-        } else {
-          log.info("Stopping in-memory task processor");
-          break;
-        }
-      } catch (InterruptedException e) {
-        Thread.currentThread().interrupt();
-      }
-    }
-  }
 }
@@ -20,46 +20,205 @@
  */
 package org.candlepin.subscriptions.task.queue.inmemory;
 
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Metrics;
+import io.micrometer.core.instrument.Timer;
+import java.util.ArrayDeque;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.LinkedHashMap;
 import java.util.Map;
-import java.util.Optional;
-import java.util.concurrent.ArrayBlockingQueue;
-import java.util.concurrent.BlockingQueue;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.PriorityQueue;
+import java.util.Queue;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
 import javax.ws.rs.core.Response;
+import lombok.Value;
 import org.candlepin.subscriptions.exception.ErrorCode;
 import org.candlepin.subscriptions.exception.SubscriptionsException;
+import org.candlepin.subscriptions.task.TaskCoalescer;
 import org.candlepin.subscriptions.task.TaskDescriptor;
 import org.candlepin.subscriptions.task.queue.TaskQueue;
+import org.candlepin.subscriptions.task.queue.inmemory.ExecutorTaskQueueProperties.Backpressure;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 /**
- * An TaskQueue implementation that uses an {@link ExecutorService} to queue/execute tasks.
+ * An in-memory TaskQueue that schedules queued tasks onto the {@link ExecutorService}s of the
+ * registered {@link ExecutorTaskProcessor}s.
  *
- * <p>The behavior of the TaskQueue is dependent on the {@link ExecutorService} instance that is
- * passed to the constructor.
+ * <p>Tasks are queued per group (topic). Within a group, tasks are dispatched by the priority of
+ * their {@link org.candlepin.subscriptions.task.TaskType}, then in FIFO order. Between groups with
+ * pending tasks, dispatches are shared by smooth weighted round-robin according to the configured
+ * group weights. A group has at most its processor's concurrency limit of tasks running at a time.
  *
- * <p>If configured with {@link Executors#newCachedThreadPool()}, the queuing is done by starting a
- * new thread for each queued task.
+ * <p>When a group's queue is full, enqueue either fails, blocks for a bounded time, or spills the
+ * task into an unbounded overflow list, depending on the configured {@link Backpressure}.
  *
- * <p>If configured with {@link Executors#newSingleThreadExecutor()}, then the task queue is backed
- * by an unbound queue.
- *
- * <p>Custom queuing mechanisms can be implemented by configuring a {@link
- * java.util.concurrent.ThreadPoolExecutor} with a custom implementation of {@link
- * java.util.concurrent.BlockingQueue}.
+ * <p>A single dispatcher thread runs while at least one processor is registered.
  *
  * @see ExecutorService
  * @see Executors
  */
 public class ExecutorTaskQueue implements TaskQueue {
-  private final Map<String, BlockingQueue<Optional<TaskDescriptor>>> queues =
-      new ConcurrentHashMap<>();
+  private static final Logger log = LoggerFactory.getLogger(ExecutorTaskQueue.class);
+
+  /** Runs a dispatched task, calling onComplete once the task has finished. */
+  interface TaskRunner {
+    void run(TaskDescriptor taskDescriptor, Runnable onComplete);
+  }
+
+  @Value
+  private static class QueuedTask {
+    TaskDescriptor taskDescriptor;
+    int priority;
+    long sequence;
+    long enqueuedNanos;
+  }
+
+  private static final Comparator<QueuedTask> DISPATCH_ORDER =
+      Comparator.comparingInt(QueuedTask::getPriority)
+          .reversed()
+          .thenComparingLong(QueuedTask::getSequence);
+
+  private final class TaskGroup {
+    private final String groupId;
+    private final int weight;
+    private final Queue<QueuedTask> pending = new PriorityQueue<>(DISPATCH_ORDER);
+    private final Deque<QueuedTask> spilled = new ArrayDeque<>();
+    private final Condition notFull = lock.newCondition();
+    private final Condition drained = lock.newCondition();
+    private final AtomicInteger depth = new AtomicInteger();
+    private TaskRunner runner;
+    private int concurrencyLimit;
+    private int running;
+    private int currentWeight;
+
+    private TaskGroup(String groupId) {
+      this.groupId = groupId;
+      this.weight = Math.max(1, properties.getGroupWeights().getOrDefault(groupId, 1));
+      Gauge.builder("rhsm-subscriptions.task.queue.depth", depth, AtomicInteger::get)
+          .tag("group", groupId)
+          .register(meterRegistry);
+    }
+
+    private boolean isFull() {
+      return pending.size() >= properties.getQueueCapacity();
+    }
+
+    private boolean isDispatchable() {
+      return runner != null && !pending.isEmpty() && running < concurrencyLimit;
+    }
+
+    private boolean isDrained() {
+      return pending.isEmpty() && spilled.isEmpty();
+    }
+
+    private QueuedTask take() {
+      QueuedTask task = pending.poll();
+      if (!spilled.isEmpty()) {
+        pending.add(spilled.poll());
+      }
+      depth.decrementAndGet();
+      notFull.signal();
+      if (isDrained()) {
+        drained.signalAll();
+      }
+      return task;
+    }
+  }
+
+  private final ReentrantLock lock = new ReentrantLock();
+  private final Condition dispatchable = lock.newCondition();
+  private final Map<String, TaskGroup> groups = new LinkedHashMap<>();
+  private final AtomicLong sequence = new AtomicLong();
+  private final TaskCoalescer taskCoalescer;
+  private final ExecutorTaskQueueProperties properties;
+  private final MeterRegistry meterRegistry;
+  private Thread dispatcher;
+
+  public ExecutorTaskQueue() {
+    this(TaskCoalescer.disabled());
+  }
+
+  public ExecutorTaskQueue(TaskCoalescer taskCoalescer) {
+    this(taskCoalescer, new ExecutorTaskQueueProperties(), Metrics.globalRegistry);
+  }
+
+  public ExecutorTaskQueue(
+      TaskCoalescer taskCoalescer,
+      ExecutorTaskQueueProperties properties,
+      MeterRegistry meterRegistry) {
+    this.taskCoalescer = taskCoalescer;
+    this.properties = properties;
+    this.meterRegistry = meterRegistry;
+  }
 
   @Override
   public void enqueue(TaskDescriptor taskDescriptor) {
+    if (!taskCoalescer.offer(taskDescriptor)) {
+      return;
+    }
+    QueuedTask task =
+        new QueuedTask(
+            taskDescriptor,
+            properties.getPriorities().getOrDefault(taskDescriptor.getTaskType(), 0),
+            sequence.getAndIncrement(),
+            System.nanoTime());
+    lock.lock();
     try {
-      getQueue(taskDescriptor.getGroupId()).put(Optional.of(taskDescriptor));
+      TaskGroup group = getGroup(taskDescriptor.getGroupId());
+      if (group.isFull()) {
+        queueOntoFullGroup(group, task);
+      } else {
+        group.pending.add(task);
+      }
+      group.depth.incrementAndGet();
+      dispatchable.signal();
+    } catch (RuntimeException e) {
+      taskCoalescer.abandon(taskDescriptor);
+      throw e;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  private void queueOntoFullGroup(TaskGroup group, QueuedTask task) {
+    switch (properties.getBackpressure()) {
+      case SPILL:
+        group.spilled.add(task);
+        backpressureCounter(group, "spilled").increment();
+        return;
+      case BLOCK:
+        awaitRoom(group);
+        group.pending.add(task);
+        return;
+      case REJECT:
+      default:
+        throw queueFull(group);
+    }
+  }
+
+  private void awaitRoom(TaskGroup group) {
+    try {
+      long remaining = properties.getBlockTimeout().toNanos();
+      while (group.isFull()) {
+        if (properties.getBlockTimeout().isZero()) {
+          group.notFull.await();
+        } else if (remaining <= 0) {
+          throw queueFull(group);
+        } else {
+          remaining = group.notFull.awaitNanos(remaining);
+        }
+      }
     } catch (InterruptedException e) {
       Thread.currentThread().interrupt();
       throw new SubscriptionsException(
@@ -70,23 +229,142 @@ public class ExecutorTaskQueue implements TaskQueue {
     }
   }
 
-  private BlockingQueue<Optional<TaskDescriptor>> getQueue(String groupId) {
-    return queues.computeIfAbsent(groupId, k -> new ArrayBlockingQueue<>(1024));
+  private SubscriptionsException queueFull(TaskGroup group) {
+    backpressureCounter(group, "rejected").increment();
+    return new SubscriptionsException(
+        ErrorCode.REQUEST_PROCESSING_ERROR,
+        Response.Status.SERVICE_UNAVAILABLE,
+        "Task queue is full.",
+        String.format("The task queue for group %s is full.", group.groupId));
   }
 
-  Optional<TaskDescriptor> take(String queueId) throws InterruptedException {
-    return getQueue(queueId).take();
+  private Counter backpressureCounter(TaskGroup group, String outcome) {
+    return Counter.builder("rhsm-subscriptions.task.queue.backpressure")
+        .tag("group", group.groupId)
+        .tag("outcome", outcome)
+        .register(meterRegistry);
   }
 
-  void shutdown() {
-    queues.values().forEach(this::shutdownQueue);
+  private TaskGroup getGroup(String groupId) {
+    return groups.computeIfAbsent(groupId, TaskGroup::new);
+  }
+
+  /**
+   * Start dispatching the tasks of a group.
+   *
+   * @param groupId the group to dispatch
+   * @param concurrencyLimit maximum number of the group's tasks running at a time
+   * @param runner runs the dispatched tasks
+   */
+  void register(String groupId, int concurrencyLimit, TaskRunner runner) {
+    lock.lock();
+    try {
+      TaskGroup group = getGroup(groupId);
+      group.runner = runner;
+      group.concurrencyLimit = Math.max(1, concurrencyLimit);
+      if (dispatcher == null) {
+        dispatcher = new Thread(this::dispatch, "task-dispatcher");
+        dispatcher.setDaemon(true);
+        dispatcher.start();
+      }
+      dispatchable.signal();
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Wait for the pending tasks of a group to be dispatched, then stop dispatching it.
+   *
+   * @param groupId the group to stop dispatching
+   * @param timeout the maximum time to wait
+   * @param timeUnit the time unit of the timeout argument
+   * @throws InterruptedException if interrupted while waiting
+   */
+  void unregister(String groupId, long timeout, TimeUnit timeUnit) throws InterruptedException {
+    lock.lock();
+    try {
+      TaskGroup group = getGroup(groupId);
+      long remaining = timeUnit.toNanos(timeout);
+      while (!group.isDrained() && remaining > 0) {
+        remaining = group.drained.awaitNanos(remaining);
+      }
+      group.runner = null;
+      dispatchable.signal();
+    } finally {
+      lock.unlock();
+    }
   }
 
-  private void shutdownQueue(BlockingQueue<Optional<TaskDescriptor>> queue) {
+  private void dispatch() {
+    log.info("Starting in-memory task dispatcher");
+    lock.lock();
     try {
-      queue.put(Optional.empty());
+      while (groups.values().stream().anyMatch(g -> g.runner != null)) {
+        TaskGroup group = nextGroup();
+        if (group == null) {
+          dispatchable.await();
+          continue;
+        }
+        QueuedTask task = group.take();
+        group.running++;
+        TaskRunner runner = group.runner;
+        lock.unlock();
+        try {
+          run(group, runner, task);
+        } finally {
+          lock.lock();
+        }
+      }
     } catch (InterruptedException e) {
       Thread.currentThread().interrupt();
+    } finally {
+      log.info("Stopping in-memory task dispatcher");
+      dispatcher = null;
+      lock.unlock();
+    }
+  }
+
+  /** Picks the dispatchable group with the largest share of unused weight (smooth round-robin). */
+  private TaskGroup nextGroup() {
+    TaskGroup next = null;
+    int totalWeight = 0;
+    for (TaskGroup group : groups.values()) {
+      if (group.isDispatchable()) {
+        group.currentWeight += group.weight;
+        totalWeight += group.weight;
+        if (next == null || group.currentWeight > next.currentWeight) {
+          next = group;
+        }
+      }
+    }
+    if (next != null) {
+      next.currentWeight -= totalWeight;
+    }
+    return next;
+  }
+
+  private void run(TaskGroup group, TaskRunner runner, QueuedTask task) {
+    Timer.builder("rhsm-subscriptions.task.queue.wait")
+        .tag("group", group.groupId)
+        .tag("type", task.getTaskDescriptor().getTaskType().name())
+        .register(meterRegistry)
+        .record(System.nanoTime() - task.getEnqueuedNanos(), TimeUnit.NANOSECONDS);
+    try {
+      runner.run(task.getTaskDescriptor(), () -> complete(group));
+    } catch (RejectedExecutionException e) {
+      log.warn("Task was not run, its processor is shutting down: {}", task.getTaskDescriptor());
+      complete(group);
+    }
+  }
+
+  private void complete(TaskGroup group) {
+    lock.lock();
+    try {
+      group.running--;
+      dispatchable.signal();
+    } finally {
+      lock.unlock();
     }
   }
 }
@@ -20,11 +20,16 @@
  */
 package org.candlepin.subscriptions.task.queue.inmemory;
 
+import io.micrometer.core.instrument.MeterRegistry;
+import org.candlepin.subscriptions.task.TaskCoalescer;
+import org.candlepin.subscriptions.task.queue.TaskCoalescingConfiguration;
 import org.candlepin.subscriptions.task.queue.TaskConsumerConfiguration;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.boot.context.properties.ConfigurationProperties;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Import;
 import org.springframework.context.annotation.Profile;
 
 /**
@@ -34,20 +39,28 @@ import org.springframework.context.annotation.Profile;
  */
 @Configuration
 @Profile("!kafka-queue")
+@Import(TaskCoalescingConfiguration.class)
 public class ExecutorTaskQueueConfiguration {
   private static final Logger log = LoggerFactory.getLogger(ExecutorTaskQueueConfiguration.class);
 
   /**
-   * Creates an in-memory queue, implemented with {@link java.util.concurrent.ThreadPoolExecutor}.
-   *
-   * <p>Does not block while executing a task. Spin up a new thread for each task, only practically
-   * bound by amount of memory available.
+   * Creates an in-memory queue, which dispatches tasks onto the executors of the registered
+   * processors by priority, with weighted fair sharing between groups.
    *
    * @see TaskConsumerConfiguration
    */
   @Bean
-  ExecutorTaskQueue inMemoryQueue() {
+  ExecutorTaskQueue inMemoryQueue(
+      TaskCoalescer taskCoalescer,
+      ExecutorTaskQueueProperties executorTaskQueueProperties,
+      MeterRegistry meterRegistry) {
     log.info("Configuring an in-memory task queue.");
-    return new ExecutorTaskQueue();
+    return new ExecutorTaskQueue(taskCoalescer, executorTaskQueueProperties, meterRegistry);
+  }
+
+  @Bean
+  @ConfigurationProperties(prefix = "rhsm-subscriptions.executor-task-queue")
+  ExecutorTaskQueueProperties executorTaskQueueProperties() {
+    return new ExecutorTaskQueueProperties();
   }
 }
@@ -21,6 +21,7 @@
 package org.candlepin.subscriptions.task.queue.inmemory;
 
 import java.util.concurrent.Executors;
+import org.candlepin.subscriptions.task.TaskCoalescer;
 import org.candlepin.subscriptions.task.TaskFactory;
 import org.candlepin.subscriptions.task.TaskQueueProperties;
 import org.candlepin.subscriptions.task.queue.TaskConsumerFactory;
@@ -29,9 +30,12 @@ import org.candlepin.subscriptions.task.queue.TaskConsumerFactory;
 public class ExecutorTaskQueueConsumerFactory
     implements TaskConsumerFactory<ExecutorTaskProcessor> {
   private final ExecutorTaskQueue executorTaskQueue;
+  private final TaskCoalescer taskCoalescer;
 
-  public ExecutorTaskQueueConsumerFactory(ExecutorTaskQueue executorTaskQueue) {
+  public ExecutorTaskQueueConsumerFactory(
+      ExecutorTaskQueue executorTaskQueue, TaskCoalescer taskCoalescer) {
     this.executorTaskQueue = executorTaskQueue;
+    this.taskCoalescer = taskCoalescer;
   }
 
   @Override
@@ -41,7 +45,9 @@ public class ExecutorTaskQueueConsumerFactory
     return new ExecutorTaskProcessor(
         Executors.newFixedThreadPool(taskQueueProperties.getExecutorTaskQueueThreadLimit()),
         taskFactory,
+        taskCoalescer,
         executorTaskQueue,
-        taskQueueProperties.getTopic());
+        taskQueueProperties.getTopic(),
+        taskQueueProperties.getExecutorTaskQueueThreadLimit());
   }
 }
@@ -0,0 +1,59 @@
+/*
+ * Copyright Red Hat, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ *
+ * Red Hat trademarks are not licensed under GPLv3. No permission is
+ * granted to use or replicate Red Hat trademarks that are incorporated
+ * in this software or its documentation.
+ */
+package org.candlepin.subscriptions.task.queue.inmemory;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+import lombok.Data;
+import org.candlepin.subscriptions.task.TaskType;
+
+/** Scheduling settings for the in-memory task queue. */
+@Data
+public class ExecutorTaskQueueProperties {
+
+  /** What to do when a task is queued onto a group whose queue is full. */
+  public enum Backpressure {
+    /** Fail the enqueue. */
+    REJECT,
+    /** Wait up to blockTimeout for room in the queue, then fail the enqueue. */
+    BLOCK,
+    /** Accept the task into an unbounded overflow list, moved into the queue as room frees up. */
+    SPILL
+  }
+
+  /** Maximum number of pending tasks per group. */
+  private int queueCapacity = 1024;
+
+  /** Priority of each task type; higher priority tasks of a group are dispatched first. */
+  private Map<TaskType, Integer> priorities = new HashMap<>();
+
+  /**
+   * Relative share of dispatches given to each group (keyed by group ID, i.e. topic) while several
+   * groups have pending tasks. Groups not listed have a weight of 1.
+   */
+  private Map<String, Integer> groupWeights = new HashMap<>();
+
+  private Backpressure backpressure = Backpressure.BLOCK;
+
+  /** How long BLOCK waits for room in the queue. Zero waits indefinitely. */
+  private Duration blockTimeout = Duration.ZERO;
+}
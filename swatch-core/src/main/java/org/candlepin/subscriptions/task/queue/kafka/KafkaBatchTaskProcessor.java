@@ -0,0 +1,163 @@
+/*
+ * Copyright Red Hat, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ *
+ * Red Hat trademarks are not licensed under GPLv3. No permission is
+ * granted to use or replicate Red Hat trademarks that are incorporated
+ * in this software or its documentation.
+ */
+package org.candlepin.subscriptions.task.queue.kafka;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import javax.annotation.PreDestroy;
+import lombok.Getter;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.common.TopicPartition;
+import org.candlepin.subscriptions.task.TaskCoalescer;
+import org.candlepin.subscriptions.task.TaskExecutionException;
+import org.candlepin.subscriptions.task.TaskFactory;
+import org.candlepin.subscriptions.task.TaskQueueProperties;
+import org.candlepin.subscriptions.task.TaskWorker;
+import org.candlepin.subscriptions.task.queue.TaskConsumer;
+import org.candlepin.subscriptions.task.queue.kafka.message.TaskMessage;
+import org.candlepin.subscriptions.util.KafkaConsumerRegistry;
+import org.candlepin.subscriptions.util.SeekableKafkaConsumer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.kafka.annotation.KafkaListener;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+
+/**
+ * Receives a whole poll of task messages from Kafka at once, and runs them on a bounded executor.
+ *
+ * <p>Messages of the same partition are run one after another in offset order, while different
+ * partitions are run in parallel. The listener only returns once every task of the batch has run,
+ * so the offsets of the batch are committed after the whole batch has completed. As with {@link
+ * KafkaTaskProcessor}, a task that fails is logged and not retried.
+ *
+ * <p>Note that a batch must complete within the consumer's max.poll.interval.ms, so the number of
+ * records per poll should be sized accordingly.
+ */
+public class KafkaBatchTaskProcessor extends SeekableKafkaConsumer implements TaskConsumer {
+  private static final Logger log = LoggerFactory.getLogger(KafkaBatchTaskProcessor.class);
+
+  private final TaskWorker worker;
+  private final ExecutorService executor;
+  private final MeterRegistry meterRegistry;
+  private final DistributionSummary batchSize;
+  private final Timer batchTimer;
+  @Getter private final int batchMaxPollRecords;
+
+  public KafkaBatchTaskProcessor(
+      TaskFactory taskFactory,
+      TaskCoalescer taskCoalescer,
+      TaskQueueProperties taskQueueProperties,
+      KafkaConsumerRegistry kafkaConsumerRegistry,
+      MeterRegistry meterRegistry) {
+    super(taskQueueProperties, kafkaConsumerRegistry);
+    this.worker = new TaskWorker(taskFactory, taskCoalescer);
+    this.batchMaxPollRecords = Math.max(1, taskQueueProperties.getBatchMaxPollRecords());
+    CustomizableThreadFactory threadFactory = new CustomizableThreadFactory("task-batch-");
+    threadFactory.setDaemon(true);
+    this.executor =
+        Executors.newFixedThreadPool(
+            Math.max(1, taskQueueProperties.getBatchConcurrency()), threadFactory);
+    this.meterRegistry = meterRegistry;
+    this.batchSize = meterRegistry.summary("rhsm-subscriptions.task.batch.size");
+    this.batchTimer = meterRegistry.timer("rhsm-subscriptions.task.batch.execution");
+  }
+
+  @KafkaListener(
+      id = "#{__listener.groupId}",
+      topics = "#{__listener.topic}",
+      containerFactory = "kafkaBatchListenerContainerFactory",
+      properties = "max.poll.records:#{__listener.batchMaxPollRecords}")
+  public void receive(List<ConsumerRecord<String, TaskMessage>> records) {
+    log.info("Batch of {} messages received from kafka", records.size());
+    batchSize.record(records.size());
+    long start = System.nanoTime();
+
+    Map<TopicPartition, List<TaskMessage>> byPartition = new LinkedHashMap<>();
+    for (ConsumerRecord<String, TaskMessage> rec : records) {
+      if (rec.value() == null) {
+        // value failed to deserialize; skip it rather than replaying the batch forever
+        log.error(
+            "Skipping unreadable task message at {}-{}@{}",
+            rec.topic(),
+            rec.partition(),
+            rec.offset());
+        continue;
+      }
+      byPartition
+          .computeIfAbsent(new TopicPartition(rec.topic(), rec.partition()), k -> new ArrayList<>())
+          .add(rec.value());
+    }
+
+    List<Future<?>> futures = new ArrayList<>(byPartition.size());
+    byPartition.values().forEach(messages -> futures.add(executor.submit(() -> run(messages))));
+    try {
+      for (Future<?> future : futures) {
+        future.get();
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      futures.forEach(f -> f.cancel(true));
+      throw new IllegalStateException("Interrupted while running a batch of tasks", e);
+    } catch (ExecutionException e) {
+      throw new IllegalStateException("Unexpected error running a batch of tasks", e.getCause());
+    } finally {
+      batchTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+    }
+  }
+
+  private void run(List<TaskMessage> messages) {
+    for (TaskMessage message : messages) {
+      if (Thread.currentThread().isInterrupted()) {
+        return;
+      }
+      long start = System.nanoTime();
+      String outcome = "success";
+      try {
+        log.info("Running task from batch: {}", message);
+        worker.executeTask(KafkaTaskProcessor.describe(message));
+      } catch (TaskExecutionException e) {
+        outcome = "failure";
+        log.error("Failed to execute task: {}", message, e);
+      } finally {
+        Timer.builder("rhsm-subscriptions.task.batch.task")
+            .tag("type", String.valueOf(message.getType()))
+            .tag("outcome", outcome)
+            .register(meterRegistry)
+            .record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+      }
+    }
+  }
+
+  @PreDestroy
+  protected void destroy() {
+    executor.shutdownNow();
+  }
+}
@@ -104,14 +104,37 @@ public class KafkaConfigurator {
   public KafkaListenerContainerFactory<ConcurrentMessageListenerContainer<String, TaskMessage>>
       defaultListenerContainerFactory(
           ConsumerFactory<String, TaskMessage> consumerFactory, KafkaProperties kafkaProperties) {
+    ConcurrentKafkaListenerContainerFactory<String, TaskMessage> factory =
+        baseListenerContainerFactory(consumerFactory, kafkaProperties);
+    // commit the offset automatically after the listener method finishes
+    factory.getContainerProperties().setAckMode(AckMode.RECORD);
+    return factory;
+  }
+
+  /**
+   * Creates a listener container factory which hands each poll of records to the listener at once.
+   *
+   * <p>Offsets are committed once the listener method has returned, i.e. once the whole batch has
+   * been processed.
+   */
+  public KafkaListenerContainerFactory<ConcurrentMessageListenerContainer<String, TaskMessage>>
+      batchListenerContainerFactory(
+          ConsumerFactory<String, TaskMessage> consumerFactory, KafkaProperties kafkaProperties) {
+    ConcurrentKafkaListenerContainerFactory<String, TaskMessage> factory =
+        baseListenerContainerFactory(consumerFactory, kafkaProperties);
+    factory.setBatchListener(true);
+    factory.getContainerProperties().setAckMode(AckMode.BATCH);
+    return factory;
+  }
+
+  private ConcurrentKafkaListenerContainerFactory<String, TaskMessage> baseListenerContainerFactory(
+      ConsumerFactory<String, TaskMessage> consumerFactory, KafkaProperties kafkaProperties) {
     ConcurrentKafkaListenerContainerFactory<String, TaskMessage> factory =
         new ConcurrentKafkaListenerContainerFactory<>();
     factory.setConsumerFactory(consumerFactory);
     // Concurrency should be set to the number of partitions for the target topic.
     factory.setConcurrency(kafkaProperties.getListener().getConcurrency());
 
-    // commit the offset automatically after the listener method finishes
-    factory.getContainerProperties().setAckMode(AckMode.RECORD);
     if (kafkaProperties.getListener().getIdleEventInterval() != null) {
       factory
           .getContainerProperties()
@@ -20,24 +20,44 @@
  */
 package org.candlepin.subscriptions.task.queue.kafka;
 
+import io.micrometer.core.instrument.MeterRegistry;
+import org.candlepin.subscriptions.task.TaskCoalescer;
 import org.candlepin.subscriptions.task.TaskFactory;
 import org.candlepin.subscriptions.task.TaskQueueProperties;
+import org.candlepin.subscriptions.task.queue.TaskConsumer;
 import org.candlepin.subscriptions.task.queue.TaskConsumerFactory;
 import org.candlepin.subscriptions.util.KafkaConsumerRegistry;
 
-/** Task consumer factory that creates consumers that read tasks from a kafka topic. */
-public class KafkaTaskConsumerFactory implements TaskConsumerFactory<KafkaTaskProcessor> {
+/**
+ * Task consumer factory that creates consumers that read tasks from a kafka topic.
+ *
+ * <p>Creates a {@link KafkaBatchTaskProcessor} when the batch listener is enabled for the queue,
+ * otherwise a {@link KafkaTaskProcessor}.
+ */
+public class KafkaTaskConsumerFactory implements TaskConsumerFactory<TaskConsumer> {
 
   private final KafkaConsumerRegistry kafkaConsumerRegistry;
+  private final MeterRegistry meterRegistry;
+  private final TaskCoalescer taskCoalescer;
 
-  public KafkaTaskConsumerFactory(KafkaConsumerRegistry kafkaConsumerRegistry) {
+  public KafkaTaskConsumerFactory(
+      KafkaConsumerRegistry kafkaConsumerRegistry,
+      MeterRegistry meterRegistry,
+      TaskCoalescer taskCoalescer) {
     this.kafkaConsumerRegistry = kafkaConsumerRegistry;
+    this.meterRegistry = meterRegistry;
+    this.taskCoalescer = taskCoalescer;
   }
 
   @Override
-  public KafkaTaskProcessor createTaskConsumer(
+  public TaskConsumer createTaskConsumer(
       TaskFactory taskFactory, TaskQueueProperties taskQueueProperties) {
 
-    return new KafkaTaskProcessor(taskFactory, taskQueueProperties, kafkaConsumerRegistry);
+    if (taskQueueProperties.isBatchListenerEnabled()) {
+      return new KafkaBatchTaskProcessor(
+          taskFactory, taskCoalescer, taskQueueProperties, kafkaConsumerRegistry, meterRegistry);
+    }
+    return new KafkaTaskProcessor(
+        taskFactory, taskCoalescer, taskQueueProperties, kafkaConsumerRegistry);
   }
 }
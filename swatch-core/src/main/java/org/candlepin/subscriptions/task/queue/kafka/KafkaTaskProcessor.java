@@ -21,6 +21,7 @@
 package org.candlepin.subscriptions.task.queue.kafka;
 
 import io.micrometer.core.annotation.Timed;
+import org.candlepin.subscriptions.task.TaskCoalescer;
 import org.candlepin.subscriptions.task.TaskDescriptor;
 import org.candlepin.subscriptions.task.TaskExecutionException;
 import org.candlepin.subscriptions.task.TaskFactory;
@@ -45,8 +46,16 @@ public class KafkaTaskProcessor extends SeekableKafkaConsumer implements TaskCon
       TaskFactory taskFactory,
       TaskQueueProperties taskQueueProperties,
       KafkaConsumerRegistry kafkaConsumerRegistry) {
+    this(taskFactory, TaskCoalescer.disabled(), taskQueueProperties, kafkaConsumerRegistry);
+  }
+
+  public KafkaTaskProcessor(
+      TaskFactory taskFactory,
+      TaskCoalescer taskCoalescer,
+      TaskQueueProperties taskQueueProperties,
+      KafkaConsumerRegistry kafkaConsumerRegistry) {
     super(taskQueueProperties, kafkaConsumerRegistry);
-    worker = new TaskWorker(taskFactory);
+    worker = new TaskWorker(taskFactory, taskCoalescer);
   }
 
   @KafkaListener(id = "#{__listener.groupId}", topics = "#{__listener.topic}")
@@ -62,7 +71,7 @@ public class KafkaTaskProcessor extends SeekableKafkaConsumer implements TaskCon
     }
   }
 
-  private TaskDescriptor describe(TaskMessage message) throws TaskExecutionException {
+  static TaskDescriptor describe(TaskMessage message) throws TaskExecutionException {
     try {
       return TaskDescriptor.builder(TaskType.valueOf(message.getType()), message.getGroupId())
           .setArgs(message.getArgs())
@@ -24,6 +24,8 @@ import java.util.Map;
 import javax.validation.constraints.NotNull;
 import org.apache.kafka.clients.producer.ProducerConfig;
 import org.apache.kafka.common.serialization.StringSerializer;
+import org.candlepin.subscriptions.task.TaskCoalescer;
+import org.candlepin.subscriptions.task.queue.TaskCoalescingConfiguration;
 import org.candlepin.subscriptions.task.queue.TaskQueue;
 import org.candlepin.subscriptions.task.queue.kafka.message.TaskMessage;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -45,7 +47,7 @@ import org.springframework.kafka.support.serializer.JsonSerializer;
  */
 @Configuration
 @Profile("kafka-queue")
-@Import(KafkaConfiguration.class)
+@Import({KafkaConfiguration.class, TaskCoalescingConfiguration.class})
 public class KafkaTaskProducerConfiguration {
 
   @Autowired private KafkaConfigurator kafkaConfigurator;
@@ -70,7 +72,8 @@ public class KafkaTaskProducerConfiguration {
   }
 
   @Bean
-  public TaskQueue kafkaTaskQueue(KafkaTemplate<String, TaskMessage> producer) {
-    return new KafkaTaskQueue(producer);
+  public TaskQueue kafkaTaskQueue(
+      KafkaTemplate<String, TaskMessage> producer, TaskCoalescer taskCoalescer) {
+    return new KafkaTaskQueue(producer, taskCoalescer);
   }
 }
@@ -20,6 +20,7 @@
  */
 package org.candlepin.subscriptions.task.queue.kafka;
 
+import org.candlepin.subscriptions.task.TaskCoalescer;
 import org.candlepin.subscriptions.task.TaskDescriptor;
 import org.candlepin.subscriptions.task.queue.TaskQueue;
 import org.candlepin.subscriptions.task.queue.kafka.message.TaskMessage;
@@ -36,15 +37,24 @@ public class KafkaTaskQueue implements TaskQueue {
   private static final Logger log = LoggerFactory.getLogger(KafkaTaskQueue.class);
 
   private final KafkaTemplate<String, TaskMessage> producer;
+  private final TaskCoalescer taskCoalescer;
 
   public KafkaTaskQueue(KafkaTemplate<String, TaskMessage> producer) {
+    this(producer, TaskCoalescer.disabled());
+  }
+
+  public KafkaTaskQueue(KafkaTemplate<String, TaskMessage> producer, TaskCoalescer taskCoalescer) {
     this.producer = producer;
+    this.taskCoalescer = taskCoalescer;
     log.info("Creating Kafka task queue...");
   }
 
   @SuppressWarnings("squid:S4449")
   @Override
   public void enqueue(TaskDescriptor taskDescriptor) {
+    if (!taskCoalescer.offer(taskDescriptor)) {
+      return;
+    }
     log.info("Queuing task: {}", taskDescriptor);
 
     TaskMessage message =
@@ -22,22 +22,42 @@ package com.redhat.swatch.processors;
 
 import com.redhat.swatch.clients.swatch.internal.subscription.api.model.AwsUsageContext;
 import com.redhat.swatch.files.AwsCredentialsLookup;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
 import java.net.URI;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import javax.annotation.PreDestroy;
 import javax.enterprise.context.ApplicationScoped;
+import lombok.Value;
+import lombok.extern.slf4j.Slf4j;
 import org.eclipse.microprofile.config.inject.ConfigProperty;
+import software.amazon.awssdk.auth.credentials.AwsCredentialsProvider;
 import software.amazon.awssdk.regions.Region;
 import software.amazon.awssdk.services.marketplacemetering.MarketplaceMeteringClient;
 import software.amazon.awssdk.services.marketplacemetering.MarketplaceMeteringClientBuilder;
 
+/**
+ * Provides MarketplaceMeteringClient instances, reusing one client per seller account and region.
+ *
+ * <p>Each client owns its own HTTP client and thread pools, so clients are cached rather than
+ * built for every record. {@link AwsCredentialsLookup} loads the credentials once at startup, so a
+ * cached client stays valid for the life of the application; all clients are closed on shutdown.
+ */
+@Slf4j
 @ApplicationScoped
 public class AwsMarketplaceMeteringClientFactory {
   private final AwsCredentialsLookup awsCredentialsLookup;
   private final boolean awsMarketplaceEndpointOverride;
   private final String awsMarketplaceEndpointUrl;
   private final String awsRegion;
+  private final Map<ClientKey, MarketplaceMeteringClient> clients = new ConcurrentHashMap<>();
+  private final Counter clientsCreatedCounter;
 
   public AwsMarketplaceMeteringClientFactory(
       AwsCredentialsLookup awsCredentialsLookup,
+      MeterRegistry meterRegistry,
       @ConfigProperty(name = "AWS_MARKETPLACE_ENDPOINT_OVERRIDE")
           boolean awsMarketplaceEndpointOverride,
       @ConfigProperty(name = "AWS_MARKETPLACE_ENDPOINT_URL") String awsMarketplaceEndpointUrl,
@@ -46,9 +66,38 @@ public class AwsMarketplaceMeteringClientFactory {
     this.awsMarketplaceEndpointUrl = awsMarketplaceEndpointUrl;
     this.awsRegion = awsRegion;
     this.awsCredentialsLookup = awsCredentialsLookup;
+    meterRegistry.gaugeMapSize("swatch_aws_marketplace_metering_clients", Tags.empty(), clients);
+    clientsCreatedCounter =
+        meterRegistry.counter("swatch_aws_marketplace_metering_clients_created_total");
   }
 
-  public MarketplaceMeteringClient buildMarketplaceMeteringClient(AwsUsageContext context) {
+  /**
+   * Get the client for the seller account of the given usage context, building it on first use.
+   *
+   * <p>Callers must not close the returned client; it is shared and owned by this factory.
+   */
+  public MarketplaceMeteringClient getMarketplaceMeteringClient(AwsUsageContext context) {
+    ClientKey key = new ClientKey(context.getAwsSellerAccountId(), awsRegion);
+    MarketplaceMeteringClient cached = clients.get(key);
+    if (cached != null) {
+      return cached;
+    }
+    // Building a client is slow, so it's done outside the map; a client built by a concurrent
+    // caller for the same key wins, and this one is closed unused.
+    AwsCredentialsProvider credentialsProvider =
+        awsCredentialsLookup.getCredentialsProvider(context.getAwsSellerAccountId());
+    MarketplaceMeteringClient built = buildMarketplaceMeteringClient(credentialsProvider);
+    MarketplaceMeteringClient raced = clients.putIfAbsent(key, built);
+    if (raced != null) {
+      closeQuietly(built);
+      return raced;
+    }
+    clientsCreatedCounter.increment();
+    return built;
+  }
+
+  MarketplaceMeteringClient buildMarketplaceMeteringClient(
+      AwsCredentialsProvider credentialsProvider) {
     MarketplaceMeteringClientBuilder builder = MarketplaceMeteringClient.builder();
     if (awsMarketplaceEndpointOverride) {
       builder = builder.endpointOverride(URI.create(awsMarketplaceEndpointUrl));
@@ -56,9 +105,30 @@ public class AwsMarketplaceMeteringClientFactory {
     if (awsRegion != null) {
       builder = builder.region(Region.of(awsRegion));
     }
-    return builder
-        .credentialsProvider(
-            awsCredentialsLookup.getCredentialsProvider(context.getAwsSellerAccountId()))
-        .build();
+    return builder.credentialsProvider(credentialsProvider).build();
+  }
+
+  @PreDestroy
+  void closeAll() {
+    for (ClientKey key : clients.keySet()) {
+      MarketplaceMeteringClient client = clients.remove(key);
+      if (client != null) {
+        closeQuietly(client);
+      }
+    }
+  }
+
+  private void closeQuietly(MarketplaceMeteringClient client) {
+    try {
+      client.close();
+    } catch (Exception e) {
+      log.warn("Error closing AWS marketplace metering client", e);
+    }
+  }
+
+  @Value
+  private static class ClientKey {
+    String sellerAccount;
+    String region;
   }
 }
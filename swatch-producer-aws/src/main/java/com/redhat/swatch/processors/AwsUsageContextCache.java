@@ -0,0 +1,150 @@
+/*
+ * Copyright Red Hat, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ *
+ * Red Hat trademarks are not licensed under GPLv3. No permission is
+ * granted to use or replicate Red Hat trademarks that are incorporated
+ * in this software or its documentation.
+ */
+package com.redhat.swatch.processors;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import com.github.benmanes.caffeine.cache.Ticker;
+import com.redhat.swatch.clients.swatch.internal.subscription.api.model.AwsUsageContext;
+import com.redhat.swatch.clients.swatch.internal.subscription.api.resources.ApiException;
+import com.redhat.swatch.exception.AwsUsageContextLookupException;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import java.time.Duration;
+import java.time.OffsetDateTime;
+import javax.enterprise.context.ApplicationScoped;
+import javax.inject.Inject;
+import javax.ws.rs.core.Response.Status;
+import lombok.Value;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+
+/**
+ * Bounded, TTL-based cache of AWS usage contexts looked up from swatch-subscriptions.
+ *
+ * <p>Concurrent lookups of the same key wait for a single request. A "no subscription found"
+ * response is cached as well, for a (typically shorter) negative TTL, so that unmatched usage
+ * doesn't trigger a subscription sync on every message. Other errors are not cached.
+ */
+@ApplicationScoped
+public class AwsUsageContextCache {
+
+  /** Loads a usage context on a cache miss. */
+  @FunctionalInterface
+  public interface Loader {
+    AwsUsageContext load() throws ApiException;
+  }
+
+  private final Cache<Key, CachedLookup> cache;
+
+  @Inject
+  public AwsUsageContextCache(
+      MeterRegistry meterRegistry,
+      @ConfigProperty(name = "AWS_USAGE_CONTEXT_CACHE_MAX_SIZE") long maxSize,
+      @ConfigProperty(name = "AWS_USAGE_CONTEXT_CACHE_TTL") Duration ttl,
+      @ConfigProperty(name = "AWS_USAGE_CONTEXT_CACHE_NEGATIVE_TTL") Duration negativeTtl) {
+    this(meterRegistry, maxSize, ttl, negativeTtl, Ticker.systemTicker());
+  }
+
+  AwsUsageContextCache(
+      MeterRegistry meterRegistry,
+      long maxSize,
+      Duration ttl,
+      Duration negativeTtl,
+      Ticker ticker) {
+    cache =
+        Caffeine.newBuilder()
+            .maximumSize(maxSize)
+            .expireAfter(new LookupExpiry(ttl.toNanos(), negativeTtl.toNanos()))
+            .ticker(ticker)
+            .recordStats()
+            .build();
+    CaffeineCacheMetrics.monitor(meterRegistry, cache, "swatch_aws_usage_context");
+  }
+
+  /**
+   * Get the usage context for the given key, calling the loader if it isn't cached.
+   *
+   * @throws AwsUsageContextLookupException if no subscription was found or the lookup failed
+   */
+  public AwsUsageContext get(Key key, Loader loader) {
+    CachedLookup lookup = cache.get(key, k -> load(loader));
+    if (lookup.getNotFound() != null) {
+      throw new AwsUsageContextLookupException(lookup.getNotFound());
+    }
+    return lookup.getContext();
+  }
+
+  private static CachedLookup load(Loader loader) {
+    try {
+      return new CachedLookup(loader.load(), null);
+    } catch (ApiException e) {
+      if (e.getResponse() != null
+          && e.getResponse().getStatus() == Status.NOT_FOUND.getStatusCode()) {
+        return new CachedLookup(null, e);
+      }
+      throw new AwsUsageContextLookupException(e);
+    }
+  }
+
+  /** Identifies a usage context lookup. */
+  @Value
+  public static class Key {
+    String accountNumber;
+    OffsetDateTime date;
+    String productId;
+    String sla;
+    String usage;
+  }
+
+  @Value
+  private static class CachedLookup {
+    AwsUsageContext context;
+    ApiException notFound;
+  }
+
+  private static class LookupExpiry implements Expiry<Key, CachedLookup> {
+    private final long ttlNanos;
+    private final long negativeTtlNanos;
+
+    LookupExpiry(long ttlNanos, long negativeTtlNanos) {
+      this.ttlNanos = ttlNanos;
+      this.negativeTtlNanos = negativeTtlNanos;
+    }
+
+    @Override
+    public long expireAfterCreate(Key key, CachedLookup value, long currentTime) {
+      return value.getNotFound() != null ? negativeTtlNanos : ttlNanos;
+    }
+
+    @Override
+    public long expireAfterUpdate(
+        Key key, CachedLookup value, long currentTime, long currentDuration) {
+      return expireAfterCreate(key, value, currentTime);
+    }
+
+    @Override
+    public long expireAfterRead(
+        Key key, CachedLookup value, long currentTime, long currentDuration) {
+      return currentDuration;
+    }
+  }
+}
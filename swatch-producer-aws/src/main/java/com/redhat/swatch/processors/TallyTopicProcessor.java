@@ -21,10 +21,8 @@
 package com.redhat.swatch.processors;
 
 import com.redhat.swatch.clients.swatch.internal.subscription.api.model.AwsUsageContext;
-import com.redhat.swatch.clients.swatch.internal.subscription.api.resources.ApiException;
 import com.redhat.swatch.clients.swatch.internal.subscription.api.resources.InternalSubscriptionsApi;
 import com.redhat.swatch.exception.AwsDimensionNotConfiguredException;
-import com.redhat.swatch.exception.AwsUnprocessedRecordsException;
 import com.redhat.swatch.exception.AwsUsageContextLookupException;
 import com.redhat.swatch.files.TagProfile;
 import com.redhat.swatch.openapi.model.TallySnapshot;
@@ -35,11 +33,17 @@ import com.redhat.swatch.openapi.model.TallySnapshot.UsageEnum;
 import com.redhat.swatch.openapi.model.TallySnapshotTallyMeasurements;
 import com.redhat.swatch.openapi.model.TallySummary;
 import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
 import io.micrometer.core.instrument.MeterRegistry;
 import io.smallrye.reactive.messaging.annotations.Blocking;
 import java.time.OffsetDateTime;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 import javax.enterprise.context.ApplicationScoped;
+import lombok.Value;
 import lombok.extern.slf4j.Slf4j;
 import org.eclipse.microprofile.faulttolerance.Retry;
 import org.eclipse.microprofile.reactive.messaging.Incoming;
@@ -49,27 +53,41 @@ import software.amazon.awssdk.services.marketplacemetering.model.BatchMeterUsage
 import software.amazon.awssdk.services.marketplacemetering.model.BatchMeterUsageResponse;
 import software.amazon.awssdk.services.marketplacemetering.model.MarketplaceMeteringException;
 import software.amazon.awssdk.services.marketplacemetering.model.UsageRecord;
+import software.amazon.awssdk.services.marketplacemetering.model.UsageRecordResult;
 import software.amazon.awssdk.services.marketplacemetering.model.UsageRecordResultStatus;
 
 @Slf4j
 @ApplicationScoped
 public class TallyTopicProcessor {
+  /** Maximum number of usage records AWS accepts in a single BatchMeterUsage call. */
+  public static final int MAX_RECORDS_PER_BATCH = 25;
+
+  private static final String UNPROCESSED_STATUS = "Unprocessed";
+  private static final String ERROR_STATUS = "Error";
+
+  private final MeterRegistry meterRegistry;
   private final Counter acceptedCounter;
   private final Counter rejectedCounter;
+  private final DistributionSummary batchSizeSummary;
   private final TagProfile tagProfile;
   private final InternalSubscriptionsApi internalSubscriptionsApi;
   private final AwsMarketplaceMeteringClientFactory awsMarketplaceMeteringClientFactory;
+  private final AwsUsageContextCache usageContextCache;
 
   public TallyTopicProcessor(
       MeterRegistry meterRegistry,
       TagProfile tagProfile,
       @RestClient InternalSubscriptionsApi internalSubscriptionsApi,
-      AwsMarketplaceMeteringClientFactory awsMarketplaceMeteringClientFactory) {
+      AwsMarketplaceMeteringClientFactory awsMarketplaceMeteringClientFactory,
+      AwsUsageContextCache usageContextCache) {
+    this.meterRegistry = meterRegistry;
     acceptedCounter = meterRegistry.counter("swatch_aws_marketplace_batch_accepted_total");
     rejectedCounter = meterRegistry.counter("swatch_aws_marketplace_batch_rejected_total");
+    batchSizeSummary = meterRegistry.summary("swatch_aws_marketplace_batch_size");
     this.tagProfile = tagProfile;
     this.internalSubscriptionsApi = internalSubscriptionsApi;
     this.awsMarketplaceMeteringClientFactory = awsMarketplaceMeteringClientFactory;
+    this.usageContextCache = usageContextCache;
   }
 
   @Incoming("tally-in")
@@ -82,6 +100,8 @@ public class TallyTopicProcessor {
       log.warn("Skipping null tally summary: deserialization failure?");
       return;
     }
+    Map<BatchKey, List<UsageRecord>> recordsByBatchKey = new LinkedHashMap<>();
+    Map<BatchKey, AwsUsageContext> contextsByBatchKey = new LinkedHashMap<>();
     for (TallySnapshot tallySnapshot : tallySummary.getTallySnapshots()) {
       if (!isSnapshotApplicable(tallySnapshot)) {
         continue;
@@ -96,23 +116,29 @@ public class TallyTopicProcessor {
             tallySummary.getAccountNumber(),
             tallySnapshot.getId(),
             e);
-        return;
+        // usage already collected from earlier snapshots is still sent below
+        break;
       }
-      try {
-        for (var measurement : tallySnapshot.getTallyMeasurements()) {
-          transformAndSend(context, tallySnapshot, measurement);
+      BatchKey key = new BatchKey(context.getAwsSellerAccountId(), context.getProductCode());
+      contextsByBatchKey.putIfAbsent(key, context);
+      for (var measurement : tallySnapshot.getTallyMeasurements()) {
+        try {
+          recordsByBatchKey
+              .computeIfAbsent(key, k -> new ArrayList<>())
+              .add(transformToAwsUsage(context, tallySnapshot, measurement));
+        } catch (Exception e) {
+          log.error(
+              "Error preparing usage for account={} rhSubscriptionId={} tallySnapshotId={} awsCustomerId={} awsProductCode={}",
+              tallySummary.getAccountNumber(),
+              context.getRhSubscriptionId(),
+              tallySnapshot.getId(),
+              context.getCustomerId(),
+              context.getProductCode(),
+              e);
         }
-      } catch (Exception e) {
-        log.error(
-            "Error sending usage for account={} rhSubscriptionId={} tallySnapshotId={} awsCustomerId={} awsProductCode={}",
-            tallySummary.getAccountNumber(),
-            context.getRhSubscriptionId(),
-            tallySnapshot.getId(),
-            context.getCustomerId(),
-            context.getProductCode(),
-            e);
       }
     }
+    recordsByBatchKey.forEach((key, records) -> sendAll(key, contextsByBatchKey.get(key), records));
   }
 
   private boolean isSnapshotApplicable(TallySnapshot tallySnapshot) {
@@ -132,54 +158,130 @@ public class TallyTopicProcessor {
   public AwsUsageContext lookupAwsUsageContext(
       TallySummary tallySummary, TallySnapshot tallySnapshot)
       throws AwsUsageContextLookupException {
+    var key =
+        new AwsUsageContextCache.Key(
+            tallySummary.getAccountNumber(),
+            tallySnapshot.getSnapshotDate(),
+            tallySnapshot.getProductId(),
+            Optional.ofNullable(tallySnapshot.getSla()).map(SlaEnum::value).orElse(null),
+            Optional.ofNullable(tallySnapshot.getUsage()).map(UsageEnum::value).orElse(null));
+    return usageContextCache.get(
+        key,
+        () ->
+            internalSubscriptionsApi.getAwsUsageContext(
+                key.getAccountNumber(),
+                key.getDate(),
+                key.getProductId(),
+                key.getSla(),
+                key.getUsage()));
+  }
+
+  /**
+   * Submit usage records sharing a seller account and product code in batches of up to {@link
+   * #MAX_RECORDS_PER_BATCH}. Records AWS leaves unprocessed are retried one at a time.
+   */
+  private void sendAll(BatchKey key, AwsUsageContext context, List<UsageRecord> records) {
+    MarketplaceMeteringClient client;
     try {
-      return internalSubscriptionsApi.getAwsUsageContext(
-          tallySummary.getAccountNumber(),
-          tallySnapshot.getSnapshotDate(),
-          tallySnapshot.getProductId(),
-          Optional.ofNullable(tallySnapshot.getSla()).map(SlaEnum::value).orElse(null),
-          Optional.ofNullable(tallySnapshot.getUsage()).map(UsageEnum::value).orElse(null));
-    } catch (ApiException e) {
-      throw new AwsUsageContextLookupException(e);
+      client = awsMarketplaceMeteringClientFactory.getMarketplaceMeteringClient(context);
+    } catch (Exception e) {
+      log.error(
+          "Unable to get AWS marketplace client for sellerAccount={} awsProductCode={}",
+          key.getSellerAccount(),
+          key.getProductCode(),
+          e);
+      countRecords(ERROR_STATUS, records.size());
+      rejectedCounter.increment(records.size());
+      return;
+    }
+    try {
+      List<UsageRecord> retries = new ArrayList<>();
+      for (int i = 0; i < records.size(); i += MAX_RECORDS_PER_BATCH) {
+        List<UsageRecord> batch =
+            records.subList(i, Math.min(i + MAX_RECORDS_PER_BATCH, records.size()));
+        List<UsageRecord> unprocessed = sendBatch(client, key, batch);
+        if (batch.size() > 1) {
+          retries.addAll(unprocessed);
+        } else {
+          reject(key, unprocessed);
+        }
+      }
+      if (!retries.isEmpty()) {
+        log.warn(
+            "Retrying {} unprocessed records individually for awsProductCode={}",
+            retries.size(),
+            key.getProductCode());
+      }
+      for (UsageRecord usageRecord : retries) {
+        reject(key, sendBatch(client, key, List.of(usageRecord)));
+      }
+    } catch (Exception e) {
+      log.error(
+          "Error sending usage for sellerAccount={} awsCustomerId={} awsProductCode={}",
+          key.getSellerAccount(),
+          context.getCustomerId(),
+          key.getProductCode(),
+          e);
     }
   }
 
-  private void transformAndSend(
-      AwsUsageContext context, TallySnapshot tallySnapshot, TallySnapshotTallyMeasurements m)
-      throws AwsUnprocessedRecordsException, AwsDimensionNotConfiguredException {
+  /** Send a single BatchMeterUsage request and return the records AWS did not process. */
+  private List<UsageRecord> sendBatch(
+      MarketplaceMeteringClient client, BatchKey key, List<UsageRecord> batch) {
     BatchMeterUsageRequest request =
         BatchMeterUsageRequest.builder()
-            .productCode(context.getProductCode())
-            .usageRecords(transformToAwsUsage(context, tallySnapshot, m))
+            .productCode(key.getProductCode())
+            .usageRecords(batch)
             .build();
+    batchSizeSummary.record(batch.size());
+    BatchMeterUsageResponse response;
     try {
-      MarketplaceMeteringClient marketplaceMeteringClient =
-          awsMarketplaceMeteringClientFactory.buildMarketplaceMeteringClient(context);
-      BatchMeterUsageResponse response = send(marketplaceMeteringClient, request);
-      log.debug("{}", response);
-      response
-          .results()
-          .forEach(
-              result -> {
-                log.info(
-                    "awsMeteringRecordId={} for dimension={} and customerId={}",
-                    result.meteringRecordId(),
-                    result.usageRecord().dimension(),
-                    result.usageRecord().customerIdentifier());
-                if (result.status() != UsageRecordResultStatus.SUCCESS) {
-                  log.error("{}", result);
-                } else {
-                  acceptedCounter.increment(response.results().size());
-                }
-              });
-      if (!response.unprocessedRecords().isEmpty()) {
-        rejectedCounter.increment(response.unprocessedRecords().size());
-        throw new AwsUnprocessedRecordsException(response.unprocessedRecords().size());
-      }
+      response = send(client, request);
     } catch (MarketplaceMeteringException e) {
-      rejectedCounter.increment(request.usageRecords().size());
-      throw new AwsUnprocessedRecordsException(request.usageRecords().size(), e);
+      log.warn(
+          "Error sending {} usage records for sellerAccount={} awsProductCode={}",
+          batch.size(),
+          key.getSellerAccount(),
+          key.getProductCode(),
+          e);
+      return batch;
+    }
+    log.debug("{}", response);
+    for (UsageRecordResult result : response.results()) {
+      log.info(
+          "awsMeteringRecordId={} for dimension={} and customerId={}",
+          result.meteringRecordId(),
+          result.usageRecord().dimension(),
+          result.usageRecord().customerIdentifier());
+      countRecords(result.statusAsString(), 1);
+      if (result.status() != UsageRecordResultStatus.SUCCESS) {
+        log.error("{}", result);
+      } else {
+        acceptedCounter.increment();
+      }
+    }
+    return response.unprocessedRecords();
+  }
+
+  private void reject(BatchKey key, List<UsageRecord> unprocessed) {
+    if (unprocessed.isEmpty()) {
+      return;
     }
+    for (UsageRecord usageRecord : unprocessed) {
+      log.error(
+          "AWS did not process usage for customerId={} awsProductCode={} dimension={}",
+          usageRecord.customerIdentifier(),
+          key.getProductCode(),
+          usageRecord.dimension());
+    }
+    countRecords(UNPROCESSED_STATUS, unprocessed.size());
+    rejectedCounter.increment(unprocessed.size());
+  }
+
+  private void countRecords(String status, int count) {
+    meterRegistry
+        .counter("swatch_aws_marketplace_usage_records_total", "status", status)
+        .increment(count);
   }
 
   @Retry
@@ -209,4 +311,11 @@ public class TallyTopicProcessor {
         .timestamp(effectiveTimestamp.toInstant())
         .build();
   }
+
+  /** Usage records can be submitted together when they share a seller account and product. */
+  @Value
+  private static class BatchKey {
+    String sellerAccount;
+    String productCode;
+  }
 }
@@ -38,12 +38,17 @@ import com.redhat.swatch.openapi.model.TallySnapshotTallyMeasurements;
 import com.redhat.swatch.openapi.model.TallySnapshotTallyMeasurements.UomEnum;
 import com.redhat.swatch.openapi.model.TallySummary;
 import com.redhat.swatch.processors.AwsMarketplaceMeteringClientFactory;
+import com.redhat.swatch.processors.AwsUsageContextCache;
+import com.redhat.swatch.processors.FakeMarketplaceMeteringClient;
 import com.redhat.swatch.processors.TallyTopicProcessor;
 import io.micrometer.core.instrument.Counter;
 import io.micrometer.core.instrument.MeterRegistry;
 import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import java.math.BigDecimal;
+import java.time.Duration;
+import java.time.Instant;
 import java.time.OffsetDateTime;
+import java.util.ArrayList;
 import java.util.List;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
@@ -111,7 +116,12 @@ class TallyTopicProcessorTest {
     rejectedCounter = meterRegistry.counter("swatch_aws_marketplace_batch_rejected_total");
     processor =
         new TallyTopicProcessor(
-            meterRegistry, new TagProfile(), internalSubscriptionsApi, clientFactory);
+            meterRegistry,
+            new TagProfile(),
+            internalSubscriptionsApi,
+            clientFactory,
+            new AwsUsageContextCache(
+                meterRegistry, 100, Duration.ofMinutes(5), Duration.ofMinutes(1)));
   }
 
   @Test
@@ -145,7 +155,7 @@ class TallyTopicProcessorTest {
   void shouldSendUsageForApplicableSnapshot() throws ApiException {
     when(internalSubscriptionsApi.getAwsUsageContext(any(), any(), any(), any(), any()))
         .thenReturn(MOCK_AWS_USAGE_CONTEXT);
-    when(clientFactory.buildMarketplaceMeteringClient(any())).thenReturn(meteringClient);
+    when(clientFactory.getMarketplaceMeteringClient(any())).thenReturn(meteringClient);
     processor.process(RHOSAK_INSTANCE_HOURS_RECORD);
     verify(meteringClient).batchMeterUsage(any(BatchMeterUsageRequest.class));
   }
@@ -169,7 +179,7 @@ class TallyTopicProcessorTest {
   void shouldIncrementAcceptedCounterIfSuccessful() throws ApiException {
     when(internalSubscriptionsApi.getAwsUsageContext(any(), any(), any(), any(), any()))
         .thenReturn(MOCK_AWS_USAGE_CONTEXT);
-    when(clientFactory.buildMarketplaceMeteringClient(any())).thenReturn(meteringClient);
+    when(clientFactory.getMarketplaceMeteringClient(any())).thenReturn(meteringClient);
     when(meteringClient.batchMeterUsage(any(BatchMeterUsageRequest.class)))
         .thenReturn(BATCH_METER_USAGE_SUCCESS_RESPONSE);
     processor.process(RHOSAK_INSTANCE_HOURS_RECORD);
@@ -180,7 +190,7 @@ class TallyTopicProcessorTest {
   void shouldIncrementFailureCounterIfUnprocessed() throws ApiException {
     when(internalSubscriptionsApi.getAwsUsageContext(any(), any(), any(), any(), any()))
         .thenReturn(MOCK_AWS_USAGE_CONTEXT);
-    when(clientFactory.buildMarketplaceMeteringClient(any())).thenReturn(meteringClient);
+    when(clientFactory.getMarketplaceMeteringClient(any())).thenReturn(meteringClient);
     when(meteringClient.batchMeterUsage(any(BatchMeterUsageRequest.class)))
         .thenReturn(
             BatchMeterUsageResponse.builder()
@@ -194,10 +204,110 @@ class TallyTopicProcessorTest {
   void shouldIncrementFailureCounterOnError() throws ApiException {
     when(internalSubscriptionsApi.getAwsUsageContext(any(), any(), any(), any(), any()))
         .thenReturn(MOCK_AWS_USAGE_CONTEXT);
-    when(clientFactory.buildMarketplaceMeteringClient(any())).thenReturn(meteringClient);
+    when(clientFactory.getMarketplaceMeteringClient(any())).thenReturn(meteringClient);
     when(meteringClient.batchMeterUsage(any(BatchMeterUsageRequest.class)))
         .thenThrow(MarketplaceMeteringException.class);
     processor.process(RHOSAK_INSTANCE_HOURS_RECORD);
     assertEquals(1.0, rejectedCounter.count());
   }
+
+  private static TallySummary dailyInstanceHoursSummary(int snapshotCount) {
+    List<TallySnapshot> snapshots = new ArrayList<>();
+    for (int i = 0; i < snapshotCount; i++) {
+      snapshots.add(
+          new TallySnapshot()
+              .productId("rhosak")
+              .granularity(GranularityEnum.DAILY)
+              .snapshotDate(OffsetDateTime.parse("2022-01-01T00:00:00Z").plusDays(i))
+              .billingProvider(BillingProviderEnum.AWS)
+              .tallyMeasurements(
+                  List.of(
+                      new TallySnapshotTallyMeasurements()
+                          .uom(UomEnum.INSTANCE_HOURS)
+                          .value(new BigDecimal("42.0")))));
+    }
+    return new TallySummary().tallySnapshots(snapshots);
+  }
+
+  private double recordCount(String status) {
+    return meterRegistry
+        .counter("swatch_aws_marketplace_usage_records_total", "status", status)
+        .count();
+  }
+
+  @Test
+  void shouldSubmitUpToMaxRecordsPerRequest() throws ApiException {
+    FakeMarketplaceMeteringClient fakeClient = new FakeMarketplaceMeteringClient();
+    when(internalSubscriptionsApi.getAwsUsageContext(any(), any(), any(), any(), any()))
+        .thenReturn(MOCK_AWS_USAGE_CONTEXT);
+    when(clientFactory.getMarketplaceMeteringClient(any())).thenReturn(fakeClient);
+
+    processor.process(dailyInstanceHoursSummary(30));
+
+    assertEquals(2, fakeClient.getRequests().size());
+    assertEquals(
+        TallyTopicProcessor.MAX_RECORDS_PER_BATCH,
+        fakeClient.getRequests().get(0).usageRecords().size());
+    assertEquals(5, fakeClient.getRequests().get(1).usageRecords().size());
+    assertEquals(30.0, acceptedCounter.count());
+    assertEquals(30.0, recordCount("Success"));
+  }
+
+  @Test
+  void shouldBatchSeparatelyPerProductCode() throws ApiException {
+    FakeMarketplaceMeteringClient fakeClient = new FakeMarketplaceMeteringClient();
+    AwsUsageContext otherProductContext =
+        new AwsUsageContext()
+            .rhSubscriptionId("id2")
+            .customerId("customer")
+            .productCode("product2")
+            .subscriptionStartDate(OffsetDateTime.MIN);
+    when(internalSubscriptionsApi.getAwsUsageContext(any(), any(), any(), any(), any()))
+        .thenReturn(MOCK_AWS_USAGE_CONTEXT, otherProductContext, MOCK_AWS_USAGE_CONTEXT);
+    when(clientFactory.getMarketplaceMeteringClient(any())).thenReturn(fakeClient);
+
+    processor.process(dailyInstanceHoursSummary(3));
+
+    assertEquals(2, fakeClient.getRequests().size());
+    assertEquals("product", fakeClient.getRequests().get(0).productCode());
+    assertEquals(2, fakeClient.getRequests().get(0).usageRecords().size());
+    assertEquals("product2", fakeClient.getRequests().get(1).productCode());
+    assertEquals(1, fakeClient.getRequests().get(1).usageRecords().size());
+  }
+
+  @Test
+  void shouldRetryUnprocessedRecordsIndividually() throws ApiException {
+    Instant firstDay = OffsetDateTime.parse("2022-01-01T00:00:00Z").toInstant();
+    FakeMarketplaceMeteringClient fakeClient =
+        new FakeMarketplaceMeteringClient()
+            .leaveUnprocessed(r -> r.timestamp().equals(firstDay), 1);
+    when(internalSubscriptionsApi.getAwsUsageContext(any(), any(), any(), any(), any()))
+        .thenReturn(MOCK_AWS_USAGE_CONTEXT);
+    when(clientFactory.getMarketplaceMeteringClient(any())).thenReturn(fakeClient);
+
+    processor.process(dailyInstanceHoursSummary(3));
+
+    assertEquals(2, fakeClient.getRequests().size());
+    assertEquals(1, fakeClient.getRequests().get(1).usageRecords().size());
+    assertEquals(firstDay, fakeClient.getRequests().get(1).usageRecords().get(0).timestamp());
+    assertEquals(3.0, acceptedCounter.count());
+    assertEquals(0.0, rejectedCounter.count());
+  }
+
+  @Test
+  void shouldRejectRecordsStillUnprocessedAfterRetry() throws ApiException {
+    Instant firstDay = OffsetDateTime.parse("2022-01-01T00:00:00Z").toInstant();
+    FakeMarketplaceMeteringClient fakeClient =
+        new FakeMarketplaceMeteringClient()
+            .leaveUnprocessed(r -> r.timestamp().equals(firstDay), 2);
+    when(internalSubscriptionsApi.getAwsUsageContext(any(), any(), any(), any(), any()))
+        .thenReturn(MOCK_AWS_USAGE_CONTEXT);
+    when(clientFactory.getMarketplaceMeteringClient(any())).thenReturn(fakeClient);
+
+    processor.process(dailyInstanceHoursSummary(3));
+
+    assertEquals(2.0, acceptedCounter.count());
+    assertEquals(1.0, rejectedCounter.count());
+    assertEquals(1.0, recordCount("Unprocessed"));
+  }
 }
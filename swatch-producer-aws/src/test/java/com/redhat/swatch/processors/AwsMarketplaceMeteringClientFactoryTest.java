@@ -0,0 +1,146 @@
+/*
+ * Copyright Red Hat, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ *
+ * Red Hat trademarks are not licensed under GPLv3. No permission is
+ * granted to use or replicate Red Hat trademarks that are incorporated
+ * in this software or its documentation.
+ */
+package com.redhat.swatch.processors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.verify;
+
+import com.redhat.swatch.clients.swatch.internal.subscription.api.model.AwsUsageContext;
+import com.redhat.swatch.exception.AwsMissingCredentialsException;
+import com.redhat.swatch.files.AwsCredentialsLookup;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import software.amazon.awssdk.services.marketplacemetering.MarketplaceMeteringClient;
+
+class AwsMarketplaceMeteringClientFactoryTest {
+
+  private static final String CREDENTIALS_JSON =
+      "[{\"accessKeyId\":\"key1\",\"secretAccessKey\":\"secret1\","
+          + "\"sellerAccount\":\"seller1\"},"
+          + "{\"accessKeyId\":\"key2\",\"secretAccessKey\":\"secret2\","
+          + "\"sellerAccount\":\"seller2\"}]";
+
+  MeterRegistry meterRegistry;
+
+  @BeforeEach
+  void setup() {
+    meterRegistry = new SimpleMeterRegistry();
+  }
+
+  AwsMarketplaceMeteringClientFactory factory(AwsCredentialsLookup lookup) {
+    return new AwsMarketplaceMeteringClientFactory(
+        lookup, meterRegistry, true, "http://localhost:8101/aws-marketplace/", "us-east-1");
+  }
+
+  AwsUsageContext context(String sellerAccount, String customerId) {
+    return new AwsUsageContext().awsSellerAccountId(sellerAccount).customerId(customerId);
+  }
+
+  double liveClients() {
+    return meterRegistry.get("swatch_aws_marketplace_metering_clients").gauge().value();
+  }
+
+  double createdClients() {
+    return meterRegistry.counter("swatch_aws_marketplace_metering_clients_created_total").count();
+  }
+
+  @Test
+  void shouldReuseClientForRepeatedSnapshotsOfSameCustomer() {
+    var factory = factory(new AwsCredentialsLookup(CREDENTIALS_JSON));
+
+    var first = factory.getMarketplaceMeteringClient(context("seller1", "customer"));
+    var second = factory.getMarketplaceMeteringClient(context("seller1", "customer"));
+    var otherCustomer = factory.getMarketplaceMeteringClient(context("seller1", "customer2"));
+
+    assertSame(first, second);
+    assertSame(first, otherCustomer);
+    assertEquals(1.0, liveClients());
+    assertEquals(1.0, createdClients());
+  }
+
+  @Test
+  void shouldUseSeparateClientsPerSellerAccount() {
+    var factory = factory(new AwsCredentialsLookup(CREDENTIALS_JSON));
+
+    assertNotSame(
+        factory.getMarketplaceMeteringClient(context("seller1", "customer")),
+        factory.getMarketplaceMeteringClient(context("seller2", "customer")));
+    assertEquals(2.0, liveClients());
+  }
+
+  @Test
+  void shouldNotCacheClientForSellerAccountWithoutCredentials() {
+    var factory = factory(new AwsCredentialsLookup(CREDENTIALS_JSON));
+    var unknownSeller = context("seller3", "customer");
+
+    assertThrows(
+        AwsMissingCredentialsException.class,
+        () -> factory.getMarketplaceMeteringClient(unknownSeller));
+    assertEquals(0.0, liveClients());
+  }
+
+  @Test
+  void shouldKeepFirstCachedClientAndCloseOneBuiltConcurrently() {
+    var factory = spy(factory(new AwsCredentialsLookup(CREDENTIALS_JSON)));
+    MarketplaceMeteringClient losing = mock(MarketplaceMeteringClient.class);
+    MarketplaceMeteringClient winning = mock(MarketplaceMeteringClient.class);
+    var context = context("seller1", "customer");
+    // while the first client is being built, a concurrent caller builds and caches another
+    doAnswer(
+            invocation -> {
+              doAnswer(nested -> winning).when(factory).buildMarketplaceMeteringClient(any());
+              assertSame(winning, factory.getMarketplaceMeteringClient(context));
+              return losing;
+            })
+        .when(factory)
+        .buildMarketplaceMeteringClient(any());
+
+    assertSame(winning, factory.getMarketplaceMeteringClient(context));
+
+    verify(losing).close();
+    verify(winning, never()).close();
+    assertEquals(1.0, liveClients());
+    assertEquals(1.0, createdClients());
+  }
+
+  @Test
+  void shouldCloseAllClientsOnShutdown() {
+    var factory = spy(factory(new AwsCredentialsLookup(CREDENTIALS_JSON)));
+    MarketplaceMeteringClient client = mock(MarketplaceMeteringClient.class);
+    doAnswer(invocation -> client).when(factory).buildMarketplaceMeteringClient(any());
+    factory.getMarketplaceMeteringClient(context("seller1", "customer"));
+
+    factory.closeAll();
+
+    verify(client).close();
+    assertEquals(0.0, liveClients());
+  }
+}
@@ -0,0 +1,162 @@
+/*
+ * Copyright Red Hat, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ *
+ * Red Hat trademarks are not licensed under GPLv3. No permission is
+ * granted to use or replicate Red Hat trademarks that are incorporated
+ * in this software or its documentation.
+ */
+package com.redhat.swatch.processors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import com.redhat.swatch.clients.swatch.internal.subscription.api.model.AwsUsageContext;
+import com.redhat.swatch.clients.swatch.internal.subscription.api.resources.ApiException;
+import com.redhat.swatch.exception.AwsUsageContextLookupException;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.time.Duration;
+import java.time.OffsetDateTime;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.ws.rs.core.Response;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+class AwsUsageContextCacheTest {
+
+  private static final AwsUsageContextCache.Key KEY =
+      new AwsUsageContextCache.Key(
+          "account123", OffsetDateTime.parse("2022-01-01T00:00:00Z"), "rhosak", null, null);
+
+  MeterRegistry meterRegistry;
+  AtomicLong nanos;
+  AwsUsageContextCache cache;
+
+  @BeforeEach
+  void setup() {
+    meterRegistry = new SimpleMeterRegistry();
+    nanos = new AtomicLong();
+    cache =
+        new AwsUsageContextCache(
+            meterRegistry, 100, Duration.ofMinutes(5), Duration.ofMinutes(1), nanos::get);
+  }
+
+  private double gets(String result) {
+    return meterRegistry
+        .get("cache.gets")
+        .tag("cache", "swatch_aws_usage_context")
+        .tag("result", result)
+        .functionCounter()
+        .count();
+  }
+
+  private static ApiException apiException(int status) {
+    Response response = mock(Response.class);
+    when(response.getStatus()).thenReturn(status);
+    return new ApiException(response);
+  }
+
+  @Test
+  void shouldReuseCachedContextUntilTtlExpires() {
+    AtomicInteger loads = new AtomicInteger();
+    AwsUsageContextCache.Loader loader =
+        () -> new AwsUsageContext().rhSubscriptionId("sub" + loads.incrementAndGet());
+
+    AwsUsageContext first = cache.get(KEY, loader);
+    assertSame(first, cache.get(KEY, loader));
+    assertEquals(1, loads.get());
+    assertEquals(1.0, gets("hit"));
+    assertEquals(1.0, gets("miss"));
+
+    nanos.addAndGet(Duration.ofMinutes(6).toNanos());
+    assertEquals("sub2", cache.get(KEY, loader).getRhSubscriptionId());
+    assertEquals(2, loads.get());
+  }
+
+  @Test
+  void shouldCacheNotFoundForNegativeTtl() {
+    AtomicInteger loads = new AtomicInteger();
+    AwsUsageContextCache.Loader loader =
+        () -> {
+          loads.incrementAndGet();
+          throw apiException(404);
+        };
+
+    assertThrows(AwsUsageContextLookupException.class, () -> cache.get(KEY, loader));
+    assertThrows(AwsUsageContextLookupException.class, () -> cache.get(KEY, loader));
+    assertEquals(1, loads.get());
+
+    nanos.addAndGet(Duration.ofSeconds(61).toNanos());
+    assertThrows(AwsUsageContextLookupException.class, () -> cache.get(KEY, loader));
+    assertEquals(2, loads.get());
+  }
+
+  @Test
+  void shouldNotCacheOtherErrors() {
+    AtomicInteger loads = new AtomicInteger();
+    AwsUsageContextCache.Loader loader =
+        () -> {
+          loads.incrementAndGet();
+          throw apiException(500);
+        };
+
+    assertThrows(AwsUsageContextLookupException.class, () -> cache.get(KEY, loader));
+    assertThrows(AwsUsageContextLookupException.class, () -> cache.get(KEY, loader));
+    assertEquals(2, loads.get());
+  }
+
+  @Test
+  void shouldCoalesceConcurrentMisses() throws Exception {
+    AtomicInteger loads = new AtomicInteger();
+    CountDownLatch loading = new CountDownLatch(1);
+    CountDownLatch release = new CountDownLatch(1);
+    AwsUsageContextCache.Loader loader =
+        () -> {
+          loads.incrementAndGet();
+          loading.countDown();
+          try {
+            release.await(5, TimeUnit.SECONDS);
+          } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+          }
+          return new AwsUsageContext().rhSubscriptionId("sub");
+        };
+    ExecutorService executor = Executors.newFixedThreadPool(4);
+    try {
+      Future<AwsUsageContext> first = executor.submit(() -> cache.get(KEY, loader));
+      loading.await(5, TimeUnit.SECONDS);
+      Future<AwsUsageContext> second = executor.submit(() -> cache.get(KEY, loader));
+      Future<AwsUsageContext> third = executor.submit(() -> cache.get(KEY, loader));
+      release.countDown();
+
+      AwsUsageContext context = first.get(5, TimeUnit.SECONDS);
+      assertSame(context, second.get(5, TimeUnit.SECONDS));
+      assertSame(context, third.get(5, TimeUnit.SECONDS));
+      assertEquals(1, loads.get());
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+}
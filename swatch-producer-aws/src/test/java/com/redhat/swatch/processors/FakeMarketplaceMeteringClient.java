@@ -0,0 +1,94 @@
+/*
+ * Copyright Red Hat, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ *
+ * Red Hat trademarks are not licensed under GPLv3. No permission is
+ * granted to use or replicate Red Hat trademarks that are incorporated
+ * in this software or its documentation.
+ */
+package com.redhat.swatch.processors;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.function.Predicate;
+import software.amazon.awssdk.services.marketplacemetering.MarketplaceMeteringClient;
+import software.amazon.awssdk.services.marketplacemetering.model.BatchMeterUsageRequest;
+import software.amazon.awssdk.services.marketplacemetering.model.BatchMeterUsageResponse;
+import software.amazon.awssdk.services.marketplacemetering.model.UsageRecord;
+import software.amazon.awssdk.services.marketplacemetering.model.UsageRecordResult;
+import software.amazon.awssdk.services.marketplacemetering.model.UsageRecordResultStatus;
+
+/**
+ * In-memory MarketplaceMeteringClient that records every BatchMeterUsage request.
+ *
+ * <p>Records are reported as successful unless they match {@link #leaveUnprocessed}, in which case
+ * they are returned as unprocessed for the configured number of attempts.
+ */
+public class FakeMarketplaceMeteringClient implements MarketplaceMeteringClient {
+
+  private final List<BatchMeterUsageRequest> requests = new ArrayList<>();
+  private final Map<UsageRecord, Integer> attempts = new HashMap<>();
+  private Predicate<UsageRecord> unprocessed = r -> false;
+  private int unprocessedAttempts;
+
+  /** Leave matching records unprocessed for their first {@code attemptCount} submissions. */
+  public FakeMarketplaceMeteringClient leaveUnprocessed(
+      Predicate<UsageRecord> predicate, int attemptCount) {
+    this.unprocessed = predicate;
+    this.unprocessedAttempts = attemptCount;
+    return this;
+  }
+
+  public List<BatchMeterUsageRequest> getRequests() {
+    return requests;
+  }
+
+  @Override
+  public synchronized BatchMeterUsageResponse batchMeterUsage(BatchMeterUsageRequest request) {
+    requests.add(request);
+    List<UsageRecordResult> results = new ArrayList<>();
+    List<UsageRecord> unprocessedRecords = new ArrayList<>();
+    for (UsageRecord usageRecord : request.usageRecords()) {
+      int attempt = attempts.merge(usageRecord, 1, Integer::sum);
+      if (unprocessed.test(usageRecord) && attempt <= unprocessedAttempts) {
+        unprocessedRecords.add(usageRecord);
+      } else {
+        results.add(
+            UsageRecordResult.builder()
+                .usageRecord(usageRecord)
+                .meteringRecordId(UUID.randomUUID().toString())
+                .status(UsageRecordResultStatus.SUCCESS)
+                .build());
+      }
+    }
+    return BatchMeterUsageResponse.builder()
+        .results(results)
+        .unprocessedRecords(unprocessedRecords)
+        .build();
+  }
+
+  @Override
+  public String serviceName() {
+    return SERVICE_NAME;
+  }
+
+  @Override
+  public void close() {
+    // nothing to release
+  }
+}
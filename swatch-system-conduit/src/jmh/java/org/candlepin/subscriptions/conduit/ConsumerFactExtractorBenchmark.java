@@ -0,0 +1,129 @@
+/*
+ * Copyright Red Hat, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ *
+ * Red Hat trademarks are not licensed under GPLv3. No permission is
+ * granted to use or replicate Red Hat trademarks that are incorporated
+ * in this software or its documentation.
+ */
+package org.candlepin.subscriptions.conduit;
+
+import java.time.OffsetDateTime;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import org.candlepin.subscriptions.conduit.rhsm.client.model.Consumer;
+import org.candlepin.subscriptions.conduit.rhsm.client.model.InstalledProducts;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/** Measures how many RHSM consumers per second have their facts extracted. */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ConsumerFactExtractorBenchmark {
+
+  private static final int CONSUMERS = 1000;
+
+  private final ConsumerFactExtractor extractor = new ConsumerFactExtractor();
+  private List<Consumer> consumers;
+
+  @Setup
+  public void setup() {
+    Random random = new Random(42);
+    consumers = new ArrayList<>(CONSUMERS);
+    for (int i = 0; i < CONSUMERS; i++) {
+      consumers.add(createConsumer(random));
+    }
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(CONSUMERS)
+  public void extractFacts(Blackhole blackhole) {
+    for (Consumer consumer : consumers) {
+      blackhole.consume(extractor.extract(consumer));
+    }
+  }
+
+  /** Builds a consumer with roughly the fact profile of a RHEL host with a few NICs. */
+  private static Consumer createConsumer(Random random) {
+    Consumer consumer = new Consumer();
+    consumer.setUuid(UUID.randomUUID().toString());
+    consumer.setOrgId("org" + random.nextInt(100));
+    consumer.setLastCheckin(OffsetDateTime.parse("2022-06-01T10:00:00Z"));
+    consumer.setServiceLevel("Premium");
+    consumer.setSysPurposeRole("Red Hat Enterprise Linux Server");
+    consumer.setSysPurposeUsage("Production");
+    var product = new InstalledProducts();
+    product.setProductId("69");
+    consumer.getInstalledProducts().add(product);
+
+    Map<String, String> facts = new LinkedHashMap<>();
+    facts.put("insights_id", UUID.randomUUID().toString().replace("-", ""));
+    facts.put("dmi.system.uuid", UUID.randomUUID().toString().toUpperCase());
+    facts.put("dmi.bios.vendor", "Dell Inc.");
+    facts.put("dmi.bios.version", "2.14.2");
+    facts.put("distribution.name", "Red Hat Enterprise Linux");
+    facts.put("distribution.version", "8.6");
+    facts.put("cpu.cpu_socket(s)", Integer.toString(1 + random.nextInt(4)));
+    facts.put("cpu.core(s)_per_socket", Integer.toString(1 + random.nextInt(32)));
+    facts.put("memory.memtotal", Integer.toString(1_000_000 + random.nextInt(64_000_000)));
+    facts.put("uname.machine", "x86_64");
+    facts.put("virt.is_guest", random.nextBoolean() ? "True" : "False");
+    facts.put("network.fqdn", "host" + random.nextInt(100_000) + ".example.com");
+    int nics = 1 + random.nextInt(4);
+    for (int n = 0; n < nics; n++) {
+      String prefix = "net.interface.eth" + n;
+      facts.put(
+          prefix + ".mac_address",
+          String.format("52:54:00:%02x:%02x:%02x", n, octet(random), octet(random)));
+      facts.put(prefix + ".ipv4_address", "10.0." + n + "." + octet(random));
+      facts.put(
+          prefix + ".ipv4_address_list", "10.0." + n + "." + octet(random) + ", 10.1." + n + ".1");
+      facts.put(prefix + ".ipv4_netmask", "255.255.255.0");
+      facts.put(prefix + ".ipv6_address.link", "fe80::5054:ff:fe00:" + Integer.toHexString(n));
+      facts.put(prefix + ".ipv6_address.link_list", "fe80::5054:ff:fe00:" + Integer.toHexString(n));
+    }
+    facts.put("net.interface.lo.ipv4_address", "127.0.0.1");
+    facts.put("net.interface.lo.ipv6_address", "::1");
+    // hosts report many facts conduit doesn't look at
+    for (int f = 0; f < 60; f++) {
+      facts.put("lscpu.flag_" + f, "value" + f);
+    }
+    consumer.setFacts(facts);
+    return consumer;
+  }
+
+  private static int octet(Random random) {
+    return random.nextInt(256);
+  }
+}
@@ -0,0 +1,506 @@
+/*
+ * Copyright Red Hat, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ *
+ * Red Hat trademarks are not licensed under GPLv3. No permission is
+ * granted to use or replicate Red Hat trademarks that are incorporated
+ * in this software or its documentation.
+ */
+package org.candlepin.subscriptions.conduit;
+
+import static org.candlepin.subscriptions.conduit.InventoryController.*;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import org.candlepin.subscriptions.conduit.inventory.ConduitFacts;
+import org.candlepin.subscriptions.conduit.rhsm.client.model.Consumer;
+import org.candlepin.subscriptions.conduit.rhsm.client.model.InstalledProducts;
+import org.candlepin.subscriptions.inventory.client.model.NetworkInterface;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+import org.springframework.util.StringUtils;
+
+/**
+ * Extracts the facts collected by conduit from an RHSM consumer.
+ *
+ * <p>This runs once per consumer of every synced org, so the fact formats are recognized with
+ * hand-written scanners rather than regular expressions. Each scanner documents the expression it
+ * replaces; the output must stay identical to what those expressions produced.
+ */
+@Component
+public class ConsumerFactExtractor {
+
+  private static final Logger log = LoggerFactory.getLogger(ConsumerFactExtractor.class);
+
+  private static final BigDecimal KIBIBYTES_PER_GIBIBYTE = BigDecimal.valueOf(1048576);
+  private static final BigDecimal BYTES_PER_KIBIBYTE = BigDecimal.valueOf(1024);
+  private static final String LOOPBACK_IPV4_ADDRESS = MAC_PREFIX + "lo.ipv4_address";
+  private static final String LOOPBACK_IPV6_ADDRESS = MAC_PREFIX + "lo.ipv6_address";
+
+  public ConduitFacts extract(Consumer consumer) {
+    final Map<String, String> rhsmFacts = consumer.getFacts();
+    ConduitFacts facts = new ConduitFacts();
+    facts.setOrgId(consumer.getOrgId());
+    String clusterUuid = rhsmFacts.get(OPENSHIFT_CLUSTER_UUID);
+    // NOTE future displayName logic could consider more facts here
+    if (clusterUuid != null) {
+      facts.setDisplayName(clusterUuid);
+    }
+    facts.setSubscriptionManagerId(normalizeUuid(consumer.getUuid()));
+    facts.setInsightsId(normalizeUuid(rhsmFacts.get(INSIGHTS_ID)));
+
+    if (consumer.getLastCheckin() != null) {
+      facts.setLastCheckin(consumer.getLastCheckin());
+    }
+
+    facts.setSysPurposeRole(consumer.getSysPurposeRole());
+    facts.setSysPurposeSla(consumer.getServiceLevel());
+    facts.setSysPurposeUsage(consumer.getSysPurposeUsage());
+    facts.setSysPurposeAddons(consumer.getSysPurposeAddons());
+    facts.setSysPurposeUnits(rhsmFacts.get(OCM_UNITS));
+    facts.setBillingModel(rhsmFacts.get(OCM_BILLING_MODEL));
+
+    extractNetworkFacts(rhsmFacts, facts);
+    extractHardwareFacts(rhsmFacts, facts);
+    extractVirtualizationFacts(consumer, rhsmFacts, facts);
+    facts.setCloudProvider(extractCloudProvider(rhsmFacts));
+
+    List<InstalledProducts> installedProducts = consumer.getInstalledProducts();
+    List<String> productIds = new ArrayList<>(installedProducts.size());
+    for (InstalledProducts installedProduct : installedProducts) {
+      productIds.add(installedProduct.getProductId());
+    }
+    facts.setRhProd(productIds);
+
+    return facts;
+  }
+
+  private String extractCloudProvider(Map<String, String> rhsmFacts) {
+    String assetTag = rhsmFacts.getOrDefault("dmi.chassis.asset_tag", "");
+    String biosVendor = rhsmFacts.getOrDefault(DMI_BIOS_VENDOR, "");
+    String biosVersion = rhsmFacts.getOrDefault(DMI_BIOS_VERSION, "");
+    String systemManufacturer = rhsmFacts.getOrDefault("dmi.system.manufacturer", "");
+    if (assetTag.equals("7783-7084-3265-9085-8269-3286-77")) {
+      return "azure";
+    } else if (biosVendor.toLowerCase().contains("google")) {
+      return "google";
+    } else if (biosVersion.toLowerCase().contains("amazon")) {
+      return "aws";
+    } else if (systemManufacturer.toLowerCase().contains("alibaba")) {
+      return "alibaba";
+    }
+    return null;
+  }
+
+  private static String normalizeUuid(String uuid) {
+    if (!StringUtils.hasText(uuid)) {
+      return null;
+    }
+    String trimmed = uuid.trim();
+    if (trimmed.indexOf('-') >= 0) {
+      return trimmed;
+    } else {
+      return hyphenate(trimmed);
+    }
+  }
+
+  private static String hyphenate(String uuid) {
+    return new StringBuilder(uuid.length() + 4)
+        .append(uuid, 0, 8)
+        .append('-')
+        .append(uuid, 8, 12)
+        .append('-')
+        .append(uuid, 12, 16)
+        .append('-')
+        .append(uuid, 16, 20)
+        .append('-')
+        .append(uuid, 20, uuid.length())
+        .toString();
+  }
+
+  private void extractHardwareFacts(Map<String, String> rhsmFacts, ConduitFacts facts) {
+    String systemUuid = rhsmFacts.get(DMI_SYSTEM_UUID);
+    if (StringUtils.hasLength(systemUuid)) {
+      if (isHyphenatedUuid(systemUuid)) {
+        facts.setBiosUuid(systemUuid);
+      } else if (isUnhyphenatedUuid(systemUuid)) {
+        facts.setBiosUuid(hyphenate(systemUuid));
+      } else {
+        log.info(
+            "Consumer {} in org {} has unparseable BIOS uuid: {}",
+            facts.getSubscriptionManagerId(),
+            facts.getOrgId(),
+            systemUuid);
+      }
+    }
+
+    facts.setOsName(rhsmFacts.get(OS_DISTRIBUTION_NAME));
+    facts.setOsVersion(rhsmFacts.get(OS_DISTRIBUTION_VERSION));
+
+    facts.setBiosVersion(rhsmFacts.get(DMI_BIOS_VERSION));
+    facts.setBiosVendor(rhsmFacts.get(DMI_BIOS_VENDOR));
+
+    String cpuSockets = rhsmFacts.get(CPU_SOCKETS);
+    String coresPerSocket = rhsmFacts.get(CPU_CORES_PER_SOCKET);
+    if (StringUtils.hasLength(cpuSockets)) {
+      Integer numCpuSockets = Integer.parseInt(cpuSockets);
+      facts.setCpuSockets(numCpuSockets);
+      if (StringUtils.hasLength(coresPerSocket)) {
+        Integer numCoresPerSocket = Integer.parseInt(coresPerSocket);
+        facts.setCpuCores(numCoresPerSocket * numCpuSockets);
+      }
+    }
+    if (StringUtils.hasLength(coresPerSocket)) {
+      facts.setCoresPerSocket(Integer.parseInt(coresPerSocket));
+    }
+
+    String memoryTotal = rhsmFacts.get(MEMORY_MEMTOTAL);
+    if (StringUtils.hasLength(memoryTotal)) {
+      try {
+        BigDecimal memoryBytes = memtotalFromString(memoryTotal);
+        // memtotal is a little less than accessible memory, round up to next GB
+        long memoryGigabytes =
+            memoryBytes.divide(KIBIBYTES_PER_GIBIBYTE, RoundingMode.CEILING).longValue();
+        facts.setMemory(memoryGigabytes);
+        facts.setSystemMemoryBytes(memoryBytes.multiply(BYTES_PER_KIBIBYTE).longValue());
+      } catch (NumberFormatException e) {
+        log.info("Bad memory.memtotal value: {}", memoryTotal);
+      }
+    }
+
+    String architecture = rhsmFacts.get(UNAME_MACHINE);
+    if (StringUtils.hasLength(architecture)) {
+      facts.setArchitecture(architecture);
+    }
+  }
+
+  /**
+   * Return memorytotal in kibibytes, as seen in /proc/meminfo
+   *
+   * @param memoryTotal memory fact as a string
+   * @return memory total in kibibytes
+   */
+  BigDecimal memtotalFromString(String memoryTotal) {
+    // Check for match of openshift, which reports bytes as e.g. 33315405824.0B
+    if (isDecimalBytes(memoryTotal)) {
+      String memStr = memoryTotal.substring(0, memoryTotal.length() - 1);
+      return new BigDecimal(memStr).divide(BYTES_PER_KIBIBYTE, RoundingMode.CEILING);
+    } else {
+      // Any other format will throw a NumberFormatException if not a double.
+      return new BigDecimal(memoryTotal);
+    }
+  }
+
+  private void extractNetworkFacts(Map<String, String> rhsmFacts, ConduitFacts facts) {
+    String fqdn = rhsmFacts.get(NETWORK_FQDN);
+    if (StringUtils.hasLength(fqdn)) {
+      facts.setFqdn(fqdn);
+    }
+
+    // A single pass over the facts finds the interfaces, their MAC addresses and all IPs.
+    List<NetworkInterface> networkInterfaces = new ArrayList<>();
+    List<String> macAddresses = new ArrayList<>();
+    Set<String> ipAddresses = new HashSet<>();
+    for (Map.Entry<String, String> entry : rhsmFacts.entrySet()) {
+      String key = entry.getKey();
+      String value = entry.getValue();
+      if (isMacAddressFact(key)) {
+        var networkInterface = new NetworkInterface();
+        networkInterface.setName(interfaceName(key));
+        networkInterface.setMacAddress(value);
+        mapInterfaceIps(networkInterface, rhsmFacts, ".ipv4");
+        mapInterfaceIps(networkInterface, rhsmFacts, ".ipv6");
+        networkInterfaces.add(networkInterface);
+        forEachMac(value, key, macAddresses::add);
+      } else if (isIpAddressFact(key) && StringUtils.hasLength(value)) {
+        forEachIp(value, key, ipAddresses::add);
+      }
+    }
+
+    // creates a lo interface if ips exist for it, but no mac was given
+    checkLoopbackIPs(networkInterfaces, rhsmFacts);
+    if (!networkInterfaces.isEmpty()) {
+      facts.setNetworkInterfaces(networkInterfaces);
+    }
+    if (!macAddresses.isEmpty()) {
+      facts.setMacAddresses(macAddresses);
+    }
+    if (!ipAddresses.isEmpty()) {
+      facts.setIpAddresses(new ArrayList<>(ipAddresses));
+    }
+  }
+
+  void extractIpAddresses(Map<String, String> rhsmFacts, ConduitFacts facts) {
+    Set<String> ipAddresses = new HashSet<>();
+    for (Map.Entry<String, String> entry : rhsmFacts.entrySet()) {
+      if (isIpAddressFact(entry.getKey()) && StringUtils.hasLength(entry.getValue())) {
+        forEachIp(entry.getValue(), entry.getKey(), ipAddresses::add);
+      }
+    }
+
+    if (!ipAddresses.isEmpty()) {
+      facts.setIpAddresses(new ArrayList<>(ipAddresses));
+    }
+  }
+
+  private void mapInterfaceIps(
+      NetworkInterface networkInterface, Map<String, String> facts, String suffix) {
+    String prefix = MAC_PREFIX + networkInterface.getName() + suffix;
+
+    if (suffix.equalsIgnoreCase(".ipv4") && facts.containsKey(prefix + "_address_list")) {
+      var fact = prefix + "_address_list";
+      forEachIp(facts.get(fact), fact, networkInterface::addIpv4AddressesItem);
+    } else if (facts.containsKey(prefix + "_address")) {
+      networkInterface.addIpv4AddressesItem(facts.get(prefix + "_address"));
+    }
+
+    if (facts.containsKey(prefix + "_address.global_list")) {
+      var fact = prefix + "_address.global_list";
+      forEachIp(facts.get(fact), fact, networkInterface::addIpv6AddressesItem);
+    } else if (facts.containsKey(prefix + "_address.global")) {
+      networkInterface.addIpv6AddressesItem(facts.get(prefix + "_address.global"));
+    }
+
+    if (facts.containsKey(prefix + "_address.link_list")) {
+      var fact = prefix + "_address.link_list";
+      forEachIp(facts.get(fact), fact, networkInterface::addIpv6AddressesItem);
+    } else if (facts.containsKey(prefix + "_address.link")) {
+      networkInterface.addIpv6AddressesItem(facts.get(prefix + "_address.link"));
+    }
+  }
+
+  private void checkLoopbackIPs(
+      List<NetworkInterface> networkInterfaces, Map<String, String> facts) {
+    boolean loExist = false;
+    for (NetworkInterface nic : networkInterfaces) {
+      if ("lo".equals(nic.getName())) {
+        loExist = true;
+        break;
+      }
+    }
+    var lo = new NetworkInterface();
+
+    if (!loExist && facts.containsKey(LOOPBACK_IPV4_ADDRESS)) {
+      lo.setName("lo");
+      lo.setMacAddress("00:00:00:00:00:00");
+      lo.addIpv4AddressesItem(facts.get(LOOPBACK_IPV4_ADDRESS));
+      networkInterfaces.add(lo);
+    } else if (!loExist && facts.containsKey(LOOPBACK_IPV6_ADDRESS)) {
+      lo.setName("lo");
+      lo.setMacAddress("00:00:00:00:00:00");
+      lo.addIpv6AddressesItem(facts.get(LOOPBACK_IPV6_ADDRESS));
+      networkInterfaces.add(lo);
+    }
+  }
+
+  private void extractVirtualizationFacts(
+      Consumer consumer, Map<String, String> rhsmFacts, ConduitFacts facts) {
+
+    String isGuest = rhsmFacts.get(VIRT_IS_GUEST);
+    if (StringUtils.hasLength(isGuest) && !isGuest.equalsIgnoreCase(UNKNOWN)) {
+      facts.setIsVirtual(isGuest.equalsIgnoreCase(TRUE));
+    }
+
+    String vmHost = consumer.getHypervisorName();
+    if (StringUtils.hasLength(vmHost)) {
+      facts.setVmHost(vmHost);
+    }
+
+    String vmHypervisorUuid = consumer.getHypervisorUuid();
+    if (StringUtils.hasLength(vmHypervisorUuid)) {
+      facts.setVmHostUuid(vmHypervisorUuid);
+    }
+
+    String vmId = consumer.getGuestId();
+    if (StringUtils.hasLength(vmId)) {
+      facts.setGuestId(vmId);
+    }
+  }
+
+  private void forEachIp(String value, String factKey, java.util.function.Consumer<String> sink) {
+    forEachItem(
+        value,
+        item -> {
+          if (StringUtils.hasLength(item)
+              && !item.equalsIgnoreCase(UNKNOWN)
+              && !isTruncated(item, factKey)) {
+            sink.accept(item);
+          }
+        });
+  }
+
+  private void forEachMac(String value, String factKey, java.util.function.Consumer<String> sink) {
+    forEachItem(
+        value,
+        item -> {
+          if (!item.equalsIgnoreCase(NONE)
+              && !item.equalsIgnoreCase(UNKNOWN)
+              && !isTruncated(item, factKey)) {
+            sink.accept(item);
+          }
+        });
+  }
+
+  /**
+   * Pass each item of a comma-delimited fact value to the sink, splitting exactly like {@code
+   * value.split(",\\s*")}: whitespace after a comma is dropped, trailing empty items are
+   * discarded, and a value without any comma is a single (possibly empty) item.
+   */
+  static void forEachItem(String value, java.util.function.Consumer<String> sink) {
+    int length = value.length();
+    if (value.indexOf(',') < 0) {
+      sink.accept(value);
+      return;
+    }
+    int start = 0;
+    int pendingEmptyItems = 0;
+    while (true) {
+      int comma = value.indexOf(',', start);
+      int end = comma < 0 ? length : comma;
+      if (end == start) {
+        // only emitted if a non-empty item follows
+        pendingEmptyItems++;
+      } else {
+        for (; pendingEmptyItems > 0; pendingEmptyItems--) {
+          sink.accept("");
+        }
+        sink.accept(value.substring(start, end));
+      }
+      if (comma < 0) {
+        return;
+      }
+      start = comma + 1;
+      while (start < length && isRegexWhitespace(value.charAt(start))) {
+        start++;
+      }
+    }
+  }
+
+  /** Matches the characters of the regex class {@code \s}. */
+  private static boolean isRegexWhitespace(char c) {
+    return c == ' ' || c == '\t' || c == '\n' || c == '\u000B' || c == '\f' || c == '\r';
+  }
+
+  private static boolean isMacAddressFact(String key) {
+    return key.startsWith(MAC_PREFIX) && key.endsWith(MAC_SUFFIX);
+  }
+
+  /** Equivalent to {@code key.split("\\.")[2]} for a MAC address fact. */
+  private static String interfaceName(String key) {
+    int start = MAC_PREFIX.length();
+    int end = key.indexOf('.', start);
+    return end < 0 ? key.substring(start) : key.substring(start, end);
+  }
+
+  /** Matches {@link InventoryController#IP_ADDRESS_FACT_REGEX}. */
+  static boolean isIpAddressFact(String key) {
+    if (!key.startsWith(MAC_PREFIX)) {
+      return false;
+    }
+    // the interface name can't contain a period, so the first one after the prefix ends it
+    int i = key.indexOf('.', MAC_PREFIX.length());
+    if (i < 0 || !key.startsWith(".ipv", i)) {
+      return false;
+    }
+    i += 4;
+    if (i >= key.length() || (key.charAt(i) != '4' && key.charAt(i) != '6')) {
+      return false;
+    }
+    i++;
+    if (!key.startsWith("_address", i)) {
+      return false;
+    }
+    i += 8;
+    if (key.startsWith(".global", i)) {
+      i += 7;
+    } else if (key.startsWith(".link", i)) {
+      i += 5;
+    }
+    if (key.startsWith("_list", i)) {
+      i += 5;
+    }
+    return i == key.length();
+  }
+
+  /** Matches {@code [0-9a-fA-F]{8}-([0-9a-fA-F]{4}-){3}[0-9a-fA-F]{12}}. */
+  static boolean isHyphenatedUuid(String value) {
+    if (value.length() != 36) {
+      return false;
+    }
+    for (int i = 0; i < 36; i++) {
+      char c = value.charAt(i);
+      boolean valid = (i == 8 || i == 13 || i == 18 || i == 23) ? c == '-' : isHexDigit(c);
+      if (!valid) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /** Matches {@code [0-9a-fA-F]{32}}. */
+  static boolean isUnhyphenatedUuid(String value) {
+    if (value.length() != 32) {
+      return false;
+    }
+    for (int i = 0; i < 32; i++) {
+      if (!isHexDigit(value.charAt(i))) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private static boolean isHexDigit(char c) {
+    return (c >= '0' && c <= '9') || (c >= 'a' && c <= 'f') || (c >= 'A' && c <= 'F');
+  }
+
+  /** Matches {@code \d+\.\d+[Bb]}. */
+  static boolean isDecimalBytes(String value) {
+    int length = value.length();
+    int i = skipDigits(value, 0);
+    if (i == 0 || i >= length || value.charAt(i) != '.') {
+      return false;
+    }
+    int fractionStart = i + 1;
+    i = skipDigits(value, fractionStart);
+    if (i == fractionStart || i != length - 1) {
+      return false;
+    }
+    char unit = value.charAt(i);
+    return unit == 'B' || unit == 'b';
+  }
+
+  private static int skipDigits(String value, int start) {
+    int i = start;
+    while (i < value.length() && value.charAt(i) >= '0' && value.charAt(i) <= '9') {
+      i++;
+    }
+    return i;
+  }
+
+  private static boolean isTruncated(String toCheck, String factKey) {
+    if (toCheck != null && toCheck.endsWith("...")) {
+      log.info("Consumer fact value was truncated. Skipping value: {}:{}", factKey, toCheck);
+      return true;
+    }
+    return false;
+  }
+}
@@ -25,33 +25,25 @@ import io.micrometer.core.instrument.Counter;
 import io.micrometer.core.instrument.MeterRegistry;
 import io.micrometer.core.instrument.Timer;
 import java.math.BigDecimal;
-import java.math.RoundingMode;
-import java.util.ArrayList;
-import java.util.Arrays;
-import java.util.HashSet;
-import java.util.List;
 import java.util.Map;
 import java.util.NoSuchElementException;
 import java.util.Optional;
 import java.util.Set;
-import java.util.function.Predicate;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 import javax.validation.ConstraintViolation;
 import javax.validation.Validator;
 import org.candlepin.subscriptions.conduit.inventory.ConduitFacts;
 import org.candlepin.subscriptions.conduit.inventory.InventoryService;
+import org.candlepin.subscriptions.conduit.job.OrgSyncProperties;
 import org.candlepin.subscriptions.conduit.job.OrgSyncTaskManager;
+import org.candlepin.subscriptions.conduit.rhsm.RhsmPagePrefetcher;
 import org.candlepin.subscriptions.conduit.rhsm.RhsmService;
 import org.candlepin.subscriptions.conduit.rhsm.client.ApiException;
 import org.candlepin.subscriptions.conduit.rhsm.client.model.Consumer;
-import org.candlepin.subscriptions.conduit.rhsm.client.model.InstalledProducts;
-import org.candlepin.subscriptions.conduit.rhsm.client.model.Pagination;
 import org.candlepin.subscriptions.exception.MissingAccountNumberException;
 import org.candlepin.subscriptions.inventory.client.InventoryServiceProperties;
-import org.candlepin.subscriptions.inventory.client.model.NetworkInterface;
 import org.candlepin.subscriptions.utilization.api.model.OrgInventory;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -65,13 +57,6 @@ public class InventoryController {
 
   private static final Logger log = LoggerFactory.getLogger(InventoryController.class);
 
-  private static final BigDecimal KIBIBYTES_PER_GIBIBYTE = BigDecimal.valueOf(1048576);
-  private static final BigDecimal BYTES_PER_KIBIBYTE = BigDecimal.valueOf(1024);
-  private static final String COMMA_REGEX = ",\\s*";
-  private static final String PERIOD_REGEX = "\\.";
-  private static final String NON_HYPHEN_REGEX = "[0-9a-fA-F]{8}([0-9a-fA-F]{4}){3}[0-9a-fA-F]{12}";
-  private static final String UUID_REGEX = "[0-9a-fA-F]{8}-([0-9a-fA-F]{4}-){3}[0-9a-fA-F]{12}";
-
   public static final String OS_DISTRIBUTION_NAME = "distribution.name";
   public static final String OS_DISTRIBUTION_VERSION = "distribution.version";
   public static final String DMI_SYSTEM_UUID = "dmi.system.uuid";
@@ -107,12 +92,16 @@ public class InventoryController {
 
   private InventoryService inventoryService;
   private RhsmService rhsmService;
+  private ConsumerFactExtractor factExtractor;
   private Validator validator;
   private OrgSyncTaskManager taskManager;
+  private OrgSyncProperties orgSyncProperties;
+  private RhsmPagePrefetcher pagePrefetcher;
   private Counter queueNextPageCounter;
   private Counter finalizeOrgCounter;
   private Timer transformHostTimer;
   private Timer validateHostTimer;
+  private Timer processPageTimer;
 
   @Autowired
   public InventoryController(
@@ -121,144 +110,27 @@ public class InventoryController {
       Validator validator,
       InventoryServiceProperties inventoryServiceProperties,
       OrgSyncTaskManager taskManager,
-      MeterRegistry meterRegistry) {
+      MeterRegistry meterRegistry,
+      ConsumerFactExtractor factExtractor,
+      OrgSyncProperties orgSyncProperties,
+      RhsmPagePrefetcher pagePrefetcher) {
 
     this.inventoryService = inventoryService;
     this.rhsmService = rhsmService;
+    this.factExtractor = factExtractor;
     this.validator = validator;
     this.taskManager = taskManager;
+    this.orgSyncProperties = orgSyncProperties;
+    this.pagePrefetcher = pagePrefetcher;
     this.queueNextPageCounter = meterRegistry.counter("rhsm-conduit.queue.next-page");
     this.finalizeOrgCounter = meterRegistry.counter("rhsm-conduit.finalize.org");
     this.transformHostTimer = meterRegistry.timer("rhsm-conduit.transform.host");
     this.validateHostTimer = meterRegistry.timer("rhsm-conduit.validate.host");
+    this.processPageTimer = meterRegistry.timer("rhsm-conduit.sync.page-process");
   }
 
   public ConduitFacts getFactsFromConsumer(Consumer consumer) {
-    final Map<String, String> rhsmFacts = consumer.getFacts();
-    ConduitFacts facts = new ConduitFacts();
-    facts.setOrgId(consumer.getOrgId());
-    String clusterUuid = rhsmFacts.get(OPENSHIFT_CLUSTER_UUID);
-    // NOTE future displayName logic could consider more facts here
-    if (clusterUuid != null) {
-      facts.setDisplayName(clusterUuid);
-    }
-    facts.setSubscriptionManagerId(normalizeUuid(consumer.getUuid()));
-    facts.setInsightsId(normalizeUuid(rhsmFacts.get(INSIGHTS_ID)));
-
-    if (consumer.getLastCheckin() != null) {
-      facts.setLastCheckin(consumer.getLastCheckin());
-    }
-
-    facts.setSysPurposeRole(consumer.getSysPurposeRole());
-    facts.setSysPurposeSla(consumer.getServiceLevel());
-    facts.setSysPurposeUsage(consumer.getSysPurposeUsage());
-    facts.setSysPurposeAddons(consumer.getSysPurposeAddons());
-    facts.setSysPurposeUnits(rhsmFacts.get(OCM_UNITS));
-    facts.setBillingModel(rhsmFacts.get(OCM_BILLING_MODEL));
-
-    extractNetworkFacts(rhsmFacts, facts);
-    extractHardwareFacts(rhsmFacts, facts);
-    extractVirtualizationFacts(consumer, rhsmFacts, facts);
-    facts.setCloudProvider(extractCloudProvider(rhsmFacts));
-
-    List<String> productIds =
-        consumer.getInstalledProducts().stream()
-            .map(InstalledProducts::getProductId)
-            .collect(Collectors.toList());
-    facts.setRhProd(productIds);
-
-    return facts;
-  }
-
-  private String extractCloudProvider(Map<String, String> rhsmFacts) {
-    String assetTag = rhsmFacts.getOrDefault("dmi.chassis.asset_tag", "");
-    String biosVendor = rhsmFacts.getOrDefault(DMI_BIOS_VENDOR, "");
-    String biosVersion = rhsmFacts.getOrDefault(DMI_BIOS_VERSION, "");
-    String systemManufacturer = rhsmFacts.getOrDefault("dmi.system.manufacturer", "");
-    if (assetTag.equals("7783-7084-3265-9085-8269-3286-77")) {
-      return "azure";
-    } else if (biosVendor.toLowerCase().contains("google")) {
-      return "google";
-    } else if (biosVersion.toLowerCase().contains("amazon")) {
-      return "aws";
-    } else if (systemManufacturer.toLowerCase().contains("alibaba")) {
-      return "alibaba";
-    }
-    return null;
-  }
-
-  private String normalizeUuid(String uuid) {
-    if (!StringUtils.hasText(uuid)) {
-      return null;
-    }
-    String trimmed = uuid.trim();
-    if (trimmed.contains("-")) {
-      return trimmed;
-    } else {
-      return String.join(
-          "-",
-          trimmed.substring(0, 8),
-          trimmed.substring(8, 12),
-          trimmed.substring(12, 16),
-          trimmed.substring(16, 20),
-          trimmed.substring(20));
-    }
-  }
-
-  private void extractHardwareFacts(Map<String, String> rhsmFacts, ConduitFacts facts) {
-    String systemUuid = rhsmFacts.get(DMI_SYSTEM_UUID);
-    if (StringUtils.hasLength(systemUuid)) {
-      if (systemUuid.matches(UUID_REGEX)) {
-        facts.setBiosUuid(systemUuid);
-      } else if (systemUuid.matches(NON_HYPHEN_REGEX)) {
-        facts.setBiosUuid(normalizeUuid(systemUuid));
-      } else {
-        log.info(
-            "Consumer {} in org {} has unparseable BIOS uuid: {}",
-            facts.getSubscriptionManagerId(),
-            facts.getOrgId(),
-            systemUuid);
-      }
-    }
-
-    facts.setOsName(rhsmFacts.get(OS_DISTRIBUTION_NAME));
-    facts.setOsVersion(rhsmFacts.get(OS_DISTRIBUTION_VERSION));
-
-    facts.setBiosVersion(rhsmFacts.get(DMI_BIOS_VERSION));
-    facts.setBiosVendor(rhsmFacts.get(DMI_BIOS_VENDOR));
-
-    String cpuSockets = rhsmFacts.get(CPU_SOCKETS);
-    String coresPerSocket = rhsmFacts.get(CPU_CORES_PER_SOCKET);
-    if (StringUtils.hasLength(cpuSockets)) {
-      Integer numCpuSockets = Integer.parseInt(cpuSockets);
-      facts.setCpuSockets(numCpuSockets);
-      if (StringUtils.hasLength(coresPerSocket)) {
-        Integer numCoresPerSocket = Integer.parseInt(coresPerSocket);
-        facts.setCpuCores(numCoresPerSocket * numCpuSockets);
-      }
-    }
-    if (StringUtils.hasLength(coresPerSocket)) {
-      facts.setCoresPerSocket(Integer.parseInt(coresPerSocket));
-    }
-
-    String memoryTotal = rhsmFacts.get(MEMORY_MEMTOTAL);
-    if (StringUtils.hasLength(memoryTotal)) {
-      try {
-        BigDecimal memoryBytes = memtotalFromString(memoryTotal);
-        // memtotal is a little less than accessible memory, round up to next GB
-        long memoryGigabytes =
-            memoryBytes.divide(KIBIBYTES_PER_GIBIBYTE, RoundingMode.CEILING).longValue();
-        facts.setMemory(memoryGigabytes);
-        facts.setSystemMemoryBytes(memoryBytes.multiply(BYTES_PER_KIBIBYTE).longValue());
-      } catch (NumberFormatException e) {
-        log.info("Bad memory.memtotal value: {}", memoryTotal);
-      }
-    }
-
-    String architecture = rhsmFacts.get(UNAME_MACHINE);
-    if (StringUtils.hasLength(architecture)) {
-      facts.setArchitecture(architecture);
-    }
+    return factExtractor.extract(consumer);
   }
 
   /**
@@ -268,183 +140,11 @@ public class InventoryController {
    * @return memory total in kibibytes
    */
   protected BigDecimal memtotalFromString(String memoryTotal) {
-    // Check for match of openshift
-    String patternString = "^\\d+\\.\\d+[Bb]$";
-    Matcher matcher = Pattern.compile(patternString).matcher(memoryTotal);
-
-    String memStr = memoryTotal;
-    // Any other format will throw a NumberFormatException if not a double.
-    if (matcher.matches()) {
-      memStr = memStr.replaceAll("[Bb]", "");
-      return new BigDecimal(memStr).divide(BYTES_PER_KIBIBYTE, RoundingMode.CEILING);
-    } else {
-      return new BigDecimal(memStr);
-    }
-  }
-
-  @SuppressWarnings("indentation")
-  private void extractNetworkFacts(Map<String, String> rhsmFacts, ConduitFacts facts) {
-    String fqdn = rhsmFacts.get(NETWORK_FQDN);
-    if (StringUtils.hasLength(fqdn)) {
-      facts.setFqdn(fqdn);
-    }
-
-    List<NetworkInterface> networkInterfaces = populateNICs(rhsmFacts);
-    if (!networkInterfaces.isEmpty()) {
-      facts.setNetworkInterfaces(networkInterfaces);
-    }
-
-    List<String> macAddresses = new ArrayList<>();
-    rhsmFacts.entrySet().stream()
-        .filter(
-            entry -> entry.getKey().startsWith(MAC_PREFIX) && entry.getKey().endsWith(MAC_SUFFIX))
-        .forEach(
-            entry -> {
-              var macString = entry.getValue();
-              var macFact = entry.getKey();
-              var splitMacs = filterMacs(macString, macFact);
-              macAddresses.addAll(splitMacs);
-            });
-
-    if (!macAddresses.isEmpty()) {
-      facts.setMacAddresses(macAddresses);
-    }
-    extractIpAddresses(rhsmFacts, facts);
+    return factExtractor.memtotalFromString(memoryTotal);
   }
 
-  @SuppressWarnings("indentation")
   protected void extractIpAddresses(Map<String, String> rhsmFacts, ConduitFacts facts) {
-    Set<String> ipAddresses = new HashSet<>();
-    rhsmFacts.entrySet().stream()
-        .filter(
-            entry ->
-                entry.getKey().matches(IP_ADDRESS_FACT_REGEX)
-                    && StringUtils.hasLength(entry.getValue()))
-        .forEach(
-            entry -> {
-              var addrString = entry.getValue();
-              var addrFact = entry.getKey();
-              var splitAddrs = filterIps(addrString, addrFact);
-              ipAddresses.addAll(splitAddrs);
-            });
-
-    if (!ipAddresses.isEmpty()) {
-      facts.setIpAddresses(new ArrayList<>(ipAddresses));
-    }
-  }
-
-  protected List<String> filterIps(String s, String factKey) {
-    Predicate<String> ipTests =
-        addr ->
-            StringUtils.hasLength(addr)
-                && !addr.equalsIgnoreCase(UNKNOWN)
-                && !isTruncated(addr, factKey);
-    return filterCommaDelimitedList(s, ipTests);
-  }
-
-  protected List<String> filterMacs(String s, String factKey) {
-    Predicate<String> macTests =
-        mac ->
-            mac != null
-                && !mac.equalsIgnoreCase(NONE)
-                && !mac.equalsIgnoreCase(UNKNOWN)
-                && !isTruncated(mac, factKey);
-    return filterCommaDelimitedList(s, macTests);
-  }
-
-  protected List<String> filterCommaDelimitedList(String s, Predicate<String> predicate) {
-    List<String> items = Arrays.asList(s.split(COMMA_REGEX));
-    return items.stream().filter(predicate).collect(Collectors.toList());
-  }
-
-  private List<NetworkInterface> populateNICs(Map<String, String> rhsmFacts) {
-    var nicSet = new ArrayList<NetworkInterface>();
-    for (Map.Entry<String, String> entry : rhsmFacts.entrySet()) {
-      if (entry.getKey().startsWith(MAC_PREFIX) && entry.getKey().endsWith(MAC_SUFFIX)) {
-        String[] nicsName = entry.getKey().split(PERIOD_REGEX);
-        var mac = entry.getValue();
-        var networkInterface = new NetworkInterface();
-        networkInterface.setName(nicsName[2]);
-        networkInterface.setMacAddress(mac);
-        mapInterfaceIps(networkInterface, rhsmFacts, ".ipv4");
-        mapInterfaceIps(networkInterface, rhsmFacts, ".ipv6");
-        nicSet.add(networkInterface);
-      }
-    }
-    // creates a lo interface if ips exist for it, but no mac was given
-    checkLoopbackIPs(nicSet, rhsmFacts);
-    return nicSet;
-  }
-
-  private void mapInterfaceIps(
-      NetworkInterface networkInterface, Map<String, String> facts, String suffix) {
-    String prefix = MAC_PREFIX + networkInterface.getName() + suffix;
-
-    if (suffix.equalsIgnoreCase(".ipv4") && facts.containsKey(prefix + "_address_list")) {
-      var fact = prefix + "_address_list";
-      var ipList = filterIps(facts.get(fact), fact);
-      ipList.forEach(networkInterface::addIpv4AddressesItem);
-    } else if (facts.containsKey(prefix + "_address")) {
-      networkInterface.addIpv4AddressesItem(facts.get(prefix + "_address"));
-    }
-
-    if (facts.containsKey(prefix + "_address.global_list")) {
-      var fact = prefix + "_address.global_list";
-      var ipList = filterIps(facts.get(fact), fact);
-      ipList.forEach(networkInterface::addIpv6AddressesItem);
-    } else if (facts.containsKey(prefix + "_address.global")) {
-      networkInterface.addIpv6AddressesItem(facts.get(prefix + "_address.global"));
-    }
-
-    if (facts.containsKey(prefix + "_address.link_list")) {
-      var fact = prefix + "_address.link_list";
-      var ipList = filterIps(facts.get(fact), fact);
-      ipList.forEach(networkInterface::addIpv6AddressesItem);
-    } else if (facts.containsKey(prefix + "_address.link")) {
-      networkInterface.addIpv6AddressesItem(facts.get(prefix + "_address.link"));
-    }
-  }
-
-  private void checkLoopbackIPs(
-      List<NetworkInterface> networkInterfaces, Map<String, String> facts) {
-    boolean loExist = networkInterfaces.stream().anyMatch(nic -> "lo".equals(nic.getName()));
-    var lo = new NetworkInterface();
-
-    if (!loExist && facts.containsKey("net.interface.lo.ipv4_address")) {
-      lo.setName("lo");
-      lo.setMacAddress("00:00:00:00:00:00");
-      lo.addIpv4AddressesItem(facts.get("net.interface.lo.ipv4_address"));
-      networkInterfaces.add(lo);
-    } else if (!loExist && facts.containsKey("net.interface.lo.ipv6_address")) {
-      lo.setName("lo");
-      lo.setMacAddress("00:00:00:00:00:00");
-      lo.addIpv6AddressesItem(facts.get("net.interface.lo.ipv6_address"));
-      networkInterfaces.add(lo);
-    }
-  }
-
-  private void extractVirtualizationFacts(
-      Consumer consumer, Map<String, String> rhsmFacts, ConduitFacts facts) {
-
-    String isGuest = rhsmFacts.get(VIRT_IS_GUEST);
-    if (StringUtils.hasLength(isGuest) && !isGuest.equalsIgnoreCase(UNKNOWN)) {
-      facts.setIsVirtual(isGuest.equalsIgnoreCase(TRUE));
-    }
-
-    String vmHost = consumer.getHypervisorName();
-    if (StringUtils.hasLength(vmHost)) {
-      facts.setVmHost(vmHost);
-    }
-
-    String vmHypervisorUuid = consumer.getHypervisorUuid();
-    if (StringUtils.hasLength(vmHypervisorUuid)) {
-      facts.setVmHostUuid(vmHypervisorUuid);
-    }
-
-    String vmId = consumer.getGuestId();
-    if (StringUtils.hasLength(vmId)) {
-      facts.setGuestId(vmId);
-    }
+    factExtractor.extractIpAddresses(rhsmFacts, facts);
   }
 
   public void updateInventoryForOrg(String orgId)
@@ -456,8 +156,61 @@ public class InventoryController {
   public void updateInventoryForOrg(String orgId, String offset)
       throws ApiException, MissingAccountNumberException {
 
+    if (orgSyncProperties.isPipelinedSync()) {
+      updateInventoryForOrgPipelined(orgId, offset);
+      return;
+    }
+
     org.candlepin.subscriptions.conduit.rhsm.client.model.OrgInventory feedPage =
         rhsmService.getPageOfConsumers(orgId, offset, rhsmService.formattedTime());
+    long updateSize = updateInventoryForPage(feedPage);
+    log.debug(
+        "Finished page w/ offset {} of inventory updates for org {}, producing {} updates",
+        offset,
+        orgId,
+        updateSize);
+    completePage(orgId, RhsmService.getNextOffset(feedPage));
+  }
+
+  /**
+   * Sync the pages of an org starting at the given offset, fetching upcoming pages from RHSM while
+   * the current page is sent to inventory. After the configured number of pages, the rest of the
+   * org is handed off to a new task so that a single task doesn't run unbounded.
+   */
+  private void updateInventoryForOrgPipelined(String orgId, String offset)
+      throws ApiException, MissingAccountNumberException {
+    int pagesPerTask = Math.max(1, orgSyncProperties.getPipelinedPagesPerTask());
+    try (RhsmPagePrefetcher.Pages pages =
+        pagePrefetcher.prefetch(
+            orgId, offset, rhsmService.formattedTime(), orgSyncProperties.getPrefetchDepth())) {
+      int pageCount = 0;
+      org.candlepin.subscriptions.conduit.rhsm.client.model.OrgInventory feedPage;
+      while ((feedPage = pages.next()) != null) {
+        long start = System.nanoTime();
+        long updateSize;
+        try {
+          updateSize = updateInventoryForPage(feedPage);
+        } finally {
+          processPageTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
+        pageCount++;
+        log.debug(
+            "Finished page {} of pipelined inventory updates for org {}, producing {} updates",
+            pageCount,
+            orgId,
+            updateSize);
+        Optional<String> nextOffset = RhsmService.getNextOffset(feedPage);
+        if (nextOffset.isEmpty() || pageCount >= pagesPerTask) {
+          completePage(orgId, nextOffset);
+          return;
+        }
+      }
+    }
+  }
+
+  private long updateInventoryForPage(
+      org.candlepin.subscriptions.conduit.rhsm.client.model.OrgInventory feedPage)
+      throws MissingAccountNumberException {
     Stream<ConduitFacts> facts = validateConduitFactsForOrg(feedPage);
 
     long updateSize =
@@ -471,12 +224,10 @@ public class InventoryController {
     if (updateSize > 0) {
       inventoryService.flushHostUpdates();
     }
-    log.debug(
-        "Finished page w/ offset {} of inventory updates for org {}, producing {} updates",
-        offset,
-        orgId,
-        updateSize);
-    Optional<String> nextOffset = getNextOffset(feedPage);
+    return updateSize;
+  }
+
+  private void completePage(String orgId, Optional<String> nextOffset) {
     if (nextOffset.isPresent()) {
       log.debug("Queueing up task for next page of org {}", orgId);
       taskManager.updateOrgInventory(orgId, nextOffset.get());
@@ -487,15 +238,6 @@ public class InventoryController {
     }
   }
 
-  private Optional<String> getNextOffset(
-      org.candlepin.subscriptions.conduit.rhsm.client.model.OrgInventory feedPage) {
-    Pagination pagination = feedPage.getPagination();
-    if (pagination != null && pagination.getLimit().equals(pagination.getCount())) {
-      return Optional.of(feedPage.getBody().get(pagination.getCount().intValue() - 1).getId());
-    }
-    return Optional.empty();
-  }
-
   public OrgInventory getInventoryForOrg(String orgId, String offset)
       throws MissingAccountNumberException, ApiException {
 
@@ -562,12 +304,4 @@ public class InventoryController {
   private String buildValidationMessage(ConstraintViolation<ConduitFacts> x) {
     return String.format("%s: %s: %s", x.getPropertyPath(), x.getMessage(), x.getInvalidValue());
   }
-
-  private boolean isTruncated(String toCheck, String factKey) {
-    if (toCheck != null && toCheck.endsWith("...")) {
-      log.info("Consumer fact value was truncated. Skipping value: {}:{}", factKey, toCheck);
-      return true;
-    }
-    return false;
-  }
 }
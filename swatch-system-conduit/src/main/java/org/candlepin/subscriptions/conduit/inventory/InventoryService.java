@@ -20,8 +20,17 @@
  */
 package org.candlepin.subscriptions.conduit.inventory;
 
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Metrics;
+import io.micrometer.core.instrument.Timer;
 import java.time.OffsetDateTime;
 import java.util.*;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 import org.candlepin.subscriptions.inventory.client.InventoryServiceProperties;
 import org.candlepin.subscriptions.inventory.client.model.CreateHostIn;
 import org.candlepin.subscriptions.inventory.client.model.FactSet;
@@ -34,21 +43,52 @@ import org.slf4j.LoggerFactory;
 
 /**
  * Defines operations against the inventory service. This service allows batching host fact updates.
- * Once the maximum fact queue depth is reached, the service will auto flush the updates so that we
- * don't keep too many facts in memory before they are pushed to inventory.
+ * Once the maximum fact queue depth is reached, or the flush interval has passed since the last
+ * flush, the service will auto flush the updates so that we don't keep too many facts in memory
+ * before they are pushed to inventory.
+ *
+ * <p>Host updates may be scheduled and flushed from multiple threads. Each queued host is sent by
+ * exactly one flush. The queue is bounded by the host update queue capacity: a thread scheduling an
+ * update while the queue is full flushes a batch itself before queuing it. A batch that fails to
+ * send is queued again, up to {@value #MAX_SEND_ATTEMPTS} attempts per host and only while the
+ * queue has room; the hosts left out are dropped and counted, so that an inventory outage cannot
+ * grow the queue without bound.
  */
 public abstract class InventoryService {
 
   private static final Logger log = LoggerFactory.getLogger(InventoryService.class);
 
-  private int maxQueueDepth;
-  private int staleHostOffset;
-  private List<ConduitFacts> factQueue;
+  /** Number of times a host update is sent before it is dropped. */
+  static final int MAX_SEND_ATTEMPTS = 3;
+
+  private final int maxQueueDepth;
+  private final long flushIntervalNanos;
+  private final int staleHostOffset;
+  private final BlockingQueue<QueuedHost> factQueue;
+  private final AtomicLong lastFlushNanos;
+  private final DistributionSummary batchSizeSummary;
+  private final Timer flushTimer;
+  private final Counter droppedHosts;
 
   protected InventoryService(InventoryServiceProperties serviceProperties, int maxQueueDepth) {
-    this.maxQueueDepth = maxQueueDepth;
+    this(serviceProperties, maxQueueDepth, Metrics.globalRegistry);
+  }
+
+  protected InventoryService(
+      InventoryServiceProperties serviceProperties,
+      int maxQueueDepth,
+      MeterRegistry meterRegistry) {
+    this.maxQueueDepth = Math.max(1, maxQueueDepth);
+    this.flushIntervalNanos = serviceProperties.getHostUpdateFlushInterval().toNanos();
     this.staleHostOffset = serviceProperties.getStaleHostOffsetInDays();
-    this.factQueue = new LinkedList<>();
+    this.factQueue =
+        new LinkedBlockingQueue<>(
+            Math.max(this.maxQueueDepth, serviceProperties.getHostUpdateQueueCapacity()));
+    this.lastFlushNanos = new AtomicLong(System.nanoTime());
+    meterRegistry.gauge("rhsm-conduit.inventory.queue.depth", factQueue, Collection::size);
+    this.batchSizeSummary = meterRegistry.summary("rhsm-conduit.inventory.flush.batch-size");
+    this.flushTimer = meterRegistry.timer("rhsm-conduit.inventory.flush");
+    this.droppedHosts = meterRegistry.counter("rhsm-conduit.inventory.dropped");
   }
 
   /**
@@ -59,30 +99,84 @@ public abstract class InventoryService {
   protected abstract void sendHostUpdate(List<ConduitFacts> conduitFactsForOrg);
 
   /**
-   * Schedules the given host facts for update. When the max queue depth is reached, fact updates
-   * are automatically flushed.
+   * Schedules the given host facts for update. When the max queue depth is reached, or the flush
+   * interval has passed since the last flush, fact updates are automatically flushed.
    *
    * @param facts the host facts to schedule for update.
    */
   public void scheduleHostUpdate(ConduitFacts facts) {
-    synchronized (factQueue) {
-      factQueue.add(facts);
+    QueuedHost host = new QueuedHost(facts);
+    while (!factQueue.offer(host)) {
+      log.debug("Host update queue full. Flushing updates before queuing more.");
+      flushHostUpdates();
+    }
 
-      // Auto flush updates when max queue depth is reached.
-      if (factQueue.size() == maxQueueDepth) {
-        log.debug("Max queue depth reached. Auto flushing updates.");
-        flushHostUpdates();
-      }
+    // Auto flush updates when max queue depth is reached.
+    if (factQueue.size() >= maxQueueDepth) {
+      log.debug("Max queue depth reached. Auto flushing updates.");
+      flushHostUpdates();
+    } else if (isFlushDue()) {
+      log.debug("Flush interval reached. Auto flushing updates.");
+      flushHostUpdates();
     }
   }
 
-  /** Force the currently scheduled updates to be sent to inventory. */
+  /**
+   * Flush the scheduled updates if the flush interval has passed since the last flush. Called
+   * periodically, so that updates scheduled just before traffic stops are still sent.
+   */
+  public void flushIfDue() {
+    if (!factQueue.isEmpty() && isFlushDue()) {
+      log.debug("Flush interval reached while idle. Flushing updates.");
+      flushHostUpdates();
+    }
+  }
+
+  /**
+   * Force the currently scheduled updates to be sent to inventory, in batches of at most the max
+   * queue depth. If a batch fails to send, its updates are queued again, within the limits
+   * described on this class.
+   */
   public void flushHostUpdates() {
-    synchronized (factQueue) {
-      if (!factQueue.isEmpty()) {
-        sendHostUpdate(factQueue);
-        factQueue.clear();
+    lastFlushNanos.set(System.nanoTime());
+    List<QueuedHost> batch;
+    while (!(batch = drainBatch()).isEmpty()) {
+      List<ConduitFacts> facts = new ArrayList<>(batch.size());
+      batch.forEach(host -> facts.add(host.facts));
+      long start = System.nanoTime();
+      try {
+        sendHostUpdate(facts);
+      } catch (RuntimeException e) {
+        requeue(batch);
+        throw e;
+      } finally {
+        flushTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
       }
+      batchSizeSummary.record(batch.size());
+    }
+  }
+
+  private boolean isFlushDue() {
+    return flushIntervalNanos > 0 && System.nanoTime() - lastFlushNanos.get() >= flushIntervalNanos;
+  }
+
+  private List<QueuedHost> drainBatch() {
+    List<QueuedHost> batch = new ArrayList<>(Math.min(maxQueueDepth, factQueue.size() + 1));
+    factQueue.drainTo(batch, maxQueueDepth);
+    return batch;
+  }
+
+  private void requeue(List<QueuedHost> batch) {
+    int dropped = 0;
+    for (QueuedHost host : batch) {
+      host.failedSends++;
+      if (host.failedSends >= MAX_SEND_ATTEMPTS || !factQueue.offer(host)) {
+        dropped++;
+      }
+    }
+    if (dropped > 0) {
+      log.warn("Dropped {} host updates that could not be sent to inventory.", dropped);
+      droppedHosts.increment(dropped);
     }
   }
 
@@ -208,4 +302,14 @@ public abstract class InventoryService {
       factMap.put(key, value);
     }
   }
+
+  /** A scheduled host update, with the number of times sending it has failed. */
+  private static class QueuedHost {
+    private final ConduitFacts facts;
+    private int failedSends;
+
+    QueuedHost(ConduitFacts facts) {
+      this.facts = facts;
+    }
+  }
 }
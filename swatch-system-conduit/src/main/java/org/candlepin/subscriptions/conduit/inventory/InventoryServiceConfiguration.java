@@ -26,6 +26,7 @@ import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.SerializationFeature;
 import com.fasterxml.jackson.databind.util.StdDateFormat;
 import io.micrometer.core.instrument.MeterRegistry;
+import java.time.Duration;
 import org.candlepin.subscriptions.conduit.inventory.kafka.CreateUpdateHostMessage;
 import org.candlepin.subscriptions.conduit.inventory.kafka.InventoryServiceKafkaConfigurator;
 import org.candlepin.subscriptions.conduit.inventory.kafka.KafkaEnabledInventoryService;
@@ -42,6 +43,8 @@ import org.springframework.kafka.annotation.EnableKafka;
 import org.springframework.kafka.core.KafkaTemplate;
 import org.springframework.kafka.core.ProducerFactory;
 import org.springframework.retry.support.RetryTemplate;
+import org.springframework.scheduling.TaskScheduler;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskScheduler;
 
 /** Configures all beans required to connect to the inventory service's Kafka instance. */
 @EnableKafka
@@ -81,8 +84,10 @@ public class InventoryServiceConfiguration {
 
   @Bean
   public ProducerFactory<String, CreateUpdateHostMessage> inventoryServiceKafkaProducerFactory(
-      KafkaProperties kafkaProperties, @Qualifier("hbiObjectMapper") ObjectMapper mapper) {
-    return kafkaConfigurator.defaultProducerFactory(kafkaProperties, mapper);
+      KafkaProperties kafkaProperties,
+      @Qualifier("hbiObjectMapper") ObjectMapper mapper,
+      InventoryServiceProperties serviceProperties) {
+    return kafkaConfigurator.defaultProducerFactory(kafkaProperties, mapper, serviceProperties);
   }
 
   @Bean
@@ -97,9 +102,31 @@ public class InventoryServiceConfiguration {
           KafkaTemplate<String, CreateUpdateHostMessage> producer,
       InventoryServiceProperties serviceProperties,
       MeterRegistry meterRegistry,
-      RetryTemplate kafkaRetryTemplate) {
-    return new KafkaEnabledInventoryService(
-        serviceProperties, producer, meterRegistry, kafkaRetryTemplate);
+      RetryTemplate kafkaRetryTemplate,
+      @Qualifier("inventoryFlushScheduler") TaskScheduler inventoryFlushScheduler) {
+    InventoryService inventoryService =
+        new KafkaEnabledInventoryService(
+            serviceProperties, producer, meterRegistry, kafkaRetryTemplate);
+    // Send updates left queued once traffic stops, rather than waiting for the next update.
+    Duration flushInterval = serviceProperties.getHostUpdateFlushInterval();
+    if (!flushInterval.isZero() && !flushInterval.isNegative()) {
+      inventoryFlushScheduler.scheduleWithFixedDelay(inventoryService::flushIfDue, flushInterval);
+    }
+    return inventoryService;
+  }
+
+  /**
+   * Create the thread that flushes host updates left queued once the flush interval has passed.
+   *
+   * @return ThreadPoolTaskScheduler
+   */
+  @Bean
+  public ThreadPoolTaskScheduler inventoryFlushScheduler() {
+    ThreadPoolTaskScheduler scheduler = new ThreadPoolTaskScheduler();
+    scheduler.setThreadNamePrefix("InventoryFlushScheduler");
+    scheduler.setPoolSize(1);
+    scheduler.initialize();
+    return scheduler;
   }
 
   @Bean(name = "kafkaRetryTemplate")
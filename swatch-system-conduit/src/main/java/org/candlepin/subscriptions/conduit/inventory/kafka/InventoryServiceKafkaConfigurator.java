@@ -24,12 +24,14 @@ import com.fasterxml.jackson.databind.ObjectMapper;
 import java.util.Map;
 import org.apache.kafka.clients.producer.ProducerConfig;
 import org.apache.kafka.common.serialization.StringSerializer;
+import org.candlepin.subscriptions.inventory.client.InventoryServiceProperties;
 import org.springframework.boot.autoconfigure.kafka.KafkaProperties;
 import org.springframework.kafka.core.DefaultKafkaProducerFactory;
 import org.springframework.kafka.core.KafkaTemplate;
 import org.springframework.kafka.core.ProducerFactory;
 import org.springframework.kafka.support.serializer.JsonSerializer;
 import org.springframework.stereotype.Component;
+import org.springframework.util.StringUtils;
 
 /**
  * Encapsulates the creation of all components required for producing Kafka messages for the
@@ -39,9 +41,22 @@ import org.springframework.stereotype.Component;
 public class InventoryServiceKafkaConfigurator {
 
   public DefaultKafkaProducerFactory<String, CreateUpdateHostMessage> defaultProducerFactory(
-      KafkaProperties kafkaProperties, ObjectMapper mapper) {
+      KafkaProperties kafkaProperties,
+      ObjectMapper mapper,
+      InventoryServiceProperties serviceProperties) {
     Map<String, Object> producerConfig = kafkaProperties.buildProducerProperties();
     producerConfig.put(ProducerConfig.KEY_SERIALIZER_CLASS_CONFIG, StringSerializer.class);
+    // Host updates are sent in bulk when batching is enabled, so allow the producer to wait for
+    // and compress fuller batches independently of the other producers of the application.
+    if (serviceProperties.getKafkaProducerLingerMs() != null) {
+      producerConfig.put(
+          ProducerConfig.LINGER_MS_CONFIG, serviceProperties.getKafkaProducerLingerMs());
+    }
+    if (StringUtils.hasText(serviceProperties.getKafkaProducerCompressionType())) {
+      producerConfig.put(
+          ProducerConfig.COMPRESSION_TYPE_CONFIG,
+          serviceProperties.getKafkaProducerCompressionType());
+    }
 
     DefaultKafkaProducerFactory<String, CreateUpdateHostMessage> factory =
         new DefaultKafkaProducerFactory<>(producerConfig);
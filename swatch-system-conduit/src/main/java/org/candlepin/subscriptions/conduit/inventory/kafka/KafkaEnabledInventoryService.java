@@ -23,7 +23,6 @@ package org.candlepin.subscriptions.conduit.inventory.kafka;
 import io.micrometer.core.instrument.Counter;
 import io.micrometer.core.instrument.MeterRegistry;
 import java.time.OffsetDateTime;
-import java.util.Collections;
 import java.util.List;
 import java.util.UUID;
 import org.apache.kafka.clients.producer.RecordMetadata;
@@ -38,8 +37,9 @@ import org.springframework.retry.support.RetryTemplate;
 
 /**
  * An InventoryService implementation that includes a Kafka producer that is capable of sending
- * messages to the inventory service's Kafka instance. A message is sent as soon as a host update is
- * scheduled.
+ * messages to the inventory service's Kafka instance. A message per host is sent once the configured
+ * number of host updates is scheduled, or when updates are flushed. Sending many messages at once
+ * lets the producer batch and compress them according to its linger and compression settings.
  */
 public class KafkaEnabledInventoryService extends InventoryService {
 
@@ -58,8 +58,7 @@ public class KafkaEnabledInventoryService extends InventoryService {
       KafkaTemplate<String, CreateUpdateHostMessage> producer,
       MeterRegistry meterRegistry,
       RetryTemplate retryTemplate) {
-    // Flush updates as soon as they get scheduled.
-    super(serviceProperties, 1);
+    super(serviceProperties, serviceProperties.getKafkaHostBatchSize(), meterRegistry);
     this.producer = producer;
     this.hostIngressTopic = serviceProperties.getKafkaHostIngressTopic();
     this.sentMessageCounter = meterRegistry.counter("rhsm-conduit.send.inventory-message");
@@ -68,16 +67,6 @@ public class KafkaEnabledInventoryService extends InventoryService {
     this.retryTemplate = retryTemplate;
   }
 
-  @Override
-  public void scheduleHostUpdate(ConduitFacts facts) {
-    this.sendHostUpdate(Collections.singletonList(facts));
-  }
-
-  @Override
-  public void flushHostUpdates() {
-    /* intentionally left blank */
-  }
-
   @Override
   protected void sendHostUpdate(List<ConduitFacts> facts) {
     if (facts.isEmpty()) {
@@ -35,4 +35,13 @@ public class OrgSyncProperties {
   private String schedule = "0 5 * * * ?";
   /** Artificial limit to number of orgs */
   private Integer limit = null;
+  /**
+   * Sync the pages of an org in-process, fetching the next pages from RHSM while the current one
+   * is sent to inventory, instead of queueing a task per page.
+   */
+  private boolean pipelinedSync = false;
+  /** Number of fetched pages that may wait for processing when pipelined sync is enabled. */
+  private int prefetchDepth = 2;
+  /** Pages processed by a single task in pipelined sync before handing off to a new task. */
+  private int pipelinedPagesPerTask = 100;
 }
@@ -0,0 +1,168 @@
+/*
+ * Copyright Red Hat, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ *
+ * Red Hat trademarks are not licensed under GPLv3. No permission is
+ * granted to use or replicate Red Hat trademarks that are incorporated
+ * in this software or its documentation.
+ */
+package org.candlepin.subscriptions.conduit.rhsm;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import java.util.Optional;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import javax.annotation.PreDestroy;
+import org.candlepin.subscriptions.conduit.rhsm.client.ApiException;
+import org.candlepin.subscriptions.conduit.rhsm.client.model.OrgInventory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Component;
+
+/**
+ * Fetches the consumer pages of an org on a background thread, staying a bounded number of pages
+ * ahead of the caller, so that fetching the next page overlaps with processing the current one.
+ */
+@Component
+public class RhsmPagePrefetcher {
+
+  private static final Logger log = LoggerFactory.getLogger(RhsmPagePrefetcher.class);
+
+  private final RhsmService rhsmService;
+  private final ExecutorService executor;
+  private final Timer fetchTimer;
+  private final Timer waitTimer;
+
+  public RhsmPagePrefetcher(RhsmService rhsmService, MeterRegistry meterRegistry) {
+    this.rhsmService = rhsmService;
+    CustomizableThreadFactory threadFactory = new CustomizableThreadFactory("rhsm-prefetch-");
+    threadFactory.setDaemon(true);
+    this.executor = Executors.newCachedThreadPool(threadFactory);
+    this.fetchTimer = meterRegistry.timer("rhsm-conduit.sync.page-fetch");
+    this.waitTimer = meterRegistry.timer("rhsm-conduit.sync.page-wait");
+  }
+
+  /**
+   * Start fetching the pages of consumers of an org, beginning at the given offset.
+   *
+   * @param orgId organization id
+   * @param offset offset to start at, null for the first page
+   * @param lastCheckinTime see {@link RhsmService#getPageOfConsumers}
+   * @param depth maximum number of fetched pages waiting to be taken by the caller
+   * @return the pages, which must be closed to stop fetching early
+   */
+  public Pages prefetch(String orgId, String offset, String lastCheckinTime, int depth) {
+    return new Pages(orgId, offset, lastCheckinTime, Math.max(1, depth));
+  }
+
+  @PreDestroy
+  public void shutdown() {
+    executor.shutdownNow();
+  }
+
+  /** Pages of an org in order; the fetch of each page begins as soon as the previous one ends. */
+  public class Pages implements AutoCloseable {
+    private final BlockingQueue<FetchResult> queue;
+    private final Future<?> fetcher;
+    private boolean done;
+
+    private Pages(String orgId, String offset, String lastCheckinTime, int depth) {
+      this.queue = new ArrayBlockingQueue<>(depth);
+      this.fetcher = executor.submit(() -> fetchAll(orgId, offset, lastCheckinTime));
+    }
+
+    /**
+     * Take the next page, waiting for it to be fetched if necessary.
+     *
+     * @return the next page, or null once the last page has been returned
+     * @throws ApiException if fetching the page failed
+     */
+    public OrgInventory next() throws ApiException {
+      if (done) {
+        return null;
+      }
+      FetchResult result;
+      long start = System.nanoTime();
+      try {
+        result = queue.take();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new IllegalStateException("Interrupted while waiting for a page of consumers", e);
+      } finally {
+        waitTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+      }
+      if (result.error instanceof ApiException) {
+        done = true;
+        throw (ApiException) result.error;
+      } else if (result.error != null) {
+        done = true;
+        throw new IllegalStateException("Unable to fetch page of consumers", result.error);
+      }
+      done = result.page == null;
+      return result.page;
+    }
+
+    /** Stop fetching; pages fetched but not yet taken are discarded. */
+    @Override
+    public void close() {
+      done = true;
+      fetcher.cancel(true);
+    }
+
+    private void fetchAll(String orgId, String offset, String lastCheckinTime) {
+      String cursor = offset;
+      try {
+        while (!Thread.currentThread().isInterrupted()) {
+          String pageOffset = cursor;
+          OrgInventory page =
+              fetchTimer.recordCallable(
+                  () -> rhsmService.getPageOfConsumers(orgId, pageOffset, lastCheckinTime));
+          queue.put(new FetchResult(page, null));
+          Optional<String> nextOffset = RhsmService.getNextOffset(page);
+          if (nextOffset.isEmpty()) {
+            queue.put(new FetchResult(null, null));
+            return;
+          }
+          cursor = nextOffset.get();
+        }
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      } catch (Exception e) {
+        log.debug("Prefetch of consumers for org {} failed at offset {}", orgId, cursor, e);
+        try {
+          queue.put(new FetchResult(null, e));
+        } catch (InterruptedException interrupted) {
+          Thread.currentThread().interrupt();
+        }
+      }
+    }
+  }
+
+  private static class FetchResult {
+    private final OrgInventory page;
+    private final Exception error;
+
+    private FetchResult(OrgInventory page, Exception error) {
+      this.page = page;
+      this.error = error;
+    }
+  }
+}
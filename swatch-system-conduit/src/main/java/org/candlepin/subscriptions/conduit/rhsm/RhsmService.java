@@ -24,10 +24,12 @@ import java.time.Duration;
 import java.time.Instant;
 import java.time.ZoneId;
 import java.time.format.DateTimeFormatter;
+import java.util.Optional;
 import javax.validation.constraints.Pattern;
 import org.candlepin.subscriptions.conduit.rhsm.client.ApiException;
 import org.candlepin.subscriptions.conduit.rhsm.client.RhsmApiProperties;
 import org.candlepin.subscriptions.conduit.rhsm.client.model.OrgInventory;
+import org.candlepin.subscriptions.conduit.rhsm.client.model.Pagination;
 import org.candlepin.subscriptions.conduit.rhsm.client.resources.RhsmApi;
 import org.candlepin.subscriptions.inventory.client.InventoryServiceProperties;
 import org.slf4j.Logger;
@@ -98,6 +100,21 @@ public class RhsmService {
         });
   }
 
+  /**
+   * Determine the offset of the page following the given one. A full page may be followed by more
+   * consumers, in which case the offset is the id of its last consumer.
+   *
+   * @param page a page of consumers
+   * @return the offset of the next page, or empty if this was the last page
+   */
+  public static Optional<String> getNextOffset(OrgInventory page) {
+    Pagination pagination = page.getPagination();
+    if (pagination != null && pagination.getLimit().equals(pagination.getCount())) {
+      return Optional.of(page.getBody().get(pagination.getCount().intValue() - 1).getId());
+    }
+    return Optional.empty();
+  }
+
   /**
    * Utility method to return the time in a format expected by getPageOfConsumers. This design seems
    * rather backwards, but we do it this way because if we overrode getPageOfConsumers -- taking the
@@ -0,0 +1,262 @@
+/*
+ * Copyright Red Hat, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ *
+ * Red Hat trademarks are not licensed under GPLv3. No permission is
+ * granted to use or replicate Red Hat trademarks that are incorporated
+ * in this software or its documentation.
+ */
+package org.candlepin.subscriptions.conduit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import java.io.IOException;
+import java.io.InputStream;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import org.candlepin.subscriptions.conduit.inventory.ConduitFacts;
+import org.candlepin.subscriptions.conduit.rhsm.client.model.Consumer;
+import org.candlepin.subscriptions.inventory.client.model.NetworkInterface;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.MethodSource;
+import org.springframework.core.io.Resource;
+import org.springframework.core.io.support.PathMatchingResourcePatternResolver;
+
+class ConsumerFactExtractorTest {
+
+  private static final ObjectMapper MAPPER =
+      new ObjectMapper()
+          .registerModule(new JavaTimeModule())
+          .disable(DeserializationFeature.ADJUST_DATES_TO_CONTEXT_TIME_ZONE);
+  private static final char[] ALPHABET = "0123456789abcdefABCDEF.,- \t:_Bbilnkpv46".toCharArray();
+
+  private final ConsumerFactExtractor extractor = new ConsumerFactExtractor();
+
+  static Stream<Resource> goldenFiles() throws IOException {
+    return Arrays.stream(
+        new PathMatchingResourcePatternResolver().getResources("classpath:consumer-facts/*.json"));
+  }
+
+  /**
+   * Each golden file holds an RHSM consumer and the facts conduit extracted from it before the
+   * fact scanners replaced the regular expressions. Facts that were not set are omitted.
+   */
+  @ParameterizedTest
+  @MethodSource("goldenFiles")
+  void extractsGoldenFacts(Resource goldenFile) throws IOException {
+    JsonNode golden;
+    try (InputStream stream = goldenFile.getInputStream()) {
+      golden = MAPPER.readTree(stream);
+    }
+    Consumer consumer = MAPPER.treeToValue(golden.get("consumer"), Consumer.class);
+
+    ConduitFacts facts = extractor.extract(consumer);
+
+    JsonNode actual = MAPPER.readTree(MAPPER.writeValueAsString(describe(facts)));
+    assertEquals(golden.get("facts"), actual, goldenFile.getFilename());
+  }
+
+  @Test
+  void splitsCommaDelimitedValuesLikeRegex() {
+    Random random = new Random(7);
+    for (int i = 0; i < 100_000; i++) {
+      String value = randomString(random, ",, \t\nab.");
+      List<String> items = new ArrayList<>();
+      ConsumerFactExtractor.forEachItem(value, items::add);
+      assertEquals(Arrays.asList(value.split(",\\s*")), items, () -> "value: [" + value + "]");
+    }
+  }
+
+  @Test
+  void recognizesIpAddressFactsLikeRegex() {
+    Pattern pattern = Pattern.compile(InventoryController.IP_ADDRESS_FACT_REGEX);
+    List<String> keys =
+        new ArrayList<>(
+            List.of(
+                "net.interface.eth0.ipv4_address",
+                "net.interface.eth0.ipv4_address_list",
+                "net.interface.eth0.ipv6_address.global",
+                "net.interface.eth0.ipv6_address.global_list",
+                "net.interface.eth0.ipv6_address.link_list",
+                "net.interface..ipv6_address",
+                "net.interface.eth0.ipv6_address.link_list.more",
+                "net.interface.eth0.1.ipv4_address",
+                "net.interface.eth0.ipv5_address",
+                "net.interface.eth0.ipv4",
+                "net.interface.ipv4_address",
+                "net.interface.eth0.ipv4_address_list\n"));
+    Random random = new Random(11);
+    String[] parts = {
+      "net.interface.", "eth0", ".", ".ipv", "4", "6", "_address", ".global", ".link", "_list", "x"
+    };
+    for (int i = 0; i < 100_000; i++) {
+      StringBuilder key = new StringBuilder();
+      int count = random.nextInt(8);
+      for (int j = 0; j < count; j++) {
+        key.append(parts[random.nextInt(parts.length)]);
+      }
+      keys.add(key.toString());
+    }
+
+    for (String key : keys) {
+      assertEquals(
+          pattern.matcher(key).matches(), ConsumerFactExtractor.isIpAddressFact(key), key);
+    }
+  }
+
+  @Test
+  void recognizesUuidsAndMemoryLikeRegex() {
+    Pattern uuid = Pattern.compile("[0-9a-fA-F]{8}-([0-9a-fA-F]{4}-){3}[0-9a-fA-F]{12}");
+    Pattern nonHyphenUuid = Pattern.compile("[0-9a-fA-F]{8}([0-9a-fA-F]{4}){3}[0-9a-fA-F]{12}");
+    Pattern decimalBytes = Pattern.compile("^\\d+\\.\\d+[Bb]$");
+    Random random = new Random(13);
+    List<String> values =
+        new ArrayList<>(
+            List.of(
+                "2e1a5c42-1dbe-11b2-a85c-dc7d8a9a0b1c",
+                "2E1A5C421DBE11B2A85CDC7D8A9A0B1C",
+                "2e1a5c42-1dbe-11b2-a85c-dc7d8a9a0b1",
+                "2e1a5c42-1dbe-11b2-a85cd-c7d8a9a0b1c",
+                "16106127360.0B",
+                "8.5b",
+                "12.B",
+                ".5B",
+                "1.5BB"));
+    for (int i = 0; i < 100_000; i++) {
+      values.add(randomString(random, null));
+    }
+    for (int i = 0; i < 10_000; i++) {
+      values.add(mutate(random, "2e1a5c42-1dbe-11b2-a85c-dc7d8a9a0b1c"));
+      values.add(mutate(random, "2e1a5c421dbe11b2a85cdc7d8a9a0b1c"));
+      values.add(mutate(random, "123.45B"));
+    }
+
+    for (String value : values) {
+      assertEquals(
+          uuid.matcher(value).matches(), ConsumerFactExtractor.isHyphenatedUuid(value), value);
+      assertEquals(
+          nonHyphenUuid.matcher(value).matches(),
+          ConsumerFactExtractor.isUnhyphenatedUuid(value),
+          value);
+      assertEquals(
+          decimalBytes.matcher(value).matches(),
+          ConsumerFactExtractor.isDecimalBytes(value),
+          value);
+    }
+  }
+
+  private static String randomString(Random random, String alphabet) {
+    char[] chars = alphabet == null ? ALPHABET : alphabet.toCharArray();
+    StringBuilder value = new StringBuilder();
+    int length = random.nextInt(12);
+    for (int i = 0; i < length; i++) {
+      value.append(chars[random.nextInt(chars.length)]);
+    }
+    return value.toString();
+  }
+
+  private static String mutate(Random random, String value) {
+    char[] chars = value.toCharArray();
+    chars[random.nextInt(chars.length)] = ALPHABET[random.nextInt(ALPHABET.length)];
+    return new String(chars);
+  }
+
+  /**
+   * Describe the extracted facts using the API property names, skipping unset values. IP addresses
+   * are collected into a set, so they are reported in sorted order.
+   */
+  private static Map<String, Object> describe(ConduitFacts facts) {
+    Map<String, Object> description = new LinkedHashMap<>();
+    put(description, "org_id", facts.getOrgId());
+    put(description, "subscription_manager_id", facts.getSubscriptionManagerId());
+    put(description, "display_name", facts.getDisplayName());
+    put(description, "insights_id", facts.getInsightsId());
+    if (facts.getLastCheckin() != null) {
+      put(
+          description,
+          "last_checkin",
+          DateTimeFormatter.ISO_OFFSET_DATE_TIME.format(facts.getLastCheckin()));
+    }
+    put(description, "sys_purpose_role", facts.getSysPurposeRole());
+    put(description, "sys_purpose_sla", facts.getSysPurposeSla());
+    put(description, "sys_purpose_usage", facts.getSysPurposeUsage());
+    put(description, "sys_purpose_addons", facts.getSysPurposeAddons());
+    put(description, "sys_purpose_units", facts.getSysPurposeUnits());
+    put(description, "billing_model", facts.getBillingModel());
+    put(description, "fqdn", facts.getFqdn());
+    if (facts.getNetworkInterfaces() != null) {
+      put(
+          description,
+          "network_interfaces",
+          facts.getNetworkInterfaces().stream()
+              .map(ConsumerFactExtractorTest::describe)
+              .collect(Collectors.toList()));
+    }
+    put(description, "mac_addresses", facts.getMacAddresses());
+    if (facts.getIpAddresses() != null) {
+      put(
+          description,
+          "ip_addresses",
+          facts.getIpAddresses().stream().sorted().collect(Collectors.toList()));
+    }
+    put(description, "bios_uuid", facts.getBiosUuid());
+    put(description, "os_name", facts.getOsName());
+    put(description, "os_version", facts.getOsVersion());
+    put(description, "bios_version", facts.getBiosVersion());
+    put(description, "bios_vendor", facts.getBiosVendor());
+    put(description, "cpu_sockets", facts.getCpuSockets());
+    put(description, "cpu_cores", facts.getCpuCores());
+    put(description, "cores_per_socket", facts.getCoresPerSocket());
+    put(description, "memory", facts.getMemory());
+    put(description, "system_memory_bytes", facts.getSystemMemoryBytes());
+    put(description, "architecture", facts.getArchitecture());
+    put(description, "cloud_provider", facts.getCloudProvider());
+    put(description, "is_virtual", facts.getIsVirtual());
+    put(description, "vm_host", facts.getVmHost());
+    put(description, "vm_host_uuid", facts.getVmHostUuid());
+    put(description, "guest_id", facts.getGuestId());
+    put(description, "rh_prod", facts.getRhProd());
+    return description;
+  }
+
+  private static Map<String, Object> describe(NetworkInterface networkInterface) {
+    Map<String, Object> description = new LinkedHashMap<>();
+    put(description, "name", networkInterface.getName());
+    put(description, "mac_address", networkInterface.getMacAddress());
+    put(description, "ipv4_addresses", networkInterface.getIpv4Addresses());
+    put(description, "ipv6_addresses", networkInterface.getIpv6Addresses());
+    return description;
+  }
+
+  private static void put(Map<String, Object> description, String name, Object value) {
+    if (value != null && !(value instanceof Collection && ((Collection<?>) value).isEmpty())) {
+      description.put(name, value);
+    }
+  }
+}
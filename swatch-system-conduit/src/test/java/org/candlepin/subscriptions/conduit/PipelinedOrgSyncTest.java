@@ -0,0 +1,214 @@
+/*
+ * Copyright Red Hat, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ *
+ * Red Hat trademarks are not licensed under GPLv3. No permission is
+ * granted to use or replicate Red Hat trademarks that are incorporated
+ * in this software or its documentation.
+ */
+package org.candlepin.subscriptions.conduit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.validation.Validator;
+import org.candlepin.subscriptions.conduit.inventory.ConduitFacts;
+import org.candlepin.subscriptions.conduit.inventory.InventoryService;
+import org.candlepin.subscriptions.conduit.job.OrgSyncProperties;
+import org.candlepin.subscriptions.conduit.job.OrgSyncTaskManager;
+import org.candlepin.subscriptions.conduit.rhsm.RhsmPagePrefetcher;
+import org.candlepin.subscriptions.conduit.rhsm.RhsmService;
+import org.candlepin.subscriptions.conduit.rhsm.client.ApiException;
+import org.candlepin.subscriptions.conduit.rhsm.client.RhsmApiProperties;
+import org.candlepin.subscriptions.conduit.rhsm.client.model.Consumer;
+import org.candlepin.subscriptions.conduit.rhsm.client.model.OrgInventory;
+import org.candlepin.subscriptions.conduit.rhsm.client.model.Pagination;
+import org.candlepin.subscriptions.conduit.rhsm.client.resources.RhsmApi;
+import org.candlepin.subscriptions.inventory.client.InventoryServiceProperties;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.retry.support.RetryTemplate;
+
+class PipelinedOrgSyncTest {
+  private static final int PAGE_SIZE = 100;
+  private static final int CONSUMER_COUNT = 5000;
+
+  private SyntheticRhsmApi rhsmApi;
+  private InventoryService inventoryService;
+  private OrgSyncTaskManager taskManager;
+  private OrgSyncProperties orgSyncProperties;
+  private SimpleMeterRegistry meterRegistry;
+  private RhsmPagePrefetcher prefetcher;
+  private InventoryController controller;
+
+  @BeforeEach
+  void setup() {
+    rhsmApi = new SyntheticRhsmApi(CONSUMER_COUNT);
+    RhsmApiProperties apiProperties = new RhsmApiProperties();
+    apiProperties.setRequestBatchSize(PAGE_SIZE);
+    RhsmService rhsmService =
+        new RhsmService(
+            new InventoryServiceProperties(), apiProperties, rhsmApi, new RetryTemplate());
+
+    inventoryService = mock(InventoryService.class);
+    taskManager = mock(OrgSyncTaskManager.class);
+    meterRegistry = new SimpleMeterRegistry();
+    orgSyncProperties = new OrgSyncProperties();
+    orgSyncProperties.setPipelinedSync(true);
+    prefetcher = new RhsmPagePrefetcher(rhsmService, meterRegistry);
+    controller =
+        new InventoryController(
+            inventoryService,
+            rhsmService,
+            mock(Validator.class),
+            new InventoryServiceProperties(),
+            taskManager,
+            meterRegistry,
+            new ConsumerFactExtractor(),
+            orgSyncProperties,
+            prefetcher);
+  }
+
+  @AfterEach
+  void tearDown() {
+    prefetcher.shutdown();
+  }
+
+  @Test
+  void testPipelinedSyncUpdatesEveryConsumerInOneTask() throws Exception {
+    controller.updateInventoryForOrg("org123");
+
+    verify(inventoryService, times(CONSUMER_COUNT)).scheduleHostUpdate(any(ConduitFacts.class));
+    verify(inventoryService, times(CONSUMER_COUNT / PAGE_SIZE)).flushHostUpdates();
+    verify(taskManager, never()).updateOrgInventory(anyString(), anyString());
+    // every page is full, so one more (empty) page is fetched to find the end
+    int expectedFetches = CONSUMER_COUNT / PAGE_SIZE + 1;
+    assertEquals(expectedFetches, rhsmApi.fetches.get());
+    assertEquals(expectedFetches, meterRegistry.timer("rhsm-conduit.sync.page-fetch").count());
+    assertEquals(expectedFetches, meterRegistry.timer("rhsm-conduit.sync.page-process").count());
+    assertEquals(1.0, meterRegistry.counter("rhsm-conduit.finalize.org").count());
+  }
+
+  @Test
+  void testPipelinedSyncHandsOffRemainingPagesToNewTask() throws Exception {
+    orgSyncProperties.setPipelinedPagesPerTask(10);
+
+    controller.updateInventoryForOrg("org123");
+
+    verify(inventoryService, times(10 * PAGE_SIZE)).scheduleHostUpdate(any(ConduitFacts.class));
+    verify(taskManager).updateOrgInventory("org123", SyntheticRhsmApi.id(10 * PAGE_SIZE - 1));
+    assertEquals(1.0, meterRegistry.counter("rhsm-conduit.queue.next-page").count());
+    assertEquals(0.0, meterRegistry.counter("rhsm-conduit.finalize.org").count());
+  }
+
+  @Test
+  void testPrefetchOverlapsProcessingWithinDepth() throws Exception {
+    int depth = 2;
+    orgSyncProperties.setPrefetchDepth(depth);
+    AtomicInteger processed = new AtomicInteger();
+    AtomicInteger maxLead = new AtomicInteger();
+    doAnswer(
+            invocation -> {
+              int page = processed.incrementAndGet();
+              if (page == 1) {
+                // while the first page is processed, the fetcher fills the queue and then blocks
+                // holding one more page it has no room for
+                awaitFetches(1 + depth + 1);
+                Thread.sleep(100);
+              }
+              maxLead.accumulateAndGet(rhsmApi.fetches.get() - page, Math::max);
+              return null;
+            })
+        .when(inventoryService)
+        .flushHostUpdates();
+
+    controller.updateInventoryForOrg("org123");
+
+    assertEquals(depth + 1, maxLead.get());
+    verify(inventoryService, times(CONSUMER_COUNT)).scheduleHostUpdate(any(ConduitFacts.class));
+  }
+
+  @Test
+  void testFetchFailureIsPropagated() {
+    rhsmApi.failAtPage = 3;
+
+    assertThrows(ApiException.class, () -> controller.updateInventoryForOrg("org123"));
+
+    verify(inventoryService, times(2 * PAGE_SIZE)).scheduleHostUpdate(any(ConduitFacts.class));
+    verify(taskManager, never()).updateOrgInventory(anyString(), anyString());
+  }
+
+  private void awaitFetches(int expected) throws InterruptedException {
+    long deadline = System.currentTimeMillis() + 5000;
+    while (rhsmApi.fetches.get() < expected && System.currentTimeMillis() < deadline) {
+      Thread.sleep(5);
+    }
+    assertTrue(rhsmApi.fetches.get() >= expected, "prefetch did not run ahead of processing");
+  }
+
+  /** Serves a fixed number of synthetic consumers, paged by consumer id like RHSM does. */
+  private static class SyntheticRhsmApi extends RhsmApi {
+    private final int consumerCount;
+    private final AtomicInteger fetches = new AtomicInteger();
+    private volatile int failAtPage = -1;
+
+    SyntheticRhsmApi(int consumerCount) {
+      this.consumerCount = consumerCount;
+    }
+
+    static String id(int index) {
+      return String.format("consumer-%06d", index);
+    }
+
+    @Override
+    public OrgInventory getConsumersForOrg(
+        String orgId, Integer limit, String offset, String lastCheckinAfter) throws ApiException {
+      int page = fetches.incrementAndGet();
+      if (failAtPage > 0 && page >= failAtPage) {
+        throw new ApiException("Synthetic failure");
+      }
+      int start = offset == null ? 0 : Integer.parseInt(offset.substring("consumer-".length())) + 1;
+      int end = Math.min(consumerCount, start + limit);
+      OrgInventory inventory = new OrgInventory();
+      for (int i = start; i < end; i++) {
+        Consumer consumer = new Consumer();
+        consumer.setId(id(i));
+        consumer.setUuid(String.format("00000000-0000-0000-0000-%012d", i));
+        consumer.setOrgId(orgId);
+        consumer.setAccountNumber("account123");
+        consumer.getFacts().put(InventoryController.NETWORK_FQDN, "host" + i + ".test.com");
+        consumer.getFacts().put(InventoryController.CPU_SOCKETS, "2");
+        inventory.addBodyItem(consumer);
+      }
+      inventory.pagination(
+          new Pagination()
+              .offset(offset)
+              .limit(limit.longValue())
+              .count((long) Math.max(0, end - start)));
+      return inventory;
+    }
+  }
+}
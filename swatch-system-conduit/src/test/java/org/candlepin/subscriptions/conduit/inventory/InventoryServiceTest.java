@@ -0,0 +1,222 @@
+/*
+ * Copyright Red Hat, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ *
+ * Red Hat trademarks are not licensed under GPLv3. No permission is
+ * granted to use or replicate Red Hat trademarks that are incorporated
+ * in this software or its documentation.
+ */
+package org.candlepin.subscriptions.conduit.inventory;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import org.candlepin.subscriptions.inventory.client.InventoryServiceProperties;
+import org.junit.jupiter.api.Test;
+
+class InventoryServiceTest {
+
+  private static final int THREADS = 8;
+  private static final int HOSTS_PER_THREAD = 5000;
+  private static final int BATCH_SIZE = 50;
+
+  @Test
+  void testConcurrentSchedulingSendsEveryHostExactlyOnce() throws Exception {
+    SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    RecordingInventoryService service =
+        new RecordingInventoryService(new InventoryServiceProperties(), meterRegistry);
+
+    ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+    CyclicBarrier start = new CyclicBarrier(THREADS);
+    List<Future<?>> producers = new ArrayList<>();
+    for (int t = 0; t < THREADS; t++) {
+      int thread = t;
+      producers.add(
+          executor.submit(
+              () -> {
+                start.await();
+                for (int i = 0; i < HOSTS_PER_THREAD; i++) {
+                  service.scheduleHostUpdate(facts(thread + "-" + i));
+                  // mimic the end of a page, flushing concurrently with other producers
+                  if (i % 97 == 0) {
+                    service.flushHostUpdates();
+                  }
+                }
+                return null;
+              }));
+    }
+    for (Future<?> producer : producers) {
+      producer.get();
+    }
+    executor.shutdown();
+    service.flushHostUpdates();
+
+    int total = THREADS * HOSTS_PER_THREAD;
+    Set<String> distinct = new HashSet<>();
+    int sent = 0;
+    for (List<ConduitFacts> batch : service.batches) {
+      assertTrue(batch.size() <= BATCH_SIZE, "batch exceeded max queue depth");
+      for (ConduitFacts facts : batch) {
+        distinct.add(facts.getSubscriptionManagerId());
+        sent++;
+      }
+    }
+    assertEquals(total, sent, "hosts were lost or duplicated");
+    assertEquals(total, distinct.size());
+    double depth = meterRegistry.get("rhsm-conduit.inventory.queue.depth").gauge().value();
+    assertEquals(0.0, depth);
+    var batchSizes = meterRegistry.get("rhsm-conduit.inventory.flush.batch-size").summary();
+    assertEquals(total, batchSizes.totalAmount());
+    var flushes = meterRegistry.get("rhsm-conduit.inventory.flush").timer();
+    assertEquals(service.batches.size(), flushes.count());
+  }
+
+  @Test
+  void testFlushIntervalTriggersAutoFlush() throws Exception {
+    InventoryServiceProperties props = new InventoryServiceProperties();
+    props.setHostUpdateFlushInterval(Duration.ofMillis(20));
+    RecordingInventoryService service =
+        new RecordingInventoryService(props, new SimpleMeterRegistry());
+
+    service.scheduleHostUpdate(facts("a"));
+    Thread.sleep(50);
+    service.scheduleHostUpdate(facts("b"));
+
+    assertEquals(1, service.batches.size());
+    assertEquals(2, service.batches.peek().size());
+  }
+
+  @Test
+  void testFailedBatchIsQueuedAgain() {
+    RecordingInventoryService service =
+        new RecordingInventoryService(new InventoryServiceProperties(), new SimpleMeterRegistry());
+    service.scheduleHostUpdate(facts("a"));
+    service.fail.set(true);
+
+    assertThrows(IllegalStateException.class, service::flushHostUpdates);
+
+    service.fail.set(false);
+    service.flushHostUpdates();
+    assertEquals(1, service.batches.size());
+    assertEquals("a", service.batches.peek().get(0).getSubscriptionManagerId());
+  }
+
+  @Test
+  void testFailedUpdateIsDroppedAfterMaxAttempts() {
+    SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    RecordingInventoryService service =
+        new RecordingInventoryService(new InventoryServiceProperties(), meterRegistry);
+    service.scheduleHostUpdate(facts("a"));
+    service.fail.set(true);
+
+    for (int i = 0; i < InventoryService.MAX_SEND_ATTEMPTS; i++) {
+      assertThrows(IllegalStateException.class, service::flushHostUpdates);
+    }
+
+    service.fail.set(false);
+    service.flushHostUpdates();
+    assertTrue(service.batches.isEmpty());
+    assertEquals(1.0, meterRegistry.get("rhsm-conduit.inventory.dropped").counter().count());
+  }
+
+  @Test
+  void testQueueStaysBoundedWhileInventoryIsDown() {
+    InventoryServiceProperties props = new InventoryServiceProperties();
+    props.setHostUpdateQueueCapacity(2 * BATCH_SIZE);
+    SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    RecordingInventoryService service = new RecordingInventoryService(props, meterRegistry);
+    service.fail.set(true);
+
+    int failures = 0;
+    for (int i = 0; i < 20 * BATCH_SIZE; i++) {
+      try {
+        service.scheduleHostUpdate(facts(String.valueOf(i)));
+      } catch (IllegalStateException e) {
+        failures++;
+      }
+      double depth = meterRegistry.get("rhsm-conduit.inventory.queue.depth").gauge().value();
+      assertTrue(depth <= 2 * BATCH_SIZE, "queue exceeded its capacity");
+    }
+
+    assertTrue(failures > 0);
+    assertTrue(meterRegistry.get("rhsm-conduit.inventory.dropped").counter().count() > 0);
+  }
+
+  @Test
+  void testFlushIfDueSendsUpdatesWithoutFurtherTraffic() throws Exception {
+    InventoryServiceProperties props = new InventoryServiceProperties();
+    props.setHostUpdateFlushInterval(Duration.ofMillis(20));
+    RecordingInventoryService service =
+        new RecordingInventoryService(props, new SimpleMeterRegistry());
+
+    service.scheduleHostUpdate(facts("a"));
+    service.flushIfDue();
+    assertTrue(service.batches.isEmpty());
+
+    Thread.sleep(50);
+    service.flushIfDue();
+    assertEquals(1, service.batches.size());
+    assertEquals("a", service.batches.peek().get(0).getSubscriptionManagerId());
+  }
+
+  @Test
+  void testFlushIfDueDoesNothingWithoutFlushInterval() throws Exception {
+    RecordingInventoryService service =
+        new RecordingInventoryService(new InventoryServiceProperties(), new SimpleMeterRegistry());
+
+    service.scheduleHostUpdate(facts("a"));
+    Thread.sleep(10);
+    service.flushIfDue();
+    assertTrue(service.batches.isEmpty());
+  }
+
+  private static ConduitFacts facts(String id) {
+    ConduitFacts facts = new ConduitFacts();
+    facts.setSubscriptionManagerId(id);
+    return facts;
+  }
+
+  private static class RecordingInventoryService extends InventoryService {
+    private final Queue<List<ConduitFacts>> batches = new ConcurrentLinkedQueue<>();
+    private final AtomicBoolean fail = new AtomicBoolean();
+
+    RecordingInventoryService(
+        InventoryServiceProperties properties, SimpleMeterRegistry meterRegistry) {
+      super(properties, BATCH_SIZE, meterRegistry);
+    }
+
+    @Override
+    protected void sendHostUpdate(List<ConduitFacts> conduitFactsForOrg) {
+      if (fail.get()) {
+        throw new IllegalStateException("Inventory is down");
+      }
+      batches.add(new ArrayList<>(conduitFactsForOrg));
+    }
+  }
+}
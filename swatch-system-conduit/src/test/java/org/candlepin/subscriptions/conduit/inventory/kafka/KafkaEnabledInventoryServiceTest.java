@@ -25,7 +25,9 @@ import static org.mockito.ArgumentMatchers.*;
 import static org.mockito.Mockito.*;
 
 import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
 import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
 import java.time.OffsetDateTime;
 import java.util.Arrays;
 import java.util.List;
@@ -62,9 +64,15 @@ class KafkaEnabledInventoryServiceTest {
 
   @Mock Counter mockCounter;
 
+  @Mock DistributionSummary mockSummary;
+
+  @Mock Timer mockTimer;
+
   @BeforeEach
   void setup() {
     when(meterRegistry.counter(any())).thenReturn(mockCounter);
+    when(meterRegistry.summary(any())).thenReturn(mockSummary);
+    when(meterRegistry.timer(any())).thenReturn(mockTimer);
 
     // Make the tests run faster!
     retryTemplate.setBackOffPolicy(new NoBackOffPolicy());
@@ -160,6 +168,34 @@ class KafkaEnabledInventoryServiceTest {
     verify(producer, times(2)).send(anyString(), any());
   }
 
+  @Test
+  void ensureMessagesSentOnceHostBatchSizeReached() {
+    InventoryServiceProperties props = new InventoryServiceProperties();
+    props.setKafkaHostBatchSize(3);
+    KafkaEnabledInventoryService service =
+        new KafkaEnabledInventoryService(props, producer, meterRegistry, retryTemplate);
+    service.scheduleHostUpdate(new ConduitFacts());
+    service.scheduleHostUpdate(new ConduitFacts());
+    verifyNoInteractions(producer);
+
+    service.scheduleHostUpdate(new ConduitFacts());
+    verify(producer, times(3)).send(anyString(), any());
+    verify(mockSummary).record(3);
+  }
+
+  @Test
+  void ensureFlushSendsPartialHostBatch() {
+    InventoryServiceProperties props = new InventoryServiceProperties();
+    props.setKafkaHostBatchSize(100);
+    KafkaEnabledInventoryService service =
+        new KafkaEnabledInventoryService(props, producer, meterRegistry, retryTemplate);
+    service.scheduleHostUpdate(new ConduitFacts());
+    service.scheduleHostUpdate(new ConduitFacts());
+    service.flushHostUpdates();
+
+    verify(producer, times(2)).send(anyString(), any());
+  }
+
   @Test
   void testStaleTimestampUpdatedBasedOnSyncTimestampAndOffset() {
     ArgumentCaptor<String> topicCaptor = ArgumentCaptor.forClass(String.class);